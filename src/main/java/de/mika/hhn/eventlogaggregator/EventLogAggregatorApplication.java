@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 
@@ -11,19 +12,25 @@ import org.springframework.context.event.EventListener;
 public class EventLogAggregatorApplication {
     
     private static final Logger log = LoggerFactory.getLogger(EventLogAggregatorApplication.class);
+    
+    // Startup steps recorded for /actuator/startup
+    private static final int STARTUP_STEP_CAPACITY = 4096;
 
     public static void main(String[] args) {
         log.info("🚀 Starting Event-Log Aggregator...");
-        SpringApplication.run(EventLogAggregatorApplication.class, args);
+        SpringApplication application = new SpringApplication(EventLogAggregatorApplication.class);
+        application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEP_CAPACITY));
+        application.run(args);
     }
     
     @EventListener(ApplicationReadyEvent.class)
-    public void onApplicationReady() {
-        log.info("✅ Event-Log Aggregator is ready!");
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        log.info("✅ Event-Log Aggregator is ready in {} ms!", event.getTimeTaken().toMillis());
         log.info("📊 Swagger UI: http://localhost:8080/swagger-ui.html");
         log.info("📈 Metrics API: http://localhost:8080/metrics/hourly");
         log.info("🔄 Live Stream: http://localhost:8080/stream");
         log.info("📥 Event Submission: POST http://localhost:8080/events");
         log.info("🏥 Health Check: http://localhost:8080/actuator/health");
+        log.info("⏱️ Startup Report: http://localhost:8080/actuator/startup");
     }
 }
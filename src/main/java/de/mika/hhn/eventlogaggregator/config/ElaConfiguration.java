@@ -1,9 +1,13 @@
 package de.mika.hhn.eventlogaggregator.config;
 
+import de.mika.hhn.eventlogaggregator.service.SimulationClock;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
+import java.time.Clock;
+
 /**
  * Main configuration class for Event Log Aggregator
  */
@@ -12,5 +16,16 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 @EnableScheduling
 public class ElaConfiguration {
     
-    // Additional configuration beans can be added here if needed
-} 
\ No newline at end of file
+    /**
+     * Time source of aggregation, expiry and pushes: the system clock, or virtual time
+     * starting now in simulation mode
+     */
+    @Bean
+    public Clock clock(ElaProperties properties) {
+        ElaProperties.Simulation simulation = properties.simulation();
+        if (simulation != null && simulation.enabled()) {
+            return new SimulationClock(System.currentTimeMillis());
+        }
+        return Clock.systemUTC();
+    }
+}
@@ -2,25 +2,124 @@ package de.mika.hhn.eventlogaggregator.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.ConstructorBinding;
+import org.springframework.util.unit.DataSize;
 
 import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @ConfigurationProperties(prefix = "ela")
 public record ElaProperties(
     Aggregation aggregation,
     Directories directories,
     Scheduler scheduler,
-    Sse sse
+    Sse sse,
+    Deduplication deduplication,
+    Admission admission,
+    Tail tail,
+    Anomalies anomalies,
+    BatchValidation batchValidation,
+    FlightRecorder flightRecorder,
+    IngestLanes ingestLanes,
+    Tenants tenants,
+    IngestFlow ingestFlow,
+    UserActivity userActivity,
+    Sessions sessions,
+    TimeSeries timeSeries,
+    Simulation simulation,
+    OpenMetrics openMetrics,
+    SocketIngest socketIngest,
+    RequestDecompression requestDecompression
 ) {
     
+    /**
+     * Rolling windows by name, served from rollups of increasing bucket length
+     * ({@code rollups.levels}). {@code primaryWindow} feeds the dashboard, the live
+     * stream and the active users of the chart series.
+     */
     public record Aggregation(
-        Windows windows
+        Map<String, Duration> windows,
+        String primaryWindow,
+        Rollups rollups,
+        Map<String, Interval> intervals
     ) {
-        public record Windows(
-            Duration hourly,
-            Duration daily, 
-            Duration weekly
+        /**
+         * Each window reads the coarsest level that still splits it into
+         * {@code minBucketsPerWindow} buckets; closed buckets keep the
+         * {@code maxChannelsPerBucket} busiest channels. Distinct users are counted
+         * with HyperLogLog sketches of {@code userSketchPrecision}.
+         */
+        public record Rollups(
+            List<Duration> levels,
+            int minBucketsPerWindow,
+            int maxChannelsPerBucket,
+            int userSketchPrecision,
+            int channelSketchPrecision
         ) {}
+        
+        /**
+         * Closed intervals of {@code size} starting every {@code advance}, aligned to
+         * the epoch (UTC): tumbling without an advance, hopping with one shorter than
+         * the size. Each is finalized once it has closed; the latest {@code retain}
+         * are kept.
+         */
+        public record Interval(
+            Duration size,
+            Duration advance,
+            int retain
+        ) {
+            /**
+             * Time between interval starts, the size for tumbling intervals
+             */
+            public Duration step() {
+                return advance != null ? advance : size;
+            }
+        }
+        
+        /**
+         * Configured intervals by name, none if unset
+         */
+        public Map<String, Interval> intervalsOrEmpty() {
+            return intervals != null ? intervals : Map.of();
+        }
+        
+        /**
+         * Lengths of all windows, shortest first
+         */
+        public List<Duration> durations() {
+            return windows.values().stream().distinct().sorted().toList();
+        }
+        
+        public Duration longest() {
+            return durations().get(durations().size() - 1);
+        }
+        
+        /**
+         * The primary window, or the shortest one if it is not configured
+         */
+        public Duration primary() {
+            return primaryWindow != null && windows.containsKey(primaryWindow)
+                ? windows.get(primaryWindow)
+                : durations().get(0);
+        }
+        
+        /**
+         * Window by name or ISO-8601 duration, if configured
+         */
+        public Optional<Duration> window(String name) {
+            Duration named = windows.get(name);
+            if (named != null) {
+                return Optional.of(named);
+            }
+            try {
+                Duration parsed = Duration.parse(name);
+                return windows.containsValue(parsed) ? Optional.of(parsed) : Optional.empty();
+            } catch (DateTimeParseException e) {
+                return Optional.empty();
+            }
+        }
     }
     
     public record Directories(
@@ -35,4 +134,236 @@ public record ElaProperties(
     public record Sse(
         long pushInterval
     ) {}
-} 
\ No newline at end of file
+    
+    /**
+     * Duplicate suppression over {@code horizon}, by default the longest aggregation
+     * window. Each of the {@code buckets} Bloom filters is sized for
+     * {@code expectedEventsPerBucket} keys and rotated early once it holds that many.
+     */
+    public record Deduplication(
+        boolean enabled,
+        Duration horizon,
+        double falsePositiveRate,
+        long expectedEventsPerBucket,
+        int buckets
+    ) {}
+    
+    /**
+     * Load shedding under heap or retained-state pressure. Watermarks are fractions
+     * of the maximum heap and of {@code maxRetainedMemory}, the estimated heap of the
+     * rollups, sketches and indexes of a partition plus its events not yet rolled up.
+     */
+    public record Admission(
+        boolean enabled,
+        double lowWatermark,
+        double highWatermark,
+        DataSize maxRetainedMemory,
+        double minSampleRate
+    ) {}
+    
+    /**
+     * Inbox files matching one of the glob patterns are tailed instead of
+     * being processed and moved as a whole
+     */
+    public record Tail(
+        List<String> patterns,
+        String checkpointFile,
+        long pollInterval
+    ) {}
+    
+    /**
+     * Streaming rate-anomaly detection per event type and channel
+     */
+    public record Anomalies(
+        boolean enabled,
+        double threshold,
+        double alpha,
+        double seasonalAlpha,
+        int minObservations,
+        int minSeasonalObservations,
+        double minRate,
+        int maxTrackedChannels,
+        int historySize
+    ) {}
+    
+    /**
+     * Batches with at least {@code parallelThreshold} elements are validated on a
+     * fork-join pool of {@code parallelism} threads (0 = number of CPUs)
+     */
+    public record BatchValidation(
+        int parallelThreshold,
+        int parallelism
+    ) {}
+    
+    /**
+     * Continuous JFR recording, dumped to the logs directory every {@code dumpInterval} ms
+     */
+    public record FlightRecorder(
+        boolean enabled,
+        Duration maxAge,
+        DataSize maxSize,
+        Duration threshold,
+        long dumpInterval,
+        int maxDumps
+    ) {}
+    
+    /**
+     * Weighted round-robin between the ingestion lanes; {@code maxEventsPerSecond}
+     * of a lane is a hard cap (0 = unlimited)
+     */
+    public record IngestLanes(
+        int workers,
+        int chunkSize,
+        Lane http,
+        Lane inbox,
+        Lane replay
+    ) {
+        public record Lane(
+            int weight,
+            long maxEventsPerSecond
+        ) {}
+    }
+    
+    /**
+     * Isolated aggregation partitions per tenant. Events without tenant key go to the
+     * default tenant, which is only limited by an entry for it in {@code quotas}.
+     */
+    public record Tenants(
+        String header,
+        int maxTenants,
+        Quota defaultQuota,
+        Map<String, Quota> quotas
+    ) {
+        /**
+         * Ingest rate and retained state of one tenant (0 = unlimited); as its
+         * partition's estimated heap approaches {@code maxRetainedMemory} the tenant's
+         * events are sampled
+         */
+        public record Quota(
+            long maxEventsPerSecond,
+            DataSize maxRetainedMemory
+        ) {
+            public long maxRetainedBytes() {
+                return maxRetainedMemory != null ? maxRetainedMemory.toBytes() : 0;
+            }
+        }
+    }
+    
+    /**
+     * Stages of the ingestion flow: files and HTTP payloads are validated on the
+     * validation stage, batched per tenant and lane by size or after {@code batchTimeout}
+     * milliseconds, and handed to the ingest lanes on the bulk stage. Without
+     * {@code watchInbox} the inbox is not watched.
+     */
+    public record IngestFlow(
+        boolean watchInbox,
+        long pollInterval,
+        int maxFilesPerPoll,
+        Stage validation,
+        int batchSize,
+        long batchTimeout,
+        Stage bulk
+    ) {
+        /**
+         * Worker threads of a stage and the messages that may queue up in front of
+         * them; beyond that the sender runs the stage itself
+         */
+        public record Stage(
+            int concurrency,
+            int queueCapacity
+        ) {}
+    }
+    
+    /**
+     * Per-user index of recent events and counters by type and channel, capped at
+     * {@code maxUsers} with eviction of the least recently active user
+     */
+    public record UserActivity(
+        boolean enabled,
+        int maxUsers,
+        int recentEvents,
+        Duration bucket,
+        int maxBuckets
+    ) {}
+    
+    /**
+     * Sessions from LOGIN/LOGOUT with an inactivity timeout, kept in a hashed timing
+     * wheel of {@code wheelSize} slots of {@code tick} length
+     */
+    public record Sessions(
+        boolean enabled,
+        Duration inactivityTimeout,
+        Duration tick,
+        int wheelSize,
+        int maxSessions,
+        int durationBucketsPerWindow,
+        int topChannels
+    ) {}
+    
+    /**
+     * Pre-aggregated chart series in tiers of decreasing resolution; a query reads the
+     * finest tier still holding its range and downsamples it to at most {@code maxPoints}
+     */
+    public record TimeSeries(
+        boolean enabled,
+        int maxChannels,
+        int maxPoints,
+        List<Tier> tiers
+    ) {
+        public record Tier(
+            Duration resolution,
+            Duration retention
+        ) {}
+    }
+    
+    /**
+     * Accelerated run on virtual time: generated events, aggregation ticks and pushes
+     * follow a simulated clock running {@code speed} times faster than real time
+     */
+    public record Simulation(
+        boolean enabled,
+        double speed,
+        Duration duration,
+        Duration tick,
+        double eventsPerSecond,
+        int users,
+        int channels,
+        Duration reportInterval,
+        long seed
+    ) {}
+    
+    /**
+     * OpenMetrics text export of the aggregates, rendered once per change; only the
+     * {@code maxChannels} busiest channels of a window get a label
+     */
+    public record OpenMetrics(
+        boolean enabled,
+        int maxChannels
+    ) {}
+    
+    /**
+     * NDJSON over persistent TCP ({@code port}, 0 = any free port, -1 = none) and Unix
+     * domain socket ({@code unixSocket}) connections. Complete lines are handed on in
+     * batches of up to {@code bufferSize} bytes or after {@code flushInterval} ms; a
+     * connection is not read while {@code maxInFlight} of its batches are pending.
+     */
+    public record SocketIngest(
+        boolean enabled,
+        String host,
+        int port,
+        String unixSocket,
+        DataSize bufferSize,
+        int maxPooledBuffers,
+        int maxInFlight,
+        long flushInterval,
+        int workers
+    ) {}
+    
+    /**
+     * Request bodies sent with {@code Content-Encoding: gzip} are inflated while they are
+     * read; once more than {@code maxInflatedSize} bytes come out the request is answered with 413
+     */
+    public record RequestDecompression(
+        DataSize maxInflatedSize
+    ) {}
+}
@@ -0,0 +1,58 @@
+package de.mika.hhn.eventlogaggregator.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.util.List;
+
+/**
+ * Configuration for the {@code fast-startup} profile.
+ * 
+ * Marks the beans of non-critical libraries (API docs, Swagger UI) as lazy, so they
+ * are only created on first use instead of delaying the point where events are accepted.
+ */
+@Configuration
+@Profile("fast-startup")
+public class FastStartupConfiguration {
+    
+    private static final Logger log = LoggerFactory.getLogger(FastStartupConfiguration.class);
+    
+    private static final List<String> LAZY_PACKAGES = List.of("org.springdoc.", "io.swagger.");
+    
+    @Bean
+    public static BeanFactoryPostProcessor lazyNonCriticalBeans() {
+        return beanFactory -> {
+            int count = 0;
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                String origin = originClassName(beanFactory, definition);
+                if (origin != null && LAZY_PACKAGES.stream().anyMatch(origin::startsWith)) {
+                    definition.setLazyInit(true);
+                    count++;
+                }
+            }
+            log.info("Fast startup: deferred initialization of {} documentation beans", count);
+        };
+    }
+    
+    /**
+     * Class that declares the bean: the bean class itself, or the configuration
+     * class for beans created by {@code @Bean} methods
+     */
+    private static String originClassName(ConfigurableListableBeanFactory beanFactory, BeanDefinition definition) {
+        if (definition.getBeanClassName() != null) {
+            return definition.getBeanClassName();
+        }
+        String factoryBeanName = definition.getFactoryBeanName();
+        if (factoryBeanName != null && beanFactory.containsBeanDefinition(factoryBeanName)) {
+            return beanFactory.getBeanDefinition(factoryBeanName).getBeanClassName();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,266 @@
+package de.mika.hhn.eventlogaggregator.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Servlet filter that transparently decompresses request bodies sent with
+ * {@code Content-Encoding: gzip}. The body is inflated while it is read, so
+ * downstream handlers never see (or buffer) the compressed bytes.
+ *
+ * Once more than {@code ela.request-decompression.max-inflated-size} bytes come
+ * out of a body, the request is answered with 413 and further reads fail, so a
+ * small compressed body cannot expand into an unbounded amount of events. Bodies
+ * that are not valid gzip are answered with 400, unless the handler already did.
+ */
+@Component
+public class GzipRequestFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(GzipRequestFilter.class);
+
+    private final long maxInflatedBytes;
+
+    public GzipRequestFilter(ElaProperties properties) {
+        ElaProperties.RequestDecompression config = properties.requestDecompression();
+        this.maxInflatedBytes = config != null && config.maxInflatedSize() != null
+            ? config.maxInflatedSize().toBytes()
+            : Long.MAX_VALUE;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getHeader(HttpHeaders.CONTENT_ENCODING) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING).trim().toLowerCase(Locale.ROOT);
+
+        switch (encoding) {
+            case "identity" -> filterChain.doFilter(request, response);
+            case "gzip", "x-gzip" -> inflate(request, response, filterChain);
+            default -> {
+                log.warn("Rejected request with unsupported Content-Encoding: {}", encoding);
+                response.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+                response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE,
+                    "Unsupported Content-Encoding: " + encoding);
+            }
+        }
+    }
+
+    private void inflate(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        GzipRequestWrapper wrapper = new GzipRequestWrapper(request, response, maxInflatedBytes);
+        try {
+            filterChain.doFilter(wrapper, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            if (wrapper.isTooLarge()) {
+                // Already answered with 413, the failure is the aborted read
+                return;
+            }
+            Throwable malformed = malformedBodyCause(e);
+            if (malformed == null || response.isCommitted()) {
+                throw e;
+            }
+            log.warn("Rejected {} {}: malformed gzip body ({})", request.getMethod(), request.getRequestURI(),
+                malformed.getMessage());
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Malformed gzip body: " + malformed.getMessage());
+        }
+    }
+
+    /**
+     * Corrupt or truncated compressed data somewhere in the cause chain
+     */
+    private static Throwable malformedBodyCause(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ZipException || cause instanceof EOFException) {
+                return cause;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Request wrapper exposing the inflated body and hiding the compressed length
+     */
+    private static class GzipRequestWrapper extends HttpServletRequestWrapper {
+
+        private final HttpServletResponse response;
+        private final long maxInflatedBytes;
+        private ServletInputStream inputStream;
+
+        GzipRequestWrapper(HttpServletRequest request, HttpServletResponse response, long maxInflatedBytes) {
+            super(request);
+            this.response = response;
+            this.maxInflatedBytes = maxInflatedBytes;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                inputStream = new GzipServletInputStream(new GZIPInputStream(super.getInputStream(), 8192),
+                    this, response, maxInflatedBytes);
+            }
+            return inputStream;
+        }
+
+        boolean isTooLarge() {
+            return inputStream instanceof GzipServletInputStream gzip && gzip.tooLarge;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (isHiddenHeader(name)) {
+                return null;
+            }
+            return super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (isHiddenHeader(name)) {
+                return Collections.emptyEnumeration();
+            }
+            return super.getHeaders(name);
+        }
+
+        private boolean isHiddenHeader(String name) {
+            return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)
+                || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+        }
+    }
+
+    /**
+     * Inflating stream counting the bytes handed out.
+     *
+     * Inflating a block may need more compressed bytes than the container has ready, so
+     * non-blocking reads are emulated: {@link #isReady()} is always true and a read
+     * listener is called on a container thread of the async context, where reads block.
+     */
+    private static class GzipServletInputStream extends ServletInputStream {
+
+        private final InputStream delegate;
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final long maxInflatedBytes;
+        private long inflatedBytes = 0;
+        private boolean finished = false;
+        private boolean tooLarge = false;
+
+        GzipServletInputStream(InputStream delegate, HttpServletRequest request, HttpServletResponse response,
+                               long maxInflatedBytes) {
+            this.delegate = delegate;
+            this.request = request;
+            this.response = response;
+            this.maxInflatedBytes = maxInflatedBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = delegate.read();
+            finished = b == -1;
+            if (!finished) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = delegate.read(buffer, offset, length);
+            finished = n == -1;
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int bytes) throws IOException {
+            inflatedBytes += bytes;
+            if (inflatedBytes <= maxInflatedBytes) {
+                return;
+            }
+            tooLarge = true;
+            String message = "Decompressed request body exceeds " + maxInflatedBytes + " bytes";
+            log.warn("Rejected {} {}: {}", request.getMethod(), request.getRequestURI(), message);
+            // Answer before the handler sees the failed read, which it would report as a bad request
+            if (!response.isCommitted()) {
+                response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, message);
+            }
+            throw new IOException(message);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            if (!request.isAsyncStarted()) {
+                throw new IllegalStateException("Non-blocking reads require an asynchronous request");
+            }
+            request.getAsyncContext().start(() -> {
+                try {
+                    readListener.onDataAvailable();
+                    if (finished) {
+                        readListener.onAllDataRead();
+                    }
+                } catch (Throwable e) {
+                    readListener.onError(e);
+                }
+            });
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
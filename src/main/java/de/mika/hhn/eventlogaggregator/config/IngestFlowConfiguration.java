@@ -0,0 +1,227 @@
+package de.mika.hhn.eventlogaggregator.config;
+
+import de.mika.hhn.eventlogaggregator.controller.HttpIngestHandler;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import de.mika.hhn.eventlogaggregator.service.InboxFileProcessor;
+import de.mika.hhn.eventlogaggregator.service.IngestGateway;
+import de.mika.hhn.eventlogaggregator.service.IngestHeaders;
+import de.mika.hhn.eventlogaggregator.service.IngestLane;
+import de.mika.hhn.eventlogaggregator.service.IngestReceipt;
+import de.mika.hhn.eventlogaggregator.service.IngestScheduler;
+import de.mika.hhn.eventlogaggregator.service.TenantRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.integration.aggregator.AbstractAggregatingMessageGroupProcessor;
+import org.springframework.integration.channel.ExecutorChannel;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.Pollers;
+import org.springframework.integration.file.FileReadingMessageSource;
+import org.springframework.integration.file.dsl.Files;
+import org.springframework.integration.http.dsl.Http;
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Ingestion flow shared by all asynchronous sources.
+ *
+ * <pre>
+ * inbox (file adapter) ─┐
+ * POST /ingest (HTTP) ──┼─▶ validation ─▶ {@value IngestGateway#CHANNEL} ─▶ chunk ─▶ batch ─▶ bulk ─▶ ingest lanes
+ * IngestGateway ────────┘                  (per tenant and lane, by size or time)
+ * </pre>
+ *
+ * Validation and bulk hand-off run on executor channels; every source has its own
+ * validation channel, all of them share the validation executor. Each stage has a
+ * configurable number of threads and a bounded queue; when a queue is full, the sending
+ * thread runs the stage itself, which slows the source down. {@code /events} and
+ * {@code /events/batch} stay synchronous, as they report the outcome per event.
+ */
+@Configuration
+public class IngestFlowConfiguration {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestFlowConfiguration.class);
+
+    private final ElaProperties.IngestFlow config;
+
+    public IngestFlowConfiguration(ElaProperties properties) {
+        this.config = properties.ingestFlow();
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor ingestValidationExecutor() {
+        return stageExecutor("IngestValidation-", config.validation());
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor ingestBulkExecutor() {
+        return stageExecutor("IngestBulk-", config.bulk());
+    }
+
+    @Bean
+    public MessageChannel ingestBulk(ThreadPoolTaskExecutor ingestBulkExecutor) {
+        return new ExecutorChannel(ingestBulkExecutor);
+    }
+
+    /**
+     * Event files in the inbox and its tenant subdirectories. Tailed files are read
+     * incrementally, all others parsed as a whole and moved away.
+     */
+    @Bean
+    public IntegrationFlow inboxFlow(ElaProperties properties, InboxFileProcessor processor,
+                                     ThreadPoolTaskExecutor ingestValidationExecutor) throws IOException {
+        Path inbox = Path.of(properties.directories().inbox());
+        if (config.watchInbox()) {
+            java.nio.file.Files.createDirectories(inbox);
+            log.info("Started directory watching on: {}", inbox.toAbsolutePath());
+        }
+        return IntegrationFlow
+            .from(Files.inboundAdapter(inbox.toFile())
+                    .useWatchService(true)
+                    .watchEvents(FileReadingMessageSource.WatchEventType.CREATE,
+                        FileReadingMessageSource.WatchEventType.MODIFY)
+                    .watchMaxDepth(1)
+                    .watchDirPredicate(processor::watchesDirectory)
+                    .filterFunction(processor::accepts)
+                    .preventDuplicates(false),
+                e -> e.poller(Pollers.fixedDelay(config.pollInterval()).maxMessagesPerPoll(config.maxFilesPerPoll()))
+                    .autoStartup(config.watchInbox()))
+            .channel(new ExecutorChannel(ingestValidationExecutor))
+            .filter(File.class, file -> !processor.isTailed(file),
+                f -> f.discardFlow(tail -> tail.handle(File.class, (file, headers) -> {
+                    processor.tail(file);
+                    return null;
+                })))
+            .handle(File.class, (file, headers) -> processor.process(file))
+            .channel(IngestGateway.CHANNEL)
+            .get();
+    }
+
+    /**
+     * Asynchronous bulk submission: {@code POST /ingest} with a JSON array or NDJSON,
+     * answered with 202 once the payload is validated
+     */
+    @Bean
+    public IntegrationFlow httpIngestFlow(HttpIngestHandler handler, ThreadPoolTaskExecutor ingestValidationExecutor) {
+        return IntegrationFlow
+            .from(Http.inboundGateway("/ingest")
+                .requestMapping(mapping -> mapping.methods(HttpMethod.POST))
+                .requestPayloadType(byte[].class)
+                .headerExpression(IngestHeaders.TENANT,
+                    "#requestAttributes.getAttribute('" + TenantFilter.TENANT_ATTRIBUTE + "', 0)")
+                .replyTimeout(30_000))
+            .channel(new ExecutorChannel(ingestValidationExecutor))
+            .handle(handler, "handle")
+            .get();
+    }
+
+    /**
+     * Validated events of all sources, batched per tenant and lane and aggregated with
+     * one call per batch. Submissions are split into chunks of at most a batch, so a
+     * batch holds at least {@code batchSize} events unless it timed out. Receipts of
+     * the submissions are acknowledged once their batch is aggregated.
+     */
+    @Bean
+    public IntegrationFlow batchingFlow(IngestScheduler ingestScheduler, TenantRegistry tenantRegistry) {
+        int batchSize = Math.max(1, config.batchSize());
+        return IntegrationFlow.from(IngestGateway.CHANNEL)
+            .split(List.class, events -> chunks(events, batchSize))
+            .aggregate(a -> a
+                .correlationStrategy(message -> message.getHeaders().get(IngestHeaders.TENANT)
+                    + "/" + message.getHeaders().get(IngestHeaders.LANE))
+                .releaseStrategy(group -> group.getMessages().stream()
+                    .mapToInt(message -> ((List<?>) message.getPayload()).size())
+                    .sum() >= batchSize)
+                // Counted from the first event of the batch, not from the last one
+                .groupTimeout(group -> Math.max(1, group.getTimestamp() + config.batchTimeout() - System.currentTimeMillis()))
+                .sendPartialResultOnExpiry(true)
+                .expireGroupsUponCompletion(true)
+                .expireGroupsUponTimeout(true)
+                .outputProcessor(new EventBatchProcessor()))
+            .channel("ingestBulk")
+            .handle(message -> {
+                @SuppressWarnings("unchecked")
+                List<FlatEvent> events = (List<FlatEvent>) message.getPayload();
+                @SuppressWarnings("unchecked")
+                Map<IngestReceipt, Integer> receipts = message.getHeaders().get(IngestHeaders.RECEIPTS, Map.class);
+                try {
+                    ingestScheduler.ingestAll(message.getHeaders().get(IngestHeaders.LANE, IngestLane.class),
+                        tenantRegistry.resolve(message.getHeaders().get(IngestHeaders.TENANT, String.class)), events);
+                } catch (RuntimeException e) {
+                    if (receipts != null) {
+                        receipts.keySet().forEach(receipt -> receipt.failed(e));
+                    }
+                    throw e;
+                }
+                if (receipts != null) {
+                    receipts.forEach(IngestReceipt::accepted);
+                }
+            })
+            .get();
+    }
+
+    private static List<List<?>> chunks(List<?> events, int size) {
+        List<List<?>> chunks = new ArrayList<>((events.size() + size - 1) / size);
+        for (int from = 0; from < events.size(); from += size) {
+            chunks.add(events.subList(from, Math.min(events.size(), from + size)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Joins the chunks of a batch into one list of events and collects the receipts
+     * of their submissions
+     */
+    private static class EventBatchProcessor extends AbstractAggregatingMessageGroupProcessor {
+
+        @Override
+        protected Map<String, Object> aggregateHeaders(MessageGroup group) {
+            Map<String, Object> headers = super.aggregateHeaders(group);
+            headers.remove(IngestHeaders.RECEIPT);
+            Map<IngestReceipt, Integer> receipts = new LinkedHashMap<>();
+            for (Message<?> message : group.getMessages()) {
+                IngestReceipt receipt = message.getHeaders().get(IngestHeaders.RECEIPT, IngestReceipt.class);
+                if (receipt != null) {
+                    receipts.merge(receipt, ((List<?>) message.getPayload()).size(), Integer::sum);
+                }
+            }
+            if (!receipts.isEmpty()) {
+                headers.put(IngestHeaders.RECEIPTS, receipts);
+            }
+            return headers;
+        }
+
+        @Override
+        protected Object aggregatePayloads(MessageGroup group, Map<String, Object> defaultHeaders) {
+            List<Object> events = new ArrayList<>();
+            for (Message<?> message : group.getMessages()) {
+                events.addAll((List<?>) message.getPayload());
+            }
+            return events;
+        }
+    }
+
+    private static ThreadPoolTaskExecutor stageExecutor(String threadNamePrefix, ElaProperties.IngestFlow.Stage stage) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(Math.max(1, stage.concurrency()));
+        executor.setMaxPoolSize(Math.max(1, stage.concurrency()));
+        executor.setQueueCapacity(Math.max(0, stage.queueCapacity()));
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+}
@@ -0,0 +1,128 @@
+package de.mika.hhn.eventlogaggregator.config;
+
+import de.mika.hhn.eventlogaggregator.controller.MetricsWebSocketHandler;
+import de.mika.hhn.eventlogaggregator.controller.StreamController;
+import de.mika.hhn.eventlogaggregator.service.AllocationTracker;
+import de.mika.hhn.eventlogaggregator.service.DuplicateFilter;
+import de.mika.hhn.eventlogaggregator.service.MetricAggregator;
+import de.mika.hhn.eventlogaggregator.service.TenantPartition;
+import de.mika.hhn.eventlogaggregator.service.TenantRegistry;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/memory}: estimated heap retained per rollup level of the aggregation
+ * windows and by the other long-lived structures, plus allocated bytes per ingested
+ * event and source and per aggregation tick. Rollups and structures are those of the
+ * default tenant; the rollups of the other tenants are summarized per tenant.
+ *
+ * Everything is read from counters that are maintained anyway, so the endpoint does
+ * not walk the rollups and is safe to poll in production.
+ */
+@Component
+@Endpoint(id = "memory")
+public class MemoryFootprintEndpoint {
+
+    private final MetricAggregator metricAggregator;
+    private final DuplicateFilter duplicateFilter;
+    private final AllocationTracker allocationTracker;
+    private final StreamController streamController;
+    private final MetricsWebSocketHandler metricsWebSocketHandler;
+    private final TenantRegistry tenantRegistry;
+
+    public MemoryFootprintEndpoint(MetricAggregator metricAggregator,
+                                   DuplicateFilter duplicateFilter,
+                                   AllocationTracker allocationTracker,
+                                   StreamController streamController,
+                                   MetricsWebSocketHandler metricsWebSocketHandler,
+                                   TenantRegistry tenantRegistry) {
+        this.metricAggregator = metricAggregator;
+        this.duplicateFilter = duplicateFilter;
+        this.allocationTracker = allocationTracker;
+        this.streamController = streamController;
+        this.metricsWebSocketHandler = metricsWebSocketHandler;
+        this.tenantRegistry = tenantRegistry;
+    }
+
+    @ReadOperation
+    public Map<String, Object> memory() {
+        Map<String, Object> rollups = new LinkedHashMap<>();
+        long retainedBytes = 0;
+        for (MetricAggregator.RollupFootprint footprint : metricAggregator.getRollupFootprints()) {
+            Map<String, Object> level = new LinkedHashMap<>();
+            level.put("buckets", footprint.buckets());
+            level.put("estimatedRetainedBytes", footprint.bytes());
+            rollups.put(footprint.resolution().toString(), level);
+            retainedBytes += footprint.bytes();
+        }
+
+        Map<String, Object> structures = new LinkedHashMap<>();
+        structures.put("bufferedEvents", metricAggregator.getBufferedEventCount());
+        structures.put("bufferedEventBytes", metricAggregator.getBufferedBytes());
+        structures.put("deduplicationBytes", duplicateFilter.getMemoryBytes());
+        structures.put("userActivityBytes", metricAggregator.getUserActivityIndex().getMemoryBytes());
+        structures.put("userActivityUsers", metricAggregator.getUserActivityIndex().getUserCount());
+        structures.put("sessionBytes", metricAggregator.getSessionTracker().getMemoryBytes());
+        structures.put("openSessions", metricAggregator.getSessionTracker().getOpenSessionCount());
+        structures.put("timeSeriesBytes", metricAggregator.getTimeSeriesStore().getMemoryBytes());
+        retainedBytes += metricAggregator.getBufferedBytes() + duplicateFilter.getMemoryBytes()
+            + metricAggregator.getUserActivityIndex().getMemoryBytes() + metricAggregator.getSessionTracker().getMemoryBytes()
+            + metricAggregator.getTimeSeriesStore().getMemoryBytes();
+
+        Map<String, Object> tenants = new LinkedHashMap<>();
+        for (TenantPartition partition : tenantRegistry.getPartitions()) {
+            if (partition == tenantRegistry.getDefault()) {
+                continue;
+            }
+            long rollupBytes = rollupBytes(partition.getMetricAggregator());
+            long userActivityBytes = partition.getMetricAggregator().getUserActivityIndex().getMemoryBytes();
+            long sessionBytes = partition.getMetricAggregator().getSessionTracker().getMemoryBytes();
+            long timeSeriesBytes = partition.getMetricAggregator().getTimeSeriesStore().getMemoryBytes();
+            Map<String, Object> tenant = new LinkedHashMap<>();
+            tenant.put("bufferedEvents", partition.getMetricAggregator().getBufferedEventCount());
+            tenant.put("estimatedRollupBytes", rollupBytes);
+            tenant.put("userActivityBytes", userActivityBytes);
+            tenant.put("sessionBytes", sessionBytes);
+            tenant.put("timeSeriesBytes", timeSeriesBytes);
+            tenants.put(partition.getTenant(), tenant);
+            retainedBytes += rollupBytes + userActivityBytes + sessionBytes + timeSeriesBytes;
+        }
+        
+        Map<String, Object> connections = new LinkedHashMap<>();
+        connections.put("sse", streamController.getConnectionCount());
+        connections.put("webSocket", metricsWebSocketHandler.getClientCount());
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        Map<String, Object> heapUsage = new LinkedHashMap<>();
+        heapUsage.put("used", heap.getUsed());
+        heapUsage.put("committed", heap.getCommitted());
+        heapUsage.put("max", heap.getMax());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("estimatedRetainedBytes", retainedBytes);
+        result.put("rollups", rollups);
+        result.put("structures", structures);
+        result.put("tenants", tenants);
+        result.put("connections", connections);
+        result.put("heap", heapUsage);
+        result.put("allocation", allocationTracker.snapshot());
+        return result;
+    }
+    
+    /**
+     * Rollup levels plus the events not yet rolled up
+     */
+    private static long rollupBytes(MetricAggregator aggregator) {
+        long bytes = aggregator.getBufferedBytes();
+        for (MetricAggregator.RollupFootprint footprint : aggregator.getRollupFootprints()) {
+            bytes += footprint.bytes();
+        }
+        return bytes;
+    }
+}
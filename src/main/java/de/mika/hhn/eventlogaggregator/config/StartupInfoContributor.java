@@ -0,0 +1,42 @@
+package de.mika.hhn.eventlogaggregator.config;
+
+import de.mika.hhn.eventlogaggregator.service.MetricAggregator;
+import org.springframework.boot.actuate.info.Info;
+import org.springframework.boot.actuate.info.InfoContributor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Adds startup milestones, measured from JVM start, to {@code /actuator/info}.
+ * The per-bean and per-phase breakdown is available at {@code /actuator/startup}.
+ */
+@Component
+public class StartupInfoContributor implements InfoContributor {
+    
+    private final MetricAggregator metricAggregator;
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private volatile long readyMillis = -1;
+    
+    public StartupInfoContributor(MetricAggregator metricAggregator) {
+        this.metricAggregator = metricAggregator;
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        readyMillis = System.currentTimeMillis();
+    }
+    
+    @Override
+    public void contribute(Info.Builder builder) {
+        Map<String, Object> startup = new LinkedHashMap<>();
+        startup.put("jvmStartToReadyMs", readyMillis > 0 ? readyMillis - jvmStartMillis : null);
+        long firstEvent = metricAggregator.getFirstEventAcceptedAt();
+        startup.put("jvmStartToFirstAcceptedEventMs", firstEvent > 0 ? firstEvent - jvmStartMillis : null);
+        builder.withDetail("startup", startup);
+    }
+}
@@ -0,0 +1,76 @@
+package de.mika.hhn.eventlogaggregator.config;
+
+import de.mika.hhn.eventlogaggregator.service.TenantRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Determines the tenant of a request and stores it in the request attribute
+ * {@link #TENANT_ATTRIBUTE}, from where controllers pick their partition.
+ *
+ * The tenant is taken from the path prefix {@code /t/{tenant}/...}, in which case the
+ * request is forwarded to the path behind the prefix, or else from the tenant header
+ * ({@code ela.tenants.header}). Requests without either belong to the default tenant.
+ * WebSocket handshakes are not forwarded; {@code /t/{tenant}/ws/...} is mapped directly.
+ * Responses to unprefixed paths depend on the header, so they carry {@code Vary} for it,
+ * including SSE streams and WebSocket handshakes.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class TenantFilter extends OncePerRequestFilter {
+
+    public static final String TENANT_ATTRIBUTE = "ela.tenant";
+    private static final String PATH_PREFIX = "/t/";
+
+    private final String header;
+
+    public TenantFilter(ElaProperties properties) {
+        this.header = properties.tenants().header();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+
+        if (path.startsWith(PATH_PREFIX)) {
+            int end = path.indexOf('/', PATH_PREFIX.length());
+            String tenant = path.substring(PATH_PREFIX.length(), end < 0 ? path.length() : end);
+            String rest = end < 0 ? "/" : path.substring(end);
+            if (!TenantRegistry.isValidTenantId(tenant)) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid tenant id");
+                return;
+            }
+            request.setAttribute(TENANT_ATTRIBUTE, tenant);
+            if (rest.startsWith("/ws/")) {
+                filterChain.doFilter(request, response);
+            } else {
+                String query = request.getQueryString();
+                request.getRequestDispatcher(query != null ? rest + "?" + query : rest).forward(request, response);
+            }
+            return;
+        }
+
+        if (header != null) {
+            response.addHeader(HttpHeaders.VARY, header);
+        }
+        String tenant = header != null ? request.getHeader(header) : null;
+        if (tenant != null && !tenant.isBlank()) {
+            if (!TenantRegistry.isValidTenantId(tenant)) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid tenant id");
+                return;
+            }
+            request.setAttribute(TENANT_ATTRIBUTE, tenant);
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,59 @@
+package de.mika.hhn.eventlogaggregator.config;
+
+import de.mika.hhn.eventlogaggregator.controller.MetricsWebSocketHandler;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+/**
+ * Registers the binary metrics WebSocket endpoint
+ */
+@Configuration
+@EnableWebSocket
+public class WebSocketConfiguration implements WebSocketConfigurer {
+    
+    private final MetricsWebSocketHandler metricsWebSocketHandler;
+    
+    public WebSocketConfiguration(MetricsWebSocketHandler metricsWebSocketHandler) {
+        this.metricsWebSocketHandler = metricsWebSocketHandler;
+    }
+    
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(metricsWebSocketHandler, "/ws/metrics", "/t/*/ws/metrics")
+            .addInterceptors(new TenantHandshakeInterceptor());
+    }
+    
+    /**
+     * Hands the tenant determined by the {@link TenantFilter} to the WebSocket session
+     */
+    private static class TenantHandshakeInterceptor implements HandshakeInterceptor {
+        
+        @Override
+        public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                       WebSocketHandler wsHandler, Map<String, Object> attributes) {
+            if (request instanceof ServletServerHttpRequest servletRequest) {
+                HttpServletRequest httpRequest = servletRequest.getServletRequest();
+                Object tenant = httpRequest.getAttribute(TenantFilter.TENANT_ATTRIBUTE);
+                if (tenant != null) {
+                    attributes.put(TenantFilter.TENANT_ATTRIBUTE, tenant);
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Exception exception) {
+        }
+    }
+}
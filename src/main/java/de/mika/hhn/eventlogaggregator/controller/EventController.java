@@ -1,18 +1,38 @@
 package de.mika.hhn.eventlogaggregator.controller;
 
-import de.mika.hhn.eventlogaggregator.model.Event;
+import de.mika.hhn.eventlogaggregator.config.TenantFilter;
+import de.mika.hhn.eventlogaggregator.model.BatchItemResult;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import de.mika.hhn.eventlogaggregator.service.AdmissionController;
+import de.mika.hhn.eventlogaggregator.service.AllocationTracker;
+import de.mika.hhn.eventlogaggregator.service.DuplicateFilter;
 import de.mika.hhn.eventlogaggregator.service.EventParser;
-import de.mika.hhn.eventlogaggregator.service.MetricAggregator;
+import de.mika.hhn.eventlogaggregator.service.IngestLane;
+import de.mika.hhn.eventlogaggregator.service.IngestScheduler;
+import de.mika.hhn.eventlogaggregator.service.SocketIngestListener;
+import de.mika.hhn.eventlogaggregator.service.TenantLimitExceededException;
+import de.mika.hhn.eventlogaggregator.service.TenantPartition;
+import de.mika.hhn.eventlogaggregator.service.TenantRegistry;
+import de.mika.hhn.eventlogaggregator.service.ValidatedBatch;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * REST Controller for receiving events via HTTP POST
@@ -23,13 +43,24 @@ import java.util.Map;
 public class EventController {
     
     private static final Logger log = LoggerFactory.getLogger(EventController.class);
+    static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
     
     private final EventParser eventParser;
-    private final MetricAggregator metricAggregator;
+    private final IngestScheduler ingestScheduler;
+    private final AllocationTracker allocationTracker;
+    private final TenantRegistry tenantRegistry;
+    private final SocketIngestListener socketIngestListener;
+    private final Clock clock;
     
-    public EventController(EventParser eventParser, MetricAggregator metricAggregator) {
+    public EventController(EventParser eventParser, IngestScheduler ingestScheduler,
+                           AllocationTracker allocationTracker, TenantRegistry tenantRegistry,
+                           SocketIngestListener socketIngestListener, Clock clock) {
         this.eventParser = eventParser;
-        this.metricAggregator = metricAggregator;
+        this.ingestScheduler = ingestScheduler;
+        this.allocationTracker = allocationTracker;
+        this.tenantRegistry = tenantRegistry;
+        this.socketIngestListener = socketIngestListener;
+        this.clock = clock;
     }
     
     @PostMapping
@@ -37,18 +68,36 @@ public class EventController {
         summary = "Submit single event",
         description = "Submit a single event for processing and aggregation",
         responses = {
-            @ApiResponse(responseCode = "200", description = "Event processed successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid event format or validation failed")
+            @ApiResponse(responseCode = "200", description = "Event processed successfully or skipped as duplicate"),
+            @ApiResponse(responseCode = "400", description = "Invalid event format or validation failed"),
+            @ApiResponse(responseCode = "429", description = "Tenant is over its ingest-rate quota"),
+            @ApiResponse(responseCode = "503", description = "New tenant, but the maximum number of tenants is reached")
         }
     )
-    public ResponseEntity<Map<String, Object>> submitEvent(@RequestBody String eventJson) {
+    public ResponseEntity<Map<String, Object>> submitEvent(
+        @RequestBody String eventJson,
+        @RequestAttribute(name = TenantFilter.TENANT_ATTRIBUTE, required = false) String tenant
+    ) {
         log.debug("Received single event via HTTP POST");
+        long allocationStart = allocationTracker.start();
         
         try {
-            Event event = eventParser.parseEvent(eventJson);
+            FlatEvent event = eventParser.parseEvent(eventJson);
             
             if (event != null) {
-                metricAggregator.addEvent(event);
+                TenantPartition partition = tenantRegistry.resolve(tenant);
+                if (!partition.tryAcquire(1)) {
+                    return throttled(partition);
+                }
+                if (!ingestScheduler.ingest(IngestLane.HTTP, partition, List.of(event))[0]) {
+                    log.info("Skipped duplicate event: type={}, userId={}", event.type(), event.userId());
+                    return ResponseEntity.ok(Map.of(
+                        "status", "duplicate",
+                        "message", "Event was already processed",
+                        "eventType", event.type(),
+                        "userId", event.userId()
+                    ));
+                }
                 log.info("Successfully processed event: type={}, userId={}", event.type(), event.userId());
                 
                 return ResponseEntity.ok(Map.of(
@@ -65,56 +114,168 @@ public class EventController {
                 ));
             }
             
+        } catch (TenantLimitExceededException e) {
+            return tenantLimitReached(tenant, e);
         } catch (Exception e) {
             log.error("Error processing event: {}", e.getMessage(), e);
             return ResponseEntity.badRequest().body(Map.of(
                 "status", "error",
                 "message", "Error processing event: " + e.getMessage()
             ));
+        } finally {
+            allocationTracker.record(AllocationTracker.HTTP, allocationStart, 1);
         }
     }
     
     @PostMapping("/batch")
     @Operation(
         summary = "Submit multiple events",
-        description = "Submit an array of events for processing and aggregation",
+        description = "Submit an array of events (or newline-delimited events with Content-Type application/x-ndjson) "
+            + "for processing and aggregation. The body may be sent with Content-Encoding: gzip. "
+            + "The response reports the outcome of every element by index, so only rejected elements need to be resent. "
+            + "With atomic=true no event is applied unless all elements are valid.",
+        requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+            required = true,
+            content = {
+                @Content(mediaType = "application/json"),
+                @Content(mediaType = NDJSON_MEDIA_TYPE)
+            }
+        ),
         responses = {
-            @ApiResponse(responseCode = "200", description = "Events processed successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid events format or validation failed")
+            @ApiResponse(responseCode = "200", description = "Events processed, possibly with some elements rejected"),
+            @ApiResponse(responseCode = "400", description = "Malformed batch, no valid events, or an atomic batch with invalid elements"),
+            @ApiResponse(responseCode = "429", description = "Tenant is over its ingest-rate quota, no events were processed"),
+            @ApiResponse(responseCode = "503", description = "New tenant, but the maximum number of tenants is reached")
         }
     )
-    public ResponseEntity<Map<String, Object>> submitEvents(@RequestBody String eventsJson) {
+    public ResponseEntity<Map<String, Object>> submitEvents(
+        InputStream eventsStream,
+        @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+        @Parameter(description = "Apply the batch only if all elements are valid")
+        @RequestParam(defaultValue = "false") boolean atomic,
+        @RequestAttribute(name = TenantFilter.TENANT_ATTRIBUTE, required = false) String tenant
+    ) {
         log.debug("Received batch events via HTTP POST");
+        long allocationStart = allocationTracker.start();
+        int elements = 0;
         
         try {
-            List<Event> events = eventParser.parseEvents(eventsJson);
+            // Parse straight from the (possibly decompressed) request stream
+            boolean ndjson = contentType != null && contentType.startsWith(NDJSON_MEDIA_TYPE);
+            ValidatedBatch batch = eventParser.validateBatch(eventsStream, ndjson);
+            elements = batch.size();
             
-            if (!events.isEmpty()) {
-                metricAggregator.addEvents(events);
-                log.info("Successfully processed {} events", events.size());
-                
-                return ResponseEntity.ok(Map.of(
-                    "status", "success",
-                    "message", "Events processed successfully",
-                    "processedCount", events.size()
+            if (batch.size() == 0) {
+                log.warn("No events found in batch");
+                return ResponseEntity.badRequest().body(Map.of(
+                    "status", "error",
+                    "message", "No events found in batch"
                 ));
-            } else {
+            }
+            
+            int rejected = batch.size() - (int) batch.validCount();
+            if (atomic && rejected > 0) {
+                log.warn("Rejected atomic batch: {} of {} elements invalid", rejected, batch.size());
+                return ResponseEntity.badRequest().body(Map.of(
+                    "status", "error",
+                    "message", "Batch contains invalid events, no events were processed",
+                    "processedCount", 0,
+                    "rejectedCount", rejected,
+                    "results", itemResults(batch, null)
+                ));
+            }
+            
+            TenantPartition partition = tenantRegistry.resolve(tenant);
+            if (rejected < batch.size() && !partition.tryAcquire(batch.size() - rejected)) {
+                return throttled(partition);
+            }
+            
+            List<BatchItemResult> results = itemResults(batch, partition);
+            int duplicates = (int) results.stream()
+                .filter(result -> BatchItemResult.DUPLICATE.equals(result.status()))
+                .count();
+            int processed = batch.size() - rejected;
+            
+            if (processed == 0) {
                 log.warn("No valid events found in batch");
                 return ResponseEntity.badRequest().body(Map.of(
                     "status", "error",
-                    "message", "No valid events found in batch"
+                    "message", "No valid events found in batch",
+                    "processedCount", 0,
+                    "rejectedCount", rejected,
+                    "results", results
                 ));
             }
             
+            log.info("Successfully processed {} events ({} duplicates skipped, {} rejected)", processed, duplicates, rejected);
+            return ResponseEntity.ok(Map.of(
+                "status", rejected == 0 ? "success" : "partial",
+                "message", rejected == 0 ? "Events processed successfully" : "Events processed, some were rejected",
+                "processedCount", processed,
+                "duplicateCount", duplicates,
+                "rejectedCount", rejected,
+                "results", results
+            ));
+            
+        } catch (TenantLimitExceededException e) {
+            return tenantLimitReached(tenant, e);
         } catch (Exception e) {
             log.error("Error processing events batch: {}", e.getMessage(), e);
             return ResponseEntity.badRequest().body(Map.of(
                 "status", "error",
                 "message", "Error processing events: " + e.getMessage()
             ));
+        } finally {
+            allocationTracker.record(AllocationTracker.HTTP_BATCH, allocationStart, elements);
         }
     }
     
+    /**
+     * Outcome per batch index. Valid events are handed to the HTTP ingest lane for the
+     * given partition, or reported as aborted if there is none.
+     */
+    private List<BatchItemResult> itemResults(ValidatedBatch batch, TenantPartition partition) {
+        boolean apply = partition != null;
+        boolean[] accepted = apply ? ingestScheduler.ingest(IngestLane.HTTP, partition, batch.validEvents()) : null;
+        List<BatchItemResult> results = new ArrayList<>(batch.size());
+        int valid = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            FlatEvent event = batch.events().get(i);
+            if (event == null) {
+                results.add(new BatchItemResult(i, BatchItemResult.REJECTED, batch.errors().get(i)));
+            } else if (!apply) {
+                results.add(new BatchItemResult(i, BatchItemResult.ABORTED, null));
+            } else if (accepted[valid++]) {
+                results.add(new BatchItemResult(i, BatchItemResult.ACCEPTED, null));
+            } else {
+                results.add(new BatchItemResult(i, BatchItemResult.DUPLICATE, null));
+            }
+        }
+        return results;
+    }
+    
+    private ResponseEntity<Map<String, Object>> throttled(TenantPartition partition) {
+        log.debug("Throttled submission of tenant {}", partition.getTenant());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(partition.getRetryAfterSeconds()))
+            .body(Map.of(
+                "status", "throttled",
+                "message", "Tenant is over its ingest-rate quota, no events were processed",
+                "tenant", partition.getTenant()
+            ));
+    }
+    
+    private static ResponseEntity<Map<String, Object>> tenantLimitReached(String tenant, TenantLimitExceededException e) {
+        log.warn("Rejected events of new tenant {}: {}", tenant, e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(Map.of(
+                "status", "unavailable",
+                "message", e.getMessage() + ", no events were processed",
+                "tenant", tenant
+            ));
+    }
+    
     @GetMapping
     @Operation(
         summary = "Get event API information",
@@ -126,6 +287,7 @@ public class EventController {
             "endpoints", Map.of(
                 "POST /events", "Submit a single event",
                 "POST /events/batch", "Submit multiple events",
+                "POST /ingest", "Submit multiple events for asynchronous aggregation",
                 "GET /events/status", "Get processing status"
             ),
             "sampleEvent", Map.of(
@@ -146,16 +308,40 @@ public class EventController {
     @GetMapping("/status")
     @Operation(
         summary = "Get event processing status",
-        description = "Get current status and statistics of event processing"
+        description = "Get current status and statistics of event processing. Deduplication and load shedding "
+            + "are those of the caller's tenant; lanes and the socket listener are shared by all tenants."
     )
-    public ResponseEntity<Map<String, Object>> getStatus() {
+    public ResponseEntity<Map<String, Object>> getStatus(
+        @RequestAttribute(name = TenantFilter.TENANT_ATTRIBUTE, required = false) String tenant
+    ) {
         try {
-            // This could be extended to include more detailed statistics
-            return ResponseEntity.ok(Map.of(
-                "status", "operational",
-                "message", "Event processing system is running",
-                "timestamp", System.currentTimeMillis()
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("status", "operational");
+            status.put("message", "Event processing system is running");
+            status.put("timestamp", clock.millis());
+            
+            Optional<TenantPartition> partition = tenantRegistry.find(tenant);
+            if (partition.isPresent()) {
+                DuplicateFilter duplicateFilter = partition.get().getMetricAggregator().getDuplicateFilter();
+                AdmissionController admissionController = partition.get().getAdmissionController();
+                status.put("tenant", partition.get().getStatus());
+                status.put("deduplicationEnabled", duplicateFilter.isEnabled());
+                status.put("duplicatesSuppressed", duplicateFilter.getDuplicateCount());
+                status.put("deduplicationEarlyRotations", duplicateFilter.getEarlyRotationCount());
+                status.put("loadShedding", Map.of(
+                    "sampling", admissionController.isSampling(),
+                    "pressure", admissionController.getPressure(),
+                    "shedCount", admissionController.getShedCount(),
+                    "samplingRates", admissionController.getSamplingRates()
+                ));
+            } else {
+                status.put("tenant", Map.of("tenant", tenant, "message", "No events received for this tenant yet"));
+            }
+            status.put("global", Map.of(
+                "lanes", ingestScheduler.getStatus(),
+                "socketIngest", socketIngestListener.getStatus()
             ));
+            return ResponseEntity.ok(status);
             
         } catch (Exception e) {
             log.error("Error getting event processing status: {}", e.getMessage(), e);
@@ -165,4 +351,4 @@ public class EventController {
             ));
         }
     }
-} 
\ No newline at end of file
+}
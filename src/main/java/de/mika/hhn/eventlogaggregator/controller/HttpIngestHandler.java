@@ -0,0 +1,122 @@
+package de.mika.hhn.eventlogaggregator.controller;
+
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import de.mika.hhn.eventlogaggregator.service.AllocationTracker;
+import de.mika.hhn.eventlogaggregator.service.EventParser;
+import de.mika.hhn.eventlogaggregator.service.IngestGateway;
+import de.mika.hhn.eventlogaggregator.service.IngestHeaders;
+import de.mika.hhn.eventlogaggregator.service.IngestLane;
+import de.mika.hhn.eventlogaggregator.service.TenantLimitExceededException;
+import de.mika.hhn.eventlogaggregator.service.TenantPartition;
+import de.mika.hhn.eventlogaggregator.service.TenantRegistry;
+import de.mika.hhn.eventlogaggregator.service.ValidatedBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validation stage for payloads of the HTTP inbound gateway ({@code POST /ingest}).
+ *
+ * Unlike {@code /events/batch}, the caller does not wait for aggregation: valid events
+ * are submitted to the ingestion flow and the reply only reports how many elements
+ * were accepted and rejected.
+ */
+@Component
+public class HttpIngestHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpIngestHandler.class);
+
+    private final EventParser eventParser;
+    private final IngestGateway ingestGateway;
+    private final TenantRegistry tenantRegistry;
+    private final AllocationTracker allocationTracker;
+
+    public HttpIngestHandler(EventParser eventParser, IngestGateway ingestGateway,
+                             TenantRegistry tenantRegistry, AllocationTracker allocationTracker) {
+        this.eventParser = eventParser;
+        this.ingestGateway = ingestGateway;
+        this.tenantRegistry = tenantRegistry;
+        this.allocationTracker = allocationTracker;
+    }
+
+    /**
+     * Validate the request body and submit its valid events
+     *
+     * @return reply with the HTTP status in {@code http_statusCode}
+     */
+    public Message<Map<String, Object>> handle(Message<byte[]> request) {
+        long allocationStart = allocationTracker.start();
+        int elements = 0;
+
+        try {
+            Object contentType = request.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+            boolean ndjson = contentType != null && contentType.toString().startsWith(EventController.NDJSON_MEDIA_TYPE);
+            ValidatedBatch batch = eventParser.validateBatch(new ByteArrayInputStream(request.getPayload()), ndjson);
+            elements = batch.size();
+
+            List<FlatEvent> valid = batch.validEvents();
+            int rejected = batch.size() - valid.size();
+            if (valid.isEmpty()) {
+                return reply(HttpStatus.BAD_REQUEST, Map.of(
+                    "status", "error",
+                    "message", batch.size() == 0 ? "No events found in payload" : "No valid events found in payload",
+                    "rejectedCount", rejected
+                ));
+            }
+
+            TenantPartition partition = tenantRegistry.resolve(request.getHeaders().get(IngestHeaders.TENANT, String.class));
+            if (!partition.tryAcquire(valid.size())) {
+                log.debug("Throttled submission of tenant {}", partition.getTenant());
+                return MessageBuilder.<Map<String, Object>>withPayload(Map.of(
+                        "status", "throttled",
+                        "message", "Tenant is over its ingest-rate quota, no events were processed",
+                        "tenant", partition.getTenant()
+                    ))
+                    .setHeader(org.springframework.integration.http.HttpHeaders.STATUS_CODE, HttpStatus.TOO_MANY_REQUESTS)
+                    .setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(partition.getRetryAfterSeconds()))
+                    .build();
+            }
+
+            ingestGateway.submit(valid, partition.getTenant(), IngestLane.HTTP);
+            log.debug("Submitted {} events ({} rejected)", valid.size(), rejected);
+            return reply(HttpStatus.ACCEPTED, Map.of(
+                "status", rejected == 0 ? "accepted" : "partial",
+                "acceptedCount", valid.size(),
+                "rejectedCount", rejected
+            ));
+
+        } catch (TenantLimitExceededException e) {
+            log.warn("Rejected ingest payload of a new tenant: {}", e.getMessage());
+            return MessageBuilder.<Map<String, Object>>withPayload(Map.of(
+                    "status", "unavailable",
+                    "message", e.getMessage() + ", no events were processed"
+                ))
+                .setHeader(org.springframework.integration.http.HttpHeaders.STATUS_CODE, HttpStatus.SERVICE_UNAVAILABLE)
+                .setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .build();
+        } catch (Exception e) {
+            log.error("Error processing ingest payload: {}", e.getMessage(), e);
+            return reply(HttpStatus.BAD_REQUEST, Map.of(
+                "status", "error",
+                "message", "Error processing events: " + e.getMessage()
+            ));
+        } finally {
+            allocationTracker.record(AllocationTracker.HTTP_BATCH, allocationStart, elements);
+        }
+    }
+
+    private static Message<Map<String, Object>> reply(HttpStatus status, Map<String, Object> body) {
+        return MessageBuilder.withPayload(body)
+            .setHeader(org.springframework.integration.http.HttpHeaders.STATUS_CODE, status)
+            .build();
+    }
+}
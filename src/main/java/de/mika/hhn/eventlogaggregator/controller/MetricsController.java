@@ -1,23 +1,45 @@
 package de.mika.hhn.eventlogaggregator.controller;
 
 import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.config.TenantFilter;
+import de.mika.hhn.eventlogaggregator.model.Anomaly;
 import de.mika.hhn.eventlogaggregator.model.ChannelCount;
+import de.mika.hhn.eventlogaggregator.model.IntervalMetrics;
 import de.mika.hhn.eventlogaggregator.model.Metrics;
-import de.mika.hhn.eventlogaggregator.service.MetricRepository;
+import de.mika.hhn.eventlogaggregator.service.Downsampler;
+import de.mika.hhn.eventlogaggregator.service.SerializedMetrics;
+import de.mika.hhn.eventlogaggregator.service.TenantPartition;
+import de.mika.hhn.eventlogaggregator.service.TenantRegistry;
+import de.mika.hhn.eventlogaggregator.service.TimeSeriesStore;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 
 /**
- * REST Controller for retrieving aggregated metrics
+ * REST Controller for retrieving aggregated metrics. All endpoints serve the partition
+ * of the request's tenant (see {@link TenantFilter}).
  */
 @RestController
 @RequestMapping("/metrics")
@@ -26,96 +48,154 @@ public class MetricsController {
     
     private static final Logger log = LoggerFactory.getLogger(MetricsController.class);
     
-    private final MetricRepository metricRepository;
+    private static final String OPENMETRICS_CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    private static final MediaType OPENMETRICS = MediaType.parseMediaType(OPENMETRICS_CONTENT_TYPE);
+    
+    private final TenantRegistry tenantRegistry;
     private final ElaProperties properties;
+    private final Clock clock;
     
-    public MetricsController(MetricRepository metricRepository, ElaProperties properties) {
-        this.metricRepository = metricRepository;
+    public MetricsController(TenantRegistry tenantRegistry, ElaProperties properties, Clock clock) {
+        this.tenantRegistry = tenantRegistry;
         this.properties = properties;
+        this.clock = clock;
     }
     
-    @GetMapping("/hourly")
+    @GetMapping
     @Operation(
-        summary = "Get hourly metrics",
-        description = "Retrieve aggregated metrics for the last hour",
+        summary = "Get metrics of all windows",
+        description = "Retrieve the aggregated metrics of all configured time windows in one response, ordered by window length",
         responses = {
-            @ApiResponse(responseCode = "200", description = "Hourly metrics retrieved successfully"),
-            @ApiResponse(responseCode = "404", description = "No metrics available for the hourly window")
+            @ApiResponse(responseCode = "200", description = "Metrics retrieved successfully",
+                content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                    array = @ArraySchema(schema = @Schema(implementation = Metrics.class)))),
+            @ApiResponse(responseCode = "304", description = "Metrics unchanged since the given ETag"),
+            @ApiResponse(responseCode = "404", description = "No metrics available yet")
         }
     )
-    public ResponseEntity<Metrics> getHourlyMetrics() {
-        log.debug("Retrieving hourly metrics");
-        
-        Optional<Metrics> metrics = metricRepository.getMetrics(
-            properties.aggregation().windows().hourly()
-        );
-        
-        if (metrics.isPresent()) {
-            log.info("Retrieved hourly metrics: activeUsers={}, eventsPerMinute={}", 
-                metrics.get().activeUsers(), metrics.get().eventsPerMinute());
-            return ResponseEntity.ok(metrics.get());
-        } else {
-            log.warn("No hourly metrics available");
+    public ResponseEntity<byte[]> getAllMetrics(
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+        @RequestAttribute(name = TenantFilter.TENANT_ATTRIBUTE, required = false) String tenant
+    ) {
+        log.debug("Retrieving metrics of all windows");
+        return respond(partition(tenant).flatMap(p -> p.getMetricRepository().getSerializedAllMetrics()), ifNoneMatch, "all");
+    }
+    
+    @GetMapping("/{window}")
+    @Operation(
+        summary = "Get metrics of one window",
+        description = "Retrieve aggregated metrics of a configured rolling window (ela.aggregation.windows), "
+            + "by name such as hourly or as ISO-8601 duration such as PT1H",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Metrics retrieved successfully",
+                content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = Metrics.class))),
+            @ApiResponse(responseCode = "304", description = "Metrics unchanged since the given ETag"),
+            @ApiResponse(responseCode = "404", description = "Unknown window or no metrics available for it")
+        }
+    )
+    public ResponseEntity<byte[]> getWindowMetrics(
+        @Parameter(description = "Window name or ISO-8601 duration", example = "hourly")
+        @PathVariable String window,
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+        @RequestAttribute(name = TenantFilter.TENANT_ATTRIBUTE, required = false) String tenant
+    ) {
+        log.debug("Retrieving {} metrics", window);
+        Optional<Duration> duration = properties.aggregation().window(window);
+        if (duration.isEmpty()) {
+            log.debug("Unknown window {}", window);
             return ResponseEntity.notFound().build();
         }
+        return respond(serializedMetrics(tenant, duration.get()), ifNoneMatch, window);
     }
     
-    @GetMapping("/daily")
+    @GetMapping("/intervals/{interval}")
     @Operation(
-        summary = "Get daily metrics",
-        description = "Retrieve aggregated metrics for the last 24 hours",
+        summary = "Get finalized intervals",
+        description = "Retrieve the finalized metrics of a configured tumbling or hopping interval (ela.aggregation.intervals) "
+            + "whose starts lie in a range, oldest first. Intervals are stored once after they ended and never change.",
         responses = {
-            @ApiResponse(responseCode = "200", description = "Daily metrics retrieved successfully"),
-            @ApiResponse(responseCode = "404", description = "No metrics available for the daily window")
+            @ApiResponse(responseCode = "200", description = "Intervals retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid from or to"),
+            @ApiResponse(responseCode = "404", description = "Unknown interval or tenant")
         }
     )
-    public ResponseEntity<Metrics> getDailyMetrics() {
-        log.debug("Retrieving daily metrics");
-        
-        Optional<Metrics> metrics = metricRepository.getMetrics(
-            properties.aggregation().windows().daily()
-        );
+    public ResponseEntity<Map<String, Object>> getIntervals(
+        @Parameter(description = "Interval name", example = "hour")
+        @PathVariable String interval,
+        @Parameter(description = "Earliest interval start as ISO-8601 instant, inclusive; defaults to all retained")
+        @RequestParam(required = false) String from,
+        @Parameter(description = "Latest interval start as ISO-8601 instant, exclusive; defaults to now")
+        @RequestParam(required = false) String to,
+        @RequestAttribute(name = TenantFilter.TENANT_ATTRIBUTE, required = false) String tenant
+    ) {
+        ElaProperties.Aggregation.Interval definition = properties.aggregation().intervalsOrEmpty().get(interval);
+        if (definition == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                "status", "not_found",
+                "message", "Unknown interval " + interval
+            ));
+        }
+        Instant start;
+        Instant end;
+        try {
+            start = from != null ? Instant.parse(from) : Instant.EPOCH;
+            end = to != null ? Instant.parse(to) : clock.instant();
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", "Invalid from or to: " + e.getMessage()
+            ));
+        }
         
-        if (metrics.isPresent()) {
-            log.info("Retrieved daily metrics: activeUsers={}, eventsPerMinute={}", 
-                metrics.get().activeUsers(), metrics.get().eventsPerMinute());
-            return ResponseEntity.ok(metrics.get());
-        } else {
-            log.warn("No daily metrics available");
-            return ResponseEntity.notFound().build();
+        Optional<TenantPartition> partition = partition(tenant);
+        if (partition.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                "status", "not_found",
+                "message", "No intervals for this tenant"
+            ));
         }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("interval", interval);
+        response.put("size", definition.size().toString());
+        response.put("advance", definition.step().toString());
+        response.put("intervals", partition.get().getMetricRepository().getIntervals(interval, start, end));
+        return ResponseEntity.ok(response);
     }
     
-    @GetMapping("/weekly")
+    @GetMapping("/intervals/{interval}/{start}")
     @Operation(
-        summary = "Get weekly metrics",
-        description = "Retrieve aggregated metrics for the last week",
+        summary = "Get one finalized interval",
+        description = "Retrieve the finalized metrics of the interval starting at the given instant",
         responses = {
-            @ApiResponse(responseCode = "200", description = "Weekly metrics retrieved successfully"),
-            @ApiResponse(responseCode = "404", description = "No metrics available for the weekly window")
+            @ApiResponse(responseCode = "200", description = "Interval retrieved successfully",
+                content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = IntervalMetrics.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid start"),
+            @ApiResponse(responseCode = "404", description = "Unknown interval, not finalized yet or no longer retained")
         }
     )
-    public ResponseEntity<Metrics> getWeeklyMetrics() {
-        log.debug("Retrieving weekly metrics");
-        
-        Optional<Metrics> metrics = metricRepository.getMetrics(
-            properties.aggregation().windows().weekly()
-        );
-        
-        if (metrics.isPresent()) {
-            log.info("Retrieved weekly metrics: activeUsers={}, eventsPerMinute={}", 
-                metrics.get().activeUsers(), metrics.get().eventsPerMinute());
-            return ResponseEntity.ok(metrics.get());
-        } else {
-            log.warn("No weekly metrics available");
-            return ResponseEntity.notFound().build();
+    public ResponseEntity<IntervalMetrics> getInterval(
+        @Parameter(description = "Interval name", example = "hour")
+        @PathVariable String interval,
+        @Parameter(description = "Interval start as ISO-8601 instant", example = "2024-01-15T10:00:00Z")
+        @PathVariable String start,
+        @RequestAttribute(name = TenantFilter.TENANT_ATTRIBUTE, required = false) String tenant
+    ) {
+        Instant instant;
+        try {
+            instant = Instant.parse(start);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
         }
+        return partition(tenant)
+            .flatMap(p -> p.getMetricRepository().getInterval(interval, instant))
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.notFound().build());
     }
     
     @GetMapping("/top-channels")
     @Operation(
         summary = "Get top channels by activity",
-        description = "Retrieve the most active channels from hourly metrics",
+        description = "Retrieve the most active channels from the metrics of the primary window",
         responses = {
             @ApiResponse(responseCode = "200", description = "Top channels retrieved successfully"),
             @ApiResponse(responseCode = "404", description = "No channel data available")
@@ -123,16 +203,16 @@ public class MetricsController {
     )
     public ResponseEntity<List<ChannelCount>> getTopChannels(
         @Parameter(description = "Number of top channels to return", example = "5")
-        @RequestParam(defaultValue = "5") int n
+        @RequestParam(defaultValue = "5") int n,
+        @RequestAttribute(name = TenantFilter.TENANT_ATTRIBUTE, required = false) String tenant
     ) {
         log.debug("Retrieving top {} channels", n);
         
-        Optional<Metrics> hourlyMetrics = metricRepository.getMetrics(
-            properties.aggregation().windows().hourly()
-        );
+        Optional<Metrics> primaryMetrics = partition(tenant)
+            .flatMap(p -> p.getMetricRepository().getMetrics(properties.aggregation().primary()));
         
-        if (hourlyMetrics.isPresent()) {
-            List<ChannelCount> topChannels = hourlyMetrics.get().topChannels().stream()
+        if (primaryMetrics.isPresent()) {
+            List<ChannelCount> topChannels = primaryMetrics.get().topChannels().stream()
                 .limit(n)
                 .toList();
             
@@ -144,20 +224,201 @@ public class MetricsController {
         }
     }
     
+    @GetMapping("/anomalies")
+    @Operation(
+        summary = "Get recent rate anomalies",
+        description = "Retrieve the most recent spikes and drops in the per-minute event rate of event types and channels, newest first",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Anomalies retrieved successfully",
+                content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                    array = @ArraySchema(schema = @Schema(implementation = Anomaly.class)))),
+            @ApiResponse(responseCode = "404", description = "Unknown tenant")
+        }
+    )
+    public ResponseEntity<List<Anomaly>> getAnomalies(
+        @Parameter(description = "Maximum number of anomalies to return", example = "20")
+        @RequestParam(defaultValue = "20") int limit,
+        @RequestAttribute(name = TenantFilter.TENANT_ATTRIBUTE, required = false) String tenant
+    ) {
+        return partition(tenant)
+            .map(p -> ResponseEntity.ok(p.getAnomalyDetector().getRecentAnomalies().stream()
+                .limit(Math.max(0, limit))
+                .toList()))
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+    
+    @GetMapping("/series")
+    @Operation(
+        summary = "Get time series for charts",
+        description = "Events per minute, active users (of the primary window) and events per minute of channels over a range, "
+            + "read from pre-aggregated buckets and downsampled on the server. Points are [epochMillis, value] pairs.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Series retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid range, end, point count or algorithm"),
+            @ApiResponse(responseCode = "404", description = "Unknown tenant or time series disabled")
+        }
+    )
+    public ResponseEntity<Map<String, Object>> getSeries(
+        @Parameter(description = "Length of the range as ISO-8601 duration", example = "PT24H")
+        @RequestParam(defaultValue = "PT1H") String range,
+        @Parameter(description = "End of the range as ISO-8601 instant, defaults to now")
+        @RequestParam(required = false) String to,
+        @Parameter(description = "Maximum number of points per series", example = "300")
+        @RequestParam(defaultValue = "300") int points,
+        @Parameter(description = "Downsampling algorithm: lttb or minmax", example = "lttb")
+        @RequestParam(defaultValue = "lttb") String algorithm,
+        @Parameter(description = "Channels to return, defaults to the busiest channels of the range")
+        @RequestParam(required = false) List<String> channels,
+        @Parameter(description = "Number of busiest channels returned without explicit channels", example = "5")
+        @RequestParam(defaultValue = "5") int top,
+        @RequestAttribute(name = TenantFilter.TENANT_ATTRIBUTE, required = false) String tenant
+    ) {
+        long now = clock.millis();
+        Duration duration;
+        long end;
+        Downsampler downsampler;
+        try {
+            duration = Duration.parse(range);
+            end = to != null ? Instant.parse(to).toEpochMilli() : now;
+            downsampler = Downsampler.of(algorithm);
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", "Invalid range, end or algorithm: " + e.getMessage()
+            ));
+        }
+        
+        Optional<TimeSeriesStore> store = partition(tenant)
+            .map(p -> p.getMetricAggregator().getTimeSeriesStore())
+            .filter(TimeSeriesStore::isEnabled);
+        if (store.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                "status", "not_found",
+                "message", "No time series for this tenant"
+            ));
+        }
+        if (duration.isNegative() || duration.isZero() || points < 3 || points > store.get().getMaxPoints()) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", "Range must be positive and points between 3 and " + store.get().getMaxPoints()
+            ));
+        }
+        
+        long from = end - duration.toMillis();
+        TimeSeriesStore.Result result = store.get()
+            .query(from, end, points, downsampler, channels != null ? channels : List.of(), top, now)
+            .orElseThrow();
+        
+        Map<String, Object> channelSeries = new LinkedHashMap<>();
+        result.channels().forEach((channel, series) -> channelSeries.put(channel, points(series)));
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("from", Instant.ofEpochMilli(from));
+        response.put("to", Instant.ofEpochMilli(end));
+        response.put("resolution", result.resolution().toString());
+        response.put("algorithm", downsampler.name().toLowerCase(Locale.ROOT));
+        response.put("eventsPerMinute", points(result.eventsPerMinute()));
+        response.put("activeUsers", points(result.activeUsers()));
+        response.put("channels", channelSeries);
+        return ResponseEntity.ok(response);
+    }
+    
+    @GetMapping("/openmetrics")
+    @Operation(
+        summary = "Get metrics in OpenMetrics format",
+        description = "Aggregates of all windows as OpenMetrics text for Prometheus-compatible scrapers: events per minute, "
+            + "active users, events per type and of the busiest channels (ela.open-metrics.max-channels) and sessions. "
+            + "The text is rendered at most once per change of the metrics, not per scrape.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Exposition retrieved successfully",
+                content = @Content(mediaType = OPENMETRICS_CONTENT_TYPE)),
+            @ApiResponse(responseCode = "404", description = "No metrics available yet or export disabled")
+        }
+    )
+    public ResponseEntity<byte[]> getOpenMetrics(
+        @RequestAttribute(name = TenantFilter.TENANT_ATTRIBUTE, required = false) String tenant
+    ) {
+        return partition(tenant)
+            .flatMap(p -> p.getMetricRepository().getOpenMetrics())
+            .map(exposition -> ResponseEntity.ok()
+                .contentType(OPENMETRICS)
+                .body(exposition))
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+    
     @GetMapping("/health")
     @Operation(
         summary = "Health check for metrics system",
         description = "Check if metrics are being collected and stored properly"
     )
-    public ResponseEntity<String> getHealthStatus() {
-        boolean hasHourlyMetrics = metricRepository.getMetrics(
-            properties.aggregation().windows().hourly()
-        ).isPresent();
+    public ResponseEntity<String> getHealthStatus(
+        @RequestAttribute(name = TenantFilter.TENANT_ATTRIBUTE, required = false) String tenant
+    ) {
+        boolean hasPrimaryMetrics = partition(tenant)
+            .flatMap(p -> p.getMetricRepository().getMetrics(properties.aggregation().primary()))
+            .isPresent();
         
-        if (hasHourlyMetrics) {
+        if (hasPrimaryMetrics) {
             return ResponseEntity.ok("Metrics system is operational");
         } else {
             return ResponseEntity.ok("Metrics system is running but no data collected yet");
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Partition of the tenant, empty for a tenant without events so far
+     */
+    private Optional<TenantPartition> partition(String tenant) {
+        return tenantRegistry.find(tenant);
+    }
+    
+    /**
+     * Series as [epochMillis, value] pairs, values rounded to two decimals
+     */
+    private static List<List<Number>> points(TimeSeriesStore.Series series) {
+        List<List<Number>> points = new ArrayList<>(series.timestamps().length);
+        for (int i = 0; i < series.timestamps().length; i++) {
+            points.add(List.of(series.timestamps()[i], Math.round(series.values()[i] * 100) / 100.0));
+        }
+        return points;
+    }
+    
+    private Optional<SerializedMetrics> serializedMetrics(String tenant, Duration window) {
+        return partition(tenant).flatMap(p -> p.getMetricRepository().getSerializedMetrics(window));
+    }
+    
+    /**
+     * Serve pre-serialized metrics, answering a matching If-None-Match with 304. The
+     * {@code Vary} on the tenant header comes from the {@link TenantFilter}.
+     */
+    private ResponseEntity<byte[]> respond(Optional<SerializedMetrics> serialized, String ifNoneMatch, String name) {
+        if (serialized.isEmpty()) {
+            log.warn("No {} metrics available", name);
+            return ResponseEntity.notFound().build();
+        }
+        
+        String etag = serialized.get().etag();
+        if (matchesEtag(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok()
+            .eTag(etag)
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(serialized.get().json());
+    }
+    
+    private boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
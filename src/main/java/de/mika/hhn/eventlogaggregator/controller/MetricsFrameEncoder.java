@@ -0,0 +1,149 @@
+package de.mika.hhn.eventlogaggregator.controller;
+
+import de.mika.hhn.eventlogaggregator.model.ChannelCount;
+import de.mika.hhn.eventlogaggregator.model.ChannelOccupancy;
+import de.mika.hhn.eventlogaggregator.model.Metrics;
+import de.mika.hhn.eventlogaggregator.model.SessionStats;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compact binary encoding of (partial) metrics for the WebSocket channel.
+ *
+ * <pre>
+ * frame       := type:u8 windowSeconds:varint version:varint baseVersion:varint mask:u8 field*
+ * type        := 0x01 (full) | 0x02 (delta against baseVersion)
+ * field       := activeUsers:varint       (mask bit 0)
+ *              | eventsPerMinute:varint   (mask bit 1)
+ *              | topChannels              (mask bit 2)
+ *              | estimated:u8             (mask bit 3)
+ *              | sessions                 (mask bit 4)
+ *              | channelOccupancy         (mask bit 5)
+ * topChannels := count:varint (nameLength:varint name:utf8 eventCount:varint distinctUsers:varint)*
+ * sessions    := concurrent:varint closed:varint p50Seconds:varint p90Seconds:varint p99Seconds:varint
+ * channelOccupancy := count:varint (nameLength:varint name:utf8 members:varint)*
+ * </pre>
+ *
+ * Varints are unsigned LEB128. Fields appear in mask bit order; only fields
+ * whose bit is set are present.
+ */
+final class MetricsFrameEncoder {
+
+    static final int ACTIVE_USERS = 1;
+    static final int EVENTS_PER_MINUTE = 1 << 1;
+    static final int TOP_CHANNELS = 1 << 2;
+    static final int ESTIMATED = 1 << 3;
+    static final int SESSIONS = 1 << 4;
+    static final int CHANNEL_OCCUPANCY = 1 << 5;
+    static final int ALL_FIELDS = ACTIVE_USERS | EVENTS_PER_MINUTE | TOP_CHANNELS | ESTIMATED
+        | SESSIONS | CHANNEL_OCCUPANCY;
+
+    static final Map<String, Integer> FIELD_NAMES = Map.of(
+        "activeUsers", ACTIVE_USERS,
+        "eventsPerMinute", EVENTS_PER_MINUTE,
+        "topChannels", TOP_CHANNELS,
+        "estimated", ESTIMATED,
+        "sessions", SESSIONS,
+        "channelOccupancy", CHANNEL_OCCUPANCY
+    );
+
+    private static final int TYPE_FULL = 0x01;
+    private static final int TYPE_DELTA = 0x02;
+
+    private MetricsFrameEncoder() {
+    }
+
+    /**
+     * Mask of the fields that differ between base and current
+     */
+    static int changedFields(Metrics base, Metrics current) {
+        if (base == null) {
+            return ALL_FIELDS;
+        }
+        int mask = 0;
+        if (base.activeUsers() != current.activeUsers()) {
+            mask |= ACTIVE_USERS;
+        }
+        if (base.eventsPerMinute() != current.eventsPerMinute()) {
+            mask |= EVENTS_PER_MINUTE;
+        }
+        if (!Objects.equals(base.topChannels(), current.topChannels())) {
+            mask |= TOP_CHANNELS;
+        }
+        if (base.estimated() != current.estimated()) {
+            mask |= ESTIMATED;
+        }
+        if (!Objects.equals(base.sessions(), current.sessions())) {
+            mask |= SESSIONS;
+        }
+        if (!Objects.equals(base.channelOccupancy(), current.channelOccupancy())) {
+            mask |= CHANNEL_OCCUPANCY;
+        }
+        return mask;
+    }
+
+    /**
+     * Encode the masked fields of the metrics. A base version of 0 marks a full frame.
+     */
+    static byte[] encode(Metrics metrics, long version, long baseVersion, int mask) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(baseVersion == 0 ? TYPE_FULL : TYPE_DELTA);
+        writeVarint(out, metrics.window().toSeconds());
+        writeVarint(out, version);
+        writeVarint(out, baseVersion);
+        out.write(mask);
+
+        if ((mask & ACTIVE_USERS) != 0) {
+            writeVarint(out, metrics.activeUsers());
+        }
+        if ((mask & EVENTS_PER_MINUTE) != 0) {
+            writeVarint(out, metrics.eventsPerMinute());
+        }
+        if ((mask & TOP_CHANNELS) != 0) {
+            List<ChannelCount> channels = metrics.topChannels();
+            writeVarint(out, channels.size());
+            for (ChannelCount channel : channels) {
+                byte[] name = channel.channel().getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, name.length);
+                out.writeBytes(name);
+                writeVarint(out, channel.count());
+                writeVarint(out, channel.distinctUsers());
+            }
+        }
+        if ((mask & ESTIMATED) != 0) {
+            out.write(metrics.estimated() ? 1 : 0);
+        }
+        if ((mask & SESSIONS) != 0) {
+            SessionStats sessions = metrics.sessions() != null ? metrics.sessions() : SessionStats.EMPTY;
+            writeVarint(out, sessions.concurrentSessions());
+            writeVarint(out, sessions.closedSessions());
+            writeVarint(out, sessions.durationP50Seconds());
+            writeVarint(out, sessions.durationP90Seconds());
+            writeVarint(out, sessions.durationP99Seconds());
+        }
+        if ((mask & CHANNEL_OCCUPANCY) != 0) {
+            List<ChannelOccupancy> channels = metrics.channelOccupancy() != null ? metrics.channelOccupancy() : List.of();
+            writeVarint(out, channels.size());
+            for (ChannelOccupancy channel : channels) {
+                byte[] name = channel.channel().getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, name.length);
+                out.writeBytes(name);
+                writeVarint(out, channel.members());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        long v = Math.max(0, value);
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+}
@@ -0,0 +1,371 @@
+package de.mika.hhn.eventlogaggregator.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.config.TenantFilter;
+import de.mika.hhn.eventlogaggregator.model.Metrics;
+import de.mika.hhn.eventlogaggregator.service.MetricRepository;
+import de.mika.hhn.eventlogaggregator.service.SerializedMetrics;
+import de.mika.hhn.eventlogaggregator.service.TenantPartition;
+import de.mika.hhn.eventlogaggregator.service.TenantRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket endpoint ({@code /ws/metrics}) pushing metrics as compact binary delta frames.
+ *
+ * Clients control their subscriptions with JSON text messages:
+ * <pre>
+ * {"op":"subscribe","windows":["hourly"],"fields":["activeUsers","topChannels"],"intervalMs":1000}
+ * {"op":"unsubscribe","windows":["hourly"]}
+ * {"op":"ack","window":"hourly","version":42}
+ * </pre>
+ *
+ * Windows are given by name or ISO-8601 duration, like in {@code /metrics/{window}};
+ * only configured windows can be subscribed.
+ *
+ * Each frame carries only the subscribed fields that differ from the last version the
+ * client acknowledged (see {@link MetricsFrameEncoder}); until the first ack full frames
+ * are sent. Nothing is sent while a window is unchanged.
+ *
+ * The push thread only encodes frames; each client's frames are sent by a task of its
+ * own, so a client that does not read blocks nobody but itself. Clients whose previous
+ * send has not completed are skipped for that round and get the latest version next
+ * time, so slow clients receive coalesced updates instead of a growing backlog. A
+ * client whose send has not completed within {@value #SEND_TIME_LIMIT_MS} ms is closed.
+ *
+ * Clients see the metrics of the tenant given at the handshake, by the tenant header or
+ * the path {@code /t/{tenant}/ws/metrics}.
+ */
+@Component
+public class MetricsWebSocketHandler extends TextWebSocketHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsWebSocketHandler.class);
+
+    private static final long TICK_INTERVAL_MS = 100;
+    private static final long DEFAULT_INTERVAL_MS = 1000;
+    private static final int SEND_TIME_LIMIT_MS = 5000;
+    private static final int SEND_BUFFER_LIMIT = 256 * 1024;
+    private static final int MAX_UNACKED_VERSIONS = 32;
+
+    private final TenantRegistry tenantRegistry;
+    private final ElaProperties.Aggregation aggregation;
+    private final Clock clock;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+    private final Executor sender;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "MetricsWebSocket");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Autowired
+    public MetricsWebSocketHandler(TenantRegistry tenantRegistry, ElaProperties properties,
+                                   ObjectMapper objectMapper, Clock clock) {
+        this(tenantRegistry, properties, objectMapper, clock, senderPool());
+    }
+
+    /**
+     * @param sender runs the send tasks, at most one per client at a time
+     */
+    MetricsWebSocketHandler(TenantRegistry tenantRegistry, ElaProperties properties,
+                            ObjectMapper objectMapper, Clock clock, Executor sender) {
+        this.tenantRegistry = tenantRegistry;
+        this.aggregation = properties.aggregation();
+        this.clock = clock;
+        this.objectMapper = objectMapper;
+        this.sender = sender;
+    }
+
+    private static ExecutorService senderPool() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "MetricsWebSocketSend-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PostConstruct
+    public void startPushing() {
+        scheduler.scheduleWithFixedDelay(this::pushUpdates, TICK_INTERVAL_MS, TICK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopPushing() {
+        scheduler.shutdownNow();
+        if (sender instanceof ExecutorService pool) {
+            pool.shutdownNow();
+        }
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        WebSocketSession concurrentSession = new ConcurrentWebSocketSessionDecorator(
+            session, SEND_TIME_LIMIT_MS, SEND_BUFFER_LIMIT);
+        String tenant = (String) session.getAttributes().get(TenantFilter.TENANT_ATTRIBUTE);
+        clients.put(session.getId(), new Client(concurrentSession, tenant));
+        log.info("WebSocket metrics client connected: {} (tenant {})", session.getId(),
+            tenant != null ? tenant : TenantRegistry.DEFAULT_TENANT);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        clients.remove(session.getId());
+        log.info("WebSocket metrics client disconnected: {} ({})", session.getId(), status);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
+        Client client = clients.get(session.getId());
+        if (client == null) {
+            return;
+        }
+        try {
+            ControlMessage control = objectMapper.readValue(message.getPayload(), ControlMessage.class);
+            synchronized (client) {
+                switch (control.op() == null ? "" : control.op()) {
+                    case "subscribe" -> subscribe(client, control);
+                    case "unsubscribe" -> parseWindows(control.windows()).forEach(client.subscriptions::remove);
+                    case "ack" -> acknowledge(client, control);
+                    default -> throw new IllegalArgumentException("Unknown op: " + control.op());
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Rejected control message from {}: {}", session.getId(), e.getMessage());
+            client.session.sendMessage(new TextMessage(
+                objectMapper.writeValueAsString(Map.of("error", String.valueOf(e.getMessage())))));
+        }
+    }
+
+    /**
+     * Number of connected WebSocket clients
+     */
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    private void subscribe(Client client, ControlMessage control) {
+        int fieldMask = MetricsFrameEncoder.ALL_FIELDS;
+        if (control.fields() != null && !control.fields().isEmpty()) {
+            fieldMask = 0;
+            for (String field : control.fields()) {
+                Integer bit = MetricsFrameEncoder.FIELD_NAMES.get(field);
+                if (bit == null) {
+                    throw new IllegalArgumentException("Unknown field: " + field);
+                }
+                fieldMask |= bit;
+            }
+        }
+        long interval = control.intervalMs() != null
+            ? Math.max(TICK_INTERVAL_MS, control.intervalMs())
+            : DEFAULT_INTERVAL_MS;
+
+        for (Duration window : parseWindows(control.windows())) {
+            client.subscriptions.put(window, new Subscription(window, fieldMask, interval));
+        }
+    }
+
+    private void acknowledge(Client client, ControlMessage control) {
+        if (control.window() == null || control.version() == null) {
+            throw new IllegalArgumentException("ack requires window and version");
+        }
+        Subscription subscription = client.subscriptions.get(resolveWindow(control.window()));
+        if (subscription == null) {
+            return;
+        }
+        Metrics acked = subscription.unacked.get(control.version());
+        if (acked != null) {
+            subscription.ackedVersion = control.version();
+            subscription.ackedState = acked;
+            subscription.unacked.headMap(control.version(), true).clear();
+        }
+    }
+
+    private List<Duration> parseWindows(List<String> windows) {
+        if (windows == null || windows.isEmpty()) {
+            throw new IllegalArgumentException("windows must not be empty");
+        }
+        return windows.stream().map(this::resolveWindow).toList();
+    }
+
+    private Duration resolveWindow(String window) {
+        return aggregation.window(window)
+            .orElseThrow(() -> new IllegalArgumentException("Unknown window: " + window));
+    }
+
+    /**
+     * Send due updates to all clients, called every tick
+     */
+    void pushUpdates() {
+        long now = clock.millis();
+        clients.values().forEach(client -> {
+            // Previous send still in flight: skip this round, the next one sends the latest version
+            long sendingSince = client.sendingSince.get();
+            if (sendingSince != 0) {
+                if (System.nanoTime() - sendingSince > TimeUnit.MILLISECONDS.toNanos(SEND_TIME_LIMIT_MS)) {
+                    closeStalled(client);
+                }
+                return;
+            }
+            try {
+                List<BinaryMessage> frames;
+                synchronized (client) {
+                    frames = encodeUpdates(client, now);
+                }
+                if (!frames.isEmpty()) {
+                    send(client, frames);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to push metrics to WebSocket client {}: {}", client.session.getId(), e.getMessage());
+            }
+        });
+    }
+
+    private void send(Client client, List<BinaryMessage> frames) {
+        // Sends take real time, also under a simulation clock
+        client.sendingSince.set(System.nanoTime());
+        try {
+            sender.execute(() -> {
+                try {
+                    for (BinaryMessage frame : frames) {
+                        client.session.sendMessage(frame);
+                    }
+                } catch (Exception e) {
+                    log.warn("Failed to push metrics to WebSocket client {}: {}", client.session.getId(), e.getMessage());
+                } finally {
+                    client.sendingSince.set(0);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            client.sendingSince.set(0);
+        }
+    }
+
+    private void closeStalled(Client client) {
+        if (clients.remove(client.session.getId()) == null) {
+            return;
+        }
+        log.warn("WebSocket metrics client {} did not read for {} ms, closing it", client.session.getId(), SEND_TIME_LIMIT_MS);
+        // Closing sends a close frame, which may block like the stalled send
+        sender.execute(() -> {
+            try {
+                client.session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                log.debug("Failed to close WebSocket client {}: {}", client.session.getId(), e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Frames for the due subscriptions of a client whose window changed
+     */
+    private List<BinaryMessage> encodeUpdates(Client client, long now) {
+        MetricRepository metricRepository = tenantRegistry.find(client.tenant)
+            .map(TenantPartition::getMetricRepository)
+            .orElse(null);
+        if (metricRepository == null) {
+            return List.of();
+        }
+        List<BinaryMessage> frames = new ArrayList<>();
+        for (Subscription subscription : client.subscriptions.values()) {
+            if (now < subscription.nextDueAt) {
+                continue;
+            }
+            SerializedMetrics serialized = metricRepository.getSerializedMetrics(subscription.window).orElse(null);
+            if (serialized == null || serialized.version() == subscription.lastSentVersion) {
+                continue;
+            }
+            Metrics metrics = metricRepository.getMetrics(subscription.window).orElse(null);
+            if (metrics == null) {
+                continue;
+            }
+
+            subscription.nextDueAt = now + subscription.intervalMs;
+            subscription.lastSentVersion = serialized.version();
+
+            int mask = MetricsFrameEncoder.changedFields(subscription.ackedState, metrics) & subscription.fieldMask;
+            if (mask == 0) {
+                continue;
+            }
+            byte[] frame = MetricsFrameEncoder.encode(metrics, serialized.version(), subscription.ackedVersion, mask);
+            frames.add(new BinaryMessage(frame));
+
+            subscription.unacked.put(serialized.version(), metrics);
+            while (subscription.unacked.size() > MAX_UNACKED_VERSIONS) {
+                subscription.unacked.pollFirstEntry();
+            }
+        }
+        return frames;
+    }
+
+    private static class Client {
+        final WebSocketSession session;
+        final String tenant;
+        final Map<Duration, Subscription> subscriptions = new HashMap<>();
+        // Start of the send in flight in System.nanoTime(), 0 if none
+        final AtomicLong sendingSince = new AtomicLong();
+
+        Client(WebSocketSession session, String tenant) {
+            this.session = session;
+            this.tenant = tenant;
+        }
+    }
+
+    private static class Subscription {
+        final Duration window;
+        final int fieldMask;
+        final long intervalMs;
+        long nextDueAt;
+        long lastSentVersion;
+        long ackedVersion;
+        Metrics ackedState;
+        // Sent but not yet acknowledged states, by version
+        final NavigableMap<Long, Metrics> unacked = new TreeMap<>();
+
+        Subscription(Duration window, int fieldMask, long intervalMs) {
+            this.window = window;
+            this.fieldMask = fieldMask;
+            this.intervalMs = intervalMs;
+        }
+    }
+
+    private record ControlMessage(
+        String op,
+        List<String> windows,
+        List<String> fields,
+        Long intervalMs,
+        String window,
+        Long version
+    ) {}
+}
@@ -2,30 +2,40 @@ package de.mika.hhn.eventlogaggregator.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.mika.hhn.eventlogaggregator.config.ElaProperties;
-import de.mika.hhn.eventlogaggregator.model.Metrics;
-import de.mika.hhn.eventlogaggregator.service.MetricRepository;
+import de.mika.hhn.eventlogaggregator.config.TenantFilter;
+import de.mika.hhn.eventlogaggregator.model.Anomaly;
+import de.mika.hhn.eventlogaggregator.service.JfrEvents;
+import de.mika.hhn.eventlogaggregator.service.SerializedMetrics;
+import de.mika.hhn.eventlogaggregator.service.TenantAnomaly;
+import de.mika.hhn.eventlogaggregator.service.TenantRegistry;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import jakarta.annotation.PreDestroy;
 import java.io.IOException;
-import java.util.Collections;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Controller for Server-Sent Events streaming of live metrics
+ * Controller for Server-Sent Events streaming of live metrics. Every connection
+ * receives the metrics and anomalies of its tenant (see {@link TenantFilter}).
  */
 @RestController
 @RequestMapping("/stream")
@@ -33,37 +43,61 @@ import java.util.concurrent.TimeUnit;
 public class StreamController {
     
     private static final Logger log = LoggerFactory.getLogger(StreamController.class);
+    private static final long PUSH_CHECK_INTERVAL_MS = 100;
     
-    private final MetricRepository metricRepository;
+    private final TenantRegistry tenantRegistry;
     private final ElaProperties properties;
     private final ObjectMapper objectMapper;
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, r -> {
+        Thread t = new Thread(r, "MetricsStream");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean streamingStarted = new AtomicBoolean(false);
+    private long nextPushAt;
     
-    // Store active SSE connections
-    private final Map<String, SseEmitter> activeConnections = new ConcurrentHashMap<>();
+    // Store active SSE connections per tenant
+    private final Map<String, Map<String, SseEmitter>> tenantConnections = new ConcurrentHashMap<>();
     
-    public StreamController(MetricRepository metricRepository, ElaProperties properties, ObjectMapper objectMapper) {
-        this.metricRepository = metricRepository;
+    public StreamController(TenantRegistry tenantRegistry, ElaProperties properties, ObjectMapper objectMapper,
+                            Clock clock) {
+        this.tenantRegistry = tenantRegistry;
         this.properties = properties;
         this.objectMapper = objectMapper;
-        startMetricsStreaming();
+        this.clock = clock;
+    }
+    
+    @PreDestroy
+    public void stopMetricsStreaming() {
+        scheduler.shutdownNow();
     }
     
     @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     @Operation(
         summary = "Stream live metrics",
-        description = "Server-Sent Events stream that pushes current metrics every 10 seconds",
+        description = "Server-Sent Events stream that pushes current metrics every ela.sse.push-interval "
+            + "milliseconds (10 seconds by default), timed by the application clock",
         responses = {
             @ApiResponse(responseCode = "200", description = "Metrics stream established successfully")
         }
     )
-    public SseEmitter streamMetrics() {
+    public SseEmitter streamMetrics(
+        @RequestAttribute(name = TenantFilter.TENANT_ATTRIBUTE, required = false) String tenant
+    ) {
+        String tenantId = tenant != null ? tenant : TenantRegistry.DEFAULT_TENANT;
+        Map<String, SseEmitter> activeConnections = tenantConnections.computeIfAbsent(tenantId, key -> new ConcurrentHashMap<>());
         String connectionId = "conn_" + System.currentTimeMillis();
         SseEmitter emitter = new SseEmitter(Long.MAX_VALUE); // Keep connection open indefinitely
         
+        // Push loop is only needed once somebody listens, keep it off the startup path
+        if (streamingStarted.compareAndSet(false, true)) {
+            startMetricsStreaming();
+        }
+        
         // Store the connection
         activeConnections.put(connectionId, emitter);
-        log.info("New SSE connection established: {}", connectionId);
+        log.info("New SSE connection established: {} (tenant {})", connectionId, tenantId);
         
         // Handle connection cleanup
         emitter.onCompletion(() -> {
@@ -82,7 +116,7 @@ public class StreamController {
         });
         
         // Send initial metrics immediately
-        sendCurrentMetrics(emitter);
+        sendCurrentMetrics(emitter, tenantId);
         
         return emitter;
     }
@@ -92,52 +126,87 @@ public class StreamController {
         summary = "Get streaming status",
         description = "Get information about active streaming connections"
     )
-    public Map<String, Object> getStreamingStatus() {
+    public Map<String, Object> getStreamingStatus(
+        @RequestAttribute(name = TenantFilter.TENANT_ATTRIBUTE, required = false) String tenant
+    ) {
+        Map<String, SseEmitter> activeConnections = tenantConnections.getOrDefault(
+            tenant != null ? tenant : TenantRegistry.DEFAULT_TENANT, Map.of());
         return Map.of(
             "activeConnections", activeConnections.size(),
+            "totalConnections", getConnectionCount(),
             "pushIntervalMs", properties.sse().pushInterval(),
             "status", "operational"
         );
     }
     
+    /**
+     * Push a rate anomaly of the default tenant to its connections right away
+     */
+    @EventListener
+    public void onAnomaly(Anomaly anomaly) {
+        pushAnomaly(TenantRegistry.DEFAULT_TENANT, anomaly);
+    }
+    
+    /**
+     * Push a rate anomaly of another tenant to its connections right away
+     */
+    @EventListener
+    public void onTenantAnomaly(TenantAnomaly tenantAnomaly) {
+        pushAnomaly(tenantAnomaly.tenant(), tenantAnomaly.anomaly());
+    }
+    
+    /**
+     * Number of open SSE connections of all tenants
+     */
+    public int getConnectionCount() {
+        return tenantConnections.values().stream().mapToInt(Map::size).sum();
+    }
+    
+    private void pushAnomaly(String tenant, Anomaly anomaly) {
+        Map<String, SseEmitter> activeConnections = tenantConnections.get(tenant);
+        if (activeConnections == null || activeConnections.isEmpty()) {
+            return;
+        }
+        try {
+            broadcast(activeConnections, "anomaly", objectMapper.writeValueAsString(anomaly));
+        } catch (IOException e) {
+            log.error("Failed to serialize anomaly: {}", e.getMessage());
+        }
+    }
+    
     private void startMetricsStreaming() {
         long pushInterval = properties.sse().pushInterval();
+        nextPushAt = clock.millis() + pushInterval;
         
+        // Pushes are due by the clock, which runs ahead of real time in simulation mode;
+        // there they are limited to one per check interval
+        long checkInterval = Math.min(pushInterval, PUSH_CHECK_INTERVAL_MS);
         scheduler.scheduleAtFixedRate(() -> {
-            if (!activeConnections.isEmpty()) {
-                broadcastCurrentMetrics();
+            long now = clock.millis();
+            if (now < nextPushAt) {
+                return;
             }
-        }, pushInterval, pushInterval, TimeUnit.MILLISECONDS);
+            nextPushAt = Math.max(nextPushAt + pushInterval, now);
+            tenantConnections.forEach((tenant, activeConnections) -> {
+                if (!activeConnections.isEmpty()) {
+                    broadcastCurrentMetrics(tenant, activeConnections);
+                }
+            });
+        }, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
         
         log.info("Started metrics streaming with {}ms interval", pushInterval);
     }
     
-    private void broadcastCurrentMetrics() {
+    private void broadcastCurrentMetrics(String tenant, Map<String, SseEmitter> activeConnections) {
         try {
-            // Get current hourly metrics (most relevant for real-time dashboard)
-            Optional<Metrics> hourlyMetrics = metricRepository.getMetrics(
-                properties.aggregation().windows().hourly()
-            );
+            // Get current metrics of the primary window (most relevant for real-time dashboard)
+            Optional<SerializedMetrics> primaryMetrics = primaryMetrics(tenant);
             
-            if (hourlyMetrics.isPresent()) {
-                String metricsJson = objectMapper.writeValueAsString(Map.of(
-                    "timestamp", System.currentTimeMillis(),
-                    "metrics", hourlyMetrics.get(),
-                    "type", "metrics_update"
-                ));
+            if (primaryMetrics.isPresent()) {
+                String metricsJson = buildMetricsMessage(primaryMetrics.get(), "metrics_update");
                 
                 // Send to all active connections
-                activeConnections.entrySet().removeIf(entry -> {
-                    try {
-                        entry.getValue().send(SseEmitter.event()
-                            .name("metrics")
-                            .data(metricsJson, MediaType.APPLICATION_JSON));
-                        return false; // Keep connection
-                    } catch (IOException e) {
-                        log.warn("Failed to send metrics to connection {}: {}", entry.getKey(), e.getMessage());
-                        return true; // Remove connection
-                    }
-                });
+                broadcast(activeConnections, "metrics", metricsJson);
                 
                 if (!activeConnections.isEmpty()) {
                     log.debug("Broadcasted metrics to {} active connections", activeConnections.size());
@@ -145,22 +214,12 @@ public class StreamController {
             } else {
                 // Send "no data" message
                 String noDataJson = objectMapper.writeValueAsString(Map.of(
-                    "timestamp", System.currentTimeMillis(),
+                    "timestamp", clock.millis(),
                     "message", "No metrics data available yet",
                     "type", "no_data"
                 ));
                 
-                activeConnections.entrySet().removeIf(entry -> {
-                    try {
-                        entry.getValue().send(SseEmitter.event()
-                            .name("status")
-                            .data(noDataJson, MediaType.APPLICATION_JSON));
-                        return false;
-                    } catch (IOException e) {
-                        log.warn("Failed to send no-data message to connection {}: {}", entry.getKey(), e.getMessage());
-                        return true;
-                    }
-                });
+                broadcast(activeConnections, "status", noDataJson);
             }
             
         } catch (Exception e) {
@@ -168,22 +227,47 @@ public class StreamController {
         }
     }
     
-    private void sendCurrentMetrics(SseEmitter emitter) {
+    /**
+     * Send one message to all connections of a tenant, dropping those that fail
+     */
+    private void broadcast(Map<String, SseEmitter> activeConnections, String eventName, String json) {
+        JfrEvents.Broadcast jfr = new JfrEvents.Broadcast();
+        jfr.begin();
+        int subscribers = activeConnections.size();
+        int[] failed = new int[1];
+        
+        activeConnections.entrySet().removeIf(entry -> {
+            try {
+                entry.getValue().send(SseEmitter.event()
+                    .name(eventName)
+                    .data(json, MediaType.APPLICATION_JSON));
+                return false; // Keep connection
+            } catch (IOException e) {
+                log.warn("Failed to send {} to connection {}: {}", eventName, entry.getKey(), e.getMessage());
+                failed[0]++;
+                return true; // Remove connection
+            }
+        });
+        
+        jfr.end();
+        if (jfr.shouldCommit()) {
+            jfr.eventName = eventName;
+            jfr.subscribers = subscribers;
+            jfr.failed = failed[0];
+            jfr.commit();
+        }
+    }
+    
+    private void sendCurrentMetrics(SseEmitter emitter, String tenant) {
         try {
-            Optional<Metrics> hourlyMetrics = metricRepository.getMetrics(
-                properties.aggregation().windows().hourly()
-            );
+            Optional<SerializedMetrics> primaryMetrics = primaryMetrics(tenant);
             
             String data;
-            if (hourlyMetrics.isPresent()) {
-                data = objectMapper.writeValueAsString(Map.of(
-                    "timestamp", System.currentTimeMillis(),
-                    "metrics", hourlyMetrics.get(),
-                    "type", "initial_metrics"
-                ));
+            if (primaryMetrics.isPresent()) {
+                data = buildMetricsMessage(primaryMetrics.get(), "initial_metrics");
             } else {
                 data = objectMapper.writeValueAsString(Map.of(
-                    "timestamp", System.currentTimeMillis(),
+                    "timestamp", clock.millis(),
                     "message", "No metrics data available yet - waiting for events",
                     "type", "initial_no_data"
                 ));
@@ -197,4 +281,20 @@ public class StreamController {
             log.warn("Failed to send initial metrics: {}", e.getMessage());
         }
     }
-} 
\ No newline at end of file
+    
+    private Optional<SerializedMetrics> primaryMetrics(String tenant) {
+        return tenantRegistry.find(tenant)
+            .flatMap(partition -> partition.getMetricRepository().getSerializedMetrics(properties.aggregation().primary()));
+    }
+    
+    /**
+     * Wrap the pre-serialized metrics into a stream message without running Jackson again
+     */
+    private String buildMetricsMessage(SerializedMetrics metrics, String type) {
+        return "{\"timestamp\":" + clock.millis()
+            + ",\"type\":\"" + type + "\""
+            + ",\"version\":" + metrics.version()
+            + ",\"metrics\":" + new String(metrics.json(), StandardCharsets.UTF_8)
+            + "}";
+    }
+}
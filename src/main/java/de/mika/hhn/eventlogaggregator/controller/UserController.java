@@ -0,0 +1,112 @@
+package de.mika.hhn.eventlogaggregator.controller;
+
+import de.mika.hhn.eventlogaggregator.config.TenantFilter;
+import de.mika.hhn.eventlogaggregator.service.TenantPartition;
+import de.mika.hhn.eventlogaggregator.service.TenantRegistry;
+import de.mika.hhn.eventlogaggregator.service.UserActivityIndex;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * REST Controller for looking up the activity of single users, served from the
+ * {@link UserActivityIndex} of the request's tenant
+ */
+@RestController
+@RequestMapping("/users")
+@Tag(name = "Users", description = "Endpoints for looking up the activity of single users")
+public class UserController {
+
+    private static final Logger log = LoggerFactory.getLogger(UserController.class);
+
+    private final TenantRegistry tenantRegistry;
+    private final Clock clock;
+
+    public UserController(TenantRegistry tenantRegistry, Clock clock) {
+        this.tenantRegistry = tenantRegistry;
+        this.clock = clock;
+    }
+
+    @GetMapping("/{userId}/activity")
+    @Operation(
+        summary = "Get the activity of a user",
+        description = "Event counts by type and channel and the most recent events of a user within the window. "
+            + "Counts are kept in time buckets and may include events up to one bucket before the window start.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Activity retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid window"),
+            @ApiResponse(responseCode = "404", description = "No events of the user in the window, or unknown tenant")
+        }
+    )
+    public ResponseEntity<Map<String, Object>> getActivity(
+        @PathVariable String userId,
+        @Parameter(description = "Time window as ISO-8601 duration", example = "PT1H")
+        @RequestParam(defaultValue = "PT1H") String window,
+        @RequestAttribute(name = TenantFilter.TENANT_ATTRIBUTE, required = false) String tenant
+    ) {
+        Duration duration;
+        try {
+            duration = Duration.parse(window);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", "Invalid window: " + window
+            ));
+        }
+
+        Optional<UserActivityIndex.Activity> activity = tenantRegistry.find(tenant)
+            .map(TenantPartition::getMetricAggregator)
+            .flatMap(aggregator -> aggregator.getUserActivityIndex().lookup(userId, duration, clock.millis()));
+        if (activity.isEmpty()) {
+            log.debug("No activity of user {} within {}", userId, duration);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                "status", "not_found",
+                "message", "No events of this user within the window",
+                "userId", userId,
+                "window", duration.toString()
+            ));
+        }
+        return ResponseEntity.ok(toResponse(activity.get(), duration));
+    }
+
+    private static Map<String, Object> toResponse(UserActivityIndex.Activity activity, Duration window) {
+        Map<String, Long> byChannel = new LinkedHashMap<>();
+        activity.eventsByChannel().entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            .forEach(entry -> byChannel.put(entry.getKey(), entry.getValue()));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("userId", activity.userId());
+        response.put("window", window.toString());
+        response.put("totalEvents", activity.totalEvents());
+        response.put("eventsByType", activity.eventsByType());
+        response.put("eventsByChannel", byChannel);
+        response.put("since", Instant.ofEpochMilli(activity.since()));
+        response.put("lastSeen", Instant.ofEpochMilli(activity.lastSeen()));
+        response.put("recentEvents", activity.recentEvents().stream()
+            .map(event -> {
+                Map<String, Object> recent = new LinkedHashMap<>();
+                recent.put("type", event.type());
+                recent.put("channel", event.channel());
+                recent.put("timestamp", Instant.ofEpochMilli(event.timestamp()));
+                recent.put("receivedAt", Instant.ofEpochMilli(event.receivedAt()));
+                return recent;
+            })
+            .toList());
+        return response;
+    }
+}
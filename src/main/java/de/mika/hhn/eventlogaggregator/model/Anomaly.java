@@ -0,0 +1,29 @@
+package de.mika.hhn.eventlogaggregator.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+
+@Schema(description = "Detected deviation of an event rate from its learned baseline")
+public record Anomaly(
+    @Schema(description = "Dimension of the rate", example = "channel", allowableValues = {"type", "channel"})
+    String dimension,
+    
+    @Schema(description = "Event type or channel name", example = "#lobby")
+    String name,
+    
+    @Schema(description = "Direction of the deviation", example = "SPIKE", allowableValues = {"SPIKE", "DROP"})
+    String kind,
+    
+    @Schema(description = "Start of the minute in which the deviation was observed", example = "2024-01-15T10:30:00Z")
+    Instant minute,
+    
+    @Schema(description = "Observed events per minute", example = "940")
+    double observedRate,
+    
+    @Schema(description = "Expected events per minute according to the baseline", example = "120.5")
+    double expectedRate,
+    
+    @Schema(description = "Deviation in standard deviations", example = "7.3")
+    double score
+) {}
@@ -0,0 +1,26 @@
+package de.mika.hhn.eventlogaggregator.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Outcome for one element of a submitted batch")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchItemResult(
+    @Schema(description = "Zero-based position of the element in the batch; blank NDJSON lines are not counted", example = "3")
+    int index,
+    
+    @Schema(description = "Outcome of the element", example = "rejected",
+        allowableValues = {"accepted", "duplicate", "rejected", "aborted"})
+    String status,
+    
+    @Schema(description = "Why the element was rejected, only set for rejected elements",
+        example = "/: object has missing required properties ([\"userId\"])")
+    String reason
+) {
+    
+    public static final String ACCEPTED = "accepted";
+    public static final String DUPLICATE = "duplicate";
+    public static final String REJECTED = "rejected";
+    // Valid, but not applied because another element of an all-or-nothing batch was rejected
+    public static final String ABORTED = "aborted";
+}
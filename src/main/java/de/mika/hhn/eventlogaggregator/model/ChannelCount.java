@@ -8,5 +8,8 @@ public record ChannelCount(
     String channel,
     
     @Schema(description = "Number of events in this channel", example = "900")
-    long count
+    long count,
+    
+    @Schema(description = "Estimated number of distinct users active in this channel", example = "42")
+    long distinctUsers
 ) {} 
\ No newline at end of file
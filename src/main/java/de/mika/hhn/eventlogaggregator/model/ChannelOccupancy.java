@@ -0,0 +1,12 @@
+package de.mika.hhn.eventlogaggregator.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Current members of a channel")
+public record ChannelOccupancy(
+    @Schema(description = "Channel name", example = "#lobby")
+    String channel,
+    
+    @Schema(description = "Users who joined the channel and have not left it or timed out", example = "57")
+    long members
+) {}
@@ -1,6 +1,7 @@
 package de.mika.hhn.eventlogaggregator.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 
 import java.time.Instant;
@@ -19,5 +20,9 @@ public record Event(
     String userId,
     
     @Schema(description = "Additional event data")
-    Map<String, Object> payload
+    Map<String, Object> payload,
+    
+    @Schema(description = "Optional client-supplied unique identifier, used for duplicate suppression", example = "9f1c2a7e-3b4d-4e51-a2c0-6d7e8f901234")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    String eventId
 ) {} 
\ No newline at end of file
@@ -0,0 +1,13 @@
+package de.mika.hhn.eventlogaggregator.model;
+
+/**
+ * Event types allowed by the event schema
+ */
+public enum EventType {
+    MESSAGE,
+    LOGIN,
+    LOGOUT,
+    JOIN_CHANNEL,
+    LEAVE_CHANNEL,
+    USER_ACTION
+}
@@ -0,0 +1,142 @@
+package de.mika.hhn.eventlogaggregator.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Internal, flat form of an {@link Event} used on the ingest path.
+ *
+ * Holds the payload fields allowed by the schema as typed, nullable fields instead of
+ * a map, and the timestamp as epoch millis. {@code message} is only kept for duplicate
+ * fingerprinting and is not retained by the aggregation windows. Payload keys outside
+ * the schema, and payload values that are no strings, are dropped.
+ *
+ * Binds straight from the JSON of an event with its own deserializer, so no
+ * {@link Event} or payload map is created on the way.
+ */
+@JsonDeserialize(using = FlatEvent.Deserializer.class)
+public record FlatEvent(
+    EventType type,
+    long timestampMillis,
+    String userId,
+    String channel,
+    String action,
+    String message,
+    String eventId
+) {
+
+    /**
+     * Flatten a public event
+     *
+     * @throws IllegalArgumentException if the event type is unknown
+     */
+    public static FlatEvent from(Event event) {
+        var payload = event.payload();
+        return new FlatEvent(
+            EventType.valueOf(event.type()),
+            event.timestamp() != null ? event.timestamp().toEpochMilli() : 0,
+            event.userId(),
+            payload != null && payload.get("channel") instanceof String channel ? channel : null,
+            payload != null && payload.get("action") instanceof String action ? action : null,
+            payload != null && payload.get("message") instanceof String message ? message : null,
+            event.eventId()
+        );
+    }
+
+    /**
+     * Reads the fields of an event object token by token, skipping everything
+     * outside the schema
+     */
+    static class Deserializer extends StdDeserializer<FlatEvent> {
+
+        Deserializer() {
+            super(FlatEvent.class);
+        }
+
+        @Override
+        public FlatEvent deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (!parser.isExpectedStartObjectToken()) {
+                return (FlatEvent) context.handleUnexpectedToken(FlatEvent.class, parser);
+            }
+            EventType type = null;
+            long timestampMillis = 0;
+            String userId = null;
+            String channel = null;
+            String action = null;
+            String message = null;
+            String eventId = null;
+
+            for (String field = parser.nextFieldName(); field != null; field = parser.nextFieldName()) {
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "type" -> type = type(parser, context, token);
+                    case "timestamp" -> timestampMillis = timestampMillis(parser, context, token);
+                    case "userId" -> userId = text(parser, token);
+                    case "eventId" -> eventId = text(parser, token);
+                    case "payload" -> {
+                        if (token != JsonToken.START_OBJECT) {
+                            parser.skipChildren();
+                            continue;
+                        }
+                        for (String key = parser.nextFieldName(); key != null; key = parser.nextFieldName()) {
+                            JsonToken value = parser.nextToken();
+                            switch (key) {
+                                case "channel" -> channel = text(parser, value);
+                                case "action" -> action = text(parser, value);
+                                case "message" -> message = text(parser, value);
+                                default -> parser.skipChildren();
+                            }
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            if (type == null) {
+                return context.reportInputMismatch(this, "Missing event type");
+            }
+            return new FlatEvent(type, timestampMillis, userId, channel, action, message, eventId);
+        }
+
+        private static EventType type(JsonParser parser, DeserializationContext context, JsonToken token)
+                throws IOException {
+            String name = text(parser, token);
+            try {
+                return name != null ? EventType.valueOf(name) : null;
+            } catch (IllegalArgumentException e) {
+                throw context.weirdStringException(name, EventType.class, "Unknown event type");
+            }
+        }
+
+        private static long timestampMillis(JsonParser parser, DeserializationContext context, JsonToken token)
+                throws IOException {
+            String text = text(parser, token);
+            if (text == null) {
+                return 0;
+            }
+            try {
+                return DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(text, Instant::from).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                throw context.weirdStringException(text, Instant.class, e.getMessage());
+            }
+        }
+
+        /**
+         * String value of the current token, null for any other value (which is skipped)
+         */
+        private static String text(JsonParser parser, JsonToken token) throws IOException {
+            if (token == JsonToken.VALUE_STRING) {
+                return parser.getText();
+            }
+            parser.skipChildren();
+            return null;
+        }
+    }
+}
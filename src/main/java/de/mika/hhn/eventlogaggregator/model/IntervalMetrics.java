@@ -0,0 +1,39 @@
+package de.mika.hhn.eventlogaggregator.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Schema(description = "Aggregated metrics of a closed interval, finalized once after it ended")
+public record IntervalMetrics(
+    @Schema(description = "Name of the interval definition", example = "hour")
+    String interval,
+
+    @Schema(description = "Start of the interval, inclusive", example = "2024-01-15T10:00:00Z")
+    Instant start,
+
+    @Schema(description = "End of the interval, exclusive", example = "2024-01-15T11:00:00Z")
+    Instant end,
+
+    @Schema(description = "Events in the interval", example = "32040")
+    long events,
+
+    @Schema(description = "Number of distinct users in the interval", example = "1280")
+    long activeUsers,
+
+    @Schema(description = "Average events per minute", example = "534")
+    long eventsPerMinute,
+
+    @Schema(description = "Events of the busiest channels, the busiest first", example = "{\"#lobby\": 900}")
+    Map<String, Long> topChannels,
+
+    @Schema(description = "True if counts were scaled up from a sample because of load shedding", example = "false")
+    boolean estimated,
+
+    @Schema(description = "Events in the interval per event type", example = "{\"MESSAGE\": 31200, \"LOGIN\": 840}")
+    Map<String, Long> eventsByType,
+
+    @Schema(description = "When the interval was finalized", example = "2024-01-15T11:00:01Z")
+    Instant finalizedAt
+) {}
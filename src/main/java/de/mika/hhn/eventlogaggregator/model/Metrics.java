@@ -4,6 +4,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
 
 import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 
 @Schema(description = "Aggregated metrics for a specific time window")
 public record Metrics(
@@ -17,5 +18,17 @@ public record Metrics(
     long eventsPerMinute,
     
     @Schema(description = "Top channels by event count")
-    List<ChannelCount> topChannels
+    List<ChannelCount> topChannels,
+    
+    @Schema(description = "True if counts were scaled up from a sample because of load shedding", example = "false")
+    boolean estimated,
+    
+    @Schema(description = "Open sessions and durations of the sessions closed within the time window")
+    SessionStats sessions,
+    
+    @Schema(description = "Channels with the most current members")
+    List<ChannelOccupancy> channelOccupancy,
+    
+    @Schema(description = "Events in the time window per event type", example = "{\"MESSAGE\": 51200, \"LOGIN\": 730}")
+    Map<String, Long> eventsByType
 ) {} 
\ No newline at end of file
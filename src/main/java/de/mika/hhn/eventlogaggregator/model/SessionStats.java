@@ -0,0 +1,24 @@
+package de.mika.hhn.eventlogaggregator.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Sessions derived from LOGIN/LOGOUT events and inactivity timeouts")
+public record SessionStats(
+    @Schema(description = "Sessions open right now", example = "312")
+    long concurrentSessions,
+    
+    @Schema(description = "Sessions closed within the time window", example = "1045")
+    long closedSessions,
+    
+    @Schema(description = "Median duration of the sessions closed within the window, in seconds", example = "840")
+    long durationP50Seconds,
+    
+    @Schema(description = "90th percentile of the session duration, in seconds", example = "3600")
+    long durationP90Seconds,
+    
+    @Schema(description = "99th percentile of the session duration, in seconds", example = "14400")
+    long durationP99Seconds
+) {
+    
+    public static final SessionStats EMPTY = new SessionStats(0, 0, 0, 0, 0);
+}
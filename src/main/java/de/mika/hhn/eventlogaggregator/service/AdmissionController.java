@@ -0,0 +1,233 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control for incoming events under memory pressure.
+ *
+ * Pressure is derived from the estimated heap retained by the partition's aggregation
+ * state and, unless the controller only enforces a tenant quota, from the heap occupancy
+ * after the last GC. Between the low and high watermark
+ * the share of admitted events is reduced linearly down to {@code minSampleRate}.
+ * The admission budget is split between event types by max-min fairness, so rare
+ * types (LOGIN, LOGOUT, ...) stay complete while the flooding type gets sampled.
+ *
+ * Admitted events carry the weight {@code 1 / probability} so the aggregator can
+ * scale counts back up. Once pressure falls below the low watermark all
+ * probabilities return to 1.
+ */
+@Service
+public class AdmissionController {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionController.class);
+
+    private final ElaProperties.Admission config;
+    private final boolean heapPressure;
+    private final List<MemoryPoolMXBean> heapPools;
+
+    private final Map<String, TypeState> types = new ConcurrentHashMap<>();
+    private final LongAdder shedCount = new LongAdder();
+    private volatile double pressure = 0.0;
+
+    @Autowired
+    public AdmissionController(ElaProperties properties) {
+        this(properties.admission());
+    }
+
+    /**
+     * Admission control with its own limits, reacting to heap occupancy as well
+     */
+    public AdmissionController(ElaProperties.Admission config) {
+        this(config, true);
+    }
+
+    /**
+     * Admission control with its own limits, e.g. for a tenant partition
+     *
+     * @param heapPressure whether the heap occupancy of the whole JVM counts as pressure;
+     *        without it only the retained bytes passed to {@link #adjust} do, so a
+     *        partition is never sampled because of another one
+     */
+    public AdmissionController(ElaProperties.Admission config, boolean heapPressure) {
+        this.config = config;
+        this.heapPressure = heapPressure;
+        this.heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported())
+            .toList();
+    }
+
+    /**
+     * Decide whether to keep an event of the given type
+     *
+     * @return the weight to count the event with, or 0 if it is shed
+     */
+    public double admit(String type) {
+        if (config == null || !config.enabled()) {
+            return 1.0;
+        }
+
+        TypeState state = types.computeIfAbsent(type == null ? "" : type, key -> new TypeState());
+        state.arrivals.increment();
+
+        double probability = state.probability;
+        if (probability >= 1.0) {
+            return 1.0;
+        }
+        if (ThreadLocalRandom.current().nextDouble() < probability) {
+            return 1.0 / probability;
+        }
+        shedCount.increment();
+        return 0.0;
+    }
+
+    /**
+     * Re-evaluate pressure and per-type sampling probabilities.
+     * Called once per aggregation tick with the estimated heap retained by the
+     * aggregation state.
+     */
+    public void adjust(long retainedBytes) {
+        if (config == null || !config.enabled()) {
+            return;
+        }
+
+        double heapRatio = heapPressure ? heapOccupancy() : 0.0;
+        long maxRetainedBytes = config.maxRetainedMemory() != null ? config.maxRetainedMemory().toBytes() : 0;
+        double retainedRatio = maxRetainedBytes > 0 ? (double) retainedBytes / maxRetainedBytes : 0.0;
+        double newPressure = Math.max(toPressure(heapRatio), toPressure(retainedRatio));
+
+        List<Map.Entry<String, TypeState>> entries = new ArrayList<>(types.entrySet());
+        long[] arrivals = new long[entries.size()];
+        long totalArrivals = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            arrivals[i] = entries.get(i).getValue().arrivals.sumThenReset();
+            totalArrivals += arrivals[i];
+        }
+
+        if (newPressure <= 0.0) {
+            entries.forEach(entry -> entry.getValue().probability = 1.0);
+        } else {
+            double keepRatio = 1.0 - newPressure * (1.0 - config.minSampleRate());
+            distributeBudget(entries, arrivals, keepRatio * totalArrivals);
+        }
+
+        if ((newPressure > 0.0) != (pressure > 0.0)) {
+            if (newPressure > 0.0) {
+                log.warn("Memory pressure detected (heap={}, retained={}), switching to sampled admission",
+                    String.format("%.2f", heapRatio), String.format("%.2f", retainedRatio));
+            } else {
+                log.info("Memory pressure resolved, back to full fidelity ({} events shed so far)", shedCount.sum());
+            }
+        }
+        pressure = newPressure;
+    }
+
+    /**
+     * Current pressure level between 0 (none) and 1 (at or above the high watermark)
+     */
+    public double getPressure() {
+        return pressure;
+    }
+
+    public boolean isSampling() {
+        return pressure > 0.0;
+    }
+
+    /**
+     * Total number of events shed since startup
+     */
+    public long getShedCount() {
+        return shedCount.sum();
+    }
+
+    /**
+     * Current admission probability per event type
+     */
+    public Map<String, Double> getSamplingRates() {
+        Map<String, Double> rates = new TreeMap<>();
+        types.forEach((type, state) -> rates.put(type, state.probability));
+        return rates;
+    }
+
+    /**
+     * Water-filling: types below the fair share keep everything, the remaining
+     * budget is divided evenly between the larger types.
+     */
+    private void distributeBudget(List<Map.Entry<String, TypeState>> entries, long[] arrivals, double budget) {
+        Integer[] order = new Integer[entries.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> arrivals[i]));
+
+        double remaining = budget;
+        int typesLeft = order.length;
+        for (int index : order) {
+            double fairShare = remaining / typesLeft;
+            double probability;
+            if (arrivals[index] <= fairShare) {
+                probability = 1.0;
+                remaining -= arrivals[index];
+            } else {
+                probability = fairShare / arrivals[index];
+                remaining -= fairShare;
+            }
+            typesLeft--;
+            entries.get(index).getValue().probability = Math.max(config.minSampleRate(), Math.min(1.0, probability));
+        }
+    }
+
+    private double toPressure(double ratio) {
+        if (ratio <= config.lowWatermark()) {
+            return 0.0;
+        }
+        if (ratio >= config.highWatermark()) {
+            return 1.0;
+        }
+        return (ratio - config.lowWatermark()) / (config.highWatermark() - config.lowWatermark());
+    }
+
+    /**
+     * Heap occupancy after the last collection, which ignores garbage that is
+     * about to be collected anyway
+     */
+    private double heapOccupancy() {
+        long used = 0;
+        long max = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage == null || usage.getMax() <= 0) {
+                continue;
+            }
+            used += usage.getUsed();
+            max += usage.getMax();
+        }
+        if (max <= 0) {
+            Runtime runtime = Runtime.getRuntime();
+            return (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+        }
+        return (double) used / max;
+    }
+
+    private static class TypeState {
+        final LongAdder arrivals = new LongAdder();
+        volatile double probability = 1.0;
+    }
+}
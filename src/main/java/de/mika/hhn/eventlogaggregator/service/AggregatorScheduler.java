@@ -6,6 +6,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Service for scheduling automatic metric aggregation
  */
@@ -14,26 +17,41 @@ public class AggregatorScheduler {
     
     private static final Logger log = LoggerFactory.getLogger(AggregatorScheduler.class);
     
-    private final MetricAggregator metricAggregator;
+    private final TenantRegistry tenantRegistry;
     private final ElaProperties properties;
+    private final boolean simulated;
     
-    public AggregatorScheduler(MetricAggregator metricAggregator, ElaProperties properties) {
-        this.metricAggregator = metricAggregator;
+    public AggregatorScheduler(TenantRegistry tenantRegistry, ElaProperties properties) {
+        this.tenantRegistry = tenantRegistry;
         this.properties = properties;
+        this.simulated = properties.simulation() != null && properties.simulation().enabled();
     }
     
     /**
-     * Scheduled task to aggregate metrics
+     * Scheduled task to aggregate metrics of all tenant partitions
      * Runs every second (1000ms) as configured in application.yml
      */
     @Scheduled(fixedRate = 1000) // 1 second interval
     public void aggregateMetrics() {
-        try {
-            metricAggregator.aggregateMetrics();
-            log.debug("Scheduled metric aggregation completed successfully");
-        } catch (Exception e) {
-            log.error("Error during scheduled metric aggregation: {}", e.getMessage(), e);
+        // In simulation mode the SimulationRunner ticks on virtual time instead
+        if (!simulated) {
+            aggregateAll();
+        }
+    }
+    
+    /**
+     * Aggregate metrics of all tenant partitions now
+     */
+    public void aggregateAll() {
+        for (TenantPartition partition : tenantRegistry.getPartitions()) {
+            try {
+                partition.getMetricAggregator().aggregateMetrics();
+            } catch (Exception e) {
+                log.error("Error during scheduled metric aggregation of tenant {}: {}",
+                    partition.getTenant(), e.getMessage(), e);
+            }
         }
+        log.debug("Scheduled metric aggregation completed successfully");
     }
     
     /**
@@ -42,13 +60,13 @@ public class AggregatorScheduler {
     @Scheduled(fixedRate = 60000) // Every minute
     public void logSystemHealth() {
         try {
-            var windows = properties.aggregation().windows();
-            int hourlyEvents = metricAggregator.getCurrentEventCount(windows.hourly());
-            int dailyEvents = metricAggregator.getCurrentEventCount(windows.daily());
-            int weeklyEvents = metricAggregator.getCurrentEventCount(windows.weekly());
+            MetricAggregator metricAggregator = tenantRegistry.getDefault().getMetricAggregator();
+            Map<String, Long> windowEvents = new LinkedHashMap<>();
+            properties.aggregation().windows().forEach((name, window) ->
+                windowEvents.put(name, metricAggregator.getCurrentEventCount(window)));
             
-            log.info("System Health - Events in windows: hourly={}, daily={}, weekly={}", 
-                hourlyEvents, dailyEvents, weeklyEvents);
+            log.info("System Health - Events in windows: {}, buffered={}, tenants={}", 
+                windowEvents, metricAggregator.getBufferedEventCount(), tenantRegistry.getPartitions().size());
                 
         } catch (Exception e) {
             log.error("Error during system health check: {}", e.getMessage(), e);
@@ -0,0 +1,129 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures heap allocation per ingest source and per aggregation tick with the
+ * per-thread allocation counters of the JVM.
+ *
+ * Callers take {@link #start()} before the work and report it with
+ * {@link #record(String, long, long)} on the same thread afterwards. Reading the
+ * counter costs a few dozen nanoseconds, so tracking stays on in production.
+ */
+@Service
+public class AllocationTracker {
+
+    public static final String HTTP = "http";
+    public static final String HTTP_BATCH = "http-batch";
+    public static final String INBOX = "inbox";
+    public static final String TAIL = "tail";
+    public static final String SOCKET = "socket";
+
+    private static final Logger log = LoggerFactory.getLogger(AllocationTracker.class);
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final Map<String, Counters> sources = new ConcurrentHashMap<>();
+    private final Counters ticks = new Counters();
+    private volatile long lastTickBytes = 0;
+
+    public AllocationTracker() {
+        this.threads = supportedThreadMXBean();
+        if (threads == null) {
+            log.info("Thread allocation counters not supported by this JVM, allocation tracking disabled");
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean supportedThreadMXBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+            && bean.isThreadAllocatedMemorySupported()) {
+            if (!bean.isThreadAllocatedMemoryEnabled()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+            }
+            return bean;
+        }
+        return null;
+    }
+
+    /**
+     * Bytes allocated by the current thread so far, -1 if not supported
+     */
+    public long start() {
+        return threads != null ? threads.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * Attribute the bytes allocated by the current thread since {@code start} to a source
+     */
+    public void record(String source, long start, long events) {
+        if (start < 0) {
+            return;
+        }
+        long bytes = threads.getCurrentThreadAllocatedBytes() - start;
+        sources.computeIfAbsent(source, key -> new Counters()).add(bytes, events);
+    }
+
+    /**
+     * Attribute the bytes allocated by the current thread since {@code start} to one aggregation tick
+     */
+    public void recordTick(long start) {
+        if (start < 0) {
+            return;
+        }
+        long bytes = threads.getCurrentThreadAllocatedBytes() - start;
+        lastTickBytes = bytes;
+        ticks.add(bytes, 1);
+    }
+
+    public boolean isSupported() {
+        return threads != null;
+    }
+
+    /**
+     * Totals and averages per source and for the aggregation ticks
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> perSource = new TreeMap<>();
+        sources.forEach((source, counters) -> {
+            long bytes = counters.bytes.sum();
+            long events = counters.units.sum();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("events", events);
+            stats.put("allocatedBytes", bytes);
+            stats.put("bytesPerEvent", events > 0 ? bytes / events : 0);
+            perSource.put(source, stats);
+        });
+
+        long tickCount = ticks.units.sum();
+        long tickBytes = ticks.bytes.sum();
+        Map<String, Object> aggregation = new LinkedHashMap<>();
+        aggregation.put("ticks", tickCount);
+        aggregation.put("allocatedBytes", tickBytes);
+        aggregation.put("bytesPerTick", tickCount > 0 ? tickBytes / tickCount : 0);
+        aggregation.put("lastTickBytes", lastTickBytes);
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("supported", isSupported());
+        snapshot.put("sources", perSource);
+        snapshot.put("aggregation", aggregation);
+        return snapshot;
+    }
+
+    private static class Counters {
+        final LongAdder bytes = new LongAdder();
+        final LongAdder units = new LongAdder();
+
+        void add(long allocated, long count) {
+            bytes.add(allocated);
+            units.add(count);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.model.Anomaly;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detects unusual event rates per event type and per channel.
+ *
+ * Events only increment a per-key counter for the current minute. When a minute closes,
+ * its count is compared with the baseline of the key: a seasonal per-minute-of-day
+ * profile once it has enough history, otherwise an exponentially weighted moving mean
+ * and variance. Deviations beyond {@code threshold} standard deviations (with a Poisson
+ * floor on the variance) raise an {@link Anomaly}, which is kept in a bounded history
+ * and published as application event. Cost is O(1) per event and O(keys) per minute.
+ *
+ * At most {@code maxTrackedChannels} channels get a baseline. Events of further channels
+ * are counted as candidates for the minute; when it closes, a candidate busier than the
+ * quietest tracked channel takes its place. Channels with an open anomaly are never
+ * displaced, so a channel that dropped to zero stays tracked until it recovers.
+ */
+@Service
+public class AnomalyDetector {
+
+    private static final Logger log = LoggerFactory.getLogger(AnomalyDetector.class);
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final int MAX_CATCH_UP_MINUTES = 60;
+
+    private final ElaProperties.Anomalies config;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Map<String, Baseline> types = new ConcurrentHashMap<>();
+    private final Map<String, Baseline> channels = new ConcurrentHashMap<>();
+    private final AtomicInteger trackedChannels = new AtomicInteger();
+    private final Map<String, LongAdder> candidateChannels = new ConcurrentHashMap<>();
+    private final Deque<Anomaly> history = new ArrayDeque<>();
+    private long currentMinute = -1;
+
+    public AnomalyDetector(ElaProperties properties, ApplicationEventPublisher eventPublisher) {
+        this.config = properties.anomalies();
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Count an event for its type and channel in the current minute
+     */
+    public void record(String type, String channel) {
+        if (config == null || !config.enabled()) {
+            return;
+        }
+        if (type != null) {
+            types.computeIfAbsent(type, key -> new Baseline()).count.increment();
+        }
+        if (channel != null) {
+            Baseline baseline = channels.get(channel);
+            if (baseline == null) {
+                if (trackedChannels.get() >= config.maxTrackedChannels()) {
+                    countCandidate(channel);
+                    return;
+                }
+                baseline = channels.computeIfAbsent(channel, key -> {
+                    trackedChannels.incrementAndGet();
+                    return new Baseline();
+                });
+            }
+            baseline.count.increment();
+        }
+    }
+
+    /**
+     * Close all minutes that ended before {@code nowMillis}. Called on every aggregation tick.
+     */
+    public synchronized void tick(long nowMillis) {
+        if (config == null || !config.enabled()) {
+            return;
+        }
+        long minute = nowMillis / 60_000;
+        if (currentMinute < 0) {
+            currentMinute = minute;
+            return;
+        }
+        if (minute <= currentMinute) {
+            return;
+        }
+
+        // The first closed minute holds the counted events, any further ones were empty
+        long missed = Math.min(minute - currentMinute, MAX_CATCH_UP_MINUTES);
+        for (long i = 0; i < missed; i++) {
+            closeMinute("type", types, currentMinute + i, i == 0);
+            closeMinute("channel", channels, currentMinute + i, i == 0);
+        }
+        currentMinute = minute;
+        evictIdleChannels();
+        promoteCandidates();
+    }
+
+    /**
+     * Most recent anomalies, newest first
+     */
+    public synchronized List<Anomaly> getRecentAnomalies() {
+        return new ArrayList<>(history);
+    }
+
+    boolean isTracked(String channel) {
+        return channels.containsKey(channel);
+    }
+
+    private void closeMinute(String dimension, Map<String, Baseline> baselines, long minute, boolean useCount) {
+        int slot = (int) (minute % MINUTES_PER_DAY);
+        baselines.forEach((name, baseline) -> {
+            double rate = useCount ? baseline.count.sumThenReset() : 0;
+            Anomaly anomaly = baseline.observe(rate, slot, minute, dimension, name);
+            if (anomaly != null) {
+                raise(anomaly);
+            }
+        });
+    }
+
+    private void raise(Anomaly anomaly) {
+        history.addFirst(anomaly);
+        while (history.size() > config.historySize()) {
+            history.removeLast();
+        }
+        log.warn("Rate anomaly: {} {} {} - observed {}/min, expected {}/min (score {})",
+            anomaly.kind(), anomaly.dimension(), anomaly.name(),
+            Math.round(anomaly.observedRate()), Math.round(anomaly.expectedRate()),
+            String.format("%.1f", anomaly.score()));
+        eventPublisher.publishEvent(anomaly);
+    }
+
+    /**
+     * Count an event of an untracked channel; the candidate set is bounded like the tracked one
+     */
+    private void countCandidate(String channel) {
+        LongAdder count = candidateChannels.get(channel);
+        if (count == null) {
+            if (candidateChannels.size() >= config.maxTrackedChannels()) {
+                return;
+            }
+            count = candidateChannels.computeIfAbsent(channel, key -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Let the busiest candidates of the closed minute replace the quietest tracked channels
+     */
+    private void promoteCandidates() {
+        if (candidateChannels.isEmpty()) {
+            return;
+        }
+        Map<String, Long> rates = new HashMap<>();
+        candidateChannels.forEach((name, count) -> rates.put(name, count.sum()));
+        candidateChannels.clear();
+
+        PriorityQueue<Map.Entry<String, Baseline>> quietest =
+            new PriorityQueue<>(Comparator.comparingDouble(entry -> entry.getValue().mean));
+        channels.entrySet().stream()
+            .filter(entry -> !entry.getValue().anomalous)
+            .forEach(quietest::add);
+
+        rates.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            .forEach(candidate -> {
+                if (trackedChannels.get() >= config.maxTrackedChannels()) {
+                    Map.Entry<String, Baseline> victim = quietest.peek();
+                    if (victim == null || victim.getValue().mean >= candidate.getValue()) {
+                        return;
+                    }
+                    quietest.poll();
+                    channels.remove(victim.getKey());
+                    trackedChannels.decrementAndGet();
+                }
+                // Seed the baseline with the minute the candidate was counted in
+                Baseline baseline = new Baseline();
+                baseline.updateEwma(candidate.getValue());
+                if (channels.putIfAbsent(candidate.getKey(), baseline) == null) {
+                    trackedChannels.incrementAndGet();
+                }
+            });
+    }
+
+    /**
+     * Free slots of channels that have gone quiet, so new channels can be tracked
+     */
+    private void evictIdleChannels() {
+        channels.entrySet().removeIf(entry -> {
+            Baseline baseline = entry.getValue();
+            boolean idle = !baseline.anomalous
+                && baseline.observations >= config.minObservations() && baseline.mean < 0.01;
+            if (idle) {
+                trackedChannels.decrementAndGet();
+            }
+            return idle;
+        });
+    }
+
+    private class Baseline {
+        final LongAdder count = new LongAdder();
+        double mean;
+        double variance;
+        long observations;
+        boolean anomalous;
+
+        // Seasonal profile, allocated once the key has been seen for a while
+        double[] seasonalMean;
+        double[] seasonalVariance;
+        short[] seasonalObservations;
+
+        Anomaly observe(double rate, int slot, long minute, String dimension, String name) {
+            double expected;
+            double expectedVariance;
+            boolean ready;
+            if (seasonalMean != null && seasonalObservations[slot] >= config.minSeasonalObservations()) {
+                expected = seasonalMean[slot];
+                expectedVariance = seasonalVariance[slot];
+                ready = true;
+            } else {
+                expected = mean;
+                expectedVariance = variance;
+                ready = observations >= config.minObservations();
+            }
+
+            Anomaly anomaly = null;
+            if (ready && (rate >= config.minRate() || expected >= config.minRate())) {
+                // Counts are at least Poisson-distributed, never trust a smaller spread
+                double deviation = Math.sqrt(Math.max(expectedVariance, Math.max(expected, 1.0)));
+                double score = (rate - expected) / deviation;
+                boolean nowAnomalous = Math.abs(score) > config.threshold();
+                if (nowAnomalous && !anomalous) {
+                    anomaly = new Anomaly(dimension, name, score > 0 ? "SPIKE" : "DROP",
+                        Instant.ofEpochSecond(minute * 60), rate, expected, score);
+                } else if (!nowAnomalous && anomalous) {
+                    log.info("Rate of {} {} back to normal: {}/min", dimension, name, Math.round(rate));
+                }
+                anomalous = nowAnomalous;
+            }
+
+            updateEwma(rate);
+            updateSeasonal(rate, slot);
+            return anomaly;
+        }
+
+        private void updateEwma(double rate) {
+            if (observations == 0) {
+                mean = rate;
+                variance = 0;
+            } else {
+                double diff = rate - mean;
+                double increment = config.alpha() * diff;
+                mean += increment;
+                variance = (1 - config.alpha()) * (variance + diff * increment);
+            }
+            observations++;
+        }
+
+        private void updateSeasonal(double rate, int slot) {
+            if (seasonalMean == null) {
+                if (observations < config.minObservations()) {
+                    return;
+                }
+                seasonalMean = new double[MINUTES_PER_DAY];
+                seasonalVariance = new double[MINUTES_PER_DAY];
+                seasonalObservations = new short[MINUTES_PER_DAY];
+            }
+            if (seasonalObservations[slot] == 0) {
+                seasonalMean[slot] = rate;
+                seasonalVariance[slot] = variance;
+            } else {
+                double diff = rate - seasonalMean[slot];
+                double increment = config.seasonalAlpha() * diff;
+                seasonalMean[slot] += increment;
+                seasonalVariance[slot] = (1 - config.seasonalAlpha()) * (seasonalVariance[slot] + diff * increment);
+            }
+            if (seasonalObservations[slot] < Short.MAX_VALUE) {
+                seasonalObservations[slot]++;
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import java.util.Arrays;
+
+/**
+ * Minimal Bloom filter over pre-computed 128-bit hashes (two 64-bit halves),
+ * using double hashing to derive the probe positions. Not thread-safe.
+ */
+class BloomFilter {
+    
+    private static final double LN2 = Math.log(2);
+    
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+    
+    BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (LN2 * LN2));
+        this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (m + 63) / 64)];
+        this.bitCount = (long) bits.length * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * LN2));
+    }
+    
+    boolean mightContain(long hash1, long hash2) {
+        long combined = hash1;
+        for (int i = 0; i < hashCount; i++) {
+            long index = (combined & Long.MAX_VALUE) % bitCount;
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+            combined += hash2;
+        }
+        return true;
+    }
+    
+    void put(long hash1, long hash2) {
+        long combined = hash1;
+        for (int i = 0; i < hashCount; i++) {
+            long index = (combined & Long.MAX_VALUE) % bitCount;
+            bits[(int) (index >>> 6)] |= 1L << index;
+            combined += hash2;
+        }
+    }
+    
+    void clear() {
+        Arrays.fill(bits, 0L);
+    }
+    
+    long sizeInBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+    
+    int hashCount() {
+        return hashCount;
+    }
+}
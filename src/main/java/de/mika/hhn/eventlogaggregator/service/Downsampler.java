@@ -0,0 +1,123 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import java.util.Arrays;
+
+/**
+ * Shape-preserving downsampling of a time series to a number of points. Both
+ * algorithms return indices into the input, so the chosen points are real samples.
+ */
+public enum Downsampler {
+
+    /**
+     * Largest-Triangle-Three-Buckets: per bucket the point spanning the largest
+     * triangle with the previously chosen point and the average of the next bucket.
+     * Keeps the visual shape, including single spikes, with smooth lines.
+     */
+    LTTB {
+        @Override
+        int[] select(long[] x, double[] y, int points) {
+            int n = x.length;
+            if (points >= n || points < 3) {
+                return identity(n);
+            }
+            int[] selected = new int[points];
+            int count = 0;
+            selected[count++] = 0;
+
+            // First and last point are kept, the others are split into points - 2 buckets
+            double every = (double) (n - 2) / (points - 2);
+            int previous = 0;
+            for (int bucket = 0; bucket < points - 2; bucket++) {
+                int nextStart = (int) Math.floor((bucket + 1) * every) + 1;
+                int nextEnd = Math.min((int) Math.floor((bucket + 2) * every) + 1, n);
+                double averageX = 0;
+                double averageY = 0;
+                for (int i = nextStart; i < nextEnd; i++) {
+                    averageX += x[i];
+                    averageY += y[i];
+                }
+                int nextCount = Math.max(1, nextEnd - nextStart);
+                averageX /= nextCount;
+                averageY /= nextCount;
+
+                int start = (int) Math.floor(bucket * every) + 1;
+                int end = (int) Math.floor((bucket + 1) * every) + 1;
+                double maxArea = -1;
+                int chosen = start;
+                for (int i = start; i < end; i++) {
+                    double area = Math.abs((x[previous] - averageX) * (y[i] - y[previous])
+                        - (x[previous] - (double) x[i]) * (averageY - y[previous]));
+                    if (area > maxArea) {
+                        maxArea = area;
+                        chosen = i;
+                    }
+                }
+                selected[count++] = chosen;
+                previous = chosen;
+            }
+            selected[count++] = n - 1;
+            return selected;
+        }
+    },
+
+    /**
+     * Minimum and maximum of every bucket, in time order. Keeps the exact value range
+     * of each bucket, so peaks are never cut, at the cost of a jagged line.
+     */
+    MINMAX {
+        @Override
+        int[] select(long[] x, double[] y, int points) {
+            int n = x.length;
+            if (points >= n || points < 2) {
+                return identity(n);
+            }
+            int buckets = points / 2;
+            int[] selected = new int[buckets * 2];
+            int count = 0;
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                int start = (int) ((long) bucket * n / buckets);
+                int end = (int) ((long) (bucket + 1) * n / buckets);
+                int min = start;
+                int max = start;
+                for (int i = start + 1; i < end; i++) {
+                    if (y[i] < y[min]) {
+                        min = i;
+                    }
+                    if (y[i] > y[max]) {
+                        max = i;
+                    }
+                }
+                selected[count++] = Math.min(min, max);
+                if (min != max) {
+                    selected[count++] = Math.max(min, max);
+                }
+            }
+            return Arrays.copyOf(selected, count);
+        }
+    };
+
+    /**
+     * Indices of the samples to keep, ascending, at most {@code points} of them
+     */
+    abstract int[] select(long[] x, double[] y, int points);
+
+    /**
+     * Case-insensitive lookup by name
+     *
+     * @throws IllegalArgumentException for an unknown algorithm
+     */
+    public static Downsampler of(String name) {
+        for (Downsampler downsampler : values()) {
+            if (downsampler.name().equalsIgnoreCase(name.trim())) {
+                return downsampler;
+            }
+        }
+        throw new IllegalArgumentException("Unknown algorithm: " + name);
+    }
+
+    private static int[] identity(int n) {
+        int[] indices = new int[n];
+        Arrays.setAll(indices, i -> i);
+        return indices;
+    }
+}
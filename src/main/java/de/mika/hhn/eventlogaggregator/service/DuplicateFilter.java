@@ -0,0 +1,212 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.model.Event;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suppresses duplicate events (producer retries, re-delivered files) within the
+ * configured horizon, by default the longest aggregation window.
+ * 
+ * Events are identified by their client-supplied {@code eventId} or, if absent, by a
+ * fingerprint over type, timestamp, user and payload. Seen keys are recorded in a ring
+ * of time-bucketed Bloom filters covering the horizon; when a bucket expires its
+ * filter is cleared and reused, so memory stays fixed regardless of traffic. A filter
+ * that reaches its design capacity before its time is up is rotated early, so heavy
+ * traffic shortens the horizon instead of saturating the filters.
+ */
+@Service
+public class DuplicateFilter {
+    
+    private static final Logger log = LoggerFactory.getLogger(DuplicateFilter.class);
+    
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long SEED_1 = 0xcbf29ce484222325L;
+    private static final long SEED_2 = 0x84222325cbf29ce4L;
+    
+    private final boolean enabled;
+    private final Clock clock;
+    private final long bucketMillis;
+    private final long bucketCapacity;
+    private final BloomFilter[] filters;
+    private long currentBucket;
+    private int currentSlot;
+    private long currentInsertions;
+    
+    private final AtomicLong duplicateCount = new AtomicLong();
+    private final AtomicLong earlyRotations = new AtomicLong();
+    
+    public DuplicateFilter(ElaProperties properties, Clock clock) {
+        this.clock = clock;
+        ElaProperties.Deduplication config = properties.deduplication();
+        this.enabled = config != null && config.enabled();
+        
+        if (!enabled) {
+            this.bucketMillis = 0;
+            this.bucketCapacity = 0;
+            this.filters = new BloomFilter[0];
+            this.currentBucket = 0;
+            log.info("Duplicate suppression disabled");
+            return;
+        }
+        
+        Duration horizon = config.horizon() != null ? config.horizon() : properties.aggregation().longest();
+        int buckets = Math.max(1, config.buckets());
+        
+        this.bucketMillis = Math.max(1, horizon.toMillis() / buckets);
+        this.bucketCapacity = Math.max(1, config.expectedEventsPerBucket());
+        this.filters = new BloomFilter[buckets];
+        // A key is checked against every bucket, so split the target rate between them
+        double perBucketRate = config.falsePositiveRate() / buckets;
+        for (int i = 0; i < buckets; i++) {
+            filters[i] = new BloomFilter(config.expectedEventsPerBucket(), perBucketRate);
+        }
+        this.currentBucket = clock.millis() / bucketMillis;
+        
+        log.info("Duplicate suppression enabled: horizon={}, buckets={}, hashes={}, memory={} KiB",
+            horizon, buckets, filters[0].hashCount(), buckets * filters[0].sizeInBytes() / 1024);
+    }
+    
+    /**
+     * Record the event and report whether it has been seen within the horizon before
+     */
+    public boolean isDuplicate(Event event) {
+        return event != null && isDuplicate(FlatEvent.from(event));
+    }
+    
+    /**
+     * Record the event and report whether it has been seen within the horizon before
+     */
+    public boolean isDuplicate(FlatEvent event) {
+        if (!enabled || event == null) {
+            return false;
+        }
+        
+        long hash1 = SEED_1;
+        long hash2 = SEED_2;
+        if (event.eventId() != null) {
+            hash1 = mix(hash1, event.eventId());
+            hash2 = mix(hash2, event.eventId());
+        } else {
+            hash1 = fingerprint(hash1, event);
+            hash2 = fingerprint(hash2, event);
+        }
+        hash1 = finish(hash1);
+        hash2 = finish(hash2) | 1; // odd step so probes never collapse onto one bit
+        
+        if (checkAndPut(hash1, hash2, clock.millis())) {
+            duplicateCount.incrementAndGet();
+            log.debug("Suppressed duplicate event: type={}, userId={}", event.type(), event.userId());
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Total number of suppressed duplicates since startup
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+    
+    /**
+     * Number of times a filter reached its design capacity and was rotated before
+     * its time was up, each of which shortened the horizon
+     */
+    public long getEarlyRotationCount() {
+        return earlyRotations.get();
+    }
+    
+    /**
+     * Memory held by the Bloom filters
+     */
+    public long getMemoryBytes() {
+        return filters.length > 0 ? filters.length * filters[0].sizeInBytes() : 0;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    // Check-then-insert must be atomic so concurrent retries of the same event are caught
+    private synchronized boolean checkAndPut(long hash1, long hash2, long nowMillis) {
+        rotate(nowMillis / bucketMillis);
+        
+        for (BloomFilter filter : filters) {
+            if (filter.mightContain(hash1, hash2)) {
+                return true;
+            }
+        }
+        if (currentInsertions >= bucketCapacity) {
+            rotateEarly();
+        }
+        filters[currentSlot].put(hash1, hash2);
+        currentInsertions++;
+        return false;
+    }
+    
+    private void rotate(long bucket) {
+        if (bucket <= currentBucket) {
+            return;
+        }
+        // Clear every bucket that expired since the last event, at most one full turn
+        long steps = Math.min(bucket - currentBucket, filters.length);
+        for (long i = 0; i < steps; i++) {
+            advanceSlot();
+        }
+        currentBucket = bucket;
+    }
+    
+    /**
+     * Past its capacity the false-positive rate of a filter climbs quickly, so the
+     * oldest filter is given up instead
+     */
+    private void rotateEarly() {
+        if (earlyRotations.getAndIncrement() == 0) {
+            log.warn("Duplicate filter bucket reached its capacity of {} keys before its time was up, "
+                + "rotating early; raise ela.deduplication.expected-events-per-bucket or lower the horizon", bucketCapacity);
+        }
+        advanceSlot();
+    }
+    
+    private void advanceSlot() {
+        currentSlot = (currentSlot + 1) % filters.length;
+        filters[currentSlot].clear();
+        currentInsertions = 0;
+    }
+    
+    private static long fingerprint(long hash, FlatEvent event) {
+        hash = mix(mix(hash, event.type().name()), event.userId()) ^ event.timestampMillis();
+        hash = mix(mix(hash, ""), event.channel());
+        return mix(mix(hash, event.action()), event.message());
+    }
+    
+    private static long mix(long hash, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+            }
+        }
+        // Field separator, so ("ab", "c") and ("a", "bc") differ
+        return (hash ^ 0xff) * FNV_PRIME;
+    }
+    
+    /**
+     * MurmurHash3 finalizer to spread the FNV state over all bits
+     */
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,50 +1,112 @@
 package de.mika.hhn.eventlogaggregator.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.report.LogLevel;
+import com.github.fge.jsonschema.core.report.ProcessingMessage;
 import com.github.fge.jsonschema.core.report.ProcessingReport;
 import com.github.fge.jsonschema.main.JsonSchema;
 import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
 import de.mika.hhn.eventlogaggregator.model.Event;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
 
 @Service
-public class EventParser {
+public class EventParser implements SmartInitializingSingleton {
     
     private static final Logger log = LoggerFactory.getLogger(EventParser.class);
-    private static final String INVALID_LOG_FILE = "logs/invalid.log";
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final List<String> EVENT_FILE_SUFFIXES = List.of(".json", ".ndjson");
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
     
     private final ObjectMapper objectMapper;
-    private JsonSchema eventSchema;
+    private final Path invalidLog;
+    private final int parallelThreshold;
+    private final ForkJoinPool validationPool;
+    private volatile JsonSchema eventSchema;
+    private CompletableFuture<JsonSchema> schemaLoading;
     
-    public EventParser(ObjectMapper objectMapper) {
+    public EventParser(ObjectMapper objectMapper, ElaProperties properties) {
         this.objectMapper = objectMapper;
+        this.invalidLog = Path.of(properties.directories().logs(), "invalid.log");
+        ElaProperties.BatchValidation config = properties.batchValidation();
+        this.parallelThreshold = config.parallelThreshold();
+        int parallelism = config.parallelism() > 0 ? config.parallelism() : Runtime.getRuntime().availableProcessors();
+        // Own bounded pool, so large batches cannot starve the common pool
+        this.validationPool = new ForkJoinPool(parallelism);
     }
     
+    @PreDestroy
+    public void shutdownValidationPool() {
+        validationPool.shutdownNow();
+    }
+    
+    /**
+     * Start loading the schema in the background. Building the validator is one of the
+     * slowest steps of startup, so it runs while the rest of the context is created.
+     */
     @PostConstruct
     public void initSchema() {
+        schemaLoading = CompletableFuture.supplyAsync(this::loadSchema);
+    }
+    
+    /**
+     * Wait for the schema once all singletons exist, so a broken schema still
+     * fails the startup
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            eventSchema();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+    
+    private JsonSchema loadSchema() {
         try {
             ClassPathResource schemaResource = new ClassPathResource("event-schema.json");
             try (InputStream schemaStream = schemaResource.getInputStream()) {
                 JsonSchemaFactory factory = JsonSchemaFactory.byDefault();
-                this.eventSchema = factory.getJsonSchema(
+                JsonSchema schema = factory.getJsonSchema(
                     objectMapper.readTree(schemaStream)
                 );
                 log.info("Event schema loaded successfully");
+                return schema;
             }
         } catch (Exception e) {
             log.error("Failed to load event schema", e);
@@ -52,19 +114,29 @@ public class EventParser {
         }
     }
     
+    private JsonSchema eventSchema() {
+        JsonSchema schema = eventSchema;
+        if (schema == null) {
+            schema = schemaLoading.join();
+            eventSchema = schema;
+        }
+        return schema;
+    }
+    
     /**
      * Parse single event from JSON string
      */
-    public Event parseEvent(String jsonString) {
+    public FlatEvent parseEvent(String jsonString) {
         try {
-            // First validate against schema
-            if (!validateJson(jsonString)) {
-                logInvalidEvent(jsonString, "Schema validation failed");
+            // First validate against schema, then bind the validated tree
+            JsonNode node = objectMapper.readTree(jsonString);
+            ProcessingReport report = eventSchema().validate(node);
+            if (!report.isSuccess()) {
+                logInvalidEvent(jsonString, "Schema validation failed: " + describe(report));
                 return null;
             }
             
-            // Then parse to Event object
-            Event event = objectMapper.readValue(jsonString, Event.class);
+            FlatEvent event = toFlatEvent(node);
             log.debug("Successfully parsed event: type={}, userId={}", event.type(), event.userId());
             return event;
             
@@ -78,45 +150,239 @@ public class EventParser {
     /**
      * Parse array of events from JSON string
      */
-    public List<Event> parseEvents(String jsonString) {
-        try {
-            // Try to parse as array first
-            List<Event> events = objectMapper.readValue(jsonString, new TypeReference<List<Event>>() {});
-            
-            // Validate each event individually
-            List<Event> validEvents = events.stream()
-                .filter(event -> {
-                    try {
-                        String eventJson = objectMapper.writeValueAsString(event);
-                        return validateJson(eventJson);
-                    } catch (Exception e) {
-                        log.warn("Failed to validate event: {}", e.getMessage());
-                        return false;
-                    }
-                })
-                .toList();
-            
-            log.debug("Successfully parsed {} valid events out of {} total", validEvents.size(), events.size());
-            return validEvents;
-            
+    public List<FlatEvent> parseEvents(String jsonString) {
+        try (MappingIterator<JsonNode> nodes = objectMapper.readerFor(JsonNode.class).readValues(jsonString)) {
+            return collectValidEvents(nodes, null);
         } catch (Exception e) {
-            // If array parsing fails, try single event
-            Event singleEvent = parseEvent(jsonString);
-            if (singleEvent != null) {
-                return List.of(singleEvent);
-            }
+            log.warn("Failed to parse events: {}", e.getMessage());
+            logInvalidEvent(jsonString, e.getMessage());
             return Collections.emptyList();
         }
     }
     
     /**
-     * Parse events from file
+     * Parse events from a stream containing a JSON array, a single event or
+     * whitespace-separated events. Elements are read one at a time, so the
+     * plain text is never held in memory as a whole.
      */
-    public List<Event> parseEventsFromFile(Path filePath) {
+    public List<FlatEvent> parseEvents(InputStream inputStream) throws IOException {
+        return parseEvents(inputStream, null);
+    }
+    
+    private List<FlatEvent> parseEvents(InputStream inputStream, JfrEvents.Parse jfr) throws IOException {
+        try (MappingIterator<JsonNode> nodes = objectMapper.readerFor(JsonNode.class).readValues(inputStream)) {
+            return collectValidEvents(nodes, jfr);
+        }
+    }
+    
+    /**
+     * Parse newline-delimited events (one JSON object per line) from a stream.
+     * A malformed line is logged as invalid without affecting the following lines.
+     */
+    public List<FlatEvent> parseNdjson(InputStream inputStream) throws IOException {
+        return parseNdjson(inputStream, null);
+    }
+    
+    private List<FlatEvent> parseNdjson(InputStream inputStream, JfrEvents.Parse jfr) throws IOException {
+        List<FlatEvent> events = new ArrayList<>();
+        List<String> invalid = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        String line;
+        int total = 0;
         try {
-            String content = Files.readString(filePath);
-            List<Event> events = parseEvents(content);
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                total++;
+                try {
+                    FlatEvent event = toValidEvent(objectMapper.readTree(line), invalid);
+                    if (event != null) {
+                        events.add(event);
+                    }
+                } catch (IOException e) {
+                    log.warn("Failed to parse NDJSON line: {}", e.getMessage());
+                    invalid.add(invalidEntry(line, e.getMessage()));
+                }
+            }
+        } finally {
+            writeInvalidEvents(invalid);
+        }
+        if (jfr != null) {
+            jfr.events = total;
+            jfr.invalid = total - events.size();
+        }
+        return events;
+    }
+    
+    /**
+     * Validate a batch element by element and report the outcome per index, instead of
+     * dropping invalid elements. {@code ndjson} selects newline-delimited input, where a
+     * malformed line only rejects that element; otherwise the stream holds a JSON array
+     * (or whitespace-separated events) and malformed JSON fails the whole batch.
+     * Batches of at least {@code ela.batch-validation.parallel-threshold} elements are
+     * validated in parallel on a bounded fork-join pool.
+     */
+    public ValidatedBatch validateBatch(InputStream inputStream, boolean ndjson) throws IOException {
+        JfrEvents.Parse jfr = new JfrEvents.Parse();
+        jfr.begin();
+        CountingInputStream counter = null;
+        if (jfr.isEnabled()) {
+            counter = new CountingInputStream(inputStream);
+            inputStream = counter;
+        }
+        
+        List<JsonNode> nodes = new ArrayList<>();
+        List<String> parseErrors = new ArrayList<>();
+        List<String> invalid = new ArrayList<>();
+        if (ndjson) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    nodes.add(objectMapper.readTree(line));
+                    parseErrors.add(null);
+                } catch (JsonProcessingException e) {
+                    invalid.add(invalidEntry(line, e.getOriginalMessage()));
+                    nodes.add(null);
+                    parseErrors.add("Malformed JSON: " + e.getOriginalMessage());
+                }
+            }
+        } else {
+            try (MappingIterator<JsonNode> iterator = objectMapper.readerFor(JsonNode.class).readValues(inputStream)) {
+                while (iterator.hasNextValue()) {
+                    nodes.add(iterator.nextValue());
+                    parseErrors.add(null);
+                }
+            }
+        }
+        
+        return validateNodes(nodes, parseErrors, invalid, jfr, ndjson ? "ndjson-batch" : "batch",
+            counter != null ? counter.count : 0);
+    }
+    
+    /**
+     * Validate the newline-delimited events between position and limit of {@code lines},
+     * e.g. a direct buffer filled from a socket. Every line is parsed from the buffer
+     * itself, without decoding it into a string first; a last line without line feed
+     * counts as well. A malformed line only rejects that element. The position of the
+     * buffer is left unchanged.
+     */
+    public ValidatedBatch validateNdjson(ByteBuffer lines) {
+        JfrEvents.Parse jfr = new JfrEvents.Parse();
+        jfr.begin();
+        
+        List<JsonNode> nodes = new ArrayList<>();
+        List<String> parseErrors = new ArrayList<>();
+        List<String> invalid = new ArrayList<>();
+        int limit = lines.limit();
+        for (int start = lines.position(); start < limit; ) {
+            int end = start;
+            boolean blank = true;
+            while (end < limit && lines.get(end) != '\n') {
+                blank &= Character.isWhitespace(lines.get(end));
+                end++;
+            }
+            if (!blank) {
+                ByteBuffer line = lines.slice(start, end - start);
+                try (InputStream in = new ByteBufferBackedInputStream(line)) {
+                    nodes.add(objectMapper.readTree(in));
+                    parseErrors.add(null);
+                } catch (IOException e) {
+                    String reason = e instanceof JsonProcessingException json ? json.getOriginalMessage() : e.getMessage();
+                    invalid.add(invalidEntry(StandardCharsets.UTF_8.decode(line.rewind()).toString(), reason));
+                    nodes.add(null);
+                    parseErrors.add("Malformed JSON: " + reason);
+                }
+            }
+            start = end + 1;
+        }
+        return validateNodes(nodes, parseErrors, invalid, jfr, "ndjson-stream", lines.remaining());
+    }
+    
+    /**
+     * Validate parsed nodes, null for elements that could not be parsed, in parallel
+     * from {@code ela.batch-validation.parallel-threshold} elements on. The rejected
+     * elements are appended to the invalid events log at once and in batch order;
+     * {@code malformedEntries} holds the entries of the null nodes.
+     */
+    private ValidatedBatch validateNodes(List<JsonNode> nodes, List<String> parseErrors, List<String> malformedEntries,
+                                         JfrEvents.Parse jfr, String source, long bytes) {
+        int size = nodes.size();
+        FlatEvent[] events = new FlatEvent[size];
+        String[] errors = parseErrors.toArray(new String[0]);
+        IntStream indices = IntStream.range(0, size).filter(i -> nodes.get(i) != null);
+        JfrEvents.Validate validation = new JfrEvents.Validate();
+        validation.begin();
+        boolean parallel = validatesInParallel(size);
+        if (parallel) {
+            validationPool.submit(() -> indices.parallel().forEach(i -> validateInto(nodes.get(i), i, events, errors))).join();
+        } else {
+            indices.forEach(i -> validateInto(nodes.get(i), i, events, errors));
+        }
+        
+        ValidatedBatch batch = new ValidatedBatch(Arrays.asList(events), Arrays.asList(errors));
+        int invalid = size - (int) batch.validCount();
+        validation.end();
+        if (validation.shouldCommit()) {
+            validation.elements = size;
+            validation.invalid = invalid;
+            validation.parallel = parallel;
+            validation.commit();
+        }
+        if (invalid > 0) {
+            List<String> entries = new ArrayList<>(invalid);
+            int malformed = 0;
+            for (int i = 0; i < size; i++) {
+                if (nodes.get(i) == null) {
+                    entries.add(malformedEntries.get(malformed++));
+                } else if (events[i] == null) {
+                    entries.add(invalidEntry(nodes.get(i).toString(), "Schema validation failed: " + errors[i]));
+                }
+            }
+            writeInvalidEvents(entries);
+        }
+        jfr.end();
+        if (jfr.shouldCommit()) {
+            jfr.source = source;
+            jfr.bytes = bytes;
+            jfr.events = size;
+            jfr.invalid = invalid;
+            jfr.commit();
+        }
+        log.debug("Validated batch: {} of {} elements valid", size - invalid, size);
+        return batch;
+    }
+    
+    /**
+     * Whether a batch of {@code elements} is validated on the validation pool
+     */
+    boolean validatesInParallel(int elements) {
+        return elements >= parallelThreshold;
+    }
+    
+    /**
+     * Parse events from file. Files ending in {@code .gz} are decompressed
+     * on the fly, files ending in {@code .ndjson[.gz]} are read line by line.
+     */
+    public List<FlatEvent> parseEventsFromFile(Path filePath) {
+        String name = filePath.getFileName().toString().toLowerCase(Locale.ROOT);
+        JfrEvents.Parse jfr = new JfrEvents.Parse();
+        jfr.begin();
+        try (InputStream in = openDecompressed(filePath, name)) {
+            List<FlatEvent> events = stripGzipSuffix(name).endsWith(".ndjson")
+                ? parseNdjson(in, jfr)
+                : parseEvents(in, jfr);
             log.info("Parsed {} events from file: {}", events.size(), filePath.getFileName());
+            jfr.end();
+            if (jfr.shouldCommit()) {
+                jfr.source = filePath.getFileName().toString();
+                jfr.bytes = Files.size(filePath);
+                jfr.commit();
+            }
             return events;
             
         } catch (IOException e) {
@@ -125,27 +391,151 @@ public class EventParser {
         }
     }
     
-    private boolean validateJson(String json) {
+    /**
+     * Check whether a file name denotes a supported (optionally gzip-compressed) event file
+     */
+    public static boolean isEventFile(Path fileName) {
+        String name = stripGzipSuffix(fileName.toString().toLowerCase(Locale.ROOT));
+        return EVENT_FILE_SUFFIXES.stream().anyMatch(name::endsWith);
+    }
+    
+    private static String stripGzipSuffix(String name) {
+        return name.endsWith(GZIP_SUFFIX) ? name.substring(0, name.length() - GZIP_SUFFIX.length()) : name;
+    }
+    
+    private InputStream openDecompressed(Path filePath, String name) throws IOException {
+        InputStream in = Files.newInputStream(filePath);
+        if (name.endsWith(GZIP_SUFFIX)) {
+            return new GZIPInputStream(in, STREAM_BUFFER_SIZE);
+        }
+        return new BufferedInputStream(in, STREAM_BUFFER_SIZE);
+    }
+    
+    private List<FlatEvent> collectValidEvents(MappingIterator<JsonNode> nodes, JfrEvents.Parse jfr) throws IOException {
+        List<FlatEvent> validEvents = new ArrayList<>();
+        List<String> invalid = new ArrayList<>();
+        int total = 0;
         try {
-            ProcessingReport report = eventSchema.validate(objectMapper.readTree(json));
-            return report.isSuccess();
-        } catch (ProcessingException | IOException e) {
-            log.warn("JSON validation error: {}", e.getMessage());
-            return false;
+            while (nodes.hasNextValue()) {
+                total++;
+                FlatEvent event = toValidEvent(nodes.nextValue(), invalid);
+                if (event != null) {
+                    validEvents.add(event);
+                }
+            }
+        } finally {
+            writeInvalidEvents(invalid);
         }
+        log.debug("Successfully parsed {} valid events out of {} total", validEvents.size(), total);
+        if (jfr != null) {
+            jfr.events = total;
+            jfr.invalid = total - validEvents.size();
+        }
+        return validEvents;
+    }
+    
+    /**
+     * Validate an already parsed JSON node against the schema and bind it to a flat event,
+     * adding an entry to {@code invalid} if it is rejected
+     */
+    private FlatEvent toValidEvent(JsonNode node, List<String> invalid) {
+        String[] error = new String[1];
+        FlatEvent[] event = new FlatEvent[1];
+        validateInto(node, 0, event, error);
+        if (event[0] == null) {
+            invalid.add(invalidEntry(node.toString(), "Schema validation failed: " + error[0]));
+        }
+        return event[0];
+    }
+    
+    /**
+     * Validate and bind one node, storing either the event or the rejection reason at {@code index}
+     */
+    private void validateInto(JsonNode node, int index, FlatEvent[] events, String[] errors) {
+        try {
+            ProcessingReport report = eventSchema().validate(node);
+            if (!report.isSuccess()) {
+                errors[index] = describe(report);
+                return;
+            }
+            events[index] = toFlatEvent(node);
+        } catch (ProcessingException | JsonProcessingException e) {
+            log.warn("Failed to validate event: {}", e.getMessage());
+            errors[index] = e.getMessage();
+        }
+    }
+    
+    /**
+     * Bind a schema-valid node with the deserializer of {@link FlatEvent}, without going
+     * through {@link Event} and its payload map
+     */
+    private FlatEvent toFlatEvent(JsonNode node) throws JsonProcessingException {
+        return objectMapper.treeToValue(node, FlatEvent.class);
+    }
+    
+    /**
+     * First schema error as "pointer: message"
+     */
+    private static String describe(ProcessingReport report) {
+        for (ProcessingMessage message : report) {
+            if (message.getLogLevel().compareTo(LogLevel.ERROR) >= 0) {
+                String pointer = message.asJson().path("instance").path("pointer").asText();
+                return (pointer.isEmpty() ? "/" : pointer) + ": " + message.getMessage();
+            }
+        }
+        return "Schema validation failed";
     }
     
     private void logInvalidEvent(String json, String reason) {
+        writeInvalidEvents(List.of(invalidEntry(json, reason)));
+    }
+    
+    private static String invalidEntry(String json, String reason) {
+        return String.format("[%s] INVALID EVENT - Reason: %s - JSON: %s%n", LocalDateTime.now(), reason, json);
+    }
+    
+    /**
+     * Append the entries of one batch to the invalid events log with a single write
+     */
+    private synchronized void writeInvalidEvents(List<String> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
         try {
-            String logEntry = String.format("[%s] INVALID EVENT - Reason: %s - JSON: %s%n", 
-                LocalDateTime.now(), reason, json);
-            
-            Path logPath = Path.of(INVALID_LOG_FILE);
-            Files.createDirectories(logPath.getParent());
-            Files.writeString(logPath, logEntry, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            Files.createDirectories(invalidLog.toAbsolutePath().getParent());
+            Files.writeString(invalidLog, String.join("", entries), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
             
         } catch (IOException e) {
             log.error("Failed to write to invalid events log", e);
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Counts the bytes read, for the parse flight recorder event
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+        
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
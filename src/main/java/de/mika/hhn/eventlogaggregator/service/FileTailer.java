@@ -0,0 +1,277 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Tails growing NDJSON files in the inbox (e.g. rolling application logs).
+ *
+ * For every tailed file a durable checkpoint of file identity, byte offset and a checksum
+ * of the first (up to {@value #FINGERPRINT_BYTES}) bytes already read is kept. Only
+ * complete lines after the offset are read, using positioned reads on a
+ * {@link FileChannel}; an incomplete last line stays for the next round. A changed file
+ * identity (rotation), a file shorter than the offset (truncation) or a changed checksum
+ * (copytruncate, after which the file grew past the old offset again) restarts at offset 0.
+ * Tailed files are never moved. Files in a tenant subdirectory of the inbox belong
+ * to that tenant and are read at the pace of its ingest-rate quota.
+ */
+@Service
+public class FileTailer {
+
+    private static final Logger log = LoggerFactory.getLogger(FileTailer.class);
+    private static final int READ_CHUNK_SIZE = 1024 * 1024;
+    static final int FINGERPRINT_BYTES = 1024;
+
+    private final ElaProperties properties;
+    private final EventParser eventParser;
+    private final IngestScheduler ingestScheduler;
+    private final ObjectMapper objectMapper;
+    private final AllocationTracker allocationTracker;
+    private final TenantRegistry tenantRegistry;
+
+    private final List<PathMatcher> matchers;
+    private final Path checkpointFile;
+    private final Map<String, Checkpoint> checkpoints = new HashMap<>();
+
+    public FileTailer(ElaProperties properties, EventParser eventParser,
+                      IngestScheduler ingestScheduler, ObjectMapper objectMapper,
+                      AllocationTracker allocationTracker, TenantRegistry tenantRegistry) {
+        this.properties = properties;
+        this.eventParser = eventParser;
+        this.ingestScheduler = ingestScheduler;
+        this.objectMapper = objectMapper;
+        this.allocationTracker = allocationTracker;
+        this.tenantRegistry = tenantRegistry;
+
+        ElaProperties.Tail tail = properties.tail();
+        List<String> patterns = tail != null && tail.patterns() != null ? tail.patterns() : List.of();
+        this.matchers = patterns.stream()
+            .map(pattern -> FileSystems.getDefault().getPathMatcher("glob:" + pattern))
+            .toList();
+        this.checkpointFile = tail != null && tail.checkpointFile() != null ? Path.of(tail.checkpointFile()) : null;
+    }
+
+    @PostConstruct
+    public synchronized void loadCheckpoints() {
+        if (matchers.isEmpty() || checkpointFile == null || !Files.exists(checkpointFile)) {
+            return;
+        }
+        try {
+            checkpoints.putAll(objectMapper.readValue(checkpointFile.toFile(), new TypeReference<Map<String, Checkpoint>>() {}));
+            log.info("Loaded {} tail checkpoints from {}", checkpoints.size(), checkpointFile);
+        } catch (IOException e) {
+            log.error("Failed to read tail checkpoints from {}, starting from scratch: {}", checkpointFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Check whether a file in the inbox is configured for tailing
+     */
+    public boolean isTailed(Path fileName) {
+        Path name = fileName.getFileName();
+        return matchers.stream().anyMatch(matcher -> matcher.matches(name));
+    }
+
+    /**
+     * Read the lines appended to the file since its checkpoint
+     */
+    public synchronized void tail(Path filePath) {
+        String key = filePath.toAbsolutePath().normalize().toString();
+        try {
+            if (!Files.exists(filePath)) {
+                return;
+            }
+
+            BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+            String fileId = fileId(attributes);
+            Checkpoint checkpoint = checkpoints.get(key);
+            boolean resume = false;
+            if (checkpoint != null) {
+                if (!checkpoint.fileId().equals(fileId)) {
+                    log.info("Detected rotation of tailed file {}, reading new file from start", filePath.getFileName());
+                } else if (attributes.size() < checkpoint.offset()) {
+                    log.warn("Detected truncation of tailed file {}, reading from start", filePath.getFileName());
+                } else if (fingerprint(filePath, checkpoint.fingerprintLength()) != checkpoint.fingerprint()) {
+                    log.warn("Detected rewrite of tailed file {} (first bytes changed), reading from start", filePath.getFileName());
+                } else {
+                    resume = true;
+                }
+            }
+            long offset = resume ? checkpoint.offset() : 0;
+            if (resume && attributes.size() == offset) {
+                return;
+            }
+
+            long newOffset = readCompleteLines(filePath, tenantRegistry.resolveInboxFile(filePath), offset);
+            int fingerprintLength = (int) Math.min(newOffset, FINGERPRINT_BYTES);
+            long fingerprint = resume && fingerprintLength == checkpoint.fingerprintLength()
+                ? checkpoint.fingerprint()
+                : fingerprint(filePath, fingerprintLength);
+            Checkpoint next = new Checkpoint(fileId, newOffset, fingerprint, fingerprintLength);
+            if (!next.equals(checkpoint)) {
+                checkpoints.put(key, next);
+                saveCheckpoints();
+            }
+
+        } catch (IOException | RuntimeException e) {
+            log.error("Error tailing file {}: {}", filePath.getFileName(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Fallback for missed watch events and for resuming after a restart
+     */
+    @Scheduled(fixedDelayString = "${ela.tail.poll-interval:1000}")
+    public void pollTailedFiles() {
+        if (matchers.isEmpty()) {
+            return;
+        }
+        Path inbox = Path.of(properties.directories().inbox());
+        if (!Files.isDirectory(inbox)) {
+            return;
+        }
+        // The inbox itself and the tenant subdirectories
+        try (Stream<Path> files = Files.walk(inbox, 2)) {
+            files.filter(Files::isRegularFile)
+                .filter(file -> !InboxFileProcessor.isReservedDirectory(file.getParent().getFileName()))
+                .filter(this::isTailed)
+                .forEach(this::tail);
+        } catch (IOException e) {
+            log.error("Failed to scan inbox for tailed files: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return the offset just behind the last complete line
+     */
+    private long readCompleteLines(Path filePath, TenantPartition partition, long offset) throws IOException {
+        long position = offset;
+        int total = 0;
+        int accepted = 0;
+        long allocationStart = allocationTracker.start();
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_CHUNK_SIZE);
+            long readPosition = offset;
+            while (true) {
+                int read = channel.read(buffer, readPosition);
+                if (read > 0) {
+                    readPosition += read;
+                }
+
+                int end = lastNewline(buffer.array(), buffer.position());
+                if (end >= 0) {
+                    List<FlatEvent> events = eventParser.parseNdjson(new ByteArrayInputStream(buffer.array(), 0, end + 1));
+                    total += events.size();
+                    try {
+                        partition.acquire(events.size());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for the quota of tenant " + partition.getTenant());
+                    }
+                    accepted += ingestScheduler.ingestAll(IngestLane.REPLAY, partition, events);
+                    position += end + 1;
+
+                    // Keep the incomplete last line for the next read
+                    buffer.flip();
+                    buffer.position(end + 1);
+                    buffer.compact();
+                } else if (!buffer.hasRemaining()) {
+                    // A single line larger than the buffer
+                    buffer = growBuffer(buffer);
+                }
+
+                if (read <= 0) {
+                    break;
+                }
+            }
+        }
+
+        if (position != offset) {
+            allocationTracker.record(AllocationTracker.TAIL, allocationStart, total);
+            log.info("Tailed {} bytes with {} events from {} ({} duplicates skipped)",
+                position - offset, total, filePath.getFileName(), total - accepted);
+        }
+        return position;
+    }
+
+    private static int lastNewline(byte[] data, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (data[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static ByteBuffer growBuffer(ByteBuffer buffer) {
+        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    /**
+     * CRC32C of the first {@code length} bytes, which were already read and thus complete
+     */
+    private static long fingerprint(Path filePath, int length) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) <= 0) {
+                    break;
+                }
+            }
+        }
+        buffer.flip();
+        crc.update(buffer);
+        return crc.getValue();
+    }
+
+    private static String fileId(BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        // Without inode support fall back to the creation time
+        return fileKey != null ? fileKey.toString() : attributes.creationTime().toString();
+    }
+
+    private void saveCheckpoints() {
+        if (checkpointFile == null) {
+            return;
+        }
+        try {
+            Path parent = checkpointFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, "tail-checkpoints", ".tmp");
+            objectMapper.writeValue(temp.toFile(), checkpoints);
+            Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Failed to write tail checkpoints to {}: {}", checkpointFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Durable read position of a tailed file
+     */
+    record Checkpoint(String fileId, long offset, long fingerprint, int fingerprintLength) {}
+}
@@ -0,0 +1,130 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Optional always-on flight recording ({@code ela.flight-recorder.enabled}).
+ *
+ * Runs the JDK "default" settings, which are meant for production use, plus the
+ * pipeline events of {@link JfrEvents}. The recording keeps a bounded rolling buffer
+ * on disk and is dumped to the logs directory at a fixed interval and on shutdown;
+ * only the newest {@code maxDumps} files are kept.
+ */
+@Service
+public class FlightRecording {
+
+    private static final Logger log = LoggerFactory.getLogger(FlightRecording.class);
+    private static final String DUMP_PREFIX = "ela-";
+    private static final String DUMP_SUFFIX = ".jfr";
+    private static final DateTimeFormatter DUMP_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final List<Class<? extends jdk.jfr.Event>> PIPELINE_EVENTS = List.of(
+        JfrEvents.Parse.class,
+        JfrEvents.Validate.class,
+        JfrEvents.AggregateWindow.class,
+        JfrEvents.InboxFile.class,
+        JfrEvents.Broadcast.class
+    );
+
+    private final ElaProperties.FlightRecorder config;
+    private final Path dumpDirectory;
+    private Recording recording;
+
+    public FlightRecording(ElaProperties properties) {
+        this.config = properties.flightRecorder();
+        this.dumpDirectory = Path.of(properties.directories().logs());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (config == null || !config.enabled()) {
+            return;
+        }
+        try {
+            recording = new Recording(Configuration.getConfiguration("default"));
+            for (Class<? extends jdk.jfr.Event> eventType : PIPELINE_EVENTS) {
+                recording.enable(eventType).withThreshold(config.threshold());
+            }
+            recording.setName("event-log-aggregator");
+            recording.setToDisk(true);
+            recording.setMaxAge(config.maxAge());
+            recording.setMaxSize(config.maxSize().toBytes());
+            recording.start();
+            log.info("Continuous flight recording started: max age {}, max size {}, dumps to {}",
+                config.maxAge(), config.maxSize(), dumpDirectory.toAbsolutePath());
+        } catch (IOException | ParseException e) {
+            log.error("Failed to start flight recording: {}", e.getMessage(), e);
+            recording = null;
+        }
+    }
+
+    @Scheduled(initialDelayString = "${ela.flight-recorder.dump-interval:900000}",
+        fixedDelayString = "${ela.flight-recorder.dump-interval:900000}")
+    public void scheduledDump() {
+        if (recording != null) {
+            dump();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recording != null) {
+            dump();
+            recording.close();
+            recording = null;
+        }
+    }
+
+    /**
+     * Write the current recording buffer to a new file in the logs directory
+     */
+    public synchronized Path dump() {
+        if (recording == null) {
+            return null;
+        }
+        try {
+            Files.createDirectories(dumpDirectory);
+            Path file = dumpDirectory.resolve(DUMP_PREFIX + LocalDateTime.now().format(DUMP_TIMESTAMP) + DUMP_SUFFIX);
+            recording.dump(file);
+            log.info("Flight recording dumped to {}", file);
+            deleteOldDumps();
+            return file;
+        } catch (IOException e) {
+            log.error("Failed to dump flight recording: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private void deleteOldDumps() throws IOException {
+        List<Path> dumps;
+        try (Stream<Path> files = Files.list(dumpDirectory)) {
+            dumps = files
+                .filter(file -> {
+                    String name = file.getFileName().toString();
+                    return name.startsWith(DUMP_PREFIX) && name.endsWith(DUMP_SUFFIX);
+                })
+                .sorted()
+                .toList();
+        }
+        // Timestamped names sort chronologically
+        for (int i = 0; i < dumps.size() - config.maxDumps(); i++) {
+            Files.deleteIfExists(dumps.get(i));
+        }
+    }
+}
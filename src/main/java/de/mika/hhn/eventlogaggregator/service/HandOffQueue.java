@@ -0,0 +1,39 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Lock-free hand-over of per-event updates to a structure guarded by a monitor.
+ * Ingest threads only queue their updates; the owner applies them under its monitor
+ * on the next tick or read, so events never contend for it.
+ */
+class HandOffQueue<T> {
+
+    private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    void offer(T update) {
+        queue.offer(update);
+        size.incrementAndGet();
+    }
+
+    /**
+     * Apply the updates queued so far; later ones wait for the next drain
+     */
+    void drain(Consumer<T> apply) {
+        int queued = size.get();
+        int drained = 0;
+        T update;
+        while (drained < queued && (update = queue.poll()) != null) {
+            apply.accept(update);
+            drained++;
+        }
+        size.addAndGet(-drained);
+    }
+
+    int size() {
+        return size.get();
+    }
+}
@@ -0,0 +1,134 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel for large numbers of timeouts.
+ *
+ * The wheel has a power-of-two number of slots, each covering {@code tickMillis};
+ * a timeout is linked into the slot of its deadline tick, together with the number
+ * of full rotations left. Scheduling and cancelling are O(1), and a tick only visits
+ * the timeouts of one slot instead of all of them. If {@link #advance} is called late,
+ * the skipped ticks are caught up, at most one full rotation.
+ *
+ * Not thread-safe; callers synchronize.
+ */
+class HashedTimingWheel<T> {
+
+    private final long tickMillis;
+    private final Timeout<T>[] slots;
+    private final int mask;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    HashedTimingWheel(long tickMillis, int wheelSize, long nowMillis) {
+        this.tickMillis = Math.max(1, tickMillis);
+        int slotCount = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+        this.slots = (Timeout<T>[]) new Timeout<?>[slotCount];
+        this.mask = slotCount - 1;
+        this.currentTick = nowMillis / this.tickMillis;
+    }
+
+    /**
+     * Schedule {@code item} to expire at {@code deadlineMillis}
+     */
+    Timeout<T> schedule(T item, long deadlineMillis) {
+        Timeout<T> timeout = new Timeout<>(item);
+        link(timeout, deadlineMillis);
+        return timeout;
+    }
+
+    /**
+     * Move a scheduled timeout to a new deadline
+     */
+    void reschedule(Timeout<T> timeout, long deadlineMillis) {
+        cancel(timeout);
+        link(timeout, deadlineMillis);
+    }
+
+    void cancel(Timeout<T> timeout) {
+        if (timeout.slot < 0) {
+            return;
+        }
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+        size--;
+    }
+
+    /**
+     * Process all ticks up to {@code nowMillis}, handing every expired item to
+     * {@code expired}. Expired timeouts are unlinked before the callback, which may
+     * reschedule them.
+     *
+     * @return number of expired items
+     */
+    int advance(long nowMillis, Consumer<T> expired) {
+        long targetTick = nowMillis / tickMillis;
+        int count = 0;
+        // After a long pause every slot is visited once, with its rounds counting down once
+        long from = Math.max(currentTick + 1, targetTick - mask);
+        for (long tick = from; tick <= targetTick; tick++) {
+            // Rescheduling from the callback links relative to the tick being processed
+            currentTick = tick;
+            int slot = (int) (tick & mask);
+            Timeout<T> timeout = slots[slot];
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                if (timeout.rounds <= 0 || timeout.deadline <= nowMillis) {
+                    cancel(timeout);
+                    expired.accept(timeout.item);
+                    count++;
+                } else {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+        }
+        return count;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void link(Timeout<T> timeout, long deadlineMillis) {
+        long tick = Math.max(currentTick + 1, (deadlineMillis + tickMillis - 1) / tickMillis);
+        int slot = (int) (tick & mask);
+        timeout.deadline = deadlineMillis;
+        timeout.rounds = (tick - currentTick - 1) / slots.length;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = slots[slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        slots[slot] = timeout;
+        size++;
+    }
+
+    /**
+     * Handle of a scheduled item, linked into its slot
+     */
+    static final class Timeout<T> {
+        final T item;
+        long deadline;
+        long rounds;
+        int slot = -1;
+        Timeout<T> prev;
+        Timeout<T> next;
+
+        Timeout(T item) {
+            this.item = item;
+        }
+    }
+}
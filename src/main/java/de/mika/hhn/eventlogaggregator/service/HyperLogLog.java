@@ -0,0 +1,206 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog cardinality sketch with a sparse representation for small sets.
+ *
+ * Up to {@code sparseLimit} distinct hashes (by default {@code 2^precision / 16}, half
+ * the memory of the dense registers) are kept as a sorted list, which is exact. Beyond
+ * that the sketch switches to {@code 2^precision} one-byte registers (standard error
+ * about {@code 1.04 / sqrt(2^precision)}). Not thread-safe.
+ */
+class HyperLogLog {
+
+    // 2^-rank for every possible register value
+    private static final double[] INVERSE_POWERS_OF_TWO = new double[66];
+
+    static {
+        for (int rank = 0; rank < INVERSE_POWERS_OF_TWO.length; rank++) {
+            INVERSE_POWERS_OF_TWO[rank] = Math.scalb(1.0, -rank);
+        }
+    }
+
+    private final int precision;
+    private final int sparseLimit;
+    private long[] sparse = new long[4];
+    private int sparseSize = 0;
+    private byte[] registers;
+
+    HyperLogLog(int precision) {
+        this(precision, (1 << precision) / 16);
+    }
+
+    /**
+     * @param sparseLimit distinct hashes counted exactly, at most {@code 2^precision / 8}
+     *                    so the list never takes more memory than the registers
+     */
+    HyperLogLog(int precision, int sparseLimit) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("precision must be between 4 and 18");
+        }
+        this.precision = precision;
+        this.sparseLimit = Math.max(4, Math.min(sparseLimit, (1 << precision) / 8));
+    }
+
+    /**
+     * Add a 64-bit hash
+     *
+     * @return change of the memory footprint in bytes
+     */
+    int add(long hash) {
+        if (registers != null) {
+            addToRegisters(hash);
+            return 0;
+        }
+        int position = Arrays.binarySearch(sparse, 0, sparseSize, hash);
+        if (position >= 0) {
+            return 0;
+        }
+        int before = sizeInBytes();
+        if (sparseSize == sparseLimit) {
+            toDense();
+            addToRegisters(hash);
+        } else {
+            if (sparseSize == sparse.length) {
+                sparse = Arrays.copyOf(sparse, Math.min(sparseLimit, sparse.length * 2));
+            }
+            int insert = -position - 1;
+            System.arraycopy(sparse, insert, sparse, insert + 1, sparseSize - insert);
+            sparse[insert] = hash;
+            sparseSize++;
+        }
+        return sizeInBytes() - before;
+    }
+
+    /**
+     * Union with another sketch of the same precision
+     */
+    void merge(HyperLogLog other) {
+        if (registers == null && sparseSize == 0 && other.registers != null) {
+            // Copy into an empty sketch
+            registers = other.registers.clone();
+            sparse = null;
+            return;
+        }
+        if (other.registers == null) {
+            if (registers == null) {
+                mergeSparse(other);
+            } else {
+                for (int i = 0; i < other.sparseSize; i++) {
+                    addToRegisters(other.sparse[i]);
+                }
+            }
+            return;
+        }
+        if (registers == null) {
+            toDense();
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    long estimate() {
+        if (registers == null) {
+            return sparseSize;
+        }
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += INVERSE_POWERS_OF_TWO[register];
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Small range correction: linear counting
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    int sizeInBytes() {
+        return registers != null ? registers.length : sparse.length * Long.BYTES;
+    }
+
+    /**
+     * 64-bit hash of a string (FNV-1a with a MurmurHash3 finalizer)
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Union of two sorted lists in one pass, dense if it exceeds the limit
+     */
+    private void mergeSparse(HyperLogLog other) {
+        long[] own = sparse;
+        int ownSize = sparseSize;
+        long[] merged = new long[Math.max(4, Math.min(ownSize + other.sparseSize, sparseLimit))];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ownSize || j < other.sparseSize) {
+            long next;
+            if (j == other.sparseSize || (i < ownSize && own[i] < other.sparse[j])) {
+                next = own[i++];
+            } else if (i == ownSize || other.sparse[j] < own[i]) {
+                next = other.sparse[j++];
+            } else {
+                next = own[i++];
+                j++;
+            }
+            if (size == sparseLimit) {
+                // Too many for the list: registers from what is merged so far plus the rest
+                sparse = merged;
+                sparseSize = size;
+                toDense();
+                addToRegisters(next);
+                while (i < ownSize) {
+                    addToRegisters(own[i++]);
+                }
+                while (j < other.sparseSize) {
+                    addToRegisters(other.sparse[j++]);
+                }
+                return;
+            }
+            merged[size++] = next;
+        }
+        sparse = merged;
+        sparseSize = size;
+    }
+
+    private void toDense() {
+        registers = new byte[1 << precision];
+        for (int i = 0; i < sparseSize; i++) {
+            addToRegisters(sparse[i]);
+        }
+        sparse = null;
+        sparseSize = 0;
+    }
+
+    private void addToRegisters(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // Guard bit keeps the rank bounded when the remaining bits are all zero
+        long remaining = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+}
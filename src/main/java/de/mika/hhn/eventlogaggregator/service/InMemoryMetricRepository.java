@@ -1,48 +1,172 @@
 package de.mika.hhn.eventlogaggregator.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.model.ChannelCount;
+import de.mika.hhn.eventlogaggregator.model.IntervalMetrics;
 import de.mika.hhn.eventlogaggregator.model.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.io.ByteArrayOutputStream;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * In-memory implementation of MetricRepository using ConcurrentHashMap
- * for thread-safe storage of aggregated metrics
+ * for thread-safe storage of aggregated metrics.
+ * 
+ * Metrics are serialized to JSON and the OpenMetrics exposition of all
+ * windows is re-rendered when they are saved and differ from the stored
+ * ones, so reads and scrapes only hand out the prepared bytes. Finalized
+ * intervals are kept by start, the latest {@code retain} per definition.
+ * Writes are serialized by the aggregation tick; reads never block.
  */
 @Repository
 public class InMemoryMetricRepository implements MetricRepository {
     
     private static final Logger log = LoggerFactory.getLogger(InMemoryMetricRepository.class);
     
-    private final ConcurrentHashMap<Duration, Metrics> metricsStore = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper;
+    // Qualifies the versions in entity tags, which restart with every repository
+    private final String instance;
+    private final boolean openMetricsEnabled;
+    private final int maxChannels;
+    private final Map<String, ElaProperties.Aggregation.Interval> intervalDefinitions;
+    
+    private final ConcurrentHashMap<Duration, StoredMetrics> metricsStore = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Instant, IntervalMetrics>> intervalStore = new ConcurrentHashMap<>();
+    
+    // Combined document of all windows, rebuilt whenever one window changes
+    private volatile SerializedMetrics allMetrics;
+    // Exposition of all windows, rendered whenever one window or its exported channels change
+    private volatile byte[] openMetrics;
+    private long version = 0;
+    
+    @Autowired
+    public InMemoryMetricRepository(ObjectMapper objectMapper, ElaProperties properties) {
+        this(objectMapper, properties, TenantRegistry.DEFAULT_TENANT);
+    }
+    
+    /**
+     * Repository of a tenant partition
+     */
+    public InMemoryMetricRepository(ObjectMapper objectMapper, ElaProperties properties, String tenant) {
+        this.objectMapper = objectMapper;
+        this.instance = tenant + "-" + Long.toString(ThreadLocalRandom.current().nextLong() >>> 16, 36);
+        ElaProperties.OpenMetrics config = properties.openMetrics();
+        this.openMetricsEnabled = config != null && config.enabled();
+        this.maxChannels = config != null ? Math.max(0, config.maxChannels()) : 0;
+        this.intervalDefinitions = properties.aggregation().intervalsOrEmpty();
+    }
     
     @Override
-    public void saveMetrics(Duration window, Metrics metrics) {
-        metricsStore.put(window, metrics);
-        log.debug("Saved metrics for window {}: activeUsers={}, eventsPerMinute={}", 
-            window, metrics.activeUsers(), metrics.eventsPerMinute());
+    public synchronized void saveMetrics(Duration window, Metrics metrics, List<ChannelCount> channels) {
+        List<ChannelCount> exported = openMetricsEnabled
+            ? List.copyOf(channels.subList(0, Math.min(maxChannels, channels.size())))
+            : List.of();
+        StoredMetrics previous = metricsStore.get(window);
+        boolean metricsChanged = previous == null || !previous.metrics().equals(metrics);
+        if (!metricsChanged && previous.channels().equals(exported)) {
+            log.trace("Metrics for window {} unchanged, keeping version {}", window, previous.serialized().version());
+            return;
+        }
+        
+        // Channels beyond the metrics' top list only change the exposition
+        SerializedMetrics serialized = metricsChanged
+            ? new SerializedMetrics(serialize(metrics), ++version, instance)
+            : previous.serialized();
+        metricsStore.put(window, new StoredMetrics(metrics, exported, serialized));
+        if (metricsChanged) {
+            allMetrics = buildAllMetrics();
+        }
+        if (openMetricsEnabled) {
+            openMetrics = renderOpenMetrics();
+        }
+        
+        log.debug("Saved metrics for window {}: activeUsers={}, eventsPerMinute={}, version={}", 
+            window, metrics.activeUsers(), metrics.eventsPerMinute(), serialized.version());
     }
     
     @Override
     public Optional<Metrics> getMetrics(Duration window) {
-        Metrics metrics = metricsStore.get(window);
-        if (metrics != null) {
+        StoredMetrics stored = metricsStore.get(window);
+        if (stored != null) {
             log.debug("Retrieved metrics for window {}: activeUsers={}, eventsPerMinute={}", 
-                window, metrics.activeUsers(), metrics.eventsPerMinute());
-        } else {
-            log.debug("No metrics found for window {}", window);
+                window, stored.metrics().activeUsers(), stored.metrics().eventsPerMinute());
+            return Optional.of(stored.metrics());
         }
-        return Optional.ofNullable(metrics);
+        log.debug("No metrics found for window {}", window);
+        return Optional.empty();
     }
     
     @Override
-    public void clearAll() {
+    public Optional<SerializedMetrics> getSerializedMetrics(Duration window) {
+        StoredMetrics stored = metricsStore.get(window);
+        return stored != null ? Optional.of(stored.serialized()) : Optional.empty();
+    }
+    
+    @Override
+    public Optional<SerializedMetrics> getSerializedAllMetrics() {
+        return Optional.ofNullable(allMetrics);
+    }
+    
+    @Override
+    public Optional<byte[]> getOpenMetrics() {
+        return Optional.ofNullable(openMetrics);
+    }
+    
+    @Override
+    public synchronized void saveInterval(IntervalMetrics metrics) {
+        ConcurrentSkipListMap<Instant, IntervalMetrics> stored =
+            intervalStore.computeIfAbsent(metrics.interval(), name -> new ConcurrentSkipListMap<>());
+        if (stored.putIfAbsent(metrics.start(), metrics) != null) {
+            log.warn("Interval {} starting {} already finalized, keeping the stored metrics", metrics.interval(), metrics.start());
+            return;
+        }
+        ElaProperties.Aggregation.Interval definition = intervalDefinitions.get(metrics.interval());
+        int retain = definition != null ? Math.max(1, definition.retain()) : 1;
+        while (stored.size() > retain) {
+            stored.pollFirstEntry();
+        }
+        log.debug("Saved interval {} starting {}: events={}, activeUsers={}",
+            metrics.interval(), metrics.start(), metrics.events(), metrics.activeUsers());
+    }
+    
+    @Override
+    public Optional<IntervalMetrics> getInterval(String interval, Instant start) {
+        ConcurrentSkipListMap<Instant, IntervalMetrics> stored = intervalStore.get(interval);
+        return stored != null ? Optional.ofNullable(stored.get(start)) : Optional.empty();
+    }
+    
+    @Override
+    public List<IntervalMetrics> getIntervals(String interval, Instant from, Instant to) {
+        ConcurrentSkipListMap<Instant, IntervalMetrics> stored = intervalStore.get(interval);
+        if (stored == null || !from.isBefore(to)) {
+            return List.of();
+        }
+        ConcurrentNavigableMap<Instant, IntervalMetrics> range = stored.subMap(from, true, to, false);
+        return List.copyOf(range.values());
+    }
+    
+    @Override
+    public synchronized void clearAll() {
         int size = metricsStore.size();
         metricsStore.clear();
+        intervalStore.clear();
+        allMetrics = null;
+        openMetrics = null;
         log.info("Cleared {} metric entries from repository", size);
     }
     
@@ -59,4 +183,44 @@ public class InMemoryMetricRepository implements MetricRepository {
     public boolean hasMetrics(Duration window) {
         return metricsStore.containsKey(window);
     }
-} 
\ No newline at end of file
+    
+    private byte[] serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize metrics", e);
+        }
+    }
+    
+    /**
+     * Concatenate the already serialized windows into one JSON array
+     */
+    private SerializedMetrics buildAllMetrics() {
+        List<StoredMetrics> entries = sortedEntries();
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('[');
+        for (int i = 0; i < entries.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.writeBytes(entries.get(i).serialized().json());
+        }
+        out.write(']');
+        return new SerializedMetrics(out.toByteArray(), version, instance);
+    }
+    
+    private byte[] renderOpenMetrics() {
+        return OpenMetricsEncoder.encode(sortedEntries().stream()
+            .map(stored -> new OpenMetricsEncoder.Window(stored.metrics(), stored.channels()))
+            .toList());
+    }
+    
+    private List<StoredMetrics> sortedEntries() {
+        return metricsStore.values().stream()
+            .sorted(Comparator.comparing(stored -> stored.metrics().window()))
+            .toList();
+    }
+    
+    private record StoredMetrics(Metrics metrics, List<ChannelCount> channels, SerializedMetrics serialized) {}
+}
@@ -0,0 +1,217 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Validation stage for event files from the inbox, fed by the file inbound adapter of
+ * the ingestion flow. Subdirectories of the inbox are tenant inboxes: their files are
+ * aggregated into the partition of the tenant named like the directory.
+ *
+ * Parsed files are moved to {@code processed} once all their events are aggregated,
+ * files without valid events to {@code invalid}, both next to the file. If the
+ * aggregation of a file fails it stays in the inbox and is read again when it is
+ * reported the next time, at the latest after a restart; events aggregated before the
+ * failure are then counted twice unless duplicate suppression is on. Growing files
+ * configured for tailing are handed to the {@link FileTailer} and stay in place.
+ */
+@Service
+public class InboxFileProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(InboxFileProcessor.class);
+    private static final Set<String> RESERVED_DIRECTORIES = Set.of("processed", "invalid");
+
+    private final EventParser eventParser;
+    private final FileTailer fileTailer;
+    private final AllocationTracker allocationTracker;
+    private final TenantRegistry tenantRegistry;
+
+    // A file may be reported by several watch events while it is being processed,
+    // which lasts until its events are aggregated
+    private final Set<Path> inProgress = ConcurrentHashMap.newKeySet();
+
+    public InboxFileProcessor(EventParser eventParser, FileTailer fileTailer,
+                              AllocationTracker allocationTracker, TenantRegistry tenantRegistry) {
+        this.eventParser = eventParser;
+        this.fileTailer = fileTailer;
+        this.allocationTracker = allocationTracker;
+        this.tenantRegistry = tenantRegistry;
+    }
+
+    /**
+     * Whether the inbound adapter should emit the file: event files and tailed files
+     */
+    public boolean accepts(File file) {
+        Path path = file.toPath();
+        return !isReservedDirectory(path.getParent() != null ? path.getParent().getFileName() : null)
+            && (fileTailer.isTailed(path) || EventParser.isEventFile(path.getFileName()));
+    }
+
+    /**
+     * Whether the inbound adapter should watch the directory: the inbox and the tenant
+     * inboxes in it
+     */
+    public boolean watchesDirectory(Path directory) {
+        Path name = directory.getFileName();
+        return directory.toAbsolutePath().normalize().equals(tenantRegistry.getInbox())
+            || (name != null && !isReservedDirectory(name) && TenantRegistry.isValidTenantId(name.toString()));
+    }
+
+    public boolean isTailed(File file) {
+        return fileTailer.isTailed(file.toPath());
+    }
+
+    /**
+     * Read the lines appended to a tailed file
+     */
+    public void tail(File file) {
+        fileTailer.tail(file.toPath());
+    }
+
+    /**
+     * Parse an event file. The valid events are returned with tenant and lane headers
+     * once the tenant's ingest-rate quota allows them, and with a receipt that moves
+     * the file out of the way once they are aggregated.
+     *
+     * @return null if there is nothing to ingest
+     */
+    public Message<List<FlatEvent>> process(File file) {
+        Path filePath = file.toPath();
+        if (!inProgress.add(filePath)) {
+            return null;
+        }
+        Message<List<FlatEvent>> message = null;
+        try {
+            // Small delay to ensure file is fully written
+            Thread.sleep(100);
+
+            if (!Files.exists(filePath)) {
+                log.debug("File no longer exists: {}", filePath);
+                return null;
+            }
+
+            log.info("Processing event file: {}", filePath.getFileName());
+
+            JfrEvents.InboxFile jfr = new JfrEvents.InboxFile();
+            jfr.begin();
+            long queueWait = jfr.isEnabled()
+                ? System.currentTimeMillis() - Files.getLastModifiedTime(filePath).toMillis()
+                : 0;
+
+            long allocationStart = allocationTracker.start();
+            List<FlatEvent> events = eventParser.parseEventsFromFile(filePath);
+
+            if (!events.isEmpty()) {
+                // Events go to the inbox lane, which is rate-limited against live traffic,
+                // at the pace of the tenant's quota
+                TenantPartition partition = tenantRegistry.resolveInboxFile(filePath);
+                partition.acquire(events.size());
+                allocationTracker.record(AllocationTracker.INBOX, allocationStart, events.size());
+                log.info("Queued {} events from file: {}", events.size(), filePath.getFileName());
+                message = MessageBuilder.withPayload(events)
+                    .setHeader(IngestHeaders.TENANT, partition.getTenant())
+                    .setHeader(IngestHeaders.LANE, IngestLane.INBOX)
+                    .setHeader(IngestHeaders.RECEIPT, receipt(filePath, events.size()))
+                    .build();
+            } else {
+                log.warn("No valid events found in file: {}", filePath.getFileName());
+                moveInvalidFile(filePath);
+            }
+
+            jfr.end();
+            if (jfr.shouldCommit()) {
+                jfr.file = filePath.getFileName().toString();
+                jfr.queueWait = Math.max(0, queueWait);
+                jfr.events = events.size();
+                jfr.accepted = !events.isEmpty();
+                jfr.commit();
+            }
+            return message;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while processing event file {}", filePath.getFileName());
+            return null;
+        } catch (Exception e) {
+            log.error("Error processing event file {}: {}", filePath.getFileName(), e.getMessage(), e);
+            moveInvalidFile(filePath);
+            message = null;
+            return null;
+        } finally {
+            if (message == null) {
+                inProgress.remove(filePath);
+            }
+        }
+    }
+
+    private IngestReceipt receipt(Path filePath, int events) {
+        return new IngestReceipt(events,
+            () -> {
+                log.info("Aggregated {} events from file: {}", events, filePath.getFileName());
+                moveProcessedFile(filePath);
+                inProgress.remove(filePath);
+            },
+            failure -> {
+                log.error("Failed to aggregate events from file {}, leaving it in the inbox: {}",
+                    filePath.getFileName(), failure.getMessage());
+                inProgress.remove(filePath);
+            });
+    }
+
+    private void moveProcessedFile(Path filePath) {
+        try {
+            Path processedDir = filePath.getParent().resolve("processed");
+            Files.createDirectories(processedDir);
+
+            Path targetPath = processedDir.resolve(filePath.getFileName());
+            Files.move(filePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+
+            log.debug("Moved processed file to: {}", targetPath);
+
+        } catch (IOException e) {
+            log.warn("Failed to move processed file {}: {}", filePath.getFileName(), e.getMessage());
+            // If move fails, try to delete the file
+            try {
+                Files.deleteIfExists(filePath);
+                log.debug("Deleted processed file: {}", filePath.getFileName());
+            } catch (IOException deleteError) {
+                log.error("Failed to delete processed file {}: {}", filePath.getFileName(), deleteError.getMessage());
+            }
+        }
+    }
+
+    private void moveInvalidFile(Path filePath) {
+        try {
+            Path invalidDir = filePath.getParent().resolve("invalid");
+            Files.createDirectories(invalidDir);
+
+            Path targetPath = invalidDir.resolve(filePath.getFileName());
+            Files.move(filePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+
+            log.debug("Moved invalid file to: {}", targetPath);
+
+        } catch (IOException e) {
+            log.error("Failed to move invalid file {}: {}", filePath.getFileName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Whether a directory in the inbox holds moved files rather than a tenant's inbox
+     */
+    static boolean isReservedDirectory(Path name) {
+        return name != null && RESERVED_DIRECTORIES.contains(name.toString());
+    }
+}
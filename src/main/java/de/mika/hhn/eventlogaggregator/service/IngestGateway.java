@@ -0,0 +1,23 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.springframework.integration.annotation.MessagingGateway;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Payload;
+
+import java.util.List;
+
+/**
+ * Entry point of the ingestion flow for validated events. Sources other than the file
+ * and HTTP adapters submit here; the events are batched per tenant and lane and
+ * aggregated asynchronously.
+ */
+@MessagingGateway(defaultRequestChannel = IngestGateway.CHANNEL)
+public interface IngestGateway {
+
+    String CHANNEL = "ingestEvents";
+
+    void submit(@Payload List<FlatEvent> events,
+                @Header(IngestHeaders.TENANT) String tenant,
+                @Header(IngestHeaders.LANE) IngestLane lane);
+}
@@ -0,0 +1,32 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+/**
+ * Message headers of the ingestion flow. Events are batched per tenant and lane, so
+ * every message carrying events has both.
+ */
+public final class IngestHeaders {
+
+    /**
+     * Tenant id, see {@link TenantRegistry#resolve(String)}
+     */
+    public static final String TENANT = "ela_tenant";
+
+    /**
+     * {@link IngestLane} the events are handed to
+     */
+    public static final String LANE = "ela_lane";
+
+    /**
+     * Optional {@link IngestReceipt} to acknowledge once the events are aggregated
+     */
+    public static final String RECEIPT = "ela_receipt";
+
+    /**
+     * Receipts of the events in a batch, as a map of {@link IngestReceipt} to the
+     * number of its events in the batch
+     */
+    public static final String RECEIPTS = "ela_receipts";
+
+    private IngestHeaders() {
+    }
+}
@@ -0,0 +1,13 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+/**
+ * Source lanes of the {@link IngestScheduler}
+ */
+public enum IngestLane {
+    /** Live events submitted via HTTP */
+    HTTP,
+    /** Files dropped into the inbox directory, typically backfills */
+    INBOX,
+    /** Tailed log files, which may be read from an old offset after a restart */
+    REPLAY
+}
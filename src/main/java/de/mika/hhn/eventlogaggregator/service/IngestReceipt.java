@@ -0,0 +1,51 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Completion of a submission to the ingestion flow, whose events may end up in
+ * several batches. Travels with the events in the {@link IngestHeaders#RECEIPT}
+ * header; every batch acknowledges its share once it is aggregated.
+ */
+public final class IngestReceipt {
+
+    private final AtomicInteger pending;
+    private final AtomicBoolean settled = new AtomicBoolean();
+    private final Runnable onAccepted;
+    private final Consumer<RuntimeException> onFailed;
+
+    /**
+     * @param events number of events submitted
+     * @param onAccepted run once all events are aggregated
+     * @param onFailed run instead if a batch with some of the events fails
+     */
+    public IngestReceipt(int events, Runnable onAccepted, Consumer<RuntimeException> onFailed) {
+        this.pending = new AtomicInteger(events);
+        this.onAccepted = onAccepted;
+        this.onFailed = onFailed;
+    }
+
+    /**
+     * Acknowledge events of this submission as aggregated
+     */
+    public void accepted(int events) {
+        if (pending.addAndGet(-events) <= 0 && settled.compareAndSet(false, true)) {
+            onAccepted.run();
+        }
+    }
+
+    /**
+     * Report that events of this submission could not be aggregated
+     */
+    public void failed(RuntimeException failure) {
+        if (settled.compareAndSet(false, true)) {
+            onFailed.accept(failure);
+        }
+    }
+
+    public boolean isSettled() {
+        return settled.get();
+    }
+}
@@ -0,0 +1,337 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Feeds events from the ingestion lanes into the {@link MetricAggregator}, so bulk
+ * imports cannot starve live HTTP traffic.
+ *
+ * Producers hand over their events and wait until they are aggregated. Events are
+ * split into chunks of {@code chunkSize}, queued per lane and drained by a fixed set
+ * of workers with weighted round-robin: a lane may take up to {@code weight} chunks
+ * before the next lane with work gets its turn. Lanes with {@code maxEventsPerSecond}
+ * are additionally limited by a token bucket, so a backfill only gets the capacity
+ * left over by live traffic, up to its cap. Within a lane, tenants take turns chunk
+ * by chunk, so one tenant's backlog does not delay the others. Rate caps and lane
+ * waits are measured on the application clock.
+ */
+@Service
+public class IngestScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestScheduler.class);
+
+    private final ElaProperties.IngestLanes config;
+    private final AllocationTracker allocationTracker;
+    private final MonotonicTicker ticker;
+
+    private final Map<IngestLane, LaneState> lanes = new EnumMap<>(IngestLane.class);
+    private final LaneState[] order;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private int current = 0;
+    private int quantumLeft;
+    private volatile boolean running = false;
+    private ExecutorService workers;
+
+    public IngestScheduler(ElaProperties properties, AllocationTracker allocationTracker, Clock clock) {
+        this.config = properties.ingestLanes();
+        this.allocationTracker = allocationTracker;
+        this.ticker = new MonotonicTicker(clock);
+        for (IngestLane lane : IngestLane.values()) {
+            lanes.put(lane, new LaneState(lane, laneConfig(lane), clock));
+        }
+        this.order = lanes.values().toArray(new LaneState[0]);
+        this.quantumLeft = order[0].weight;
+    }
+
+    private ElaProperties.IngestLanes.Lane laneConfig(IngestLane lane) {
+        return switch (lane) {
+            case HTTP -> config.http();
+            case INBOX -> config.inbox();
+            case REPLAY -> config.replay();
+        };
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(config.workers(), r -> {
+            Thread t = new Thread(r, "IngestLane-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < config.workers(); i++) {
+            workers.submit(this::drain);
+        }
+        lanes.values().forEach(lane -> log.info("Ingest lane {}: weight={}, maxEventsPerSecond={}",
+            lane.lane, lane.weight, lane.rateLimit.isUnlimited() ? "unlimited" : lane.rateLimit.getEventsPerSecond()));
+    }
+
+    @PreDestroy
+    public void stop() {
+        lock.lock();
+        try {
+            running = false;
+            // Release producers still waiting for queued chunks
+            for (LaneState lane : order) {
+                Chunk chunk;
+                while ((chunk = lane.poll()) != null) {
+                    chunk.request.fail(new IllegalStateException("Ingestion stopped"));
+                }
+            }
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Aggregate the events into the tenant's partition through the given lane and wait
+     * until they are processed
+     *
+     * @return per event whether it was accepted, i.e. not rejected as duplicate
+     */
+    public boolean[] ingest(IngestLane lane, TenantPartition partition, List<FlatEvent> events) {
+        if (events == null || events.isEmpty()) {
+            return new boolean[0];
+        }
+        LaneState state = lanes.get(lane);
+        int chunkSize = Math.max(1, config.chunkSize());
+        int chunks = (events.size() + chunkSize - 1) / chunkSize;
+        Request request = new Request(events.size(), chunks);
+
+        lock.lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Ingestion stopped");
+            }
+            long now = ticker.nanos();
+            for (int from = 0; from < events.size(); from += chunkSize) {
+                int to = Math.min(events.size(), from + chunkSize);
+                state.offer(new Chunk(state, partition, events.subList(from, to), from, request, now));
+            }
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            request.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for ingestion", e);
+        }
+        if (request.failure != null) {
+            throw request.failure;
+        }
+        return request.results;
+    }
+
+    /**
+     * Aggregate the events into the tenant's partition through the given lane
+     *
+     * @return number of events accepted, i.e. not rejected as duplicates
+     */
+    public int ingestAll(IngestLane lane, TenantPartition partition, List<FlatEvent> events) {
+        int accepted = 0;
+        for (boolean result : ingest(lane, partition, events)) {
+            if (result) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Configuration and counters per lane
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        for (LaneState lane : order) {
+            long chunks = lane.processedChunks.sum();
+            Map<String, Object> laneStatus = new LinkedHashMap<>();
+            laneStatus.put("weight", lane.weight);
+            laneStatus.put("maxEventsPerSecond", lane.rateLimit.getEventsPerSecond());
+            laneStatus.put("queuedChunks", lane.queuedChunks);
+            laneStatus.put("processedEvents", lane.processedEvents.sum());
+            laneStatus.put("averageWaitMs", chunks > 0 ? lane.waitNanos.sum() / chunks / 1_000_000.0 : 0.0);
+            status.put(lane.lane.name().toLowerCase(), laneStatus);
+        }
+        return status;
+    }
+
+    private void drain() {
+        while (running) {
+            Chunk chunk;
+            try {
+                chunk = next();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (chunk == null) {
+                return;
+            }
+            process(chunk);
+        }
+    }
+
+    private void process(Chunk chunk) {
+        long allocationStart = allocationTracker.start();
+        chunk.lane.waitNanos.add(ticker.nanos() - chunk.enqueuedAt);
+        MetricAggregator metricAggregator = chunk.partition.getMetricAggregator();
+        try {
+            for (int i = 0; i < chunk.events.size(); i++) {
+                chunk.request.results[chunk.offset + i] = metricAggregator.addEvent(chunk.events.get(i));
+            }
+            chunk.request.complete();
+        } catch (RuntimeException e) {
+            log.error("Failed to aggregate chunk from lane {}: {}", chunk.lane.lane, e.getMessage(), e);
+            chunk.request.fail(e);
+        } finally {
+            chunk.lane.processedChunks.increment();
+            chunk.lane.processedEvents.add(chunk.events.size());
+            allocationTracker.record("lane-" + chunk.lane.lane.name().toLowerCase(), allocationStart, chunk.events.size());
+        }
+    }
+
+    /**
+     * Next chunk by weighted round-robin, waiting while no lane may be served
+     */
+    private Chunk next() throws InterruptedException {
+        lock.lock();
+        try {
+            while (running) {
+                // Two passes, so every lane is looked at with a fresh quantum at least once
+                for (int attempt = 0; attempt < order.length * 2; attempt++) {
+                    LaneState lane = order[current];
+                    if (quantumLeft > 0 && lane.queuedChunks > 0 && lane.rateLimit.hasTokens()) {
+                        quantumLeft--;
+                        Chunk chunk = lane.poll();
+                        lane.rateLimit.consume(chunk.events.size());
+                        return chunk;
+                    }
+                    current = (current + 1) % order.length;
+                    quantumLeft = order[current].weight;
+                }
+                long wait = nanosUntilTokens();
+                if (wait == Long.MAX_VALUE) {
+                    workAvailable.await();
+                } else {
+                    workAvailable.awaitNanos(wait);
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Time until a rate-capped lane with queued work may be served again
+     */
+    private long nanosUntilTokens() {
+        long wait = Long.MAX_VALUE;
+        for (LaneState lane : order) {
+            if (lane.queuedChunks > 0 && !lane.rateLimit.hasTokens()) {
+                wait = Math.min(wait, Math.max(1_000_000, lane.rateLimit.nanosUntilAvailable()));
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * Queued chunks of one lane, guarded by the scheduler lock. Every tenant with work
+     * has its own queue; the tenants are served in turn.
+     */
+    private static class LaneState {
+        final IngestLane lane;
+        final int weight;
+        final TokenBucket rateLimit;
+        final Map<TenantPartition, Queue<Chunk>> tenantQueues = new HashMap<>();
+        final Queue<Queue<Chunk>> activeTenants = new ArrayDeque<>();
+        int queuedChunks;
+        final LongAdder processedChunks = new LongAdder();
+        final LongAdder processedEvents = new LongAdder();
+        final LongAdder waitNanos = new LongAdder();
+
+        LaneState(IngestLane lane, ElaProperties.IngestLanes.Lane config, Clock clock) {
+            this.lane = lane;
+            this.weight = Math.max(1, config.weight());
+            this.rateLimit = new TokenBucket(config.maxEventsPerSecond(), clock);
+        }
+
+        void offer(Chunk chunk) {
+            Queue<Chunk> queue = tenantQueues.computeIfAbsent(chunk.partition, key -> new ArrayDeque<>());
+            if (queue.isEmpty()) {
+                activeTenants.add(queue);
+            }
+            queue.add(chunk);
+            queuedChunks++;
+        }
+
+        Chunk poll() {
+            Queue<Chunk> queue = activeTenants.poll();
+            if (queue == null) {
+                return null;
+            }
+            Chunk chunk = queue.poll();
+            if (queue.isEmpty()) {
+                tenantQueues.remove(chunk.partition);
+            } else {
+                activeTenants.add(queue);
+            }
+            queuedChunks--;
+            return chunk;
+        }
+    }
+
+    private record Chunk(LaneState lane, TenantPartition partition, List<FlatEvent> events, int offset,
+                         Request request, long enqueuedAt) {}
+
+    private static class Request {
+        final boolean[] results;
+        final CountDownLatch done;
+        volatile RuntimeException failure;
+
+        Request(int size, int chunks) {
+            this.results = new boolean[size];
+            this.done = new CountDownLatch(chunks);
+        }
+
+        void complete() {
+            done.countDown();
+        }
+
+        void fail(RuntimeException e) {
+            failure = e;
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Custom JDK Flight Recorder events of the ingest and publish pipeline.
+ *
+ * The events are disabled unless a recording enables them (see {@link FlightRecording}
+ * or {@code -XX:StartFlightRecording}); a disabled event costs a single field check.
+ * The event duration is the time between {@code begin()} and {@code commit()}.
+ */
+public final class JfrEvents {
+
+    private static final String CATEGORY = "Event-Log Aggregator";
+
+    private JfrEvents() {
+    }
+
+    @Name("de.mika.hhn.ela.Parse")
+    @Label("Parse")
+    @Category({CATEGORY, "Ingest"})
+    @Description("Parsing and validation of one file or batch")
+    @StackTrace(false)
+    public static class Parse extends Event {
+        @Label("Source")
+        @Description("File name, or the kind of batch for HTTP submissions")
+        public String source;
+
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+
+        @Label("Events")
+        @Description("Number of elements read, valid or not")
+        public int events;
+
+        @Label("Invalid")
+        public int invalid;
+    }
+
+    @Name("de.mika.hhn.ela.Validate")
+    @Label("Validate Batch")
+    @Category({CATEGORY, "Ingest"})
+    @Description("Schema validation of the elements of a batch")
+    @StackTrace(false)
+    public static class Validate extends Event {
+        @Label("Elements")
+        public int elements;
+
+        @Label("Invalid")
+        public int invalid;
+
+        @Label("Parallel")
+        @Description("Whether the batch was validated on the fork-join pool")
+        public boolean parallel;
+    }
+
+    @Name("de.mika.hhn.ela.AggregateWindow")
+    @Label("Aggregate Window")
+    @Category({CATEGORY, "Aggregation"})
+    @Description("Metric calculation for one window from the rollups during an aggregation tick")
+    @StackTrace(false)
+    public static class AggregateWindow extends Event {
+        @Label("Window")
+        public String window;
+
+        @Label("Buckets Merged")
+        public int bucketsMerged;
+
+        @Label("Events")
+        @Description("Events in the window, each sampled event counting once")
+        public long events;
+    }
+
+    @Name("de.mika.hhn.ela.InboxFile")
+    @Label("Inbox File")
+    @Category({CATEGORY, "Ingest"})
+    @Description("Processing of one file from the inbox directory")
+    @StackTrace(false)
+    public static class InboxFile extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("Queue Wait")
+        @Description("Time between the last modification of the file and the start of processing")
+        @Timespan(Timespan.MILLISECONDS)
+        public long queueWait;
+
+        @Label("Events")
+        public int events;
+
+        @Label("Accepted")
+        @Description("Whether the file contained valid events and was moved to processed")
+        public boolean accepted;
+    }
+
+    @Name("de.mika.hhn.ela.Broadcast")
+    @Label("Broadcast")
+    @Category({CATEGORY, "Publish"})
+    @Description("Fan-out of one message to all SSE subscribers")
+    @StackTrace(false)
+    public static class Broadcast extends Event {
+        @Label("Event Name")
+        public String eventName;
+
+        @Label("Subscribers")
+        public int subscribers;
+
+        @Label("Failed")
+        @Description("Subscribers dropped because the send failed")
+        public int failed;
+    }
+}
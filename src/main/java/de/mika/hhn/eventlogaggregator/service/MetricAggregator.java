@@ -2,21 +2,31 @@ package de.mika.hhn.eventlogaggregator.service;
 
 import de.mika.hhn.eventlogaggregator.config.ElaProperties;
 import de.mika.hhn.eventlogaggregator.model.ChannelCount;
-import de.mika.hhn.eventlogaggregator.model.Event;
+import de.mika.hhn.eventlogaggregator.model.EventType;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import de.mika.hhn.eventlogaggregator.model.IntervalMetrics;
 import de.mika.hhn.eventlogaggregator.model.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Service for aggregating events into rolling-window metrics
+ * Service for aggregating events into rolling-window metrics.
+ *
+ * Accepted events are queued and rolled up on the next aggregation tick into a
+ * {@link RollupHierarchy}, from which every configured window is read. Memory thus
+ * grows with the number of buckets, not of events, and an extra window costs a few
+ * bucket merges per tick. Closed intervals (tumbling and hopping) are read from the
+ * same rollups once they have ended and stored as final.
  */
 @Service
 public class MetricAggregator {
@@ -25,126 +35,279 @@ public class MetricAggregator {
     
     private final ElaProperties properties;
     private final MetricRepository metricRepository;
+    private final DuplicateFilter duplicateFilter;
+    private final AdmissionController admissionController;
+    private final AnomalyDetector anomalyDetector;
+    private final UserActivityIndex userActivityIndex;
+    private final SessionTracker sessionTracker;
+    private final TimeSeriesStore timeSeriesStore;
+    private final AllocationTracker allocationTracker;
+    private final Clock clock;
     
-    // Ring-Buffer für Events pro Zeitfenster
-    private final Map<Duration, ConcurrentLinkedQueue<TimestampedEvent>> eventWindows = new ConcurrentHashMap<>();
+    // Queue node (24 bytes) plus TimestampedEvent (40 bytes), assuming compressed oops
+    private static final long ENTRY_BYTES = 64;
+    // Channels listed in the metrics; the OpenMetrics export may ask for more
+    private static final int TOP_CHANNELS = 5;
+    private static final EventType[] EVENT_TYPES = EventType.values();
     
-    public MetricAggregator(ElaProperties properties, MetricRepository metricRepository) {
+    // Window lengths, shortest first
+    private final List<Duration> windows;
+    private final Duration primaryWindow;
+    // Only touched on the aggregation tick, under this aggregator's lock
+    private final RollupHierarchy rollups;
+    private final List<IntervalState> intervals = new ArrayList<>();
+    // Events accepted since the last tick; ConcurrentLinkedQueue.size() is O(n)
+    private final ConcurrentLinkedQueue<TimestampedEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingSize = new AtomicInteger();
+    // Wall-clock time of the first accepted event, for startup measurements
+    private final AtomicLong firstEventAcceptedAt = new AtomicLong();
+    // Weighted events per window and footprint per level as of the last aggregation tick
+    private final Map<Duration, Long> windowEvents = new ConcurrentHashMap<>();
+    private volatile List<RollupFootprint> footprints = List.of();
+    
+    public MetricAggregator(ElaProperties properties, MetricRepository metricRepository,
+                            DuplicateFilter duplicateFilter, AdmissionController admissionController,
+                            AnomalyDetector anomalyDetector, UserActivityIndex userActivityIndex,
+                            SessionTracker sessionTracker, TimeSeriesStore timeSeriesStore,
+                            AllocationTracker allocationTracker, Clock clock) {
         this.properties = properties;
         this.metricRepository = metricRepository;
-        initializeWindows();
-    }
-    
-    private void initializeWindows() {
-        var windows = properties.aggregation().windows();
-        eventWindows.put(windows.hourly(), new ConcurrentLinkedQueue<>());
-        eventWindows.put(windows.daily(), new ConcurrentLinkedQueue<>());
-        eventWindows.put(windows.weekly(), new ConcurrentLinkedQueue<>());
-        log.info("Initialized metric windows: hourly={}, daily={}, weekly={}", 
-            windows.hourly(), windows.daily(), windows.weekly());
+        this.duplicateFilter = duplicateFilter;
+        this.admissionController = admissionController;
+        this.anomalyDetector = anomalyDetector;
+        this.userActivityIndex = userActivityIndex;
+        this.sessionTracker = sessionTracker;
+        this.timeSeriesStore = timeSeriesStore;
+        this.allocationTracker = allocationTracker;
+        this.clock = clock;
+        
+        ElaProperties.Aggregation aggregation = properties.aggregation();
+        ElaProperties.Aggregation.Rollups config = aggregation.rollups();
+        this.windows = aggregation.durations();
+        this.primaryWindow = aggregation.primary();
+        this.rollups = new RollupHierarchy(
+            config.levels().stream().sorted().toList(), windows, config.minBucketsPerWindow(),
+            config.maxChannelsPerBucket(), config.userSketchPrecision(), config.channelSketchPrecision(), clock.millis());
+        log.info("Initialized metric windows {} on rollup levels {}: {}", aggregation.windows(), config.levels(),
+            windows.stream().map(window -> window + " from " + rollups.resolution(window) + " buckets").toList());
+        
+        long now = clock.millis();
+        aggregation.intervalsOrEmpty().forEach((name, interval) -> {
+            Duration resolution = rollups.retainIntervals(interval.size(), interval.step());
+            IntervalState state = new IntervalState(name, interval.size().toMillis(), interval.step().toMillis());
+            state.reset(now);
+            intervals.add(state);
+            log.info("Initialized interval {} of {} every {} from {} buckets, first starting {}",
+                name, interval.size(), interval.step(), resolution, Instant.ofEpochMilli(state.nextStart));
+        });
     }
     
     /**
      * Add a single event to all time windows
+     * 
+     * @return false if the event was rejected as a duplicate. Events shed by
+     *         admission control count as accepted, since they are represented
+     *         by the scaled weight of the sampled events.
      */
-    public void addEvent(Event event) {
+    public boolean addEvent(FlatEvent event) {
         if (event == null) {
-            return;
+            return false;
+        }
+        
+        if (duplicateFilter.isDuplicate(event)) {
+            return false;
+        }
+        
+        long now = clock.millis();
+        String type = event.type().name();
+        
+        // Rate baselines, the user index, sessions and chart series are bounded,
+        // so they see every event, even the ones shed below
+        anomalyDetector.record(type, event.channel());
+        userActivityIndex.record(event, now);
+        sessionTracker.record(event, now);
+        timeSeriesStore.record(event.channel(), now);
+        
+        double weight = admissionController.admit(type);
+        if (weight == 0.0) {
+            return true;
         }
         
-        TimestampedEvent timestampedEvent = new TimestampedEvent(event, Instant.now());
+        // Only what the metrics need is retained, message text and action are dropped here
+        TimestampedEvent timestampedEvent = new TimestampedEvent(event.type(), event.userId(), event.channel(), now, weight);
         
-        // Add to all time windows
-        eventWindows.values().forEach(queue -> queue.offer(timestampedEvent));
+        // Rolled up into all windows on the next tick
+        pending.offer(timestampedEvent);
+        pendingSize.incrementAndGet();
+        
+        if (firstEventAcceptedAt.get() == 0 && firstEventAcceptedAt.compareAndSet(0, now)) {
+            log.info("First event accepted: type={}", event.type());
+        }
         
         log.debug("Added event to aggregation: type={}, userId={}", event.type(), event.userId());
+        return true;
     }
     
     /**
      * Add multiple events
+     * 
+     * @return number of events accepted, i.e. not rejected as duplicates
      */
-    public void addEvents(List<Event> events) {
+    public int addEvents(List<FlatEvent> events) {
         if (events == null || events.isEmpty()) {
-            return;
+            return 0;
         }
         
-        events.forEach(this::addEvent);
-        log.debug("Added {} events to aggregation", events.size());
+        int accepted = 0;
+        for (FlatEvent event : events) {
+            if (addEvent(event)) {
+                accepted++;
+            }
+        }
+        log.debug("Added {} of {} events to aggregation", accepted, events.size());
+        return accepted;
     }
     
     /**
-     * Aggregate and update metrics for all time windows
+     * Roll up the queued events and update metrics for all time windows
      */
-    public void aggregateMetrics() {
-        var windows = properties.aggregation().windows();
+    public synchronized void aggregateMetrics() {
+        long allocationStart = allocationTracker.start();
         
-        aggregateAndSave(windows.hourly());
-        aggregateAndSave(windows.daily()); 
-        aggregateAndSave(windows.weekly());
+        admissionController.adjust(getRetainedBytes());
+        long now = clock.millis();
+        anomalyDetector.tick(now);
+        userActivityIndex.expire(now);
+        sessionTracker.tick(now);
         
+        rollUpPending();
+        rollups.advance(now);
+        finalizeIntervals(now);
+        for (Duration window : windows) {
+            aggregateAndSave(window, now);
+        }
+        footprints = rollups.footprints();
+        
+        allocationTracker.recordTick(allocationStart);
         log.debug("Completed metric aggregation for all windows");
     }
     
-    private void aggregateAndSave(Duration window) {
+    /**
+     * Move the events queued so far into the rollups; later ones wait for the next tick
+     */
+    private void rollUpPending() {
+        int queued = pendingSize.get();
+        int drained = 0;
+        TimestampedEvent event;
+        while (drained < queued && (event = pending.poll()) != null) {
+            rollups.add(event.type(), event.userId(), event.channel(), event.weight(), event.receivedAt());
+            drained++;
+        }
+        pendingSize.addAndGet(-drained);
+    }
+    
+    /**
+     * Store every interval that ended by {@code now}, each exactly once. Events of an
+     * interval rolled up after it was finalized count towards the open buckets instead.
+     */
+    private void finalizeIntervals(long now) {
+        for (IntervalState interval : intervals) {
+            while (interval.nextStart + interval.sizeMillis <= now) {
+                long start = interval.nextStart;
+                long end = start + interval.sizeMillis;
+                Optional<RollupHierarchy.Bucket> contents = rollups.interval(start, end);
+                if (contents.isPresent()) {
+                    metricRepository.saveInterval(intervalMetrics(interval.name, start, end, contents.get(), now));
+                } else {
+                    log.warn("Buckets of interval {} starting {} no longer retained, skipping it",
+                        interval.name, Instant.ofEpochMilli(start));
+                }
+                interval.nextStart += interval.stepMillis;
+            }
+        }
+    }
+    
+    private IntervalMetrics intervalMetrics(String name, long start, long end, RollupHierarchy.Bucket contents, long now) {
+        long events = Math.round(contents.weightedCount());
+        Map<String, Long> topChannels = new LinkedHashMap<>();
+        contents.channels().entrySet().stream()
+            .sorted((a, b) -> Double.compare(b.getValue().count(), a.getValue().count())) // Descending order
+            .limit(TOP_CHANNELS)
+            .forEach(entry -> topChannels.put(entry.getKey(), Math.round(entry.getValue().count())));
+        return new IntervalMetrics(name, Instant.ofEpochMilli(start), Instant.ofEpochMilli(end), events,
+            contents.distinctUsers(), calculateEventsPerMinute(events, Duration.ofMillis(end - start)),
+            Collections.unmodifiableMap(topChannels), contents.estimated(), eventsByType(contents), Instant.ofEpochMilli(now));
+    }
+    
+    private void aggregateAndSave(Duration window, long now) {
+        JfrEvents.AggregateWindow jfr = new JfrEvents.AggregateWindow();
+        jfr.begin();
         try {
-            // Clean expired events from window
-            cleanExpiredEvents(window);
+            RollupHierarchy.Snapshot snapshot = rollups.window(window, now);
             
-            // Calculate metrics
-            Metrics metrics = calculateMetrics(window);
+            // Calculate metrics, with the channels for the export ranked in the same pass
+            List<ChannelCount> channels = new ArrayList<>();
+            Metrics metrics = calculateMetrics(window, snapshot, channels, now);
             
             // Save to repository
-            metricRepository.saveMetrics(window, metrics);
+            metricRepository.saveMetrics(window, metrics, channels);
+            if (window.equals(primaryWindow)) {
+                timeSeriesStore.sample(metrics.activeUsers(), now);
+            }
+            
+            jfr.end();
+            if (jfr.shouldCommit()) {
+                jfr.window = window.toString();
+                jfr.bucketsMerged = snapshot.bucketsMerged();
+                jfr.events = snapshot.contents().events();
+                jfr.commit();
+            }
             
         } catch (Exception e) {
             log.error("Error during aggregation for window {}: {}", window, e.getMessage(), e);
         }
     }
     
-    private void cleanExpiredEvents(Duration window) {
-        ConcurrentLinkedQueue<TimestampedEvent> queue = eventWindows.get(window);
-        if (queue == null) return;
+    /**
+     * Metrics of a window; {@code channels} receives the busiest channels up to the
+     * larger of the metrics' and the export's limit
+     */
+    private Metrics calculateMetrics(Duration window, RollupHierarchy.Snapshot snapshot, List<ChannelCount> channels, long now) {
+        RollupHierarchy.Bucket contents = snapshot.contents();
         
-        Instant cutoff = Instant.now().minus(window);
-        int removedCount = 0;
+        // Sampled events stand in for the shed ones through their weight
+        double weightedCount = contents.weightedCount();
+        windowEvents.put(window, Math.round(weightedCount));
         
-        // Remove expired events from the beginning of the queue
-        while (!queue.isEmpty() && queue.peek().timestamp().isBefore(cutoff)) {
-            queue.poll();
-            removedCount++;
-        }
+        // Per minute of the span actually covered, which is within half a bucket of the window
+        long eventsPerMinute = calculateEventsPerMinute(Math.round(weightedCount), Duration.ofMillis(snapshot.spanMillis()));
         
-        if (removedCount > 0) {
-            log.debug("Removed {} expired events from {} window", removedCount, window);
-        }
+        // Calculate top channels
+        channels.addAll(calculateTopChannels(contents.channels(), Math.max(TOP_CHANNELS, exportedChannels())));
+        List<ChannelCount> topChannels = List.copyOf(channels.subList(0, Math.min(TOP_CHANNELS, channels.size())));
+        
+        // Active users are estimated from the sketches, exactly for small windows
+        return new Metrics(window, contents.distinctUsers(), eventsPerMinute, topChannels, contents.estimated(),
+            sessionTracker.stats(window, now), sessionTracker.topOccupancy(), eventsByType(contents));
     }
     
-    private Metrics calculateMetrics(Duration window) {
-        ConcurrentLinkedQueue<TimestampedEvent> queue = eventWindows.get(window);
-        if (queue == null || queue.isEmpty()) {
-            return new Metrics(window, 0, 0, Collections.emptyList());
+    /**
+     * Weighted counts per event type, every type present and in declaration order
+     */
+    private static Map<String, Long> eventsByType(RollupHierarchy.Bucket contents) {
+        Map<String, Long> eventsByType = new LinkedHashMap<>();
+        for (EventType type : EVENT_TYPES) {
+            eventsByType.put(type.name(), Math.round(contents.typeCount(type)));
         }
-        
-        List<Event> events = queue.stream()
-            .map(te -> te.event())
-            .collect(Collectors.toList());
-        
-        // Calculate active users
-        long activeUsers = events.stream()
-            .map(Event::userId)
-            .distinct()
-            .count();
-        
-        // Calculate events per minute
-        long eventsPerMinute = calculateEventsPerMinute(events.size(), window);
-        
-        // Calculate top channels
-        List<ChannelCount> topChannels = calculateTopChannels(events, 5);
-        
-        return new Metrics(window, activeUsers, eventsPerMinute, topChannels);
+        return Collections.unmodifiableMap(eventsByType);
     }
     
-    private long calculateEventsPerMinute(int eventCount, Duration window) {
+    private int exportedChannels() {
+        ElaProperties.OpenMetrics openMetrics = properties.openMetrics();
+        return openMetrics != null && openMetrics.enabled() ? Math.max(0, openMetrics.maxChannels()) : 0;
+    }
+    
+    private long calculateEventsPerMinute(long eventCount, Duration window) {
         long windowMinutes = window.toMinutes();
         if (windowMinutes == 0) {
             return eventCount; // For very short windows
@@ -152,41 +315,127 @@ public class MetricAggregator {
         return eventCount / windowMinutes;
     }
     
-    private List<ChannelCount> calculateTopChannels(List<Event> events, int topN) {
-        return events.stream()
-            .map(Event::payload)
-            .filter(payload -> payload.containsKey("channel"))
-            .map(payload -> (String) payload.get("channel"))
-            .filter(Objects::nonNull)
-            .collect(Collectors.groupingBy(
-                channel -> channel,
-                Collectors.counting()
-            ))
-            .entrySet().stream()
-            .map(entry -> new ChannelCount(entry.getKey(), entry.getValue()))
-            .sorted((a, b) -> Long.compare(b.count(), a.count())) // Descending order
+    private List<ChannelCount> calculateTopChannels(Map<String, RollupHierarchy.Channel> channels, int topN) {
+        return channels.entrySet().stream()
+            .sorted((a, b) -> Double.compare(b.getValue().count(), a.getValue().count())) // Descending order
             .limit(topN)
+            .map(entry -> new ChannelCount(entry.getKey(), Math.round(entry.getValue().count()),
+                entry.getValue().distinctUsers()))
             .toList();
     }
     
     /**
-     * Get current event count for a specific window (for monitoring)
+     * Weighted events in a window as of the last aggregation tick (for monitoring)
+     */
+    public long getCurrentEventCount(Duration window) {
+        return windowEvents.getOrDefault(window, 0L);
+    }
+    
+    /**
+     * Number of events accepted but not yet rolled up
+     */
+    public long getBufferedEventCount() {
+        return pendingSize.get();
+    }
+    
+    /**
+     * Estimated heap of the rollup levels as of the last aggregation tick, finest first
+     */
+    public List<RollupFootprint> getRollupFootprints() {
+        return footprints;
+    }
+    
+    /**
+     * Estimated heap of everything this aggregator retains as of the last aggregation
+     * tick: rollups with their sketches, duplicate filter, user index and sessions, plus
+     * the events not yet rolled up
+     */
+    public long getRetainedBytes() {
+        long bytes = getBufferedBytes() + duplicateFilter.getMemoryBytes()
+            + userActivityIndex.getMemoryBytes() + sessionTracker.getMemoryBytes();
+        for (RollupFootprint footprint : footprints) {
+            bytes += footprint.bytes();
+        }
+        return bytes;
+    }
+    
+    /**
+     * Estimated heap of the events not yet rolled up, without their strings
+     */
+    public long getBufferedBytes() {
+        return getBufferedEventCount() * ENTRY_BYTES;
+    }
+    
+    public DuplicateFilter getDuplicateFilter() {
+        return duplicateFilter;
+    }
+    
+    public UserActivityIndex getUserActivityIndex() {
+        return userActivityIndex;
+    }
+    
+    public SessionTracker getSessionTracker() {
+        return sessionTracker;
+    }
+    
+    public TimeSeriesStore getTimeSeriesStore() {
+        return timeSeriesStore;
+    }
+    
+    /**
+     * Epoch millis at which the first event was accepted, 0 if none yet
      */
-    public int getCurrentEventCount(Duration window) {
-        ConcurrentLinkedQueue<TimestampedEvent> queue = eventWindows.get(window);
-        return queue != null ? queue.size() : 0;
+    public long getFirstEventAcceptedAt() {
+        return firstEventAcceptedAt.get();
     }
     
     /**
      * Clear all events from all windows
      */
-    public void clearAllEvents() {
-        eventWindows.values().forEach(ConcurrentLinkedQueue::clear);
+    public synchronized void clearAllEvents() {
+        pending.clear();
+        pendingSize.set(0);
+        long now = clock.millis();
+        rollups.clear(now);
+        // Intervals under way lost their events, so only the next full ones are finalized
+        intervals.forEach(interval -> interval.reset(now));
+        windowEvents.clear();
         log.info("Cleared all events from aggregation windows");
     }
     
     /**
-     * Internal record to store events with their processing timestamp
+     * Closed buckets of one rollup level and their estimated heap, including the
+     * level's open bucket
+     */
+    public record RollupFootprint(Duration resolution, int buckets, long bytes) {}
+    
+    /**
+     * Interval definition with the start of the next interval to finalize (epoch millis)
+     */
+    private static final class IntervalState {
+        final String name;
+        final long sizeMillis;
+        final long stepMillis;
+        long nextStart;
+        
+        IntervalState(String name, long sizeMillis, long stepMillis) {
+            this.name = name;
+            this.sizeMillis = sizeMillis;
+            this.stepMillis = stepMillis;
+        }
+        
+        /**
+         * Continue with the first interval starting at or after {@code now}, the
+         * earlier ones being incomplete
+         */
+        void reset(long now) {
+            nextStart = Math.floorDiv(now + stepMillis - 1, stepMillis) * stepMillis;
+        }
+    }
+    
+    /**
+     * Internal record to queue the aggregated fields of an event with its processing
+     * time (epoch millis) and the number of events it represents (greater than 1 when sampled)
      */
-    private record TimestampedEvent(Event event, Instant timestamp) {}
+    private record TimestampedEvent(EventType type, String userId, String channel, long receivedAt, double weight) {}
 } 
\ No newline at end of file
@@ -1,8 +1,12 @@
 package de.mika.hhn.eventlogaggregator.service;
 
+import de.mika.hhn.eventlogaggregator.model.ChannelCount;
+import de.mika.hhn.eventlogaggregator.model.IntervalMetrics;
 import de.mika.hhn.eventlogaggregator.model.Metrics;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -13,13 +17,57 @@ public interface MetricRepository {
     /**
      * Store metrics for a specific time window
      */
-    void saveMetrics(Duration window, Metrics metrics);
+    default void saveMetrics(Duration window, Metrics metrics) {
+        saveMetrics(window, metrics, metrics.topChannels());
+    }
+    
+    /**
+     * Store metrics for a specific time window, together with the busiest channels
+     * for the OpenMetrics export, which may be more than the metrics list
+     */
+    void saveMetrics(Duration window, Metrics metrics, List<ChannelCount> channels);
     
     /**
      * Retrieve metrics for a specific time window
      */
     Optional<Metrics> getMetrics(Duration window);
     
+    /**
+     * Retrieve the serialized JSON of the metrics for a specific time window.
+     * The bytes are produced once when the metrics change, not on every read.
+     */
+    Optional<SerializedMetrics> getSerializedMetrics(Duration window);
+    
+    /**
+     * Retrieve the serialized JSON array of the metrics of all time windows,
+     * ordered by window length
+     */
+    Optional<SerializedMetrics> getSerializedAllMetrics();
+    
+    /**
+     * Retrieve the OpenMetrics text exposition of all time windows, rendered when
+     * changed metrics are saved, not on every read. Empty if nothing was stored or
+     * the export is disabled.
+     */
+    Optional<byte[]> getOpenMetrics();
+    
+    /**
+     * Store the finalized metrics of a closed interval. Stored intervals are never
+     * replaced; of each interval definition only the latest are retained.
+     */
+    void saveInterval(IntervalMetrics metrics);
+    
+    /**
+     * Retrieve the finalized metrics of the interval starting at {@code start}
+     */
+    Optional<IntervalMetrics> getInterval(String interval, Instant start);
+    
+    /**
+     * Retrieve the finalized metrics of the intervals starting from {@code from}
+     * (inclusive) to {@code to} (exclusive), oldest first
+     */
+    List<IntervalMetrics> getIntervals(String interval, Instant from, Instant to);
+    
     /**
      * Clear all stored metrics
      */
@@ -0,0 +1,25 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Nanosecond readings of the application {@link Clock} for rates and waits, so they
+ * follow virtual time under the {@link SimulationClock}. Steps of the clock back in
+ * time are absorbed: readings never decrease.
+ */
+class MonotonicTicker {
+
+    private final Clock clock;
+    private final AtomicLong last = new AtomicLong(Long.MIN_VALUE);
+
+    MonotonicTicker(Clock clock) {
+        this.clock = clock;
+    }
+
+    long nanos() {
+        Instant now = clock.instant();
+        return last.accumulateAndGet(now.getEpochSecond() * 1_000_000_000L + now.getNano(), Math::max);
+    }
+}
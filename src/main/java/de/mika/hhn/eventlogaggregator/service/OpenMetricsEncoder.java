@@ -0,0 +1,133 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.model.ChannelCount;
+import de.mika.hhn.eventlogaggregator.model.Metrics;
+import de.mika.hhn.eventlogaggregator.model.SessionStats;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OpenMetrics text exposition of the metrics of all windows.
+ *
+ * <pre>
+ * ela_events_per_minute{window}              gauge
+ * ela_active_users{window}                   gauge
+ * ela_metrics_estimated{window}              gauge, 1 while counts are scaled up from a sample
+ * ela_type_events{window,type}               gauge
+ * ela_channel_events{window,channel}         gauge
+ * ela_channel_distinct_users{window,channel} gauge, HyperLogLog estimate
+ * ela_sessions_open                          gauge
+ * ela_sessions_closed{window}                gauge
+ * ela_session_duration_seconds{window}       summary with quantiles 0.5, 0.9 and 0.99
+ * </pre>
+ *
+ * All values describe the sliding window as of the last aggregation tick, so even
+ * event counts are gauges. Channel labels are limited to the channels handed in.
+ */
+final class OpenMetricsEncoder {
+
+    private OpenMetricsEncoder() {
+    }
+
+    /**
+     * Metrics of one window and the channels to export for it
+     */
+    record Window(Metrics metrics, List<ChannelCount> channels) {}
+
+    /**
+     * Render the exposition of {@code windows}, ordered by window length
+     */
+    static byte[] encode(List<Window> windows) {
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "ela_events_per_minute", "gauge", "Average events per minute in the window");
+        for (Window entry : windows) {
+            sample(out, "ela_events_per_minute", entry, entry.metrics().eventsPerMinute());
+        }
+        header(out, "ela_active_users", "gauge", "Distinct users with events in the window");
+        for (Window entry : windows) {
+            sample(out, "ela_active_users", entry, entry.metrics().activeUsers());
+        }
+        header(out, "ela_metrics_estimated", "gauge", "1 if counts were scaled up from a sample because of load shedding");
+        for (Window entry : windows) {
+            sample(out, "ela_metrics_estimated", entry, entry.metrics().estimated() ? 1 : 0);
+        }
+
+        header(out, "ela_type_events", "gauge", "Events in the window per event type");
+        for (Window entry : windows) {
+            Map<String, Long> eventsByType = entry.metrics().eventsByType() != null ? entry.metrics().eventsByType() : Map.of();
+            eventsByType.forEach((type, count) -> labeledSample(out, "ela_type_events", entry, "type", type, count));
+        }
+
+        header(out, "ela_channel_events", "gauge", "Events in the window of the busiest channels");
+        for (Window entry : windows) {
+            for (ChannelCount channel : entry.channels()) {
+                labeledSample(out, "ela_channel_events", entry, "channel", channel.channel(), channel.count());
+            }
+        }
+        header(out, "ela_channel_distinct_users", "gauge", "Estimated distinct users in the window of the busiest channels");
+        for (Window entry : windows) {
+            for (ChannelCount channel : entry.channels()) {
+                labeledSample(out, "ela_channel_distinct_users", entry, "channel", channel.channel(), channel.distinctUsers());
+            }
+        }
+
+        // Open sessions do not depend on the window
+        header(out, "ela_sessions_open", "gauge", "Sessions open right now");
+        long open = windows.isEmpty() ? 0 : sessions(windows.get(0)).concurrentSessions();
+        out.append("ela_sessions_open ").append(open).append('\n');
+        header(out, "ela_sessions_closed", "gauge", "Sessions closed within the window");
+        for (Window entry : windows) {
+            sample(out, "ela_sessions_closed", entry, sessions(entry).closedSessions());
+        }
+
+        header(out, "ela_session_duration_seconds", "summary", "Duration of the sessions closed within the window");
+        out.append("# UNIT ela_session_duration_seconds seconds\n");
+        for (Window entry : windows) {
+            SessionStats sessions = sessions(entry);
+            labeledSample(out, "ela_session_duration_seconds", entry, "quantile", "0.5", sessions.durationP50Seconds());
+            labeledSample(out, "ela_session_duration_seconds", entry, "quantile", "0.9", sessions.durationP90Seconds());
+            labeledSample(out, "ela_session_duration_seconds", entry, "quantile", "0.99", sessions.durationP99Seconds());
+            sample(out, "ela_session_duration_seconds_count", entry, sessions.closedSessions());
+        }
+
+        out.append("# EOF\n");
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n')
+            .append("# HELP ").append(name).append(' ').append(help).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, Window entry, long value) {
+        out.append(name).append("{window=\"").append(entry.metrics().window()).append("\"} ").append(value).append('\n');
+    }
+
+    private static void labeledSample(StringBuilder out, String name, Window entry, String label, String labelValue, long value) {
+        out.append(name).append("{window=\"").append(entry.metrics().window()).append("\",").append(label).append("=\"");
+        escape(out, labelValue).append("\"} ").append(value).append('\n');
+    }
+
+    private static SessionStats sessions(Window entry) {
+        return entry.metrics().sessions() != null ? entry.metrics().sessions() : SessionStats.EMPTY;
+    }
+
+    /**
+     * Label values escape backslash, double quote and line feed
+     */
+    private static StringBuilder escape(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '"' -> out.append("\\\"");
+                case '\n' -> out.append("\\n");
+                default -> out.append(c);
+            }
+        }
+        return out;
+    }
+}
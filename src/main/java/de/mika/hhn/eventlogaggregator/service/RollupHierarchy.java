@@ -0,0 +1,494 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.model.EventType;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Rolling windows of any length served from levels of time-bucketed rollups, e.g.
+ * seconds, minutes and hours.
+ *
+ * Events go into the open bucket of the finest level. When a bucket closes it is kept
+ * in its level's ring and merged into the open bucket of the next coarser level, so
+ * every level holds the same events at its own resolution, and the open buckets of a
+ * level and all finer ones together hold everything since the level's last boundary.
+ *
+ * A window is measured in buckets of the coarsest level that splits it into at least
+ * {@code minBucketsPerWindow}: as many closed buckets as bring it closest to its
+ * length, plus the chain of open buckets, so its length is met to within half a bucket
+ * of that level. Only its leading edge is read at that level, up to the next boundary
+ * of a coarser one; the rest comes from the closed buckets of the coarser levels. The
+ * merge of the closed buckets is cached until the level closes a bucket, so reading a
+ * window takes at most a few dozen merges whatever its length, and a level retains
+ * only as many closed buckets as its longest window needs.
+ *
+ * Closed intervals, such as calendar hours, are read exactly from the closed buckets
+ * of a level that tiles them, while that level still retains them.
+ *
+ * Closed buckets keep their {@code maxChannelsPerBucket} busiest channels; distinct
+ * users are HyperLogLog sketches, exact up to {@code 2^precision / 8} users, per bucket
+ * and per channel within a bucket ({@code channelPrecision}), and merged like the
+ * counts. Not thread-safe.
+ */
+final class RollupHierarchy {
+
+    private static final EventType[] EVENT_TYPES = EventType.values();
+    // Rough per-object sizes for the memory estimate, assuming compressed oops
+    private static final long BUCKET_BYTES = 64 + 16 + EVENT_TYPES.length * 8L + 48;
+    private static final long CHANNEL_BYTES = 32 + 24 + 24;
+
+    private final Level[] levels;
+    private final Map<Duration, WindowState> windows = new LinkedHashMap<>();
+    private final int maxChannelsPerBucket;
+    private final int precision;
+    private final int channelPrecision;
+
+    /**
+     * @param resolutions bucket lengths, finest first, each a multiple of the previous
+     */
+    RollupHierarchy(List<Duration> resolutions, Collection<Duration> windowLengths, int minBucketsPerWindow,
+                    int maxChannelsPerBucket, int precision, int channelPrecision, long nowMillis) {
+        if (resolutions.isEmpty()) {
+            throw new IllegalArgumentException("At least one rollup level is required");
+        }
+        this.maxChannelsPerBucket = Math.max(1, maxChannelsPerBucket);
+        this.precision = precision;
+        this.channelPrecision = channelPrecision;
+        this.levels = new Level[resolutions.size()];
+        for (int l = 0; l < levels.length; l++) {
+            long resolution = resolutions.get(l).toMillis();
+            if (resolution <= 0 || (l > 0 && resolution % levels[l - 1].resolutionMillis != 0)) {
+                throw new IllegalArgumentException("Rollup level " + resolutions.get(l)
+                    + " must be positive and a multiple of the previous level");
+            }
+            levels[l] = new Level(resolution, newBucket(nowMillis / resolution));
+        }
+
+        for (Duration window : windowLengths) {
+            int level = 0;
+            for (int l = levels.length - 1; l > 0; l--) {
+                if (levels[l].resolutionMillis * Math.max(1, minBucketsPerWindow) <= window.toMillis()) {
+                    level = l;
+                    break;
+                }
+            }
+            int buckets = (int) ((window.toMillis() + levels[level].resolutionMillis - 1) / levels[level].resolutionMillis);
+            retain(levels[level], buckets);
+            for (int l = level + 1; l < levels.length; l++) {
+                // The coarser levels cover the rest of the window, the oldest bucket partly
+                retain(levels[l], (int) ((window.toMillis() + levels[l].resolutionMillis - 1) / levels[l].resolutionMillis) + 1);
+            }
+            windows.put(window, new WindowState(level, buckets));
+        }
+    }
+
+    /**
+     * Keep the closed buckets needed to finalize intervals of {@code size} starting
+     * every {@code step}, from the coarsest level whose buckets tile them, for two
+     * buckets of that level after they closed
+     *
+     * @return the bucket length of that level
+     * @throws IllegalArgumentException if no level tiles the intervals
+     */
+    Duration retainIntervals(Duration size, Duration step) {
+        for (int l = levels.length - 1; l >= 0; l--) {
+            long resolution = levels[l].resolutionMillis;
+            if (size.toMillis() > 0 && step.toMillis() > 0
+                && size.toMillis() % resolution == 0 && step.toMillis() % resolution == 0) {
+                retain(levels[l], (int) (size.toMillis() / resolution) + 2);
+                return Duration.ofMillis(resolution);
+            }
+        }
+        throw new IllegalArgumentException("Interval of " + size + " every " + step
+            + " is not a positive multiple of a rollup level");
+    }
+
+    private static void retain(Level level, int buckets) {
+        if (buckets <= level.retained) {
+            return;
+        }
+        level.retained = buckets;
+        level.ring = new Bucket[buckets];
+        for (Bucket closed : level.closed) {
+            level.ring[slot(closed.index, buckets)] = closed;
+        }
+    }
+
+    /**
+     * Add an event received at {@code timestampMillis}. Events older than the open
+     * bucket of the finest level are counted in it.
+     */
+    void add(EventType type, String userId, String channel, double weight, long timestampMillis) {
+        advance(timestampMillis);
+        levels[0].open.add(type, userId, channel, weight);
+    }
+
+    /**
+     * Close the buckets that ended before {@code nowMillis}
+     */
+    void advance(long nowMillis) {
+        if (nowMillis / levels[0].resolutionMillis <= levels[0].open.index) {
+            return;
+        }
+        for (int l = 0; l < levels.length; l++) {
+            advance(l, nowMillis);
+        }
+    }
+
+    private void advance(int l, long nowMillis) {
+        Level level = levels[l];
+        long index = nowMillis / level.resolutionMillis;
+        if (index <= level.open.index) {
+            return;
+        }
+        Bucket closing = level.open;
+        if (!closing.isEmpty()) {
+            if (l + 1 < levels.length) {
+                // The next level's open bucket has to be the one this bucket falls into
+                advance(l + 1, closing.index * level.resolutionMillis);
+                levels[l + 1].open.merge(closing);
+            }
+            if (level.retained > 0) {
+                closing.compact(maxChannelsPerBucket);
+                level.closed.addLast(closing);
+                level.ring[slot(closing.index, level.retained)] = closing;
+                level.bytes += closing.sizeInBytes();
+            }
+        }
+        level.open = newBucket(index);
+        while (!level.closed.isEmpty() && level.closed.peekFirst().index < index - level.retained) {
+            Bucket expired = level.closed.pollFirst();
+            int slot = slot(expired.index, level.retained);
+            // Unless the bucket just closed took its slot
+            if (level.ring[slot] == expired) {
+                level.ring[slot] = null;
+            }
+            level.bytes -= expired.sizeInBytes();
+        }
+    }
+
+    /**
+     * Contents of a configured window as of {@code nowMillis}, which must not be before
+     * the last {@link #advance}
+     */
+    Snapshot window(Duration window, long nowMillis) {
+        WindowState state = windows.get(window);
+        if (state == null) {
+            throw new IllegalArgumentException("Unknown window " + window);
+        }
+        Level level = levels[state.level];
+        long elapsed = Math.max(0, nowMillis - level.open.index * level.resolutionMillis);
+        int buckets = (int) Math.max(0, Math.min(state.maxBuckets,
+            Math.round((double) (window.toMillis() - elapsed) / level.resolutionMillis)));
+
+        if (state.closedMerge == null || state.cachedIndex != level.open.index || state.cachedBuckets != buckets) {
+            mergeClosed(state, (level.open.index - buckets) * level.resolutionMillis);
+            state.cachedIndex = level.open.index;
+            state.cachedBuckets = buckets;
+        }
+
+        Bucket contents = newBucket(level.open.index);
+        contents.merge(state.closedMerge);
+        for (int l = state.openLevel; l >= 0; l--) {
+            contents.merge(levels[l].open);
+        }
+        return new Snapshot(contents, buckets * level.resolutionMillis + elapsed, state.closedMerged + state.openLevel + 1);
+    }
+
+    /**
+     * Merge the closed buckets from {@code fromMillis} on, each level's up to the next
+     * boundary of the coarser one, until reaching the open bucket of a level
+     */
+    private void mergeClosed(WindowState state, long fromMillis) {
+        Bucket merged = newBucket(levels[state.level].open.index);
+        int count = 0;
+        int l = state.level;
+        while (true) {
+            Level level = levels[l];
+            long openStart = level.open.index * level.resolutionMillis;
+            long until = openStart;
+            if (l + 1 < levels.length) {
+                long coarser = levels[l + 1].resolutionMillis;
+                until = Math.min(until, Math.floorDiv(fromMillis + coarser - 1, coarser) * coarser);
+            }
+            for (long index = fromMillis / level.resolutionMillis; index < until / level.resolutionMillis; index++) {
+                Bucket closed = level.retained > 0 ? level.ring[slot(index, level.retained)] : null;
+                if (closed != null && closed.index == index) {
+                    merged.merge(closed);
+                    count++;
+                }
+            }
+            fromMillis = until;
+            if (fromMillis >= openStart) {
+                break;
+            }
+            l++;
+        }
+        merged.compact(maxChannelsPerBucket);
+        state.closedMerge = merged;
+        state.closedMerged = count;
+        state.openLevel = l;
+    }
+
+    /**
+     * Merged contents of the closed interval from {@code startMillis} to
+     * {@code endMillis}, read from the coarsest level whose buckets tile it and are
+     * still retained
+     *
+     * @return empty if the interval has not closed yet or its buckets are no longer retained
+     */
+    Optional<Bucket> interval(long startMillis, long endMillis) {
+        for (int l = levels.length - 1; l >= 0; l--) {
+            Level level = levels[l];
+            long resolution = level.resolutionMillis;
+            if (startMillis % resolution != 0 || endMillis % resolution != 0) {
+                continue;
+            }
+            long from = startMillis / resolution;
+            long until = endMillis / resolution;
+            if (until > level.open.index || from < level.open.index - level.retained) {
+                continue;
+            }
+            Bucket merged = newBucket(from);
+            for (long index = from; index < until; index++) {
+                Bucket closed = level.ring[slot(index, level.retained)];
+                if (closed != null && closed.index == index) {
+                    merged.merge(closed);
+                }
+            }
+            return Optional.of(merged);
+        }
+        return Optional.empty();
+    }
+
+    private Bucket newBucket(long index) {
+        return new Bucket(index, precision, channelPrecision);
+    }
+
+    private static int slot(long index, int retained) {
+        return (int) Math.floorMod(index, (long) retained);
+    }
+
+    /**
+     * Bucket length of the level a window reads
+     */
+    Duration resolution(Duration window) {
+        WindowState state = windows.get(window);
+        return state != null ? Duration.ofMillis(levels[state.level].resolutionMillis) : null;
+    }
+
+    /**
+     * Closed buckets and estimated heap per level, open buckets included
+     */
+    List<MetricAggregator.RollupFootprint> footprints() {
+        List<MetricAggregator.RollupFootprint> footprints = new ArrayList<>(levels.length);
+        for (Level level : levels) {
+            footprints.add(new MetricAggregator.RollupFootprint(Duration.ofMillis(level.resolutionMillis),
+                level.closed.size(), level.bytes + level.open.sizeInBytes()));
+        }
+        return footprints;
+    }
+
+    /**
+     * Drop all buckets, starting over at {@code nowMillis}
+     */
+    void clear(long nowMillis) {
+        for (Level level : levels) {
+            level.closed.clear();
+            Arrays.fill(level.ring, null);
+            level.bytes = 0;
+            level.open = newBucket(nowMillis / level.resolutionMillis);
+        }
+        windows.values().forEach(state -> state.closedMerge = null);
+    }
+
+    /**
+     * Merged contents of a window, the span they cover and the buckets merged
+     */
+    record Snapshot(Bucket contents, long spanMillis, int bucketsMerged) {}
+
+    /**
+     * Weighted counts per event type and channel and the distinct users of one bucket,
+     * overall and per channel
+     */
+    static final class Bucket {
+        final long index;
+        private final double[] typeCounts = new double[EVENT_TYPES.length];
+        private final Map<String, Channel> channels = new HashMap<>();
+        private final HyperLogLog users;
+        private final int channelPrecision;
+        private long events;
+        private boolean estimated;
+
+        Bucket(long index, int precision, int channelPrecision) {
+            this.index = index;
+            this.users = new HyperLogLog(precision, (1 << precision) / 8);
+            this.channelPrecision = channelPrecision;
+        }
+
+        void add(EventType type, String userId, String channel, double weight) {
+            typeCounts[type.ordinal()] += weight;
+            long hash = userId != null ? HyperLogLog.hash(userId) : 0;
+            if (channel != null) {
+                Channel state = channel(channel);
+                state.count += weight;
+                if (userId != null) {
+                    state.users.add(hash);
+                }
+            }
+            if (userId != null) {
+                users.add(hash);
+            }
+            events++;
+            estimated |= weight != 1.0;
+        }
+
+        void merge(Bucket other) {
+            if (other.isEmpty()) {
+                return;
+            }
+            for (int i = 0; i < typeCounts.length; i++) {
+                typeCounts[i] += other.typeCounts[i];
+            }
+            other.channels.forEach((name, channel) -> {
+                Channel state = channel(name);
+                state.count += channel.count;
+                state.users.merge(channel.users);
+            });
+            users.merge(other.users);
+            events += other.events;
+            estimated |= other.estimated;
+        }
+
+        private Channel channel(String name) {
+            return channels.computeIfAbsent(name, key -> new Channel(channelPrecision));
+        }
+
+        /**
+         * Keep only the {@code maxChannels} busiest channels
+         */
+        void compact(int maxChannels) {
+            if (channels.size() <= maxChannels) {
+                return;
+            }
+            double[] counts = channels.values().stream().mapToDouble(channel -> channel.count).sorted().toArray();
+            double threshold = counts[counts.length - maxChannels];
+            channels.values().removeIf(channel -> channel.count < threshold);
+            // Ties at the threshold may leave a few more
+            if (channels.size() > maxChannels) {
+                var ties = channels.entrySet().iterator();
+                while (channels.size() > maxChannels && ties.hasNext()) {
+                    if (ties.next().getValue().count == threshold) {
+                        ties.remove();
+                    }
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return events == 0;
+        }
+
+        /**
+         * Events added, each sampled event counting once
+         */
+        long events() {
+            return events;
+        }
+
+        double weightedCount() {
+            double total = 0;
+            for (double count : typeCounts) {
+                total += count;
+            }
+            return total;
+        }
+
+        double typeCount(EventType type) {
+            return typeCounts[type.ordinal()];
+        }
+
+        Map<String, Channel> channels() {
+            return channels;
+        }
+
+        long distinctUsers() {
+            return users.estimate();
+        }
+
+        /**
+         * True if any event stands in for shed ones
+         */
+        boolean estimated() {
+            return estimated;
+        }
+
+        long sizeInBytes() {
+            long bytes = BUCKET_BYTES + channels.size() * CHANNEL_BYTES + users.sizeInBytes();
+            for (Channel channel : channels.values()) {
+                bytes += channel.users.sizeInBytes();
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Weighted count and distinct users of a channel within a bucket
+     */
+    static final class Channel {
+        private final HyperLogLog users;
+        private double count;
+
+        Channel(int precision) {
+            this.users = new HyperLogLog(precision);
+        }
+
+        double count() {
+            return count;
+        }
+
+        long distinctUsers() {
+            return users.estimate();
+        }
+    }
+
+    private static final class Level {
+        final long resolutionMillis;
+        // Oldest first, and by index modulo the retained count
+        final ArrayDeque<Bucket> closed = new ArrayDeque<>();
+        Bucket[] ring = new Bucket[0];
+        Bucket open;
+        int retained;
+        long bytes;
+
+        Level(long resolutionMillis, Bucket open) {
+            this.resolutionMillis = resolutionMillis;
+            this.open = open;
+        }
+    }
+
+    private static final class WindowState {
+        final int level;
+        final int maxBuckets;
+        Bucket closedMerge;
+        int closedMerged;
+        // Finest level whose open bucket starts where the closed buckets end
+        int openLevel;
+        long cachedIndex;
+        int cachedBuckets;
+
+        WindowState(int level, int maxBuckets) {
+            this.level = level;
+            this.maxBuckets = maxBuckets;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+/**
+ * Pre-serialized JSON representation of metrics, produced once per change
+ * by the repository so that readers can serve the bytes without touching Jackson.
+ *
+ * @param json     UTF-8 encoded JSON document
+ * @param version  repository version at which the document was produced
+ * @param instance tenant and random id of the producing repository, since versions
+ *                 restart with every repository
+ */
+public record SerializedMetrics(byte[] json, long version, String instance) {
+
+    /**
+     * Strong entity tag derived from the repository instance and the version
+     */
+    public String etag() {
+        return "\"" + instance + "-v" + version + "\"";
+    }
+}
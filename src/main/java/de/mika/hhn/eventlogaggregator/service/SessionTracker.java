@@ -0,0 +1,325 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.model.ChannelOccupancy;
+import de.mika.hhn.eventlogaggregator.model.EventType;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import de.mika.hhn.eventlogaggregator.model.SessionStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Derives sessions and channel memberships from the event stream.
+ *
+ * A session starts with LOGIN, or with the first event of a user without an open
+ * session, and ends with LOGOUT or after {@code inactivityTimeout} without events.
+ * Memberships start with JOIN_CHANNEL and end with LEAVE_CHANNEL or with the session.
+ *
+ * Inactivity timeouts live in a {@link HashedTimingWheel}. Events only update the
+ * session's last activity; when its timeout fires, a session that was active in the
+ * meantime is scheduled again for the remaining time. So neither events nor ticks
+ * touch sessions other than the ones in the current slot.
+ *
+ * Durations of closed sessions are counted per window in a ring of time buckets with
+ * log-scaled histograms, from which the percentiles are read.
+ *
+ * Events are queued without taking the tracker monitor and applied in order on the
+ * next tick or read, so concurrent ingest threads do not serialize on it.
+ */
+@Service
+public class SessionTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionTracker.class);
+
+    // Rough per-object sizes for the memory estimate, assuming compressed oops
+    private static final long SESSION_BYTES = 200;
+    private static final long MEMBERSHIP_BYTES = 40;
+    private static final long OCCUPANCY_BYTES = 80;
+    private static final long QUEUED_EVENT_BYTES = 48;
+
+    private final boolean enabled;
+    private final long timeoutMillis;
+    private final int maxSessions;
+    private final int topChannels;
+
+    private final Map<String, Session> sessions = new HashMap<>();
+    private final Map<String, long[]> occupancy = new HashMap<>();
+    private final HashedTimingWheel<Session> wheel;
+    private final Map<Duration, DurationRing> durations = new HashMap<>();
+    private final HandOffQueue<Recorded> recorded = new HandOffQueue<>();
+    private long memberships;
+    private long untrackedCount;
+
+    public SessionTracker(ElaProperties properties, Clock clock) {
+        ElaProperties.Sessions config = properties.sessions();
+        this.enabled = config != null && config.enabled();
+        this.timeoutMillis = config != null ? config.inactivityTimeout().toMillis() : 0;
+        this.maxSessions = config != null ? config.maxSessions() : 0;
+        this.topChannels = config != null ? config.topChannels() : 0;
+        long now = clock.millis();
+        this.wheel = new HashedTimingWheel<>(config != null ? config.tick().toMillis() : 1000,
+            config != null ? config.wheelSize() : 2, now);
+
+        int buckets = config != null ? Math.max(1, config.durationBucketsPerWindow()) : 1;
+        for (Duration window : properties.aggregation().durations()) {
+            durations.put(window, new DurationRing(window, buckets));
+        }
+        if (enabled) {
+            log.info("Sessions: inactivityTimeout={}, tick={}, wheelSize={}, maxSessions={}",
+                config.inactivityTimeout(), config.tick(), config.wheelSize(), maxSessions);
+        }
+    }
+
+    /**
+     * Update sessions and memberships with an event received at {@code nowMillis}
+     */
+    public void record(FlatEvent event, long nowMillis) {
+        if (!enabled || event.userId() == null) {
+            return;
+        }
+        recorded.offer(new Recorded(event.userId(), event.type(), event.channel(), nowMillis));
+    }
+
+    private void apply(Recorded event) {
+        long nowMillis = event.receivedAt();
+        Session session = sessions.get(event.userId());
+        switch (event.type()) {
+            case LOGOUT -> {
+                if (session != null) {
+                    close(session, nowMillis, nowMillis);
+                }
+                return;
+            }
+            case LEAVE_CHANNEL -> {
+                if (session != null && event.channel() != null && session.channels.remove(event.channel())) {
+                    leave(event.channel());
+                    memberships--;
+                }
+            }
+            default -> {
+            }
+        }
+
+        if (session == null) {
+            if (sessions.size() >= maxSessions) {
+                untrackedCount++;
+                return;
+            }
+            session = new Session(event.userId(), nowMillis);
+            session.timeout = wheel.schedule(session, nowMillis + timeoutMillis);
+            sessions.put(event.userId(), session);
+        }
+        session.lastActivity = nowMillis;
+        if (event.type() == EventType.JOIN_CHANNEL
+            && event.channel() != null && session.channels.add(event.channel())) {
+            occupancy.computeIfAbsent(event.channel(), key -> new long[1])[0]++;
+            memberships++;
+        }
+    }
+
+    /**
+     * Close the sessions whose inactivity timeout passed
+     */
+    public synchronized void tick(long nowMillis) {
+        if (!enabled) {
+            return;
+        }
+        recorded.drain(this::apply);
+        int closed = wheel.advance(nowMillis, session -> {
+            long deadline = session.lastActivity + timeoutMillis;
+            if (deadline > nowMillis) {
+                wheel.reschedule(session.timeout, deadline);
+            } else {
+                // The session ended with its last event, not when the timeout noticed it
+                close(session, session.lastActivity, nowMillis);
+            }
+        });
+        if (closed > 0) {
+            log.debug("Checked {} session timeouts, {} sessions open", closed, sessions.size());
+        }
+    }
+
+    /**
+     * Open sessions and durations of the sessions closed within the window
+     */
+    public synchronized SessionStats stats(Duration window, long nowMillis) {
+        if (!enabled) {
+            return SessionStats.EMPTY;
+        }
+        recorded.drain(this::apply);
+        DurationRing ring = durations.get(window);
+        long[] histogram = ring != null ? ring.merged(nowMillis) : new long[DurationHistogram.BINS];
+        long closed = 0;
+        for (long count : histogram) {
+            closed += count;
+        }
+        return new SessionStats(sessions.size(), closed,
+            DurationHistogram.percentile(histogram, closed, 0.50),
+            DurationHistogram.percentile(histogram, closed, 0.90),
+            DurationHistogram.percentile(histogram, closed, 0.99));
+    }
+
+    /**
+     * Channels with the most current members
+     */
+    public synchronized List<ChannelOccupancy> topOccupancy() {
+        if (!enabled) {
+            return List.of();
+        }
+        recorded.drain(this::apply);
+        return occupancy.entrySet().stream()
+            .sorted(Comparator.comparingLong((Map.Entry<String, long[]> entry) -> entry.getValue()[0]).reversed())
+            .limit(topChannels)
+            .map(entry -> new ChannelOccupancy(entry.getKey(), entry.getValue()[0]))
+            .toList();
+    }
+
+    public synchronized int getOpenSessionCount() {
+        recorded.drain(this::apply);
+        return sessions.size();
+    }
+
+    /**
+     * Estimated heap used by open sessions, memberships and duration histograms
+     */
+    public synchronized long getMemoryBytes() {
+        long histograms = durations.values().stream()
+            .mapToLong(ring -> ring.indices.length * (16L + DurationHistogram.BINS * 8L))
+            .sum();
+        return sessions.size() * SESSION_BYTES + memberships * MEMBERSHIP_BYTES
+            + occupancy.size() * OCCUPANCY_BYTES + recorded.size() * QUEUED_EVENT_BYTES + histograms;
+    }
+
+    /**
+     * Number of events of users without session because {@code maxSessions} was reached
+     */
+    public synchronized long getUntrackedCount() {
+        recorded.drain(this::apply);
+        return untrackedCount;
+    }
+
+    private void close(Session session, long endMillis, long nowMillis) {
+        wheel.cancel(session.timeout);
+        sessions.remove(session.userId);
+        for (String channel : session.channels) {
+            leave(channel);
+        }
+        memberships -= session.channels.size();
+        long seconds = Math.max(0, endMillis - session.start) / 1000;
+        durations.values().forEach(ring -> ring.record(seconds, nowMillis));
+    }
+
+    private void leave(String channel) {
+        long[] members = occupancy.get(channel);
+        if (members != null && --members[0] <= 0) {
+            occupancy.remove(channel);
+        }
+    }
+
+    /**
+     * What the tracker keeps of a queued event
+     */
+    private record Recorded(String userId, EventType type, String channel, long receivedAt) {}
+
+    private static class Session {
+        final String userId;
+        final long start;
+        final Set<String> channels = new HashSet<>(2);
+        long lastActivity;
+        HashedTimingWheel.Timeout<Session> timeout;
+
+        Session(String userId, long start) {
+            this.userId = userId;
+            this.start = start;
+            this.lastActivity = start;
+        }
+    }
+
+    /**
+     * Histograms of one window in time buckets; buckets older than the window are
+     * reused for the current time
+     */
+    private static class DurationRing {
+        final long bucketMillis;
+        final long[] indices;
+        final long[][] histograms;
+
+        DurationRing(Duration window, int bucketCount) {
+            this.bucketMillis = Math.max(1, window.toMillis() / bucketCount);
+            this.indices = new long[bucketCount];
+            this.histograms = new long[bucketCount][DurationHistogram.BINS];
+        }
+
+        void record(long seconds, long nowMillis) {
+            long index = nowMillis / bucketMillis;
+            int slot = (int) (index % indices.length);
+            if (indices[slot] != index) {
+                indices[slot] = index;
+                Arrays.fill(histograms[slot], 0);
+            }
+            histograms[slot][DurationHistogram.bin(seconds)]++;
+        }
+
+        long[] merged(long nowMillis) {
+            long currentIndex = nowMillis / bucketMillis;
+            long[] merged = new long[DurationHistogram.BINS];
+            for (int slot = 0; slot < indices.length; slot++) {
+                if (currentIndex - indices[slot] < indices.length) {
+                    for (int bin = 0; bin < merged.length; bin++) {
+                        merged[bin] += histograms[slot][bin];
+                    }
+                }
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * Log-scaled bins of 25% width from one second to about 18 days; the first bin
+     * holds sessions shorter than a second
+     */
+    static final class DurationHistogram {
+        static final int BINS = 64;
+        private static final double BASE = 1.25;
+        private static final double LOG_BASE = Math.log(BASE);
+
+        private DurationHistogram() {
+        }
+
+        static int bin(long seconds) {
+            if (seconds < 1) {
+                return 0;
+            }
+            return (int) Math.min(BINS - 1, 1 + Math.floor(Math.log(seconds) / LOG_BASE));
+        }
+
+        /**
+         * Geometric middle of the bin holding the quantile
+         */
+        static long percentile(long[] histogram, long total, double quantile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int bin = 0; bin < histogram.length; bin++) {
+                seen += histogram[bin];
+                if (seen >= rank) {
+                    return bin == 0 ? 0 : Math.round(Math.pow(BASE, bin - 0.5));
+                }
+            }
+            return Math.round(Math.pow(BASE, BINS - 1));
+        }
+    }
+}
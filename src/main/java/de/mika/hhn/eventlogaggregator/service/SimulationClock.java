@@ -0,0 +1,53 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clock on virtual time, which only moves when the {@link SimulationRunner} advances it.
+ * Copies with another zone share the same time.
+ */
+public class SimulationClock extends Clock {
+
+    private final AtomicLong millis;
+    private final ZoneId zone;
+
+    public SimulationClock(long startMillis) {
+        this(new AtomicLong(startMillis), ZoneOffset.UTC);
+    }
+
+    private SimulationClock(AtomicLong millis, ZoneId zone) {
+        this.millis = millis;
+        this.zone = zone;
+    }
+
+    /**
+     * Move the clock forward to {@code targetMillis}; it never goes back
+     */
+    public void advanceTo(long targetMillis) {
+        millis.accumulateAndGet(targetMillis, Math::max);
+    }
+
+    @Override
+    public long millis() {
+        return millis.get();
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis.get());
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new SimulationClock(millis, zone);
+    }
+}
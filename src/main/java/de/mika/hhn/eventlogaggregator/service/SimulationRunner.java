@@ -0,0 +1,231 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.model.EventType;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Accelerated simulation ({@code ela.simulation.enabled}) for long-window tests.
+ *
+ * Generates events on virtual time and feeds them straight into the aggregation of
+ * the default tenant, advancing the {@link SimulationClock} to each event's timestamp,
+ * and runs the aggregation tick every {@code tick} of virtual time. Virtual time is
+ * paced to {@code speed} times real time; when aggregation cannot keep up, the run
+ * simply goes slower. Parsing, ingest lanes and quotas are bypassed.
+ *
+ * Progress, heap and aggregation cost are logged every {@code reportInterval} of
+ * virtual time; after {@code duration} the clock stops and the application keeps
+ * serving the final state.
+ */
+@Service
+public class SimulationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(SimulationRunner.class);
+
+    private static final long DAY_MILLIS = Duration.ofDays(1).toMillis();
+
+    private final ElaProperties.Simulation config;
+    private final Clock clock;
+    private final TenantRegistry tenantRegistry;
+    private final AggregatorScheduler aggregatorScheduler;
+    private volatile boolean running;
+    private Thread thread;
+
+    public SimulationRunner(ElaProperties properties, Clock clock, TenantRegistry tenantRegistry,
+                            AggregatorScheduler aggregatorScheduler) {
+        this.config = properties.simulation();
+        this.clock = clock;
+        this.tenantRegistry = tenantRegistry;
+        this.aggregatorScheduler = aggregatorScheduler;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (config == null || !config.enabled()) {
+            return;
+        }
+        if (!(clock instanceof SimulationClock simulationClock)) {
+            log.warn("Simulation enabled, but the clock is no SimulationClock; not starting");
+            return;
+        }
+        running = true;
+        thread = new Thread(() -> run(simulationClock), "Simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run(SimulationClock simulationClock) {
+        long tickMillis = Math.max(1, config.tick().toMillis());
+        long reportMillis = Math.max(tickMillis, config.reportInterval().toMillis());
+        long start = simulationClock.millis();
+        long end = config.duration().isZero() ? Long.MAX_VALUE : start + config.duration().toMillis();
+        log.info("Simulation started at {}: speed={}x, duration={}, tick={}, eventsPerSecond={}, users={}, channels={}",
+            Instant.ofEpochMilli(start), config.speed(), config.duration(), config.tick(),
+            config.eventsPerSecond(), config.users(), config.channels());
+
+        MetricAggregator aggregator = tenantRegistry.getDefault().getMetricAggregator();
+        EventGenerator generator = new EventGenerator(config);
+        Stats stats = new Stats();
+        long wallStart = System.nanoTime();
+        long nextReport = start + reportMillis;
+
+        try {
+            for (long now = start; running && now < end; now += tickMillis) {
+                long tickEnd = Math.min(now + tickMillis, end);
+                stats.events += generator.generate(now, tickEnd, event -> {
+                    simulationClock.advanceTo(event.timestampMillis());
+                    aggregator.addEvent(event);
+                });
+                simulationClock.advanceTo(tickEnd);
+
+                long tickStart = System.nanoTime();
+                aggregatorScheduler.aggregateAll();
+                stats.recordTick(System.nanoTime() - tickStart);
+
+                if (tickEnd >= nextReport || tickEnd >= end) {
+                    report(tickEnd, start, wallStart, aggregator, stats);
+                    nextReport += reportMillis;
+                }
+                pace(tickEnd - start, wallStart);
+            }
+            log.info("Simulation finished at {}, clock stopped", Instant.ofEpochMilli(simulationClock.millis()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Simulation stopped at {}", Instant.ofEpochMilli(simulationClock.millis()));
+        }
+    }
+
+    /**
+     * Sleep until real time has caught up with the virtual time elapsed
+     */
+    private void pace(long virtualElapsedMillis, long wallStart) throws InterruptedException {
+        long targetNanos = (long) (TimeUnit.MILLISECONDS.toNanos(virtualElapsedMillis) / config.speed());
+        long aheadNanos = targetNanos - (System.nanoTime() - wallStart);
+        if (aheadNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(aheadNanos);
+        }
+    }
+
+    private void report(long now, long start, long wallStart, MetricAggregator aggregator, Stats stats) {
+        double wallSeconds = Math.max(1e-9, (System.nanoTime() - wallStart) / 1e9);
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        log.info("Simulation at {} (+{}): {} events, {} buffered, heap {} MiB, {}x real time, "
+                + "aggregation avg {} ms / max {} ms per tick",
+            Instant.ofEpochMilli(now), Duration.ofMillis(now - start), stats.events,
+            aggregator.getBufferedEventCount(), heapUsed / (1024 * 1024),
+            Math.round((now - start) / 1000.0 / wallSeconds),
+            String.format("%.2f", stats.averageTickMillis()), String.format("%.2f", stats.maxTickNanos / 1e6));
+        stats.resetTicks();
+    }
+
+    private static class Stats {
+        long events;
+        long ticks;
+        long tickNanos;
+        long maxTickNanos;
+
+        void recordTick(long nanos) {
+            ticks++;
+            tickNanos += nanos;
+            maxTickNanos = Math.max(maxTickNanos, nanos);
+        }
+
+        double averageTickMillis() {
+            return ticks == 0 ? 0 : tickNanos / 1e6 / ticks;
+        }
+
+        void resetTicks() {
+            ticks = 0;
+            tickNanos = 0;
+            maxTickNanos = 0;
+        }
+    }
+
+    /**
+     * Chat-like events: a daily rate cycle around {@code eventsPerSecond}, users and
+     * channels with a skewed popularity, mostly messages. Every event gets its own
+     * strings, as parsed events do.
+     */
+    static class EventGenerator {
+
+        private static final EventType[] TYPES = {
+            EventType.MESSAGE, EventType.USER_ACTION, EventType.JOIN_CHANNEL,
+            EventType.LEAVE_CHANNEL, EventType.LOGIN, EventType.LOGOUT
+        };
+        private static final double[] TYPE_SHARES = {0.80, 0.08, 0.04, 0.03, 0.03, 0.02};
+
+        private final double eventsPerSecond;
+        private final int users;
+        private final int channels;
+        private final SplittableRandom random;
+        private double carry;
+
+        EventGenerator(ElaProperties.Simulation config) {
+            this.eventsPerSecond = config.eventsPerSecond();
+            this.users = Math.max(1, config.users());
+            this.channels = Math.max(1, config.channels());
+            this.random = new SplittableRandom(config.seed());
+        }
+
+        /**
+         * Generate the events between {@code fromMillis} and {@code toMillis}, in
+         * timestamp order
+         *
+         * @return number of events generated
+         */
+        long generate(long fromMillis, long toMillis, Consumer<FlatEvent> sink) {
+            // Rate peaks in the afternoon and is lowest at night (UTC)
+            double dayPhase = 2 * Math.PI * ((fromMillis % DAY_MILLIS) / (double) DAY_MILLIS - 0.375);
+            double expected = eventsPerSecond * (1 + 0.6 * Math.sin(dayPhase)) * (toMillis - fromMillis) / 1000.0 + carry;
+            long count = (long) expected;
+            carry = expected - count;
+
+            double spacing = (toMillis - fromMillis) / (double) Math.max(1, count);
+            for (long i = 0; i < count; i++) {
+                long timestamp = fromMillis + (long) (i * spacing);
+                EventType type = type(random.nextDouble());
+                String userId = "sim-user-" + skewed(users);
+                String channel = type == EventType.LOGIN || type == EventType.LOGOUT ? null : "#sim-" + skewed(channels);
+                sink.accept(new FlatEvent(type, timestamp, userId, channel, null, null, null));
+            }
+            return count;
+        }
+
+        private int skewed(int bound) {
+            double r = random.nextDouble();
+            return (int) (bound * r * r);
+        }
+
+        private static EventType type(double r) {
+            for (int i = 0; i < TYPES.length; i++) {
+                r -= TYPE_SHARES[i];
+                if (r < 0) {
+                    return TYPES[i];
+                }
+            }
+            return EventType.MESSAGE;
+        }
+    }
+}
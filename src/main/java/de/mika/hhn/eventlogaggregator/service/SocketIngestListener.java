@@ -0,0 +1,526 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Event ingestion over persistent TCP and Unix domain socket connections
+ * ({@code ela.socket-ingest}), for co-located log shippers.
+ *
+ * A connection streams NDJSON, one event per line, and may start with the line
+ * {@code TENANT <id>}; without it, its events belong to the default tenant. Nothing is
+ * sent back; rejected lines end up in the invalid-events log as usual.
+ *
+ * One selector thread reads all connections into pooled direct buffers. Once a buffer
+ * is full, or {@code flushInterval} ms after its first unsent byte, its complete lines
+ * are handed to a worker as one batch, which parses them straight from the buffer and
+ * aggregates the valid events through the HTTP lane; the incomplete last line moves on
+ * to a fresh buffer. The batches of a connection are processed in order. While
+ * {@code maxInFlight} of them are pending, the connection is not read, so a sender
+ * that is too fast is slowed down by TCP flow control instead of filling the heap.
+ * Tenants over their rate quota are slowed down the same way.
+ */
+@Service
+public class SocketIngestListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SocketIngestListener.class);
+    private static final String TENANT_PREAMBLE = "TENANT ";
+
+    private final ElaProperties.SocketIngest config;
+    private final EventParser eventParser;
+    private final IngestScheduler ingestScheduler;
+    private final TenantRegistry tenantRegistry;
+    private final AllocationTracker allocationTracker;
+
+    // Touched by the selector thread only
+    private final Set<Connection> connections = new HashSet<>();
+    private final List<ServerSocketChannel> servers = new ArrayList<>();
+    // Connections with a finished batch, to be read again or closed
+    private final Queue<Connection> resumed = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final LongAdder acceptedEvents = new LongAdder();
+    private final LongAdder rejectedLines = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    private DirectBufferPool bufferPool;
+    private Selector selector;
+    private ExecutorService workers;
+    private Thread selectorThread;
+    private InetSocketAddress tcpAddress;
+    private Path unixSocket;
+    private volatile boolean running;
+
+    public SocketIngestListener(ElaProperties properties, EventParser eventParser, IngestScheduler ingestScheduler,
+                                TenantRegistry tenantRegistry, AllocationTracker allocationTracker) {
+        this.config = properties.socketIngest();
+        this.eventParser = eventParser;
+        this.ingestScheduler = ingestScheduler;
+        this.tenantRegistry = tenantRegistry;
+        this.allocationTracker = allocationTracker;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (config == null || !config.enabled()) {
+            return;
+        }
+        bufferPool = new DirectBufferPool((int) config.bufferSize().toBytes(), Math.max(0, config.maxPooledBuffers()));
+        selector = Selector.open();
+
+        if (config.port() >= 0) {
+            ServerSocketChannel server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(config.host(), config.port()));
+            listen(server);
+            tcpAddress = (InetSocketAddress) server.getLocalAddress();
+            log.info("Socket ingest listening on tcp://{}:{}", tcpAddress.getHostString(), tcpAddress.getPort());
+        }
+        if (config.unixSocket() != null && !config.unixSocket().isBlank()) {
+            unixSocket = Path.of(config.unixSocket()).toAbsolutePath();
+            // A socket file left behind by an earlier run would fail the bind
+            Files.deleteIfExists(unixSocket);
+            ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(unixSocket));
+            listen(server);
+            log.info("Socket ingest listening on unix://{}", unixSocket);
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(Math.max(1, config.workers()), r -> {
+            Thread t = new Thread(r, "SocketIngest-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        running = true;
+        selectorThread = new Thread(this::run, "SocketIngest-Selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        selectorThread.join(TimeUnit.SECONDS.toMillis(5));
+        workers.shutdownNow();
+        if (unixSocket != null) {
+            Files.deleteIfExists(unixSocket);
+        }
+    }
+
+    /**
+     * Bound TCP address, empty if there is no TCP listener
+     */
+    public Optional<InetSocketAddress> getTcpAddress() {
+        return Optional.ofNullable(tcpAddress);
+    }
+
+    /**
+     * Listeners, connections and counters
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", running);
+        if (!running) {
+            return status;
+        }
+        status.put("tcp", tcpAddress != null ? tcpAddress.getHostString() + ":" + tcpAddress.getPort() : null);
+        status.put("unixSocket", unixSocket != null ? unixSocket.toString() : null);
+        status.put("connections", openConnections.get());
+        status.put("acceptedEvents", acceptedEvents.sum());
+        status.put("rejectedLines", rejectedLines.sum());
+        status.put("bytesRead", bytesRead.sum());
+        status.put("batches", batches.sum());
+        status.put("buffersAllocated", bufferPool.getAllocated());
+        status.put("buffersPooled", bufferPool.getPooled());
+        return status;
+    }
+
+    private void listen(ServerSocketChannel server) throws IOException {
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        servers.add(server);
+    }
+
+    private void run() {
+        long flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, config.flushInterval()));
+        long selectTimeout = Math.max(1, config.flushInterval() / 2);
+        try {
+            while (running) {
+                selector.select(selectTimeout);
+
+                Connection connection;
+                while ((connection = resumed.poll()) != null) {
+                    resume(connection);
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                    } else if (key.isReadable()) {
+                        read((Connection) key.attachment());
+                    }
+                }
+
+                flushDue(System.nanoTime(), flushNanos);
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            log.error("Socket ingest stopped: {}", e.getMessage(), e);
+        } finally {
+            List.copyOf(connections).forEach(this::close);
+            for (ServerSocketChannel server : servers) {
+                closeQuietly(server);
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept(ServerSocketChannel server) {
+        SocketChannel channel = null;
+        try {
+            channel = server.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            Connection connection = new Connection(channel, String.valueOf(channel.getRemoteAddress()));
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+            openConnections.incrementAndGet();
+            log.debug("Accepted socket ingest connection {}", connection);
+        } catch (IOException e) {
+            log.warn("Could not accept socket ingest connection: {}", e.getMessage());
+            if (channel != null) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private void read(Connection connection) {
+        if (connection.buffer == null) {
+            connection.buffer = bufferPool.acquire();
+        }
+        ByteBuffer buffer = connection.buffer;
+        int read;
+        try {
+            read = connection.channel.read(buffer);
+        } catch (IOException e) {
+            log.debug("Connection {} failed: {}", connection, e.getMessage());
+            close(connection);
+            return;
+        }
+
+        if (read < 0) {
+            // A last line without line feed still counts
+            connection.eof = true;
+            connection.key.interestOps(0);
+            if (!connection.discarding) {
+                dispatch(connection, buffer.position());
+            }
+            resume(connection);
+            return;
+        }
+        bytesRead.add(read);
+
+        if (connection.discarding && !skipOverlongLine(buffer, connection)) {
+            return;
+        }
+        if (!connection.started && !readPreamble(buffer, connection)) {
+            return;
+        }
+        if (connection.pendingSince == 0 && buffer.position() > 0) {
+            connection.pendingSince = System.nanoTime();
+        }
+        if (!buffer.hasRemaining()) {
+            int end = lastLineEnd(buffer);
+            if (end == 0) {
+                log.warn("Connection {}: line longer than {} bytes, skipped", connection, buffer.capacity());
+                rejectedLines.increment();
+                connection.discarding = true;
+                connection.pendingSince = 0;
+                buffer.clear();
+            } else {
+                dispatch(connection, end);
+            }
+        }
+    }
+
+    /**
+     * Drop the rest of a line that did not fit into the buffer
+     *
+     * @return true if the line ended and the bytes behind it were kept
+     */
+    private static boolean skipOverlongLine(ByteBuffer buffer, Connection connection) {
+        int newline = indexOf(buffer, 0, buffer.position(), '\n');
+        if (newline < 0) {
+            buffer.clear();
+            return false;
+        }
+        buffer.flip().position(newline + 1);
+        buffer.compact();
+        connection.discarding = false;
+        return true;
+    }
+
+    /**
+     * Take an optional {@code TENANT <id>} first line
+     *
+     * @return false while the first line is incomplete or the connection was closed
+     */
+    private boolean readPreamble(ByteBuffer buffer, Connection connection) {
+        if (buffer.position() == 0) {
+            return false;
+        }
+        if (buffer.get(0) == TENANT_PREAMBLE.charAt(0)) {
+            int newline = indexOf(buffer, 0, buffer.position(), '\n');
+            if (newline < 0) {
+                // Wait for the rest of the line, unless it is too long for a preamble anyway
+                if (buffer.hasRemaining()) {
+                    return false;
+                }
+            } else {
+                String line = StandardCharsets.US_ASCII.decode(buffer.slice(0, newline)).toString().trim();
+                if (line.startsWith(TENANT_PREAMBLE)) {
+                    String tenant = line.substring(TENANT_PREAMBLE.length()).trim();
+                    if (!TenantRegistry.isValidTenantId(tenant)) {
+                        log.warn("Closing connection {}: invalid tenant id", connection);
+                        close(connection);
+                        return false;
+                    }
+                    connection.tenant = tenant;
+                    buffer.flip().position(newline + 1);
+                    buffer.compact();
+                    log.debug("Connection {} sends events of tenant {}", connection, tenant);
+                }
+            }
+        }
+        connection.started = true;
+        return true;
+    }
+
+    /**
+     * Hand partial batches on once they waited {@code flushInterval}
+     */
+    private void flushDue(long now, long flushNanos) {
+        for (Connection connection : connections) {
+            if (connection.buffer == null || connection.pendingSince == 0 || connection.discarding
+                || !connection.started || now - connection.pendingSince < flushNanos
+                || connection.inFlight.get() >= config.maxInFlight()) {
+                continue;
+            }
+            int end = lastLineEnd(connection.buffer);
+            if (end > 0) {
+                dispatch(connection, end);
+            } else {
+                // Only an incomplete line so far, wait for the next read
+                connection.pendingSince = 0;
+            }
+        }
+    }
+
+    /**
+     * Queue the first {@code end} bytes of the connection's buffer as a batch and move
+     * the bytes behind them to a fresh buffer
+     */
+    private void dispatch(Connection connection, int end) {
+        ByteBuffer buffer = connection.buffer;
+        if (buffer == null || end == 0) {
+            return;
+        }
+        int length = buffer.position();
+        ByteBuffer rest = null;
+        if (end < length) {
+            rest = bufferPool.acquire();
+            rest.put(buffer.slice(end, length - end));
+        }
+        connection.buffer = rest;
+        connection.pendingSince = rest != null ? System.nanoTime() : 0;
+        buffer.limit(end).position(0);
+
+        batches.increment();
+        connection.pending.add(buffer);
+        if (connection.inFlight.incrementAndGet() >= config.maxInFlight()) {
+            connection.key.interestOps(0);
+        }
+        if (connection.scheduled.compareAndSet(false, true)) {
+            workers.execute(() -> drain(connection));
+        }
+    }
+
+    /**
+     * Process the queued batches of a connection in order, on a worker
+     */
+    private void drain(Connection connection) {
+        while (true) {
+            ByteBuffer batch;
+            while ((batch = connection.pending.poll()) != null) {
+                process(connection, batch);
+            }
+            connection.scheduled.set(false);
+            // A batch queued after the last poll, but before the flag was cleared, is ours
+            if (connection.pending.isEmpty() || !connection.scheduled.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void process(Connection connection, ByteBuffer batch) {
+        long allocationStart = allocationTracker.start();
+        int elements = 0;
+        try {
+            ValidatedBatch validated = eventParser.validateNdjson(batch);
+            elements = validated.size();
+            List<FlatEvent> valid = validated.validEvents();
+            rejectedLines.add(validated.size() - valid.size());
+            if (!valid.isEmpty()) {
+                TenantPartition partition = tenantRegistry.resolve(connection.tenant);
+                // Like files, a stream over its tenant's rate quota is slowed down, not rejected
+                partition.acquire(valid.size());
+                acceptedEvents.add(ingestScheduler.ingestAll(IngestLane.HTTP, partition, valid));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Dropped batch of connection {}: {}", connection, e.getMessage());
+        } finally {
+            allocationTracker.record(AllocationTracker.SOCKET, allocationStart, elements);
+            bufferPool.release(batch);
+            connection.inFlight.decrementAndGet();
+            resumed.add(connection);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Read again once a batch finished, or close after the sender's end of stream
+     */
+    private void resume(Connection connection) {
+        if (!connections.contains(connection)) {
+            return;
+        }
+        if (connection.eof) {
+            if (connection.inFlight.get() == 0) {
+                close(connection);
+            }
+        } else if (connection.inFlight.get() < config.maxInFlight()) {
+            connection.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void close(Connection connection) {
+        if (!connections.remove(connection)) {
+            return;
+        }
+        connection.key.cancel();
+        closeQuietly(connection.channel);
+        if (connection.buffer != null) {
+            bufferPool.release(connection.buffer);
+            connection.buffer = null;
+        }
+        openConnections.decrementAndGet();
+        log.debug("Closed socket ingest connection {}", connection);
+    }
+
+    /**
+     * Length up to and including the last line feed, 0 if there is none
+     */
+    private static int lastLineEnd(ByteBuffer buffer) {
+        for (int i = buffer.position() - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int to, char c) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            log.debug("Error while closing: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * State of one connection. Buffer and flags belong to the selector thread; queued
+     * batches are handed over to a worker through {@code pending}.
+     */
+    private static class Connection {
+        final SocketChannel channel;
+        final String remote;
+        final Queue<ByteBuffer> pending = new ConcurrentLinkedQueue<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        SelectionKey key;
+        ByteBuffer buffer;
+        long pendingSince;
+        boolean started;
+        boolean discarding;
+        boolean eof;
+        String tenant;
+
+        Connection(SocketChannel channel, String remote) {
+            this.channel = channel;
+            this.remote = remote;
+        }
+
+        @Override
+        public String toString() {
+            return remote;
+        }
+    }
+}
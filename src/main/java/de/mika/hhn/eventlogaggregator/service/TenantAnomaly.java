@@ -0,0 +1,9 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.model.Anomaly;
+
+/**
+ * Application event for an anomaly detected in the partition of a tenant other than
+ * the default one, which publishes plain {@link Anomaly} events
+ */
+public record TenantAnomaly(String tenant, Anomaly anomaly) {}
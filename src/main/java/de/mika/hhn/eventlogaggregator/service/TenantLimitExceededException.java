@@ -0,0 +1,19 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+/**
+ * Thrown when an event arrives for a new tenant while {@code ela.tenants.max-tenants}
+ * partitions exist. Partitions are never dropped, so this only clears once the limit
+ * is raised; clients are still told when to retry.
+ */
+public class TenantLimitExceededException extends IllegalStateException {
+
+    private static final long RETRY_AFTER_SECONDS = 60;
+
+    public TenantLimitExceededException(int maxTenants) {
+        super("Maximum number of tenants reached: " + maxTenants);
+    }
+
+    public long getRetryAfterSeconds() {
+        return RETRY_AFTER_SECONDS;
+    }
+}
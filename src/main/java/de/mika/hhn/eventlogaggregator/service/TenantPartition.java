@@ -0,0 +1,107 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregation state of one tenant: its own windows, metrics, anomaly baselines and
+ * admission control, plus the tenant's ingest-rate quota.
+ *
+ * Partitions are created by the {@link TenantRegistry}; the default tenant uses the
+ * application-wide beans.
+ */
+public class TenantPartition {
+
+    private final String tenant;
+    private final MetricAggregator metricAggregator;
+    private final MetricRepository metricRepository;
+    private final AnomalyDetector anomalyDetector;
+    private final AdmissionController admissionController;
+    private final TokenBucket rateLimit;
+    private final Clock clock;
+    private final long createdAt;
+    private final AtomicLong lastIngestAt = new AtomicLong();
+    private final LongAdder throttledCount = new LongAdder();
+
+    public TenantPartition(String tenant, MetricAggregator metricAggregator, MetricRepository metricRepository,
+                           AnomalyDetector anomalyDetector, AdmissionController admissionController,
+                           TokenBucket rateLimit, Clock clock) {
+        this.tenant = tenant;
+        this.metricAggregator = metricAggregator;
+        this.metricRepository = metricRepository;
+        this.anomalyDetector = anomalyDetector;
+        this.admissionController = admissionController;
+        this.rateLimit = rateLimit;
+        this.clock = clock;
+        this.createdAt = clock.millis();
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public MetricAggregator getMetricAggregator() {
+        return metricAggregator;
+    }
+
+    public MetricRepository getMetricRepository() {
+        return metricRepository;
+    }
+
+    public AnomalyDetector getAnomalyDetector() {
+        return anomalyDetector;
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    /**
+     * Take quota for {@code events} events without waiting
+     *
+     * @return false if the tenant is over its ingest rate
+     */
+    public boolean tryAcquire(int events) {
+        if (rateLimit.tryAcquire(events)) {
+            lastIngestAt.set(clock.millis());
+            return true;
+        }
+        throttledCount.add(events);
+        return false;
+    }
+
+    /**
+     * Take quota for {@code events} events, waiting while the tenant is over its
+     * ingest rate. Used for file sources, which can be slowed down instead of rejected.
+     */
+    public void acquire(int events) throws InterruptedException {
+        rateLimit.acquire(events);
+        lastIngestAt.set(clock.millis());
+    }
+
+    /**
+     * Seconds until the tenant may submit again, for Retry-After
+     */
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (rateLimit.nanosUntilAvailable() + 999_999_999) / 1_000_000_000);
+    }
+
+    /**
+     * Quota configuration and usage
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("tenant", tenant);
+        status.put("createdAt", createdAt);
+        status.put("lastIngestAt", lastIngestAt.get());
+        status.put("bufferedEvents", metricAggregator.getBufferedEventCount());
+        status.put("maxEventsPerSecond", rateLimit.getEventsPerSecond());
+        status.put("throttledCount", throttledCount.sum());
+        status.put("sampling", admissionController.isSampling());
+        status.put("shedCount", admissionController.getShedCount());
+        return status;
+    }
+}
@@ -0,0 +1,181 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.model.Anomaly;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Routes events to isolated per-tenant aggregation partitions.
+ *
+ * Events without tenant key belong to the default tenant, whose partition is made of
+ * the application-wide beans, so single-tenant deployments behave as before. Other
+ * partitions are created on the first event of a tenant, up to {@code maxTenants},
+ * with their own windows, repository, duplicate filter, sketches, user index,
+ * sessions, chart series, anomaly detector and admission control. The tenant's
+ * {@code maxRetainedMemory} quota is enforced by its own admission control, which
+ * samples the tenant as its own retained state approaches the quota, independent of
+ * the other tenants and of the heap occupancy.
+ */
+@Service
+public class TenantRegistry {
+
+    public static final String DEFAULT_TENANT = "default";
+
+    private static final Logger log = LoggerFactory.getLogger(TenantRegistry.class);
+    private static final Pattern TENANT_ID = Pattern.compile("[A-Za-z0-9][A-Za-z0-9_-]{0,63}");
+
+    private final ElaProperties properties;
+    private final ElaProperties.Tenants config;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AllocationTracker allocationTracker;
+    private final Clock clock;
+    private final Path inbox;
+
+    private final TenantPartition defaultPartition;
+    private final Map<String, TenantPartition> partitions = new ConcurrentHashMap<>();
+
+    public TenantRegistry(ElaProperties properties, MetricAggregator metricAggregator,
+                          MetricRepository metricRepository, AnomalyDetector anomalyDetector,
+                          AdmissionController admissionController, ObjectMapper objectMapper,
+                          ApplicationEventPublisher eventPublisher, AllocationTracker allocationTracker,
+                          Clock clock) {
+        this.properties = properties;
+        this.config = properties.tenants();
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.allocationTracker = allocationTracker;
+        this.clock = clock;
+        this.inbox = Path.of(properties.directories().inbox()).toAbsolutePath().normalize();
+
+        ElaProperties.Tenants.Quota quota = configuredQuota(DEFAULT_TENANT);
+        this.defaultPartition = new TenantPartition(DEFAULT_TENANT, metricAggregator, metricRepository,
+            anomalyDetector, admissionController, new TokenBucket(quota != null ? quota.maxEventsPerSecond() : 0, clock), clock);
+        partitions.put(DEFAULT_TENANT, defaultPartition);
+    }
+
+    /**
+     * Check the syntax of a tenant id: letters, digits, '-' and '_', at most 64 characters
+     */
+    public static boolean isValidTenantId(String tenant) {
+        return tenant != null && TENANT_ID.matcher(tenant).matches();
+    }
+
+    public TenantPartition getDefault() {
+        return defaultPartition;
+    }
+
+    /**
+     * Partition of the tenant, created on first use
+     *
+     * @param tenant tenant id, null or blank for the default tenant
+     * @throws IllegalArgumentException if the tenant id is invalid
+     * @throws TenantLimitExceededException if the maximum number of tenants is reached
+     */
+    public TenantPartition resolve(String tenant) {
+        if (tenant == null || tenant.isBlank()) {
+            return defaultPartition;
+        }
+        TenantPartition partition = partitions.get(tenant);
+        if (partition != null) {
+            return partition;
+        }
+        if (!isValidTenantId(tenant)) {
+            throw new IllegalArgumentException("Invalid tenant id: " + tenant);
+        }
+        synchronized (partitions) {
+            partition = partitions.get(tenant);
+            if (partition == null) {
+                // The default tenant does not count against the limit
+                if (partitions.size() - 1 >= config.maxTenants()) {
+                    throw new TenantLimitExceededException(config.maxTenants());
+                }
+                partition = createPartition(tenant);
+                partitions.put(tenant, partition);
+            }
+            return partition;
+        }
+    }
+
+    /**
+     * Partition of an existing tenant, without creating one
+     */
+    public Optional<TenantPartition> find(String tenant) {
+        if (tenant == null || tenant.isBlank()) {
+            return Optional.of(defaultPartition);
+        }
+        return Optional.ofNullable(partitions.get(tenant));
+    }
+
+    /**
+     * Partition for a file in the inbox: files in a subdirectory belong to the tenant
+     * named like the subdirectory, files in the inbox itself to the default tenant
+     */
+    public TenantPartition resolveInboxFile(Path file) {
+        Path directory = file.toAbsolutePath().normalize().getParent();
+        if (directory == null || directory.equals(inbox) || !inbox.equals(directory.getParent())) {
+            return defaultPartition;
+        }
+        return resolve(directory.getFileName().toString());
+    }
+
+    public Path getInbox() {
+        return inbox;
+    }
+
+    public Collection<TenantPartition> getPartitions() {
+        return partitions.values();
+    }
+
+    private TenantPartition createPartition(String tenant) {
+        ElaProperties.Tenants.Quota quota = quota(tenant);
+        ElaProperties.Admission admission = properties.admission();
+        // Heap occupancy is shared by all tenants, so it only counts where admission
+        // control was switched on globally; a quota alone sheds by the tenant's own state
+        boolean globalAdmission = admission != null && admission.enabled();
+        AdmissionController admissionController = new AdmissionController(new ElaProperties.Admission(
+            globalAdmission || quota.maxRetainedBytes() > 0,
+            admission != null ? admission.lowWatermark() : 0.7,
+            admission != null ? admission.highWatermark() : 0.9,
+            quota.maxRetainedBytes() > 0 ? quota.maxRetainedMemory() : admission != null ? admission.maxRetainedMemory() : null,
+            admission != null ? admission.minSampleRate() : 0.01
+        ), globalAdmission);
+
+        MetricRepository metricRepository = new InMemoryMetricRepository(objectMapper, properties, tenant);
+        AnomalyDetector anomalyDetector = new AnomalyDetector(properties,
+            event -> eventPublisher.publishEvent(event instanceof Anomaly anomaly ? new TenantAnomaly(tenant, anomaly) : event));
+        MetricAggregator metricAggregator = new MetricAggregator(properties, metricRepository,
+            new DuplicateFilter(properties, clock), admissionController, anomalyDetector,
+            new UserActivityIndex(properties), new SessionTracker(properties, clock),
+            new TimeSeriesStore(properties), allocationTracker, clock);
+
+        log.info("Created partition for tenant {}: maxEventsPerSecond={}, maxRetainedMemory={}",
+            tenant, quota.maxEventsPerSecond(), quota.maxRetainedMemory());
+        return new TenantPartition(tenant, metricAggregator, metricRepository, anomalyDetector,
+            admissionController, new TokenBucket(quota.maxEventsPerSecond(), clock), clock);
+    }
+
+    private ElaProperties.Tenants.Quota quota(String tenant) {
+        ElaProperties.Tenants.Quota quota = configuredQuota(tenant);
+        if (quota == null) {
+            quota = config.defaultQuota();
+        }
+        return quota != null ? quota : new ElaProperties.Tenants.Quota(0, null);
+    }
+
+    private ElaProperties.Tenants.Quota configuredQuota(String tenant) {
+        return config.quotas() != null ? config.quotas().get(tenant) : null;
+    }
+}
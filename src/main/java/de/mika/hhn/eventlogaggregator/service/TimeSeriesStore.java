@@ -0,0 +1,318 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Event rate, active users and per-channel rates over time, for charts over ranges
+ * far longer than a dashboard stays open.
+ *
+ * Every tier is a ring of fixed-length buckets covering its retention, e.g. 10 s
+ * buckets for hours and 10 min buckets for a week. Events increment the current
+ * bucket of every tier, and on each aggregation tick the active users of the shortest
+ * window are sampled into it. A query reads the finest tier that still holds the
+ * start of its range, so it touches a few thousand buckets at most, and downsamples
+ * each series with a {@link Downsampler}.
+ *
+ * Only the first {@code maxChannels} channels get their own series; a channel's slot
+ * is freed once it had no events for the longest retention.
+ *
+ * Events are queued without taking the store monitor and counted in order on the next
+ * tick or query, so concurrent ingest threads do not serialize on it.
+ */
+@Service
+public class TimeSeriesStore {
+
+    private static final Logger log = LoggerFactory.getLogger(TimeSeriesStore.class);
+
+    private static final long NO_SAMPLE = -1;
+
+    private final boolean enabled;
+    private final int maxChannels;
+    private final int maxPoints;
+    // Ordered by resolution, finest first
+    private final List<Tier> tiers = new ArrayList<>();
+    private final Map<String, long[]> channelLastSeen = new HashMap<>();
+    private final HandOffQueue<Recorded> recorded = new HandOffQueue<>();
+    private final long retentionMillis;
+
+    public TimeSeriesStore(ElaProperties properties) {
+        ElaProperties.TimeSeries config = properties.timeSeries();
+        this.enabled = config != null && config.enabled() && config.tiers() != null && !config.tiers().isEmpty();
+        this.maxChannels = config != null ? Math.max(0, config.maxChannels()) : 0;
+        this.maxPoints = config != null ? Math.max(3, config.maxPoints()) : 3;
+        if (enabled) {
+            config.tiers().stream()
+                .sorted(Comparator.comparing(ElaProperties.TimeSeries.Tier::resolution))
+                .forEach(tier -> tiers.add(new Tier(tier.resolution(), tier.retention())));
+        }
+        this.retentionMillis = tiers.stream().mapToLong(tier -> tier.retentionMillis).max().orElse(0);
+        if (enabled) {
+            log.info("Time series: tiers={}, maxChannels={}", config.tiers(), maxChannels);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Maximum number of points a query may ask for
+     */
+    public int getMaxPoints() {
+        return maxPoints;
+    }
+
+    /**
+     * Count an event of {@code channel} (may be null) received at {@code nowMillis}
+     */
+    public void record(String channel, long nowMillis) {
+        if (!enabled) {
+            return;
+        }
+        recorded.offer(new Recorded(channel, nowMillis));
+    }
+
+    private void apply(Recorded event) {
+        String channel = event.channel();
+        long nowMillis = event.receivedAt();
+        boolean tracked = false;
+        if (channel != null) {
+            long[] lastSeen = channelLastSeen.get(channel);
+            if (lastSeen == null && channelLastSeen.size() < maxChannels) {
+                lastSeen = new long[1];
+                channelLastSeen.put(channel, lastSeen);
+            }
+            if (lastSeen != null) {
+                lastSeen[0] = nowMillis;
+                tracked = true;
+            }
+        }
+        for (Tier tier : tiers) {
+            int slot = tier.advance(nowMillis);
+            tier.counts[slot]++;
+            if (tracked) {
+                tier.channels.computeIfAbsent(channel, key -> new int[tier.indices.length])[slot]++;
+            }
+        }
+    }
+
+    /**
+     * Sample the active users at {@code nowMillis} and free the slots of idle channels.
+     * Called on every aggregation tick.
+     */
+    public synchronized void sample(long activeUsers, long nowMillis) {
+        if (!enabled) {
+            return;
+        }
+        recorded.drain(this::apply);
+        for (Tier tier : tiers) {
+            int slot = tier.advance(nowMillis);
+            tier.activeUsers[slot] = Math.max(tier.activeUsers[slot], activeUsers);
+        }
+
+        long cutoff = nowMillis - retentionMillis;
+        for (Iterator<Map.Entry<String, long[]>> it = channelLastSeen.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, long[]> entry = it.next();
+            if (entry.getValue()[0] < cutoff) {
+                tiers.forEach(tier -> tier.channels.remove(entry.getKey()));
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Series between {@code fromMillis} and {@code toMillis}, each downsampled to at
+     * most {@code points} points. Without explicit {@code channels} the
+     * {@code topChannels} busiest channels of the range are returned.
+     */
+    public synchronized Optional<Result> query(long fromMillis, long toMillis, int points, Downsampler downsampler,
+                                               Collection<String> channels, int topChannels, long nowMillis) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        recorded.drain(this::apply);
+        Tier tier = tiers.stream()
+            .filter(candidate -> nowMillis - candidate.retentionMillis <= fromMillis)
+            .findFirst()
+            .orElse(tiers.get(tiers.size() - 1));
+
+        // Buckets of the range that were written, i.e. the application was running
+        long nowIndex = nowMillis / tier.resolutionMillis;
+        long firstIndex = Math.max(fromMillis / tier.resolutionMillis, nowIndex - tier.indices.length + 1);
+        long lastIndex = Math.min(toMillis / tier.resolutionMillis, nowIndex);
+        int[] slots = new int[(int) Math.max(0, lastIndex - firstIndex + 1)];
+        long[] timestamps = new long[slots.length];
+        int count = 0;
+        for (long index = firstIndex; index <= lastIndex; index++) {
+            int slot = (int) (index % tier.indices.length);
+            if (tier.indices[slot] == index) {
+                slots[count] = slot;
+                timestamps[count++] = index * tier.resolutionMillis;
+            }
+        }
+        slots = Arrays.copyOf(slots, count);
+        timestamps = Arrays.copyOf(timestamps, count);
+
+        // The current bucket is still filling, its rate is taken over the elapsed part
+        double[] minutes = new double[count];
+        for (int i = 0; i < count; i++) {
+            long elapsed = Math.min(tier.resolutionMillis, nowMillis - timestamps[i]);
+            minutes[i] = Math.max(1000, elapsed) / 60_000.0;
+        }
+
+        Series eventsPerMinute = rates(tier.counts, slots, timestamps, minutes, points, downsampler);
+        Series activeUsers = activeUsers(tier, slots, timestamps, points, downsampler);
+
+        Map<String, Series> channelSeries = new LinkedHashMap<>();
+        for (String channel : channels.isEmpty() ? busiestChannels(tier, slots, topChannels) : channels) {
+            int[] counts = tier.channels.get(channel);
+            if (counts != null) {
+                long[] values = new long[tier.indices.length];
+                for (int slot : slots) {
+                    values[slot] = counts[slot];
+                }
+                channelSeries.put(channel, rates(values, slots, timestamps, minutes, points, downsampler));
+            }
+        }
+        return Optional.of(new Result(Duration.ofMillis(tier.resolutionMillis), eventsPerMinute, activeUsers, channelSeries));
+    }
+
+    /**
+     * Estimated heap used by all tiers
+     */
+    public synchronized long getMemoryBytes() {
+        long bytes = 0;
+        for (Tier tier : tiers) {
+            bytes += tier.indices.length * 24L + tier.channels.size() * (48L + tier.indices.length * 4L);
+        }
+        return bytes + channelLastSeen.size() * 80L + recorded.size() * 32L;
+    }
+
+    private static Series rates(long[] counts, int[] slots, long[] timestamps, double[] minutes,
+                                int points, Downsampler downsampler) {
+        double[] values = new double[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            values[i] = counts[slots[i]] / minutes[i];
+        }
+        return Series.of(timestamps, values, points, downsampler);
+    }
+
+    private static Series activeUsers(Tier tier, int[] slots, long[] timestamps, int points, Downsampler downsampler) {
+        // Buckets without a tick yet have no sample and are left out
+        long[] sampledTimestamps = new long[slots.length];
+        double[] values = new double[slots.length];
+        int count = 0;
+        for (int i = 0; i < slots.length; i++) {
+            long sample = tier.activeUsers[slots[i]];
+            if (sample != NO_SAMPLE) {
+                sampledTimestamps[count] = timestamps[i];
+                values[count++] = sample;
+            }
+        }
+        return Series.of(Arrays.copyOf(sampledTimestamps, count), Arrays.copyOf(values, count), points, downsampler);
+    }
+
+    private static List<String> busiestChannels(Tier tier, int[] slots, int limit) {
+        Map<String, Long> totals = new HashMap<>();
+        tier.channels.forEach((channel, counts) -> {
+            long total = 0;
+            for (int slot : slots) {
+                total += counts[slot];
+            }
+            if (total > 0) {
+                totals.put(channel, total);
+            }
+        });
+        return totals.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            .limit(Math.max(0, limit))
+            .map(Map.Entry::getKey)
+            .toList();
+    }
+
+    /**
+     * A queued event: its channel (may be null) and the time it was received
+     */
+    private record Recorded(String channel, long receivedAt) {}
+
+    /**
+     * Series of one tier, with the resolution of its buckets
+     */
+    public record Result(
+        Duration resolution,
+        Series eventsPerMinute,
+        Series activeUsers,
+        Map<String, Series> channels
+    ) {}
+
+    /**
+     * Points of a series: bucket start (epoch millis) and value
+     */
+    public record Series(long[] timestamps, double[] values) {
+
+        static Series of(long[] timestamps, double[] values, int points, Downsampler downsampler) {
+            if (timestamps.length <= points) {
+                return new Series(timestamps, values);
+            }
+            int[] selected = downsampler.select(timestamps, values, points);
+            long[] selectedTimestamps = new long[selected.length];
+            double[] selectedValues = new double[selected.length];
+            for (int i = 0; i < selected.length; i++) {
+                selectedTimestamps[i] = timestamps[selected[i]];
+                selectedValues[i] = values[selected[i]];
+            }
+            return new Series(selectedTimestamps, selectedValues);
+        }
+    }
+
+    /**
+     * Ring of buckets; a slot is reset when time reaches it again
+     */
+    private static class Tier {
+        final long resolutionMillis;
+        final long retentionMillis;
+        final long[] indices;
+        final long[] counts;
+        final long[] activeUsers;
+        final Map<String, int[]> channels = new HashMap<>();
+
+        Tier(Duration resolution, Duration retention) {
+            this.resolutionMillis = Math.max(1000, resolution.toMillis());
+            this.retentionMillis = retention.toMillis();
+            int buckets = (int) Math.min(Integer.MAX_VALUE, retentionMillis / resolutionMillis + 1);
+            this.indices = new long[buckets];
+            this.counts = new long[buckets];
+            this.activeUsers = new long[buckets];
+            Arrays.fill(indices, -1);
+        }
+
+        int advance(long nowMillis) {
+            long index = nowMillis / resolutionMillis;
+            int slot = (int) (index % indices.length);
+            if (indices[slot] != index) {
+                indices[slot] = index;
+                counts[slot] = 0;
+                activeUsers[slot] = NO_SAMPLE;
+                for (int[] channelCounts : channels.values()) {
+                    channelCounts[slot] = 0;
+                }
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import java.time.Clock;
+
+/**
+ * Token bucket with one second of burst for event-rate caps.
+ *
+ * A request may overdraw the bucket as long as some tokens are left; the debt delays
+ * the next request instead. That way batches larger than the rate still pass, and the
+ * long-term rate stays at {@code eventsPerSecond}. A rate of 0 means unlimited.
+ * Tokens refill on the application clock, so quotas follow virtual time in simulation mode.
+ */
+public class TokenBucket {
+
+    private final long eventsPerSecond;
+    private final MonotonicTicker ticker;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(long eventsPerSecond, Clock clock) {
+        this.eventsPerSecond = Math.max(0, eventsPerSecond);
+        this.ticker = new MonotonicTicker(clock);
+        this.tokens = this.eventsPerSecond;
+        this.lastRefill = ticker.nanos();
+    }
+
+    public long getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    public boolean isUnlimited() {
+        return eventsPerSecond == 0;
+    }
+
+    /**
+     * Whether a request may be served right now
+     */
+    public synchronized boolean hasTokens() {
+        if (isUnlimited()) {
+            return true;
+        }
+        refill(ticker.nanos());
+        return tokens > 0;
+    }
+
+    /**
+     * Take {@code events} tokens, possibly going into debt
+     */
+    public synchronized void consume(long events) {
+        if (!isUnlimited()) {
+            tokens -= events;
+        }
+    }
+
+    /**
+     * Take {@code events} tokens if any are left
+     */
+    public synchronized boolean tryAcquire(long events) {
+        if (!hasTokens()) {
+            return false;
+        }
+        consume(events);
+        return true;
+    }
+
+    /**
+     * Take {@code events} tokens, waiting until the bucket is out of debt
+     */
+    public void acquire(long events) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            waitNanos = nanosUntilAvailable();
+            consume(events);
+        }
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+    }
+
+    /**
+     * Time until the bucket has tokens again, 0 if it has some now
+     */
+    public synchronized long nanosUntilAvailable() {
+        if (hasTokens()) {
+            return 0;
+        }
+        return (long) ((1 - tokens) * 1e9 / eventsPerSecond);
+    }
+
+    private void refill(long nowNanos) {
+        tokens = Math.min(eventsPerSecond, tokens + (nowNanos - lastRefill) * eventsPerSecond / 1e9);
+        lastRefill = nowNanos;
+    }
+}
@@ -0,0 +1,323 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.model.EventType;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Per-user index over the retained events, for looking up what a single user did.
+ *
+ * Every user has a ring of its most recent events and counters by type and channel in
+ * time buckets of {@code bucket} length. Once a user has more than {@code maxBuckets}
+ * buckets, the two oldest are merged, so older activity is kept at coarser resolution
+ * instead of being dropped. A window query adds up the buckets that end inside the
+ * window, so counts may include events up to one bucket before the window start.
+ *
+ * Users are kept in order of their last event; beyond {@code maxUsers} the least
+ * recently active user is evicted, and users without events in the longest window
+ * are dropped on every aggregation tick. Buckets are bounded per user, so they are
+ * not expired individually; queries only count the buckets inside their window.
+ *
+ * Events are queued without taking the index monitor and applied in order on the next
+ * tick or read, so concurrent ingest threads do not serialize on it.
+ */
+@Service
+public class UserActivityIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(UserActivityIndex.class);
+
+    // Rough per-object sizes for the memory estimate, assuming compressed oops
+    private static final long USER_BYTES = 160;
+    private static final long RECENT_EVENT_BYTES = 1 + 4 + 8 + 8;
+    private static final long BUCKET_BYTES = 48 + 16L + EventType.values().length * 4L;
+    private static final long CHANNEL_COUNT_BYTES = 48;
+    private static final long QUEUED_EVENT_BYTES = 64;
+
+    private final boolean enabled;
+    private final int maxUsers;
+    private final int recentEvents;
+    private final long bucketMillis;
+    private final int maxBuckets;
+    private final long retentionMillis;
+
+    // Insertion order is the order of last activity: users are re-inserted on every event
+    private final LinkedHashMap<String, UserActivity> users = new LinkedHashMap<>();
+    private final HandOffQueue<Recorded> recorded = new HandOffQueue<>();
+    private long bucketCount;
+    private long channelCountEntries;
+    private long evictedCount;
+
+    public UserActivityIndex(ElaProperties properties) {
+        ElaProperties.UserActivity config = properties.userActivity();
+        this.enabled = config != null && config.enabled();
+        this.maxUsers = config != null ? Math.max(1, config.maxUsers()) : 1;
+        this.recentEvents = config != null ? Math.max(1, config.recentEvents()) : 1;
+        this.bucketMillis = config != null && config.bucket() != null ? Math.max(1, config.bucket().toMillis()) : 60_000;
+        this.maxBuckets = config != null ? Math.max(2, config.maxBuckets()) : 2;
+
+        this.retentionMillis = properties.aggregation().longest().toMillis();
+        if (enabled) {
+            log.info("User activity index: maxUsers={}, recentEvents={}, bucket={}, maxBuckets={}",
+                maxUsers, recentEvents, config.bucket(), maxBuckets);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record an event of a user, received at {@code nowMillis}
+     */
+    public void record(FlatEvent event, long nowMillis) {
+        if (!enabled || event.userId() == null) {
+            return;
+        }
+        recorded.offer(new Recorded(event.userId(), event.type(), event.channel(), event.timestampMillis(), nowMillis));
+    }
+
+    private void apply(Recorded event) {
+        long nowMillis = event.receivedAt();
+        UserActivity user = users.remove(event.userId());
+        if (user == null) {
+            user = new UserActivity(recentEvents);
+            if (users.size() >= maxUsers) {
+                Iterator<UserActivity> eldest = users.values().iterator();
+                release(eldest.next());
+                eldest.remove();
+                evictedCount++;
+            }
+        }
+        users.put(event.userId(), user);
+
+        user.recent.add(event.type(), event.channel(), event.timestampMillis(), nowMillis);
+        user.lastSeen = nowMillis;
+
+        Bucket bucket = user.buckets.peekLast();
+        if (bucket == null || nowMillis >= bucket.start + bucketMillis) {
+            bucket = new Bucket(nowMillis);
+            user.buckets.addLast(bucket);
+            bucketCount++;
+            if (user.buckets.size() > maxBuckets) {
+                mergeOldest(user);
+            }
+        }
+        bucket.end = nowMillis;
+        bucket.typeCounts[event.type().ordinal()]++;
+        if (event.channel() != null && bucket.channelCounts.merge(event.channel(), 1, Integer::sum) == 1) {
+            channelCountEntries++;
+        }
+    }
+
+    /**
+     * Activity of a user within the window, empty for a user without indexed events
+     */
+    public synchronized Optional<Activity> lookup(String userId, Duration window, long nowMillis) {
+        recorded.drain(this::apply);
+        UserActivity user = users.get(userId);
+        if (user == null) {
+            return Optional.empty();
+        }
+        long cutoff = nowMillis - window.toMillis();
+
+        Map<EventType, Long> byType = new EnumMap<>(EventType.class);
+        Map<String, Long> byChannel = new HashMap<>();
+        long total = 0;
+        long since = 0;
+        for (Iterator<Bucket> it = user.buckets.descendingIterator(); it.hasNext(); ) {
+            Bucket bucket = it.next();
+            if (bucket.end < cutoff) {
+                break;
+            }
+            since = bucket.start;
+            for (EventType type : EventType.values()) {
+                int count = bucket.typeCounts[type.ordinal()];
+                if (count > 0) {
+                    byType.merge(type, (long) count, Long::sum);
+                    total += count;
+                }
+            }
+            bucket.channelCounts.forEach((channel, count) -> byChannel.merge(channel, (long) count, Long::sum));
+        }
+        if (total == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new Activity(userId, total, byType, byChannel, since, user.lastSeen,
+            user.recent.newestFirst(cutoff)));
+    }
+
+    /**
+     * Drop users without events in the longest window
+     */
+    public synchronized void expire(long nowMillis) {
+        if (!enabled) {
+            return;
+        }
+        recorded.drain(this::apply);
+        long cutoff = nowMillis - retentionMillis;
+        int removed = 0;
+        for (Iterator<UserActivity> it = users.values().iterator(); it.hasNext(); ) {
+            UserActivity user = it.next();
+            // Users are ordered by last activity, all following ones are newer
+            if (user.lastSeen >= cutoff) {
+                break;
+            }
+            release(user);
+            it.remove();
+            removed++;
+        }
+        if (removed > 0) {
+            log.debug("Expired {} inactive users from the activity index", removed);
+        }
+    }
+
+    public synchronized int getUserCount() {
+        recorded.drain(this::apply);
+        return users.size();
+    }
+
+    /**
+     * Number of users evicted because the index was full
+     */
+    public synchronized long getEvictedCount() {
+        recorded.drain(this::apply);
+        return evictedCount;
+    }
+
+    /**
+     * Estimated heap used by the index
+     */
+    public synchronized long getMemoryBytes() {
+        return users.size() * (USER_BYTES + recentEvents * RECENT_EVENT_BYTES)
+            + bucketCount * BUCKET_BYTES
+            + channelCountEntries * CHANNEL_COUNT_BYTES
+            + recorded.size() * QUEUED_EVENT_BYTES;
+    }
+
+    private void mergeOldest(UserActivity user) {
+        Bucket oldest = user.buckets.pollFirst();
+        Bucket next = user.buckets.peekFirst();
+        next.start = oldest.start;
+        for (int i = 0; i < next.typeCounts.length; i++) {
+            next.typeCounts[i] += oldest.typeCounts[i];
+        }
+        oldest.channelCounts.forEach((channel, count) -> {
+            if (next.channelCounts.merge(channel, count, Integer::sum).equals(count)) {
+                channelCountEntries++;
+            }
+        });
+        release(oldest);
+    }
+
+    private void release(UserActivity user) {
+        user.buckets.forEach(this::release);
+    }
+
+    private void release(Bucket bucket) {
+        bucketCount--;
+        channelCountEntries -= bucket.channelCounts.size();
+    }
+
+    /**
+     * Activity of a user within a window. {@code since} is the start of the oldest
+     * bucket counted, which may lie before the window start.
+     */
+    public record Activity(
+        String userId,
+        long totalEvents,
+        Map<EventType, Long> eventsByType,
+        Map<String, Long> eventsByChannel,
+        long since,
+        long lastSeen,
+        List<RecentEvent> recentEvents
+    ) {}
+
+    /**
+     * Reference to a recent event: its type, channel and timestamp, plus the time it
+     * was received (epoch millis)
+     */
+    public record RecentEvent(EventType type, String channel, long timestamp, long receivedAt) {}
+
+    /**
+     * What the index keeps of a queued event
+     */
+    private record Recorded(String userId, EventType type, String channel, long timestampMillis, long receivedAt) {}
+
+    private static class UserActivity {
+        final RecentRing recent;
+        final ArrayDeque<Bucket> buckets = new ArrayDeque<>(2);
+        long lastSeen;
+
+        UserActivity(int recentEvents) {
+            this.recent = new RecentRing(recentEvents);
+        }
+    }
+
+    private static class Bucket {
+        long start;
+        long end;
+        final int[] typeCounts = new int[EventType.values().length];
+        final Map<String, Integer> channelCounts = new HashMap<>(4);
+
+        Bucket(long start) {
+            this.start = start;
+            this.end = start;
+        }
+    }
+
+    /**
+     * Fixed-size ring of the most recent events in parallel arrays; the channel strings
+     * are shared with the aggregation windows
+     */
+    private static class RecentRing {
+        final byte[] types;
+        final String[] channels;
+        final long[] timestamps;
+        final long[] receivedAt;
+        int next;
+        int size;
+
+        RecentRing(int capacity) {
+            types = new byte[capacity];
+            channels = new String[capacity];
+            timestamps = new long[capacity];
+            receivedAt = new long[capacity];
+        }
+
+        void add(EventType type, String channel, long timestamp, long received) {
+            types[next] = (byte) type.ordinal();
+            channels[next] = channel;
+            timestamps[next] = timestamp;
+            receivedAt[next] = received;
+            next = (next + 1) % types.length;
+            size = Math.min(size + 1, types.length);
+        }
+
+        List<RecentEvent> newestFirst(long cutoff) {
+            EventType[] eventTypes = EventType.values();
+            List<RecentEvent> events = new ArrayList<>(size);
+            for (int i = 1; i <= size; i++) {
+                int index = (next - i + types.length) % types.length;
+                if (receivedAt[index] < cutoff) {
+                    break;
+                }
+                events.add(new RecentEvent(eventTypes[types[index]], channels[index], timestamps[index], receivedAt[index]));
+            }
+            return events;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Validation outcome of a batch, by element index. For every index either the
+ * event or the rejection reason is set.
+ */
+public record ValidatedBatch(List<FlatEvent> events, List<String> errors) {
+    
+    public int size() {
+        return events.size();
+    }
+    
+    public long validCount() {
+        return events.stream().filter(Objects::nonNull).count();
+    }
+    
+    public boolean allValid() {
+        return validCount() == size();
+    }
+    
+    /**
+     * The valid events in batch order
+     */
+    public List<FlatEvent> validEvents() {
+        return events.stream().filter(Objects::nonNull).toList();
+    }
+}
@@ -3,7 +3,7 @@ package de.mika.hhn.eventlogaggregator;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "ela.directories.logs=target/test-logs")
 class EventLogAggregatorApplicationTests {
 
     @Test
@@ -0,0 +1,305 @@
+package de.mika.hhn.eventlogaggregator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Throughput and latency SLO regression suite, run with {@code mvn -Pslo verify}.
+ *
+ * Boots the application, drives sustained load through {@code POST /events/batch} and
+ * the inbox directory, and measures sustained events per second, p99 HTTP latency and
+ * ingest-to-visible latency. The latter is measured with probe events of fresh users:
+ * the load only uses a fixed, already counted user pool, so a probe is visible once
+ * {@code activeUsers} in {@code /metrics/hourly} reaches the expected count. Results
+ * are compared with {@code slo-baseline.properties} and written to {@code slo.reportFile}.
+ */
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "ela.directories.logs=target/test-logs",
+        // Sampling would make the probe count nondeterministic
+        "ela.admission.enabled=false",
+        "ela.anomalies.enabled=false"
+    }
+)
+class IngestSloIT {
+
+    private static final int USER_POOL = 1000;
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(30);
+    private static final Path INBOX = createInbox();
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSX").withZone(ZoneOffset.UTC);
+
+    private final ObjectMapper objectMapper = new ObjectMapper().disable(SerializationFeature.INDENT_OUTPUT);
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    @LocalServerPort
+    private int port;
+
+    private long probes = 0;
+
+    @DynamicPropertySource
+    static void inbox(DynamicPropertyRegistry registry) {
+        registry.add("ela.directories.inbox", INBOX::toString);
+    }
+
+    private static Path createInbox() {
+        try {
+            return Files.createTempDirectory("ela-slo-inbox");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void ingestMeetsBaseline() throws Exception {
+        Properties baseline = loadBaseline();
+        Duration duration = Duration.ofSeconds(Long.getLong("slo.durationSeconds", 30));
+        int threads = Integer.getInteger("slo.threads", 4);
+        int batchSize = Integer.getInteger("slo.batchSize", 500);
+        int inboxFilesPerSecond = Integer.getInteger("slo.inboxFilesPerSecond", 2);
+
+        warmUp(batchSize);
+
+        List<Long> httpLatencies = Collections.synchronizedList(new ArrayList<>());
+        List<Long> httpVisibility = new ArrayList<>();
+        List<Long> inboxVisibility = new ArrayList<>();
+        AtomicLong httpEvents = new AtomicLong();
+        AtomicLong inboxEvents = new AtomicLong();
+        AtomicLong failedRequests = new AtomicLong();
+
+        long deadline = System.nanoTime() + duration.toNanos();
+        ExecutorService load = Executors.newFixedThreadPool(threads + 1);
+        for (int t = 0; t < threads; t++) {
+            load.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    int status = postBatch(loadBatch(batchSize));
+                    httpLatencies.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                    if (status == 200) {
+                        httpEvents.addAndGet(batchSize);
+                    } else {
+                        failedRequests.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        load.submit(() -> {
+            long file = 0;
+            while (System.nanoTime() < deadline) {
+                writeInboxFile("load-" + file++, loadBatch(batchSize));
+                inboxEvents.addAndGet(batchSize);
+                Thread.sleep(1000L / inboxFilesPerSecond);
+            }
+            return null;
+        });
+
+        // Probes alternate between HTTP and inbox while the load runs
+        long loadStart = System.nanoTime();
+        boolean viaInbox = false;
+        while (System.nanoTime() < deadline) {
+            long visibleAfter = probe(viaInbox);
+            (viaInbox ? inboxVisibility : httpVisibility).add(visibleAfter);
+            viaInbox = !viaInbox;
+            Thread.sleep(250);
+        }
+        load.shutdown();
+        assertTrue(load.awaitTermination(60, TimeUnit.SECONDS), "Load generators did not stop");
+        double elapsedSeconds = (System.nanoTime() - loadStart) / 1e9;
+        // Inbox throughput counts until the last written file has been processed
+        awaitInboxDrained();
+        double inboxSeconds = (System.nanoTime() - loadStart) / 1e9;
+
+        Map<String, Double> measured = new LinkedHashMap<>();
+        measured.put("http.eventsPerSecond", httpEvents.get() / elapsedSeconds);
+        measured.put("http.p99Millis", percentile(httpLatencies, 0.99) / 1000.0);
+        measured.put("http.failedRequests", (double) failedRequests.get());
+        measured.put("inbox.eventsPerSecond", inboxEvents.get() / inboxSeconds);
+        measured.put("visibility.http.p99Millis", (double) percentile(httpVisibility, 0.99));
+        measured.put("visibility.inbox.p99Millis", (double) percentile(inboxVisibility, 0.99));
+
+        List<String> regressions = new ArrayList<>();
+        Map<String, Object> checks = new LinkedHashMap<>();
+        for (String key : baseline.stringPropertyNames().stream().sorted().toList()) {
+            double limit = Double.parseDouble(baseline.getProperty(key));
+            boolean minimum = key.endsWith(".min");
+            String metric = key.substring(0, key.lastIndexOf('.'));
+            Double value = measured.get(metric);
+            boolean passed = value != null && (minimum ? value >= limit : value <= limit);
+            checks.put(key, Map.of("measured", value != null ? value : Double.NaN, "limit", limit, "passed", passed));
+            if (!passed) {
+                regressions.add(String.format("%s = %.1f, %s %.1f", metric, value, minimum ? "minimum" : "maximum", limit));
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        report.put("durationSeconds", elapsedSeconds);
+        report.put("threads", threads);
+        report.put("batchSize", batchSize);
+        report.put("probes", Map.of("http", httpVisibility.size(), "inbox", inboxVisibility.size()));
+        report.put("measured", measured);
+        report.put("checks", checks);
+        report.put("passed", regressions.isEmpty());
+        writeReport(report);
+
+        assertTrue(regressions.isEmpty(), "SLO regression: " + String.join("; ", regressions));
+    }
+
+    /**
+     * Count the whole user pool once, so the load no longer changes activeUsers
+     */
+    private void warmUp(int batchSize) throws Exception {
+        for (int from = 0; from < USER_POOL; from += batchSize) {
+            List<Map<String, Object>> batch = new ArrayList<>();
+            for (int user = from; user < Math.min(USER_POOL, from + batchSize); user++) {
+                batch.add(event("user-" + user, "warmup"));
+            }
+            postBatch(batch);
+        }
+        awaitActiveUsers(USER_POOL);
+    }
+
+    /**
+     * Submit one event of a fresh user and wait until it shows in the hourly metrics
+     *
+     * @return milliseconds from acceptance until visible
+     */
+    private long probe(boolean viaInbox) throws Exception {
+        probes++;
+        List<Map<String, Object>> batch = List.of(event("probe-" + probes, "probe"));
+        if (viaInbox) {
+            writeInboxFile("probe-" + probes, batch);
+        } else {
+            postBatch(batch);
+        }
+        long accepted = System.nanoTime();
+        awaitActiveUsers(USER_POOL + probes);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - accepted);
+    }
+
+    private void awaitActiveUsers(long expected) throws Exception {
+        long deadline = System.nanoTime() + PROBE_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            HttpResponse<byte[]> response = client.send(
+                HttpRequest.newBuilder(uri("/metrics/hourly")).GET().build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() == 200) {
+                JsonNode metrics = objectMapper.readTree(response.body());
+                if (metrics.path("activeUsers").asLong() >= expected) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Expected " + expected + " active users within " + PROBE_TIMEOUT);
+    }
+
+    private void awaitInboxDrained() throws Exception {
+        long deadline = System.nanoTime() + PROBE_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            try (var files = Files.list(INBOX)) {
+                if (files.noneMatch(file -> file.getFileName().toString().endsWith(".json"))) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Inbox not drained within " + PROBE_TIMEOUT);
+    }
+
+    private List<Map<String, Object>> loadBatch(int size) {
+        List<Map<String, Object>> batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            batch.add(event("user-" + (int) (Math.random() * USER_POOL), "#channel-" + (i % 20)));
+        }
+        return batch;
+    }
+
+    private Map<String, Object> event(String userId, String channel) {
+        return Map.of(
+            "type", "MESSAGE",
+            "timestamp", TIMESTAMP_FORMAT.format(Instant.now()),
+            "userId", userId,
+            "payload", Map.of("channel", channel, "message", "load")
+        );
+    }
+
+    private int postBatch(List<Map<String, Object>> batch) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri("/events/batch"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(batch)))
+            .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private void writeInboxFile(String name, List<Map<String, Object>> batch) throws IOException {
+        // Write under a foreign suffix and rename, so the watcher never sees a partial file
+        Path partial = INBOX.resolve(name + ".part");
+        Files.write(partial, objectMapper.writeValueAsBytes(batch));
+        Files.move(partial, INBOX.resolve(name + ".json"));
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static long percentile(List<Long> values, double quantile) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(quantile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    private Properties loadBaseline() throws IOException {
+        Properties baseline = new Properties();
+        try (InputStream in = getClass().getResourceAsStream("/slo-baseline.properties")) {
+            if (in == null) {
+                throw new IllegalStateException("slo-baseline.properties not found");
+            }
+            baseline.load(in);
+        }
+        return baseline;
+    }
+
+    private void writeReport(Map<String, Object> report) throws IOException {
+        Path reportFile = Path.of(System.getProperty("slo.reportFile", "target/slo-report.json"));
+        Files.createDirectories(reportFile.toAbsolutePath().getParent());
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportFile.toFile(), report);
+    }
+}
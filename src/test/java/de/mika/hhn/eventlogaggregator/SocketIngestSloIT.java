@@ -0,0 +1,229 @@
+package de.mika.hhn.eventlogaggregator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mika.hhn.eventlogaggregator.service.SocketIngestListener;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Loopback throughput of the socket listener compared with {@code POST /events/batch},
+ * run with {@code mvn -Pslo verify}.
+ *
+ * Both phases send the same NDJSON payload from the same number of client threads for
+ * {@code slo.durationSeconds}: as batch requests, each answered after aggregation, and
+ * as a stream over one persistent TCP connection per thread, counted until the listener
+ * has aggregated everything sent. Results are compared with
+ * {@code slo-socket-baseline.properties} and written next to {@code slo.reportFile}.
+ */
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "ela.directories.logs=target/test-logs",
+        // Every event has to reach the aggregation in both phases
+        "ela.admission.enabled=false",
+        "ela.anomalies.enabled=false",
+        "ela.deduplication.enabled=false",
+        "ela.socket-ingest.enabled=true",
+        "ela.socket-ingest.port=0"
+    }
+)
+class SocketIngestSloIT {
+
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(60);
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSX").withZone(ZoneOffset.UTC);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private SocketIngestListener socketIngestListener;
+
+    @Test
+    void socketOutperformsBatchEndpoint() throws Exception {
+        Properties baseline = loadBaseline();
+        Duration duration = Duration.ofSeconds(Long.getLong("slo.durationSeconds", 30));
+        int threads = Integer.getInteger("slo.threads", 4);
+        int batchSize = Integer.getInteger("slo.batchSize", 500);
+        byte[] payload = ndjson(batchSize);
+
+        // Both paths once, so neither phase pays for class loading and JIT warm-up
+        runHttp(payload, batchSize, threads, Duration.ofSeconds(3));
+        runSocket(payload, batchSize, threads, Duration.ofSeconds(3));
+
+        Map<String, Double> measured = new LinkedHashMap<>();
+        measured.put("http.eventsPerSecond", runHttp(payload, batchSize, threads, duration));
+        measured.put("socket.eventsPerSecond", runSocket(payload, batchSize, threads, duration));
+        measured.put("socket.speedup", measured.get("socket.eventsPerSecond") / measured.get("http.eventsPerSecond"));
+
+        List<String> regressions = new ArrayList<>();
+        Map<String, Object> checks = new LinkedHashMap<>();
+        for (String key : baseline.stringPropertyNames().stream().sorted().toList()) {
+            double limit = Double.parseDouble(baseline.getProperty(key));
+            boolean minimum = key.endsWith(".min");
+            String metric = key.substring(0, key.lastIndexOf('.'));
+            Double value = measured.get(metric);
+            boolean passed = value != null && (minimum ? value >= limit : value <= limit);
+            checks.put(key, Map.of("measured", value != null ? value : Double.NaN, "limit", limit, "passed", passed));
+            if (!passed) {
+                regressions.add(String.format("%s = %.2f, %s %.2f", metric, value, minimum ? "minimum" : "maximum", limit));
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        report.put("durationSeconds", duration.toSeconds());
+        report.put("threads", threads);
+        report.put("batchSize", batchSize);
+        report.put("measured", measured);
+        report.put("checks", checks);
+        report.put("passed", regressions.isEmpty());
+        writeReport(report);
+
+        assertTrue(regressions.isEmpty(), "SLO regression: " + String.join("; ", regressions));
+    }
+
+    /**
+     * @return events per second aggregated through {@code /events/batch}
+     */
+    private double runHttp(byte[] payload, int batchSize, int threads, Duration duration) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/events/batch"))
+            .header("Content-Type", "application/x-ndjson")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+            .build();
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+        long events = sum(threads, () -> {
+            long sent = 0;
+            while (System.nanoTime() < deadline) {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    sent += batchSize;
+                }
+            }
+            return sent;
+        });
+        return events / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * @return events per second aggregated through the socket listener, counted until
+     *         everything sent is aggregated
+     */
+    private double runSocket(byte[] payload, int batchSize, int threads, Duration duration) throws Exception {
+        InetSocketAddress address = socketIngestListener.getTcpAddress().orElseThrow();
+        long acceptedBefore = acceptedEvents();
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+        long events = sum(threads, () -> {
+            long sent = 0;
+            try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", address.getPort()))) {
+                ByteBuffer buffer = ByteBuffer.wrap(payload);
+                while (System.nanoTime() < deadline) {
+                    buffer.rewind();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    sent += batchSize;
+                }
+            }
+            return sent;
+        });
+
+        long drainDeadline = System.nanoTime() + DRAIN_TIMEOUT.toNanos();
+        while (acceptedEvents() - acceptedBefore < events) {
+            if (System.nanoTime() > drainDeadline) {
+                throw new AssertionError("Socket listener aggregated " + (acceptedEvents() - acceptedBefore)
+                    + " of " + events + " events within " + DRAIN_TIMEOUT);
+            }
+            Thread.sleep(5);
+        }
+        return events / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private long acceptedEvents() {
+        return ((Number) socketIngestListener.getStatus().get("acceptedEvents")).longValue();
+    }
+
+    private static long sum(int threads, Callable<Long> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(task));
+            }
+            long total = 0;
+            for (Future<Long> result : results) {
+                total += result.get();
+            }
+            return total;
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private byte[] ndjson(int size) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            lines.append(objectMapper.writeValueAsString(Map.of(
+                "type", "MESSAGE",
+                "timestamp", TIMESTAMP_FORMAT.format(Instant.now()),
+                "userId", "user-" + (i % 1000),
+                "payload", Map.of("channel", "#channel-" + (i % 20), "message", "load")
+            ))).append('\n');
+        }
+        return lines.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Properties loadBaseline() throws IOException {
+        Properties baseline = new Properties();
+        try (InputStream in = getClass().getResourceAsStream("/slo-socket-baseline.properties")) {
+            if (in == null) {
+                throw new IllegalStateException("slo-socket-baseline.properties not found");
+            }
+            baseline.load(in);
+        }
+        return baseline;
+    }
+
+    private void writeReport(Map<String, Object> report) throws IOException {
+        Path reportFile = Path.of(System.getProperty("slo.reportFile", "target/slo-report.json"))
+            .resolveSibling("slo-socket-report.json");
+        Files.createDirectories(reportFile.toAbsolutePath().getParent());
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportFile.toFile(), report);
+    }
+}
@@ -0,0 +1,58 @@
+package de.mika.hhn.eventlogaggregator;
+
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ElaProperties} bound like the application binds them: the defaults of
+ * {@code application.yml}, overridden by relaxed property names such as
+ * {@code ela.deduplication.enabled}. New configuration sections thus need no changes
+ * to existing tests. Unless overridden, logs are written to a temporary directory
+ * instead of the tracked {@code logs} directory.
+ */
+public final class TestProperties {
+
+    private static final Path LOGS = createLogs();
+
+    private TestProperties() {
+    }
+
+    public static ElaProperties defaults() {
+        return with(Map.of());
+    }
+
+    public static ElaProperties with(Map<String, ?> overrides) {
+        MutablePropertySources sources = new MutablePropertySources();
+        sources.addFirst(new MapPropertySource("test", Map.copyOf(overrides)));
+        sources.addLast(new MapPropertySource("test-directories", Map.of("ela.directories.logs", LOGS.toString())));
+        try {
+            List<PropertySource<?>> yaml = new YamlPropertySourceLoader()
+                .load("application.yml", new ClassPathResource("application.yml"));
+            yaml.forEach(sources::addLast);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Binder(ConfigurationPropertySources.from(sources)).bind("ela", ElaProperties.class).get();
+    }
+
+    private static Path createLogs() {
+        try {
+            return Files.createTempDirectory("ela-test-logs");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
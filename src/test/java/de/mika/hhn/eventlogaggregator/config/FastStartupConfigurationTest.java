@@ -0,0 +1,46 @@
+package de.mika.hhn.eventlogaggregator.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {"ela.directories.logs=target/test-logs", "ela.ingest-flow.watch-inbox=false"})
+@ActiveProfiles("fast-startup")
+class FastStartupConfigurationTest {
+
+    @Autowired
+    private ConfigurableListableBeanFactory beanFactory;
+
+    @Test
+    void defersTheDocumentationBeans() {
+        List<String> documentation = Arrays.stream(beanFactory.getBeanDefinitionNames())
+            .filter(name -> isDocumentation(beanFactory.getBeanDefinition(name)))
+            .toList();
+
+        assertFalse(documentation.isEmpty());
+        for (String name : documentation) {
+            assertTrue(beanFactory.getBeanDefinition(name).isLazyInit(), name + " is not lazy");
+        }
+        // Nothing on the startup path needs the OpenAPI resource, it is created on the first docs request
+        assertTrue(beanFactory.containsBeanDefinition("openApiResource"));
+        assertFalse(beanFactory.containsSingleton("openApiResource"));
+    }
+
+    private boolean isDocumentation(BeanDefinition definition) {
+        String origin = definition.getBeanClassName();
+        if (origin == null && definition.getFactoryBeanName() != null
+            && beanFactory.containsBeanDefinition(definition.getFactoryBeanName())) {
+            origin = beanFactory.getBeanDefinition(definition.getFactoryBeanName()).getBeanClassName();
+        }
+        return origin != null && (origin.startsWith("org.springdoc.") || origin.startsWith("io.swagger."));
+    }
+}
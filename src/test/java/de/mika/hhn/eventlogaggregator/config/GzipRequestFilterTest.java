@@ -0,0 +1,172 @@
+package de.mika.hhn.eventlogaggregator.config;
+
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GzipRequestFilterTest {
+
+    private static final byte[] BODY = "{\"type\":\"MESSAGE\",\"userId\":\"alice\"}\n".repeat(100)
+        .getBytes(StandardCharsets.UTF_8);
+
+    private final GzipRequestFilter filter = new GzipRequestFilter(TestProperties.with(Map.of(
+        "ela.request-decompression.max-inflated-size", "1KB"
+    )));
+
+    @Test
+    void inflatesGzipBodiesAndHidesTheEncoding() throws Exception {
+        MockHttpServletRequest request = post(gzip(slice(1024)), "gzip");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (req, res) -> {
+            HttpServletRequest http = (HttpServletRequest) req;
+            assertNull(http.getHeader(HttpHeaders.CONTENT_ENCODING));
+            assertEquals(-1, http.getContentLengthLong());
+            res.getOutputStream().write(req.getInputStream().readAllBytes());
+        });
+
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(slice(1024), response.getContentAsByteArray());
+    }
+
+    @Test
+    void passesIdentityBodiesThrough() throws Exception {
+        MockHttpServletRequest request = post(BODY, "identity");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, echo());
+
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(BODY, response.getContentAsByteArray());
+    }
+
+    @Test
+    void rejectsUnsupportedEncodings() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(post(BODY, "br"), response, echo());
+
+        assertEquals(415, response.getStatus());
+        assertEquals("gzip", response.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    @Test
+    void answersCorruptBodiesWithBadRequest() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(post(BODY, "gzip"), response, echo());
+
+        assertEquals(400, response.getStatus());
+        assertEquals("Malformed gzip body: Not in GZIP format", response.getErrorMessage());
+
+        // Truncated in the middle of the deflate stream
+        byte[] compressed = gzip(BODY);
+        byte[] truncated = new byte[compressed.length / 2];
+        System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+        MockHttpServletResponse truncatedResponse = new MockHttpServletResponse();
+        filter.doFilter(post(truncated, "gzip"), truncatedResponse, echo());
+        assertEquals(400, truncatedResponse.getStatus());
+    }
+
+    @Test
+    void answersOversizedBodiesWithPayloadTooLarge() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(post(gzip(BODY), "gzip"), response, (req, res) -> {
+            IOException e = assertThrows(IOException.class, () -> req.getInputStream().readAllBytes());
+            assertTrue(e.getMessage().contains("exceeds 1024 bytes"), e.getMessage());
+            // The handler's own error answer is ignored
+            ((HttpServletResponse) res).setStatus(400);
+        });
+
+        assertEquals(413, response.getStatus());
+        assertEquals("Decompressed request body exceeds 1024 bytes", response.getErrorMessage());
+
+        // Handlers that let the failed read propagate get the same answer
+        MockHttpServletResponse propagated = new MockHttpServletResponse();
+        filter.doFilter(post(gzip(BODY), "gzip"), propagated, echo());
+        assertEquals(413, propagated.getStatus());
+    }
+
+    @Test
+    void drivesReadListenersOfAsynchronousRequests() throws Exception {
+        MockHttpServletRequest request = post(gzip(slice(1024)), "gzip");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        boolean[] allDataRead = new boolean[1];
+
+        filter.doFilter(request, response, (req, res) -> {
+            req.startAsync();
+            ServletInputStream in = req.getInputStream();
+            in.setReadListener(new ReadListener() {
+                @Override
+                public void onDataAvailable() throws IOException {
+                    byte[] buffer = new byte[256];
+                    int n;
+                    while (in.isReady() && (n = in.read(buffer)) != -1) {
+                        read.write(buffer, 0, n);
+                    }
+                }
+
+                @Override
+                public void onAllDataRead() {
+                    allDataRead[0] = true;
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    throw new AssertionError(t);
+                }
+            });
+        });
+
+        assertTrue(allDataRead[0]);
+        assertArrayEquals(slice(1024), read.toByteArray());
+    }
+
+    private static FilterChain echo() {
+        return (req, res) -> res.getOutputStream().write(req.getInputStream().readAllBytes());
+    }
+
+    private static MockHttpServletRequest post(byte[] body, String encoding) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/events/batch");
+        request.addHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+        request.setContentType("application/x-ndjson");
+        request.setContent(body);
+        return request;
+    }
+
+    private static byte[] slice(int length) {
+        byte[] slice = new byte[length];
+        System.arraycopy(BODY, 0, slice, 0, length);
+        return slice;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,215 @@
+package de.mika.hhn.eventlogaggregator.config;
+
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.model.EventType;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import de.mika.hhn.eventlogaggregator.service.IngestGateway;
+import de.mika.hhn.eventlogaggregator.service.IngestHeaders;
+import de.mika.hhn.eventlogaggregator.service.IngestLane;
+import de.mika.hhn.eventlogaggregator.service.IngestReceipt;
+import de.mika.hhn.eventlogaggregator.service.IngestScheduler;
+import de.mika.hhn.eventlogaggregator.service.TenantPartition;
+import de.mika.hhn.eventlogaggregator.service.TenantRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.config.EnableIntegration;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@SpringJUnitConfig(IngestFlowConfigurationTest.BatchingFlow.class)
+class IngestFlowConfigurationTest {
+
+    private static final long TIMEOUT_MS = 1_000;
+
+    @Autowired
+    @Qualifier(IngestGateway.CHANNEL)
+    private MessageChannel ingestEvents;
+
+    @Autowired
+    private BlockingQueue<Batch> batches;
+
+    @BeforeEach
+    void setUp() {
+        batches.clear();
+    }
+
+    @Test
+    void releasesFullBatchesRightAway() throws InterruptedException {
+        long start = System.nanoTime();
+        submit("acme", IngestLane.HTTP, events("e", 7));
+
+        // The bulk channel is direct, so full batches are aggregated by the sender
+        assertEquals(List.of("e-0", "e-1", "e-2"), batches.poll().userIds());
+        assertEquals(List.of("e-3", "e-4", "e-5"), batches.poll().userIds());
+        assertNull(batches.poll());
+
+        Batch rest = batches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(rest);
+        assertEquals(List.of("e-6"), rest.userIds());
+        assertTrue(elapsedMs(start) >= TIMEOUT_MS - 50, elapsedMs(start) + "ms");
+    }
+
+    @Test
+    void batchesPerTenantAndLane() throws InterruptedException {
+        submit("acme", IngestLane.HTTP, events("acme-http", 2));
+        submit("acme", IngestLane.INBOX, events("acme-inbox", 2));
+        submit("globex", IngestLane.HTTP, events("globex-http", 2));
+        submit("acme", IngestLane.HTTP, events("acme-http-late", 1));
+
+        Batch full = batches.poll();
+        assertNotNull(full);
+        assertEquals(new Batch(IngestLane.HTTP, "acme", List.of("acme-http-0", "acme-http-1", "acme-http-late-0")), full);
+
+        Set<Batch> partial = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            Batch batch = batches.poll(5, TimeUnit.SECONDS);
+            assertNotNull(batch);
+            partial.add(batch);
+        }
+        assertEquals(Set.of(
+            new Batch(IngestLane.INBOX, "acme", List.of("acme-inbox-0", "acme-inbox-1")),
+            new Batch(IngestLane.HTTP, "globex", List.of("globex-http-0", "globex-http-1"))), partial);
+    }
+
+    @Test
+    void countsTheTimeoutFromTheFirstEventOfABatch() throws InterruptedException {
+        long start = System.nanoTime();
+        submit("acme", IngestLane.REPLAY, events("first", 1));
+        Thread.sleep(TIMEOUT_MS * 6 / 10);
+        submit("acme", IngestLane.REPLAY, events("second", 1));
+
+        Batch batch = batches.poll(5, TimeUnit.SECONDS);
+        long elapsed = elapsedMs(start);
+
+        assertNotNull(batch);
+        assertEquals(List.of("first-0", "second-0"), batch.userIds());
+        // Counted from the second event, the batch would be released after 1.6 timeouts
+        assertTrue(elapsed >= TIMEOUT_MS - 50 && elapsed < TIMEOUT_MS * 3 / 2, elapsed + "ms");
+    }
+
+    @Test
+    void settlesAReceiptOnceAllItsBatchesAreAggregated() throws InterruptedException {
+        CountDownLatch accepted = new CountDownLatch(1);
+        IngestReceipt receipt = new IngestReceipt(4, accepted::countDown, failure -> { });
+        ingestEvents.send(MessageBuilder.withPayload(events("file", 4))
+            .setHeader(IngestHeaders.TENANT, "acme")
+            .setHeader(IngestHeaders.LANE, IngestLane.INBOX)
+            .setHeader(IngestHeaders.RECEIPT, receipt)
+            .build());
+
+        // The first chunk fills a batch, the rest waits for the timeout
+        assertEquals(List.of("file-0", "file-1", "file-2"), batches.poll().userIds());
+        assertFalse(receipt.isSettled());
+
+        assertEquals(List.of("file-3"), batches.poll(5, TimeUnit.SECONDS).userIds());
+        assertTrue(accepted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failsTheReceiptOfABatchThatCannotBeAggregated() {
+        AtomicReference<RuntimeException> failed = new AtomicReference<>();
+        IngestReceipt receipt = new IngestReceipt(3, () -> { }, failed::set);
+
+        assertThrows(MessagingException.class, () -> ingestEvents.send(MessageBuilder.withPayload(events("poison", 3))
+            .setHeader(IngestHeaders.TENANT, "acme")
+            .setHeader(IngestHeaders.LANE, IngestLane.INBOX)
+            .setHeader(IngestHeaders.RECEIPT, receipt)
+            .build()));
+        assertNotNull(failed.get());
+    }
+
+    private void submit(String tenant, IngestLane lane, List<FlatEvent> events) {
+        ingestEvents.send(MessageBuilder.withPayload(events)
+            .setHeader(IngestHeaders.TENANT, tenant)
+            .setHeader(IngestHeaders.LANE, lane)
+            .build());
+    }
+
+    private static long elapsedMs(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static List<FlatEvent> events(String prefix, int count) {
+        return IntStream.range(0, count)
+            .mapToObj(i -> new FlatEvent(EventType.MESSAGE, 0, prefix + "-" + i, "#lobby", null, null, null))
+            .toList();
+    }
+
+    record Batch(IngestLane lane, String tenant, List<String> userIds) {}
+
+    /**
+     * Only the batching part of the flow, handing batches to a recording scheduler
+     */
+    @Configuration
+    @EnableIntegration
+    static class BatchingFlow {
+
+        private final IngestFlowConfiguration configuration = new IngestFlowConfiguration(TestProperties.with(Map.of(
+            "ela.ingest-flow.batch-size", 3,
+            "ela.ingest-flow.batch-timeout", TIMEOUT_MS
+        )));
+
+        @Bean
+        BlockingQueue<Batch> batches() {
+            return new LinkedBlockingQueue<>();
+        }
+
+        @Bean
+        MessageChannel ingestBulk() {
+            return new DirectChannel();
+        }
+
+        @Bean
+        IntegrationFlow batchingFlow(BlockingQueue<Batch> batches) {
+            TenantRegistry tenantRegistry = mock(TenantRegistry.class);
+            when(tenantRegistry.resolve(anyString())).thenAnswer(invocation -> {
+                TenantPartition partition = mock(TenantPartition.class);
+                when(partition.getTenant()).thenReturn(invocation.getArgument(0));
+                return partition;
+            });
+            IngestScheduler ingestScheduler = mock(IngestScheduler.class);
+            when(ingestScheduler.ingestAll(any(), any(), anyList())).thenAnswer(invocation -> {
+                TenantPartition partition = invocation.getArgument(1);
+                List<FlatEvent> events = invocation.getArgument(2);
+                if (events.get(0).userId().startsWith("poison")) {
+                    throw new IllegalStateException("Ingestion stopped");
+                }
+                batches.add(new Batch(invocation.getArgument(0), partition.getTenant(),
+                    events.stream().map(FlatEvent::userId).toList()));
+                return events.size();
+            });
+            return configuration.batchingFlow(ingestScheduler, tenantRegistry);
+        }
+    }
+}
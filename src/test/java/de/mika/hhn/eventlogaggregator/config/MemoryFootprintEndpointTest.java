@@ -0,0 +1,58 @@
+package de.mika.hhn.eventlogaggregator.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"ela.directories.logs=target/test-logs", "ela.ingest-flow.watch-inbox=false"})
+@AutoConfigureMockMvc
+class MemoryFootprintEndpointTest {
+
+    private static final String EVENT = """
+        {"type": "MESSAGE", "timestamp": "2024-01-15T10:30:00.000Z", "userId": "alice", "payload": {"channel": "#lobby"}}""";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void reportsRetainedAndAllocatedBytes() throws Exception {
+        mockMvc.perform(post("/events").contentType(MediaType.APPLICATION_JSON).content(EVENT))
+            .andExpect(status().isOk());
+        mockMvc.perform(post("/events").header("X-Tenant-Id", "acme").contentType(MediaType.APPLICATION_JSON).content(EVENT))
+            .andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/memory"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.estimatedRetainedBytes").value(greaterThan(0)))
+            .andExpect(jsonPath("$.rollups.PT1S.buckets").isNumber())
+            .andExpect(jsonPath("$.rollups.PT1M.estimatedRetainedBytes").isNumber())
+            .andExpect(jsonPath("$.rollups.PT1H.estimatedRetainedBytes").isNumber())
+            .andExpect(jsonPath("$.structures.bufferedEvents").isNumber())
+            .andExpect(jsonPath("$.structures.bufferedEventBytes").isNumber())
+            .andExpect(jsonPath("$.structures.deduplicationBytes").isNumber())
+            .andExpect(jsonPath("$.structures.userActivityUsers").value(greaterThanOrEqualTo(1)))
+            .andExpect(jsonPath("$.structures.openSessions").value(greaterThanOrEqualTo(1)))
+            .andExpect(jsonPath("$.structures.sessionBytes").value(greaterThan(0)))
+            .andExpect(jsonPath("$.structures.timeSeriesBytes").value(greaterThan(0)))
+            .andExpect(jsonPath("$.tenants.acme.estimatedRollupBytes").isNumber())
+            .andExpect(jsonPath("$.tenants.acme.userActivityBytes").value(greaterThan(0)))
+            .andExpect(jsonPath("$.tenants.default").doesNotExist())
+            .andExpect(jsonPath("$.connections.sse").value(0))
+            .andExpect(jsonPath("$.connections.webSocket").value(0))
+            .andExpect(jsonPath("$.heap.used").value(greaterThan(0)))
+            .andExpect(jsonPath("$.heap.max").isNumber())
+            .andExpect(jsonPath("$.allocation.supported").isBoolean())
+            .andExpect(jsonPath("$.allocation.sources.http.events").value(greaterThanOrEqualTo(2)))
+            .andExpect(jsonPath("$.allocation.aggregation.ticks").isNumber());
+    }
+}
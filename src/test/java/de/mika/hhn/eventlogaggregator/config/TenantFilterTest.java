@@ -0,0 +1,29 @@
+package de.mika.hhn.eventlogaggregator.config;
+
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TenantFilterTest {
+
+    private final TenantFilter filter = new TenantFilter(TestProperties.defaults());
+
+    @Test
+    void variesStreamsAndHandshakesByTheTenantHeader() throws Exception {
+        for (String path : new String[] {"/stream/metrics", "/ws/metrics", "/metrics/hourly"}) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+            request.addHeader("X-Tenant-Id", "acme");
+            MockHttpServletResponse response = new MockHttpServletResponse();
+
+            filter.doFilter(request, response, new MockFilterChain());
+
+            assertEquals("acme", request.getAttribute(TenantFilter.TENANT_ATTRIBUTE));
+            assertEquals("X-Tenant-Id", response.getHeader(HttpHeaders.VARY), path);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package de.mika.hhn.eventlogaggregator.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.config.TenantFilter;
+import de.mika.hhn.eventlogaggregator.model.BatchItemResult;
+import de.mika.hhn.eventlogaggregator.service.AdmissionController;
+import de.mika.hhn.eventlogaggregator.service.AllocationTracker;
+import de.mika.hhn.eventlogaggregator.service.DuplicateFilter;
+import de.mika.hhn.eventlogaggregator.service.EventParser;
+import de.mika.hhn.eventlogaggregator.service.IngestScheduler;
+import de.mika.hhn.eventlogaggregator.service.MetricAggregator;
+import de.mika.hhn.eventlogaggregator.service.SocketIngestListener;
+import de.mika.hhn.eventlogaggregator.service.TenantLimitExceededException;
+import de.mika.hhn.eventlogaggregator.service.TenantPartition;
+import de.mika.hhn.eventlogaggregator.service.TenantRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class EventControllerTest {
+
+    private static final String EVENT = """
+        {"type": "MESSAGE", "timestamp": "2024-01-15T10:30:00.000Z", "userId": "user123",
+         "payload": {"channel": "#lobby", "message": "hi"}}""";
+
+    private final ElaProperties properties = TestProperties.defaults();
+    private final TenantRegistry tenantRegistry = mock(TenantRegistry.class);
+    private final IngestScheduler ingestScheduler = mock(IngestScheduler.class);
+    private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new EventController(
+        parser(), ingestScheduler, new AllocationTracker(), tenantRegistry,
+        mock(SocketIngestListener.class), Clock.systemUTC())).build();
+
+    @Test
+    void rejectsNewTenantsBeyondTheLimitAsUnavailable() throws Exception {
+        when(tenantRegistry.resolve(any())).thenThrow(new TenantLimitExceededException(64));
+
+        mockMvc.perform(post("/events").requestAttr(TenantFilter.TENANT_ATTRIBUTE, "acme")
+                .contentType(MediaType.APPLICATION_JSON).content(EVENT))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string(HttpHeaders.RETRY_AFTER, "60"))
+            .andExpect(jsonPath("$.status").value("unavailable"));
+
+        mockMvc.perform(post("/events/batch").requestAttr(TenantFilter.TENANT_ATTRIBUTE, "acme")
+                .contentType(MediaType.APPLICATION_JSON).content("[" + EVENT + "]"))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string(HttpHeaders.RETRY_AFTER, "60"));
+    }
+
+    @Test
+    void appliesNothingOfAnAtomicBatchWithAnInvalidElement() throws Exception {
+        // Above ela.batch-validation.parallel-threshold, so validated in parallel
+        String line = EVENT.replace('\n', ' ');
+        StringBuilder batch = new StringBuilder();
+        for (int i = 0; i < 1_500; i++) {
+            batch.append(i == 1_234 ? line.replace("\"user123\"", "\"\"") : line).append('\n');
+        }
+
+        mockMvc.perform(post("/events/batch").param("atomic", "true")
+                .contentType("application/x-ndjson").content(batch.toString()))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.processedCount").value(0))
+            .andExpect(jsonPath("$.rejectedCount").value(1))
+            .andExpect(jsonPath("$.results.length()").value(1_500))
+            .andExpect(jsonPath("$.results[1233].status").value(BatchItemResult.ABORTED))
+            .andExpect(jsonPath("$.results[1234].status").value(BatchItemResult.REJECTED))
+            .andExpect(jsonPath("$.results[1234].reason").value(containsString("/userId")));
+        verifyNoInteractions(ingestScheduler, tenantRegistry);
+    }
+
+    @Test
+    void reportsDeduplicationAndSheddingOfTheCallersTenant() throws Exception {
+        DuplicateFilter duplicateFilter = new DuplicateFilter(TestProperties.with(Map.of("ela.deduplication.enabled", true)), Clock.systemUTC());
+        MetricAggregator aggregator = mock(MetricAggregator.class);
+        when(aggregator.getDuplicateFilter()).thenReturn(duplicateFilter);
+        TenantPartition partition = mock(TenantPartition.class);
+        when(partition.getMetricAggregator()).thenReturn(aggregator);
+        when(partition.getAdmissionController()).thenReturn(new AdmissionController(properties));
+        when(partition.getStatus()).thenReturn(Map.of("tenant", "acme"));
+        when(tenantRegistry.find("acme")).thenReturn(Optional.of(partition));
+
+        mockMvc.perform(get("/events/status").requestAttr(TenantFilter.TENANT_ATTRIBUTE, "acme"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.tenant.tenant").value("acme"))
+            .andExpect(jsonPath("$.deduplicationEnabled").value(true))
+            .andExpect(jsonPath("$.loadShedding.sampling").value(false));
+
+        mockMvc.perform(get("/events/status").requestAttr(TenantFilter.TENANT_ATTRIBUTE, "unknown"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.tenant.message").value("No events received for this tenant yet"))
+            .andExpect(jsonPath("$.loadShedding").doesNotExist());
+    }
+
+    private EventParser parser() {
+        EventParser parser = new EventParser(new ObjectMapper().findAndRegisterModules(), properties);
+        parser.initSchema();
+        return parser;
+    }
+}
@@ -0,0 +1,96 @@
+package de.mika.hhn.eventlogaggregator.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.config.TenantFilter;
+import de.mika.hhn.eventlogaggregator.model.Metrics;
+import de.mika.hhn.eventlogaggregator.service.InMemoryMetricRepository;
+import de.mika.hhn.eventlogaggregator.service.TenantPartition;
+import de.mika.hhn.eventlogaggregator.service.TenantRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class MetricsControllerTest {
+
+    private static final Duration HOUR = Duration.ofHours(1);
+
+    private final ElaProperties properties = TestProperties.defaults();
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final TenantRegistry tenantRegistry = mock(TenantRegistry.class);
+    private InMemoryMetricRepository repository;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        repository = partition("acme");
+        mockMvc = MockMvcBuilders.standaloneSetup(new MetricsController(tenantRegistry, properties, Clock.systemUTC()))
+            .addFilters(new TenantFilter(properties))
+            .build();
+    }
+
+    @Test
+    void answersConditionalRequestsUntilTheMetricsChange() throws Exception {
+        repository.saveMetrics(HOUR, metrics(10));
+        String etag = mockMvc.perform(get("/metrics/hourly").requestAttr(TenantFilter.TENANT_ATTRIBUTE, "acme"))
+            .andExpect(status().isOk())
+            .andExpect(header().stringValues(HttpHeaders.VARY, "X-Tenant-Id"))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/metrics/hourly").requestAttr(TenantFilter.TENANT_ATTRIBUTE, "acme")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string(HttpHeaders.ETAG, etag))
+            .andExpect(header().stringValues(HttpHeaders.VARY, "X-Tenant-Id"));
+
+        repository.saveMetrics(HOUR, metrics(11));
+        mockMvc.perform(get("/metrics/hourly").requestAttr(TenantFilter.TENANT_ATTRIBUTE, "acme")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isOk());
+    }
+
+    @Test
+    void qualifiesEntityTagsByTenantAndRepository() throws Exception {
+        InMemoryMetricRepository other = partition("other");
+        repository.saveMetrics(HOUR, metrics(10));
+        other.saveMetrics(HOUR, metrics(10));
+        String etag = repository.getSerializedMetrics(HOUR).orElseThrow().etag();
+        assertNotEquals(etag, other.getSerializedMetrics(HOUR).orElseThrow().etag());
+
+        // Same tenant and version after a restart
+        InMemoryMetricRepository restarted = partition("acme");
+        restarted.saveMetrics(HOUR, metrics(10));
+        assertNotEquals(etag, restarted.getSerializedMetrics(HOUR).orElseThrow().etag());
+        mockMvc.perform(get("/metrics/hourly").requestAttr(TenantFilter.TENANT_ATTRIBUTE, "acme")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isOk());
+    }
+
+    private InMemoryMetricRepository partition(String tenant) {
+        InMemoryMetricRepository metricRepository = new InMemoryMetricRepository(objectMapper, properties, tenant);
+        TenantPartition partition = mock(TenantPartition.class);
+        when(partition.getMetricRepository()).thenReturn(metricRepository);
+        when(tenantRegistry.find(tenant)).thenReturn(Optional.of(partition));
+        return metricRepository;
+    }
+
+    private static Metrics metrics(long activeUsers) {
+        return new Metrics(HOUR, activeUsers, 5, List.of(), false, null, List.of(), Map.of("MESSAGE", 300L));
+    }
+}
@@ -0,0 +1,159 @@
+package de.mika.hhn.eventlogaggregator.controller;
+
+import de.mika.hhn.eventlogaggregator.model.ChannelCount;
+import de.mika.hhn.eventlogaggregator.model.ChannelOccupancy;
+import de.mika.hhn.eventlogaggregator.model.Metrics;
+import de.mika.hhn.eventlogaggregator.model.SessionStats;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MetricsFrameEncoderTest {
+
+    private static final Metrics METRICS = new Metrics(Duration.ofHours(1), 1_280, 534,
+        List.of(new ChannelCount("#lobby", 900, 120), new ChannelCount("#träume", 300, 2)),
+        true, new SessionStats(42, 17, 300, 1_800, 7_200),
+        List.of(new ChannelOccupancy("#lobby", 35)), Map.of("MESSAGE", 534L));
+
+    @Test
+    void encodesVarintsAsUnsignedLeb128() {
+        byte[] frame = MetricsFrameEncoder.encode(METRICS, 300, 0, MetricsFrameEncoder.ACTIVE_USERS);
+
+        // type, window 3600 s, version 300, base 0, mask, activeUsers 1280
+        assertArrayEquals(new byte[] {0x01, (byte) 0x90, 0x1C, (byte) 0xAC, 0x02, 0x00, 0x01, (byte) 0x80, 0x0A}, frame);
+    }
+
+    @Test
+    void roundTripsLargeAndNegativeValues() {
+        Metrics metrics = new Metrics(Duration.ofDays(30), Long.MAX_VALUE, -5, List.of(), false, null, List.of(), Map.of());
+        Frame frame = Frame.decode(MetricsFrameEncoder.encode(metrics, 1L << 40, (1L << 40) - 1,
+            MetricsFrameEncoder.ACTIVE_USERS | MetricsFrameEncoder.EVENTS_PER_MINUTE));
+
+        assertEquals(Duration.ofDays(30).toSeconds(), frame.windowSeconds);
+        assertEquals(1L << 40, frame.version);
+        assertEquals((1L << 40) - 1, frame.baseVersion);
+        assertEquals(Long.MAX_VALUE, frame.activeUsers);
+        // Counts are never negative on the wire
+        assertEquals(0, frame.eventsPerMinute);
+    }
+
+    @Test
+    void roundTripsAFullFrame() {
+        Frame frame = Frame.decode(MetricsFrameEncoder.encode(METRICS, 7, 0, MetricsFrameEncoder.ALL_FIELDS));
+
+        assertEquals(0x01, frame.type);
+        assertEquals(3_600, frame.windowSeconds);
+        assertEquals(7, frame.version);
+        assertEquals(MetricsFrameEncoder.ALL_FIELDS, frame.mask);
+        assertEquals(1_280L, frame.activeUsers);
+        assertEquals(534L, frame.eventsPerMinute);
+        assertEquals(METRICS.topChannels(), frame.topChannels);
+        assertEquals(Boolean.TRUE, frame.estimated);
+        assertEquals(METRICS.sessions(), frame.sessions);
+        assertEquals(METRICS.channelOccupancy(), frame.channelOccupancy);
+    }
+
+    @Test
+    void deltaFramesCarryOnlyTheMaskedFields() {
+        Metrics changed = new Metrics(METRICS.window(), METRICS.activeUsers(), 600, METRICS.topChannels(), METRICS.estimated(),
+            new SessionStats(43, 17, 300, 1_800, 7_200), METRICS.channelOccupancy(), METRICS.eventsByType());
+        int mask = MetricsFrameEncoder.changedFields(METRICS, changed);
+        assertEquals(MetricsFrameEncoder.EVENTS_PER_MINUTE | MetricsFrameEncoder.SESSIONS, mask);
+
+        Frame frame = Frame.decode(MetricsFrameEncoder.encode(changed, 8, 7, mask));
+        assertEquals(0x02, frame.type);
+        assertEquals(7, frame.baseVersion);
+        assertNull(frame.activeUsers);
+        assertEquals(600L, frame.eventsPerMinute);
+        assertNull(frame.topChannels);
+        assertNull(frame.estimated);
+        assertEquals(changed.sessions(), frame.sessions);
+        assertNull(frame.channelOccupancy);
+    }
+
+    @Test
+    void everyFieldDiffersFromNoBase() {
+        assertEquals(MetricsFrameEncoder.ALL_FIELDS, MetricsFrameEncoder.changedFields(null, METRICS));
+        assertEquals(0, MetricsFrameEncoder.changedFields(METRICS, METRICS));
+    }
+
+    /**
+     * Decoder as a client would implement it, following the grammar in {@link MetricsFrameEncoder}
+     */
+    static final class Frame {
+        int type;
+        long windowSeconds;
+        long version;
+        long baseVersion;
+        int mask;
+        Long activeUsers;
+        Long eventsPerMinute;
+        List<ChannelCount> topChannels;
+        Boolean estimated;
+        SessionStats sessions;
+        List<ChannelOccupancy> channelOccupancy;
+
+        static Frame decode(byte[] bytes) {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            Frame frame = new Frame();
+            frame.type = in.get() & 0xFF;
+            frame.windowSeconds = varint(in);
+            frame.version = varint(in);
+            frame.baseVersion = varint(in);
+            frame.mask = in.get() & 0xFF;
+            if ((frame.mask & MetricsFrameEncoder.ACTIVE_USERS) != 0) {
+                frame.activeUsers = varint(in);
+            }
+            if ((frame.mask & MetricsFrameEncoder.EVENTS_PER_MINUTE) != 0) {
+                frame.eventsPerMinute = varint(in);
+            }
+            if ((frame.mask & MetricsFrameEncoder.TOP_CHANNELS) != 0) {
+                frame.topChannels = new ArrayList<>();
+                for (long i = varint(in); i > 0; i--) {
+                    frame.topChannels.add(new ChannelCount(string(in), varint(in), varint(in)));
+                }
+            }
+            if ((frame.mask & MetricsFrameEncoder.ESTIMATED) != 0) {
+                frame.estimated = in.get() != 0;
+            }
+            if ((frame.mask & MetricsFrameEncoder.SESSIONS) != 0) {
+                frame.sessions = new SessionStats(varint(in), varint(in), varint(in), varint(in), varint(in));
+            }
+            if ((frame.mask & MetricsFrameEncoder.CHANNEL_OCCUPANCY) != 0) {
+                frame.channelOccupancy = new ArrayList<>();
+                for (long i = varint(in); i > 0; i--) {
+                    frame.channelOccupancy.add(new ChannelOccupancy(string(in), varint(in)));
+                }
+            }
+            assertFalse(in.hasRemaining(), "trailing bytes after the masked fields");
+            return frame;
+        }
+
+        private static long varint(ByteBuffer in) {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        private static String string(ByteBuffer in) {
+            byte[] name = new byte[(int) varint(in)];
+            in.get(name);
+            return new String(name, StandardCharsets.UTF_8);
+        }
+    }
+}
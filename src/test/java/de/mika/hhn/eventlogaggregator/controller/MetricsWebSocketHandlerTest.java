@@ -0,0 +1,226 @@
+package de.mika.hhn.eventlogaggregator.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.model.Metrics;
+import de.mika.hhn.eventlogaggregator.service.InMemoryMetricRepository;
+import de.mika.hhn.eventlogaggregator.service.TenantPartition;
+import de.mika.hhn.eventlogaggregator.service.TenantRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MetricsWebSocketHandlerTest {
+
+    private static final Duration HOUR = Duration.ofHours(1);
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final InMemoryMetricRepository repository = new InMemoryMetricRepository(objectMapper, TestProperties.defaults());
+    private final AtomicLong now = new AtomicLong();
+    private final List<WebSocketMessage<?>> sent = new ArrayList<>();
+    private MetricsWebSocketHandler handler;
+    private WebSocketSession session;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TenantRegistry tenantRegistry = mock(TenantRegistry.class);
+        TenantPartition partition = mock(TenantPartition.class);
+        when(partition.getMetricRepository()).thenReturn(repository);
+        when(tenantRegistry.find(null)).thenReturn(Optional.of(partition));
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).thenAnswer(invocation -> now.get());
+
+        session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("client");
+        when(session.isOpen()).thenReturn(true);
+        when(session.getAttributes()).thenReturn(new HashMap<>());
+        doAnswer(invocation -> sent.add(invocation.getArgument(0))).when(session).sendMessage(any());
+
+        handler = new MetricsWebSocketHandler(tenantRegistry, TestProperties.defaults(), objectMapper, clock, Runnable::run);
+        handler.afterConnectionEstablished(session);
+    }
+
+    @Test
+    void subscribesToWindowsByName() throws Exception {
+        repository.saveMetrics(HOUR, metrics(1));
+        control("{\"op\":\"subscribe\",\"windows\":[\"hourly\"],\"fields\":[\"activeUsers\"]}");
+        push();
+
+        MetricsFrameEncoderTest.Frame frame = lastFrame();
+        assertEquals(3_600, frame.windowSeconds);
+        assertEquals(MetricsFrameEncoder.ACTIVE_USERS, frame.mask);
+        assertEquals(1L, frame.activeUsers);
+
+        // The ISO duration names the same window
+        control("{\"op\":\"unsubscribe\",\"windows\":[\"PT1H\"]}");
+        repository.saveMetrics(HOUR, metrics(2));
+        push();
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    void rejectsWindowsThatAreNotConfigured() throws Exception {
+        control("{\"op\":\"subscribe\",\"windows\":[\"PT2H\"]}");
+        control("{\"op\":\"subscribe\",\"windows\":[\"fortnight\"]}");
+
+        assertEquals(2, sent.size());
+        assertTrue(((TextMessage) sent.get(0)).getPayload().contains("Unknown window: PT2H"));
+        assertTrue(((TextMessage) sent.get(1)).getPayload().contains("Unknown window: fortnight"));
+    }
+
+    @Test
+    void sendsDeltasAgainstTheAcknowledgedVersionOnly() throws Exception {
+        control("{\"op\":\"subscribe\",\"windows\":[\"hourly\"]}");
+        List<Long> versions = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            repository.saveMetrics(HOUR, metrics(i));
+            push();
+            MetricsFrameEncoderTest.Frame frame = lastFrame();
+            // Full frames until the first ack
+            assertEquals(0x01, frame.type);
+            versions.add(frame.version);
+        }
+
+        // Only the latest 32 unacknowledged versions are kept, older acks are ignored
+        control("{\"op\":\"ack\",\"window\":\"hourly\",\"version\":" + versions.get(7) + "}");
+        repository.saveMetrics(HOUR, metrics(41));
+        push();
+        assertEquals(0x01, lastFrame().type);
+
+        // The 41st frame pushed the 9th out as well
+        control("{\"op\":\"ack\",\"window\":\"hourly\",\"version\":" + versions.get(9) + "}");
+        repository.saveMetrics(HOUR, metrics(42));
+        push();
+        MetricsFrameEncoderTest.Frame delta = lastFrame();
+        assertEquals(0x02, delta.type);
+        assertEquals(versions.get(9), delta.baseVersion);
+        assertEquals(MetricsFrameEncoder.ACTIVE_USERS, delta.mask);
+        assertEquals(42L, delta.activeUsers);
+    }
+
+    @Test
+    void coalescesUpdatesForAClientThatDoesNotRead() throws Exception {
+        TenantRegistry tenantRegistry = mock(TenantRegistry.class);
+        TenantPartition partition = mock(TenantPartition.class);
+        when(partition.getMetricRepository()).thenReturn(repository);
+        when(tenantRegistry.find(null)).thenReturn(Optional.of(partition));
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).thenAnswer(invocation -> now.get());
+        ExecutorService sender = Executors.newCachedThreadPool();
+        handler = new MetricsWebSocketHandler(tenantRegistry, TestProperties.defaults(), objectMapper, clock, sender);
+
+        // The slow client's first send blocks until it starts reading
+        CountDownLatch reading = new CountDownLatch(1);
+        List<WebSocketMessage<?>> slowSent = new CopyOnWriteArrayList<>();
+        WebSocketSession slow = session("slow", message -> {
+            reading.await();
+            slowSent.add(message);
+        });
+        List<WebSocketMessage<?>> fastSent = new CopyOnWriteArrayList<>();
+        WebSocketSession fast = session("fast", fastSent::add);
+        handler.afterConnectionEstablished(slow);
+        handler.afterConnectionEstablished(fast);
+        try {
+            String subscribe = "{\"op\":\"subscribe\",\"windows\":[\"hourly\"],\"intervalMs\":100}";
+            handler.handleTextMessage(slow, new TextMessage(subscribe));
+            handler.handleTextMessage(fast, new TextMessage(subscribe));
+
+            for (int i = 1; i <= 5; i++) {
+                repository.saveMetrics(HOUR, metrics(i));
+                assertTimeoutPreemptively(Duration.ofSeconds(1), this::push);
+                awaitSize(fastSent, i);
+            }
+            // One send in flight for the slow client, nothing queued behind it
+            verify(slow, times(1)).sendMessage(any());
+
+            // Once it completes, the next round sends the latest version only
+            reading.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (slowSent.size() < 2 && System.nanoTime() < deadline) {
+                push();
+                Thread.sleep(5);
+            }
+            assertEquals(2, slowSent.size());
+            assertEquals(5L, frame(slowSent.get(1)).activeUsers);
+            verify(slow, times(2)).sendMessage(any());
+        } finally {
+            reading.countDown();
+            sender.shutdownNow();
+        }
+    }
+
+    private WebSocketSession session(String id, MessageSink sink) throws Exception {
+        WebSocketSession client = mock(WebSocketSession.class);
+        when(client.getId()).thenReturn(id);
+        when(client.isOpen()).thenReturn(true);
+        when(client.getAttributes()).thenReturn(new HashMap<>());
+        doAnswer(invocation -> {
+            sink.accept(invocation.getArgument(0));
+            return null;
+        }).when(client).sendMessage(any());
+        return client;
+    }
+
+    private static void awaitSize(List<?> messages, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (messages.size() < size && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(size, messages.size());
+    }
+
+    private interface MessageSink {
+        void accept(WebSocketMessage<?> message) throws Exception;
+    }
+
+    private void control(String payload) throws Exception {
+        handler.handleTextMessage(session, new TextMessage(payload));
+    }
+
+    private void push() {
+        now.addAndGet(1_000);
+        handler.pushUpdates();
+    }
+
+    private MetricsFrameEncoderTest.Frame lastFrame() {
+        return frame(sent.get(sent.size() - 1));
+    }
+
+    private static MetricsFrameEncoderTest.Frame frame(WebSocketMessage<?> sent) {
+        BinaryMessage message = (BinaryMessage) sent;
+        byte[] bytes = new byte[message.getPayloadLength()];
+        message.getPayload().duplicate().get(bytes);
+        return MetricsFrameEncoderTest.Frame.decode(bytes);
+    }
+
+    private static Metrics metrics(long activeUsers) {
+        return new Metrics(HOUR, activeUsers, 5, List.of(), false, null, List.of(), Map.of("MESSAGE", 300L));
+    }
+}
@@ -0,0 +1,120 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControllerTest {
+
+    // Retained state of 800 bytes is halfway between the watermarks
+    private static final long HALF_PRESSURE = 800;
+
+    @Test
+    void fullFidelityWithoutPressure() {
+        AdmissionController admission = admission(true);
+        arrive(admission, "MESSAGE", 10_000);
+        admission.adjust(100);
+
+        assertFalse(admission.isSampling());
+        assertEquals(1.0, admission.admit("MESSAGE"));
+        assertEquals(0, admission.getShedCount());
+    }
+
+    @Test
+    void disabledAdmissionKeepsEverything() {
+        AdmissionController admission = admission(false);
+        arrive(admission, "MESSAGE", 10_000);
+        admission.adjust(1_000);
+
+        assertFalse(admission.isSampling());
+        assertTrue(admission.getSamplingRates().isEmpty());
+    }
+
+    @Test
+    void splitsTheBudgetByMaxMinFairness() {
+        AdmissionController admission = admission(true);
+        arrive(admission, "LOGIN", 100);
+        arrive(admission, "JOIN", 3_000);
+        arrive(admission, "MESSAGE", 6_900);
+        admission.adjust(HALF_PRESSURE);
+
+        // Budget 10000 * (1 - 0.5 * (1 - 0.01)) = 5050: LOGIN keeps all 100,
+        // JOIN and MESSAGE get half of the remaining 4950 each
+        assertEquals(0.5, admission.getPressure(), 1e-9);
+        Map<String, Double> rates = admission.getSamplingRates();
+        assertEquals(1.0, rates.get("LOGIN"));
+        assertEquals(2_475.0 / 3_000, rates.get("JOIN"), 1e-9);
+        assertEquals(2_475.0 / 6_900, rates.get("MESSAGE"), 1e-9);
+    }
+
+    @Test
+    void keepsAtLeastTheMinimumSampleRate() {
+        AdmissionController admission = admission(true);
+        arrive(admission, "MESSAGE", 10_000);
+        admission.adjust(1_000);
+
+        assertEquals(1.0, admission.getPressure());
+        assertEquals(0.01, admission.getSamplingRates().get("MESSAGE"), 1e-9);
+    }
+
+    @Test
+    void weightsAdmittedEventsWithTheInverseProbability() {
+        AdmissionController admission = admission(true);
+        arrive(admission, "LOGIN", 100);
+        arrive(admission, "MESSAGE", 6_900);
+        admission.adjust(HALF_PRESSURE);
+        double probability = admission.getSamplingRates().get("MESSAGE");
+        assertTrue(probability < 1.0);
+
+        int events = 100_000;
+        double weightSum = 0;
+        for (int i = 0; i < events; i++) {
+            double weight = admission.admit("MESSAGE");
+            if (weight > 0) {
+                assertEquals(1.0 / probability, weight, 1e-9);
+            }
+            weightSum += weight;
+        }
+        // Scaled back up, the sample estimates the arrivals
+        assertEquals(events, weightSum, events * 0.03);
+        assertEquals(events * (1 - probability), admission.getShedCount(), events * 0.03);
+        assertEquals(1.0, admission.admit("LOGIN"));
+    }
+
+    @Test
+    void returnsToFullFidelityOncePressureIsGone() {
+        AdmissionController admission = admission(true);
+        arrive(admission, "MESSAGE", 10_000);
+        admission.adjust(HALF_PRESSURE);
+        assertTrue(admission.isSampling());
+
+        arrive(admission, "MESSAGE", 10_000);
+        admission.adjust(100);
+        assertFalse(admission.isSampling());
+        assertEquals(1.0, admission.getSamplingRates().get("MESSAGE"));
+    }
+
+    private static AdmissionController admission(boolean enabled) {
+        return new AdmissionController(TestProperties.with(Map.of(
+            "ela.admission.enabled", enabled,
+            "ela.admission.low-watermark", 0.7,
+            "ela.admission.high-watermark", 0.9,
+            "ela.admission.max-retained-memory", "1000B",
+            "ela.admission.min-sample-rate", 0.01
+        )));
+    }
+
+    /**
+     * Count arrivals at full fidelity, as before the first adjustment
+     */
+    private static void arrive(AdmissionController admission, String type, int events) {
+        for (int i = 0; i < events; i++) {
+            admission.admit(type);
+        }
+    }
+}
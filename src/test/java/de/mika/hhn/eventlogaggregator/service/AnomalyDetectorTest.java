@@ -0,0 +1,191 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.model.Anomaly;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class AnomalyDetectorTest {
+
+    // Defaults: threshold 4 standard deviations, alpha 0.1, 30 minutes warm-up, min rate 5/min
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final AnomalyDetector detector = new AnomalyDetector(TestProperties.defaults(), eventPublisher);
+    private int minute = 0;
+
+    @Test
+    void raisesASpikeBeyondTheThreshold() {
+        steady(100, 40);
+        observe(200);
+
+        List<Anomaly> anomalies = detector.getRecentAnomalies();
+        assertEquals(1, anomalies.size());
+        Anomaly spike = anomalies.get(0);
+        assertEquals("type", spike.dimension());
+        assertEquals("MESSAGE", spike.name());
+        assertEquals("SPIKE", spike.kind());
+        assertEquals(Instant.ofEpochSecond(40 * 60), spike.minute());
+        assertEquals(200, spike.observedRate());
+        assertEquals(100, spike.expectedRate(), 1e-9);
+        // A steady rate has no variance, so the Poisson floor sqrt(100) applies
+        assertEquals(10, spike.score(), 1e-9);
+        verify(eventPublisher).publishEvent(spike);
+    }
+
+    @Test
+    void staysQuietJustBelowTheThreshold() {
+        steady(100, 40);
+        observe(139);
+        assertTrue(detector.getRecentAnomalies().isEmpty());
+
+        AnomalyDetector other = new AnomalyDetector(TestProperties.defaults(), eventPublisher);
+        minute = 0;
+        for (int i = 0; i < 40; i++) {
+            observe(other, 100);
+        }
+        observe(other, 141);
+        assertEquals(1, other.getRecentAnomalies().size());
+    }
+
+    @Test
+    void raisesADropBelowTheBaseline() {
+        steady(100, 40);
+        observe(50);
+
+        Anomaly drop = detector.getRecentAnomalies().get(0);
+        assertEquals("DROP", drop.kind());
+        assertEquals(-5, drop.score(), 1e-9);
+    }
+
+    @Test
+    void waitsForTheWarmUp() {
+        steady(100, 20);
+        observe(1_000);
+
+        assertTrue(detector.getRecentAnomalies().isEmpty());
+    }
+
+    @Test
+    void widensTheBandForNoisyRates() {
+        for (int i = 0; i < 60; i++) {
+            observe(i % 2 == 0 ? 50 : 150);
+        }
+        observe(200);
+
+        assertTrue(detector.getRecentAnomalies().isEmpty());
+    }
+
+    @Test
+    void raisesOncePerEpisode() {
+        steady(100, 40);
+        observe(200);
+        observe(210);
+        assertEquals(1, detector.getRecentAnomalies().size());
+
+        // Back to normal, then the next episode is raised again
+        observe(100);
+        observe(100);
+        observe(400);
+        assertEquals(2, detector.getRecentAnomalies().size());
+        assertEquals(400, detector.getRecentAnomalies().get(0).observedRate());
+    }
+
+    @Test
+    void ignoresRatesBelowTheMinimum() {
+        steady(1, 40);
+        observe(4);
+
+        assertTrue(detector.getRecentAnomalies().isEmpty());
+    }
+
+    @Test
+    void replacesTheQuietestChannelWithABusierOne() {
+        AnomalyDetector limited = limitedTo(2);
+        minute = 0;
+        for (int i = 0; i < 5; i++) {
+            observeChannels(limited, Map.of("#quiet", 10, "#steady", 50));
+        }
+        observeChannels(limited, Map.of("#quiet", 10, "#steady", 50, "#busy", 100));
+
+        assertTrue(limited.isTracked("#busy"));
+        assertTrue(limited.isTracked("#steady"));
+        assertFalse(limited.isTracked("#quiet"));
+
+        // A channel quieter than every tracked one does not get in
+        observeChannels(limited, Map.of("#steady", 50, "#busy", 100, "#rare", 5));
+        assertFalse(limited.isTracked("#rare"));
+    }
+
+    @Test
+    void keepsAChannelWhileItsDropIsOpen() {
+        AnomalyDetector limited = limitedTo(1);
+        minute = 0;
+        for (int i = 0; i < 40; i++) {
+            observeChannels(limited, Map.of("#main", 100));
+        }
+        observeChannels(limited, Map.of("#busy", 200));
+
+        assertEquals("DROP", limited.getRecentAnomalies().get(0).kind());
+        assertTrue(limited.isTracked("#main"));
+        assertFalse(limited.isTracked("#busy"));
+
+        // The widened band closes the episode the next minute, then the busier channel takes the slot
+        observeChannels(limited, Map.of("#busy", 200));
+        assertTrue(limited.isTracked("#busy"));
+        assertFalse(limited.isTracked("#main"));
+    }
+
+    private AnomalyDetector limitedTo(int channels) {
+        return new AnomalyDetector(TestProperties.with(Map.of("ela.anomalies.max-tracked-channels", channels)),
+            eventPublisher);
+    }
+
+    /**
+     * Count the given events per channel in the next minute and close it
+     */
+    private void observeChannels(AnomalyDetector target, Map<String, Integer> rates) {
+        if (minute == 0) {
+            target.tick(0);
+        }
+        rates.forEach((channel, rate) -> {
+            for (int i = 0; i < rate; i++) {
+                target.record(null, channel);
+            }
+        });
+        minute++;
+        target.tick(minute * 60_000L);
+    }
+
+    private void steady(int rate, int minutes) {
+        for (int i = 0; i < minutes; i++) {
+            observe(rate);
+        }
+    }
+
+    private void observe(int rate) {
+        observe(detector, rate);
+    }
+
+    /**
+     * Count {@code rate} events in the next minute and close it
+     */
+    private void observe(AnomalyDetector target, int rate) {
+        if (minute == 0) {
+            target.tick(0);
+        }
+        for (int i = 0; i < rate; i++) {
+            target.record("MESSAGE", null);
+        }
+        minute++;
+        target.tick(minute * 60_000L);
+    }
+}
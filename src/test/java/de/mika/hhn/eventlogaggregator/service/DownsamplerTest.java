@@ -0,0 +1,72 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DownsamplerTest {
+
+    @Test
+    void keepsShortSeriesUnchanged() {
+        long[] x = {0, 10, 20};
+        double[] y = {1, 2, 3};
+
+        assertArrayEquals(new int[] {0, 1, 2}, Downsampler.LTTB.select(x, y, 10));
+        assertArrayEquals(new int[] {0, 1, 2}, Downsampler.MINMAX.select(x, y, 10));
+    }
+
+    @Test
+    void lttbKeepsEndpointsAndSpikes() {
+        int n = 10_000;
+        long[] x = new long[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = i * 10_000L;
+            y[i] = 100 + Math.sin(i / 500.0) * 10;
+        }
+        y[4_321] = 5_000;
+
+        int[] selected = Downsampler.LTTB.select(x, y, 200);
+
+        assertEquals(200, selected.length);
+        assertEquals(0, selected[0]);
+        assertEquals(n - 1, selected[selected.length - 1]);
+        assertTrue(contains(selected, 4_321), "spike must survive downsampling");
+        for (int i = 1; i < selected.length; i++) {
+            assertTrue(selected[i] > selected[i - 1], "indices must be ascending");
+        }
+    }
+
+    @Test
+    void minMaxKeepsExtremesOfEveryBucket() {
+        int n = 1_000;
+        long[] x = new long[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = i;
+            y[i] = i % 7;
+        }
+        y[500] = -3;
+        y[501] = 42;
+
+        int[] selected = Downsampler.MINMAX.select(x, y, 100);
+
+        assertTrue(selected.length <= 100);
+        assertTrue(contains(selected, 500));
+        assertTrue(contains(selected, 501));
+        for (int i = 1; i < selected.length; i++) {
+            assertTrue(selected[i] > selected[i - 1], "indices must be ascending");
+        }
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int candidate : values) {
+            if (candidate == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,99 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.model.Event;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DuplicateFilterTest {
+
+    private static final Instant TIMESTAMP = Instant.parse("2024-01-15T10:30:00Z");
+
+    @Test
+    void suppressesRepeatedFingerprint() {
+        DuplicateFilter filter = new DuplicateFilter(properties(true), Clock.systemUTC());
+
+        Event event = new Event("MESSAGE", TIMESTAMP, "user123", Map.of("channel", "#lobby"), null);
+        Event retry = new Event("MESSAGE", TIMESTAMP, "user123", Map.of("channel", "#lobby"), null);
+
+        assertFalse(filter.isDuplicate(event));
+        assertTrue(filter.isDuplicate(retry));
+        assertEquals(1, filter.getDuplicateCount());
+    }
+
+    @Test
+    void distinguishesEventsByContentAndClientId() {
+        DuplicateFilter filter = new DuplicateFilter(properties(true), Clock.systemUTC());
+
+        assertFalse(filter.isDuplicate(new Event("MESSAGE", TIMESTAMP, "user123", Map.of("channel", "#lobby"), null)));
+        assertFalse(filter.isDuplicate(new Event("MESSAGE", TIMESTAMP, "user123", Map.of("channel", "#general"), null)));
+        assertFalse(filter.isDuplicate(new Event("MESSAGE", TIMESTAMP.plusMillis(1), "user123", Map.of("channel", "#lobby"), null)));
+
+        // Same content, but the client says these are different events
+        assertFalse(filter.isDuplicate(new Event("LOGIN", TIMESTAMP, "user456", Map.of(), "id-1")));
+        assertFalse(filter.isDuplicate(new Event("LOGIN", TIMESTAMP, "user456", Map.of(), "id-2")));
+        assertTrue(filter.isDuplicate(new Event("LOGIN", TIMESTAMP, "user456", Map.of(), "id-1")));
+    }
+
+    @Test
+    void keepsFalsePositivesNearConfiguredRate() {
+        DuplicateFilter filter = new DuplicateFilter(properties(true), Clock.systemUTC());
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.isDuplicate(new Event("MESSAGE", TIMESTAMP, "user" + i, Map.of(), null))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 50, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void rotatesAFullBucketBeforeItSaturates() {
+        DuplicateFilter filter = new DuplicateFilter(TestProperties.with(Map.of(
+            "ela.deduplication.enabled", true,
+            "ela.deduplication.expected-events-per-bucket", 1_000,
+            "ela.deduplication.buckets", 4
+        )), Clock.systemUTC());
+
+        // Ten times the capacity of all buckets within one time bucket
+        int falsePositives = 0;
+        for (int i = 0; i < 40_000; i++) {
+            if (filter.isDuplicate(new Event("MESSAGE", TIMESTAMP, "user" + i, Map.of(), null))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 50, "false positives: " + falsePositives);
+        assertEquals(39, filter.getEarlyRotationCount());
+
+        // The most recent keys are still known, the oldest were given up
+        assertTrue(filter.isDuplicate(new Event("MESSAGE", TIMESTAMP, "user39999", Map.of(), null)));
+        assertFalse(filter.isDuplicate(new Event("MESSAGE", TIMESTAMP, "user0", Map.of(), null)));
+    }
+
+    @Test
+    void passesEverythingWhenDisabled() {
+        DuplicateFilter filter = new DuplicateFilter(properties(false), Clock.systemUTC());
+        Event event = new Event("MESSAGE", TIMESTAMP, "user123", Map.of(), null);
+
+        assertFalse(filter.isDuplicate(event));
+        assertFalse(filter.isDuplicate(event));
+        assertEquals(0, filter.getDuplicateCount());
+    }
+
+    private static ElaProperties properties(boolean enabled) {
+        return TestProperties.with(Map.of(
+            "ela.deduplication.enabled", enabled,
+            "ela.deduplication.expected-events-per-bucket", 10_000,
+            "ela.deduplication.buckets", 4
+        ));
+    }
+}
@@ -0,0 +1,154 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventParserTest {
+
+    @TempDir
+    Path logs;
+
+    private EventParser sequential;
+    private EventParser parallel;
+
+    @BeforeEach
+    void setUp() {
+        sequential = parser(Integer.MAX_VALUE);
+        parallel = parser(100);
+    }
+
+    @Test
+    void switchesToParallelValidationAtTheThreshold() {
+        assertFalse(parallel.validatesInParallel(99));
+        assertTrue(parallel.validatesInParallel(100));
+        assertFalse(sequential.validatesInParallel(100_000));
+    }
+
+    @Test
+    void parallelValidationReportsTheSameOutcomePerIndex() throws IOException {
+        for (int size : new int[] {99, 100, 2_500}) {
+            String batch = ndjson(size);
+
+            ValidatedBatch expected = sequential.validateBatch(stream(batch), true);
+            ValidatedBatch actual = parallel.validateBatch(stream(batch), true);
+
+            assertEquals(size, actual.size());
+            assertEquals(expected.events(), actual.events());
+            assertEquals(expected.errors(), actual.errors());
+            for (int i = 0; i < size; i++) {
+                // Either the event or the reason, at the element's own index
+                assertTrue(actual.events().get(i) == null ^ actual.errors().get(i) == null, "index " + i);
+                if (i % 7 == 3) {
+                    assertEquals("/: object instance has properties which are not allowed by the schema: [\"index\"]",
+                        actual.errors().get(i));
+                } else if (i % 11 == 5) {
+                    assertTrue(actual.errors().get(i).startsWith("Malformed JSON"), actual.errors().get(i));
+                } else {
+                    assertEquals("user-" + i, actual.events().get(i).userId());
+                }
+            }
+        }
+    }
+
+    @Test
+    void parallelValidationOfAJsonArrayMatchesSequential() throws IOException {
+        StringBuilder array = new StringBuilder("[");
+        for (int i = 0; i < 500; i++) {
+            array.append(i > 0 ? "," : "").append(i % 7 == 3 ? invalidEvent(i) : event(i));
+        }
+        String batch = array.append(']').toString();
+
+        ValidatedBatch expected = sequential.validateBatch(stream(batch), false);
+        ValidatedBatch actual = parallel.validateBatch(stream(batch), false);
+
+        assertEquals(expected, actual);
+        assertEquals(500 - 71, actual.validCount());
+        assertFalse(actual.allValid());
+    }
+
+    @Test
+    void appendsTheRejectedElementsOfABatchInIndexOrder() throws IOException {
+        ValidatedBatch batch = parallel.validateBatch(stream(ndjson(1_000)), true);
+
+        List<String> entries = Files.readAllLines(logs.resolve("invalid.log"));
+        assertEquals(batch.size() - batch.validCount(), entries.size());
+        Pattern index = Pattern.compile("user-(\\d+)");
+        int previous = -1;
+        for (String entry : entries) {
+            assertTrue(entry.contains("INVALID EVENT"), entry);
+            Matcher matcher = index.matcher(entry);
+            assertTrue(matcher.find(), entry);
+            int current = Integer.parseInt(matcher.group(1));
+            assertTrue(current > previous, entry);
+            previous = current;
+        }
+    }
+
+    @Test
+    void rejectsTheWholeArrayIfItIsMalformed() {
+        String batch = "[" + event(0) + ", {\"type\": ]";
+
+        assertThrows(IOException.class, () -> parallel.validateBatch(stream(batch), false));
+    }
+
+    /**
+     * NDJSON batch where every 7th element (from index 3) has a property outside the schema
+     * and every 11th (from index 5) is malformed JSON
+     */
+    private static String ndjson(int size) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i % 7 == 3) {
+                lines.append(invalidEvent(i));
+            } else if (i % 11 == 5) {
+                lines.append("{\"type\": \"MESSAGE\", \"userId\": \"user-").append(i).append('"');
+            } else {
+                lines.append(event(i));
+            }
+            lines.append('\n');
+        }
+        return lines.toString();
+    }
+
+    private static String event(int i) {
+        return "{\"type\": \"MESSAGE\", \"timestamp\": \"2024-01-15T10:30:00.000Z\", \"userId\": \"user-" + i
+            + "\", \"payload\": {\"channel\": \"#channel-" + (i % 10) + "\", \"message\": \"hi\"}}";
+    }
+
+    private static String invalidEvent(int i) {
+        return "{\"type\": \"MESSAGE\", \"timestamp\": \"2024-01-15T10:30:00.000Z\", \"userId\": \"user-" + i
+            + "\", \"payload\": {}, \"index\": " + i + "}";
+    }
+
+    private static ByteArrayInputStream stream(String batch) {
+        return new ByteArrayInputStream(batch.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private EventParser parser(int parallelThreshold) {
+        EventParser parser = new EventParser(new ObjectMapper().findAndRegisterModules(), TestProperties.with(Map.of(
+            "ela.batch-validation.parallel-threshold", parallelThreshold,
+            "ela.batch-validation.parallelism", 4,
+            "ela.directories.logs", logs.toString()
+        )));
+        parser.initSchema();
+        return parser;
+    }
+}
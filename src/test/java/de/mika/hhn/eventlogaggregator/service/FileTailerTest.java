@@ -0,0 +1,151 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FileTailerTest {
+
+    @TempDir
+    Path inbox;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final List<String> ingested = new ArrayList<>();
+    private ElaProperties properties;
+    private EventParser eventParser;
+    private IngestScheduler ingestScheduler;
+    private TenantRegistry tenantRegistry;
+    private Path file;
+
+    @BeforeEach
+    void setUp() {
+        properties = TestProperties.with(Map.of(
+            "ela.directories.inbox", inbox.toString(),
+            "ela.tail.patterns[0]", "*.events.ndjson",
+            "ela.tail.checkpoint-file", inbox.resolve("checkpoints/tail.json").toString()
+        ));
+        eventParser = new EventParser(objectMapper, properties);
+        eventParser.initSchema();
+        ingestScheduler = mock(IngestScheduler.class);
+        when(ingestScheduler.ingestAll(any(), any(), anyList())).thenAnswer(invocation -> {
+            List<FlatEvent> events = invocation.getArgument(2);
+            events.forEach(event -> ingested.add(event.userId()));
+            return events.size();
+        });
+        tenantRegistry = mock(TenantRegistry.class);
+        when(tenantRegistry.resolveInboxFile(any())).thenReturn(mock(TenantPartition.class));
+        file = inbox.resolve("app.events.ndjson");
+    }
+
+    @Test
+    void keepsAnIncompleteLastLineForTheNextRound() throws IOException {
+        FileTailer tailer = tailer();
+        String third = line("carol");
+        append(line("alice") + line("bob") + third.substring(0, 20));
+
+        tailer.tail(file);
+        assertEquals(List.of("alice", "bob"), ingested);
+
+        append(third.substring(20));
+        tailer.tail(file);
+        assertEquals(List.of("alice", "bob", "carol"), ingested);
+
+        // Nothing new, nothing read
+        tailer.tail(file);
+        assertEquals(3, ingested.size());
+    }
+
+    @Test
+    void readsARotatedFileFromTheStart() throws IOException {
+        FileTailer tailer = tailer();
+        append(line("alice") + line("bob") + line("carol"));
+        tailer.tail(file);
+
+        Files.move(file, inbox.resolve("app.events.ndjson.1"));
+        append(line("dave"));
+        tailer.tail(file);
+
+        assertEquals(List.of("alice", "bob", "carol", "dave"), ingested);
+    }
+
+    @Test
+    void readsATruncatedFileFromTheStart() throws IOException {
+        FileTailer tailer = tailer();
+        append(line("alice") + line("bob") + line("carol"));
+        tailer.tail(file);
+
+        truncate();
+        append(line("dave"));
+        tailer.tail(file);
+
+        assertEquals(List.of("alice", "bob", "carol", "dave"), ingested);
+    }
+
+    @Test
+    void detectsCopyTruncateOnceTheFileGrewPastTheOffset() throws IOException {
+        FileTailer tailer = tailer();
+        append(line("alice") + line("bob"));
+        tailer.tail(file);
+
+        // Copied away and truncated in place, then more was written than before
+        truncate();
+        append(line("carol") + line("dave") + line("erin"));
+        tailer.tail(file);
+
+        assertEquals(List.of("alice", "bob", "carol", "dave", "erin"), ingested);
+    }
+
+    @Test
+    void resumesFromTheCheckpointAfterARestart() throws IOException {
+        append(line("alice") + line("bob"));
+        tailer().tail(file);
+
+        append(line("carol"));
+        FileTailer restarted = tailer();
+        restarted.tail(file);
+
+        assertEquals(List.of("alice", "bob", "carol"), ingested);
+    }
+
+    private FileTailer tailer() {
+        FileTailer tailer = new FileTailer(properties, eventParser, ingestScheduler, objectMapper,
+            new AllocationTracker(), tenantRegistry);
+        tailer.loadCheckpoints();
+        return tailer;
+    }
+
+    private void append(String text) throws IOException {
+        Files.writeString(file, text, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void truncate() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+        }
+    }
+
+    private static String line(String userId) {
+        return "{\"type\": \"MESSAGE\", \"timestamp\": \"2024-01-15T10:30:00.000Z\", \"userId\": \"" + userId
+            + "\", \"payload\": {\"channel\": \"#lobby\"}}\n";
+    }
+}
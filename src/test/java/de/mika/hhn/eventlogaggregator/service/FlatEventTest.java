@@ -0,0 +1,89 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.model.Event;
+import de.mika.hhn.eventlogaggregator.model.EventType;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FlatEventTest {
+
+    private static final long MILLIS = Instant.parse("2024-01-15T10:30:00.250Z").toEpochMilli();
+
+    private final EventParser parser = parser();
+
+    @Test
+    void bindsThePayloadFieldsOfTheSchema() {
+        List<FlatEvent> events = parser.parseEvents("""
+            {"type": "MESSAGE", "timestamp": "2024-01-15T10:30:00.250Z", "userId": "alice",
+             "payload": {"channel": "#lobby", "message": "hi", "action": "wave", "mood": "happy"},
+             "eventId": "e-1"}""");
+
+        assertEquals(List.of(new FlatEvent(EventType.MESSAGE, MILLIS, "alice", "#lobby", "wave", "hi", "e-1")), events);
+    }
+
+    @Test
+    void leavesAbsentFieldsNull() {
+        FlatEvent event = parser.parseEvents("""
+            {"type": "LOGIN", "timestamp": "2024-01-15T10:30:00.250Z", "userId": "bob", "payload": {}}""").get(0);
+
+        assertEquals(EventType.LOGIN, event.type());
+        assertNull(event.channel());
+        assertNull(event.action());
+        assertNull(event.message());
+        assertNull(event.eventId());
+    }
+
+    @Test
+    void convertsOffsetTimestampsToUtcMillis() {
+        FlatEvent event = parser.parseEvents("""
+            {"type": "LOGOUT", "timestamp": "2024-01-15T12:30:00.250+02:00", "userId": "carol", "payload": {}}""").get(0);
+
+        assertEquals(MILLIS, event.timestampMillis());
+    }
+
+    @Test
+    void bindsStraightFromJson() throws Exception {
+        FlatEvent event = new ObjectMapper().readValue("""
+            {"eventId": "e-3", "payload": {"channel": "#ops", "message": 42, "extra": {"nested": ["x"]}},
+             "userId": "gina", "timestamp": "2024-01-15T10:30:00.250Z", "type": "JOIN_CHANNEL"}""", FlatEvent.class);
+
+        assertEquals(new FlatEvent(EventType.JOIN_CHANNEL, MILLIS, "gina", "#ops", null, null, "e-3"), event);
+        assertThrows(JsonMappingException.class, () -> new ObjectMapper().readValue("""
+            {"type": "SHOUT", "timestamp": "2024-01-15T10:30:00.250Z", "userId": "gina"}""", FlatEvent.class));
+    }
+
+    @Test
+    void flattensAPublicEventLikeTheParser() {
+        Event event = new Event("JOIN_CHANNEL", Instant.ofEpochMilli(MILLIS), "dave",
+            Map.of("channel", "#dev", "message", 42, "extra", "dropped"), null);
+
+        assertEquals(new FlatEvent(EventType.JOIN_CHANNEL, MILLIS, "dave", "#dev", null, null, null),
+            FlatEvent.from(event));
+        assertEquals(new FlatEvent(EventType.LOGOUT, 0, "erin", null, null, null, "e-2"),
+            FlatEvent.from(new Event("LOGOUT", null, "erin", null, "e-2")));
+    }
+
+    @Test
+    void rejectsUnknownTypes() {
+        Event event = new Event("SHOUT", Instant.ofEpochMilli(MILLIS), "frank", Map.of(), null);
+
+        assertThrows(IllegalArgumentException.class, () -> FlatEvent.from(event));
+    }
+
+    private static EventParser parser() {
+        EventParser parser = new EventParser(new ObjectMapper().findAndRegisterModules(), TestProperties.defaults());
+        parser.initSchema();
+        return parser;
+    }
+}
@@ -0,0 +1,80 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashedTimingWheelTest {
+
+    private static final long START = 1_000_000;
+
+    @Test
+    void expiresAtDeadlineAfterSeveralRotations() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(1000, 8, START);
+        wheel.schedule("short", START + 3_000);
+        wheel.schedule("long", START + 20_000);
+        List<String> expired = new ArrayList<>();
+
+        for (long now = START; now < START + 20_000; now += 1000) {
+            wheel.advance(now, expired::add);
+            if (now < START + 3_000) {
+                assertTrue(expired.isEmpty(), "nothing may expire before its deadline");
+            }
+        }
+        assertEquals(List.of("short"), expired);
+
+        wheel.advance(START + 20_000, expired::add);
+        assertEquals(List.of("short", "long"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelledTimeoutsDoNotExpire() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(1000, 8, START);
+        HashedTimingWheel.Timeout<String> timeout = wheel.schedule("cancelled", START + 2_000);
+        wheel.schedule("kept", START + 2_000);
+        wheel.cancel(timeout);
+        List<String> expired = new ArrayList<>();
+
+        wheel.advance(START + 5_000, expired::add);
+
+        assertEquals(List.of("kept"), expired);
+    }
+
+    @Test
+    void catchesUpAfterLongPause() {
+        HashedTimingWheel<Integer> wheel = new HashedTimingWheel<>(1000, 8, START);
+        for (int i = 1; i <= 100; i++) {
+            wheel.schedule(i, START + i * 1000L);
+        }
+        List<Integer> expired = new ArrayList<>();
+
+        wheel.advance(START + 200_000, expired::add);
+
+        assertEquals(100, expired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void callbackMayReschedule() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(1000, 8, START);
+        HashedTimingWheel.Timeout<String> timeout = wheel.schedule("session", START + 2_000);
+        List<Long> fired = new ArrayList<>();
+
+        for (long now = START; now <= START + 30_000; now += 1000) {
+            long tick = now;
+            wheel.advance(now, item -> {
+                fired.add(tick);
+                if (fired.size() == 1) {
+                    wheel.reschedule(timeout, tick + 15_000);
+                }
+            });
+        }
+
+        assertEquals(List.of(START + 2_000, START + 17_000), fired);
+    }
+}
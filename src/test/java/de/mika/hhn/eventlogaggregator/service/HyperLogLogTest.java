@@ -0,0 +1,73 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+    @Test
+    void countsSmallSetsExactly() {
+        HyperLogLog sketch = new HyperLogLog(11);
+        for (int i = 0; i < 100; i++) {
+            sketch.add(HyperLogLog.hash("user" + (i % 40)));
+        }
+
+        assertEquals(40, sketch.estimate());
+        assertTrue(sketch.sizeInBytes() < 2048, "sparse sketch should be smaller than the registers");
+    }
+
+    @Test
+    void estimatesLargeSetsWithinErrorBound() {
+        HyperLogLog sketch = new HyperLogLog(11);
+        for (int i = 0; i < 100_000; i++) {
+            sketch.add(HyperLogLog.hash("user" + i));
+        }
+
+        // Standard error is about 2.3% at precision 11, allow three sigma
+        assertEquals(100_000, sketch.estimate(), 100_000 * 0.07);
+        assertEquals(2048, sketch.sizeInBytes());
+    }
+
+    @Test
+    void mergesSparseAndDenseSketches() {
+        HyperLogLog small = new HyperLogLog(11);
+        HyperLogLog large = new HyperLogLog(11);
+        for (int i = 0; i < 50; i++) {
+            small.add(HyperLogLog.hash("small" + i));
+        }
+        for (int i = 0; i < 20_000; i++) {
+            large.add(HyperLogLog.hash("large" + i));
+        }
+
+        HyperLogLog merged = new HyperLogLog(11);
+        merged.merge(small);
+        merged.merge(large);
+        merged.merge(small);
+
+        assertEquals(20_050, merged.estimate(), 20_050 * 0.07);
+    }
+
+    @Test
+    void mergesSparseSketchesExactlyUpToTheLimit() {
+        HyperLogLog first = new HyperLogLog(11, 256);
+        HyperLogLog second = new HyperLogLog(11, 256);
+        for (int i = 0; i < 150; i++) {
+            first.add(HyperLogLog.hash("user" + i));
+            second.add(HyperLogLog.hash("user" + (i + 100)));
+        }
+
+        first.merge(second);
+        assertEquals(250, first.estimate());
+
+        // Beyond the limit the union continues in the registers
+        HyperLogLog third = new HyperLogLog(11, 256);
+        for (int i = 0; i < 100; i++) {
+            third.add(HyperLogLog.hash("other" + i));
+        }
+        first.merge(third);
+        assertEquals(350, first.estimate(), 350 * 0.07);
+        assertEquals(2048, first.sizeInBytes());
+    }
+}
@@ -0,0 +1,89 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.model.ChannelCount;
+import de.mika.hhn.eventlogaggregator.model.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryMetricRepositoryTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    void rendersTheExpositionOncePerChange() {
+        InMemoryMetricRepository repository = new InMemoryMetricRepository(objectMapper, TestProperties.defaults());
+        assertTrue(repository.getOpenMetrics().isEmpty());
+
+        repository.saveMetrics(Duration.ofMinutes(5), metrics(Duration.ofMinutes(5), 120), List.of());
+        byte[] first = repository.getOpenMetrics().orElseThrow();
+        assertSame(first, repository.getOpenMetrics().orElseThrow());
+
+        // An unchanged save keeps the rendered text
+        repository.saveMetrics(Duration.ofMinutes(5), metrics(Duration.ofMinutes(5), 120), List.of());
+        assertSame(first, repository.getOpenMetrics().orElseThrow());
+
+        repository.saveMetrics(Duration.ofMinutes(5), metrics(Duration.ofMinutes(5), 240), List.of());
+        byte[] second = repository.getOpenMetrics().orElseThrow();
+        assertNotSame(first, second);
+        assertTrue(text(second).contains("ela_events_per_minute{window=\"PT5M\"} 240"), text(second));
+    }
+
+    @Test
+    void rendersAllWindowsSavedSoFar() {
+        InMemoryMetricRepository repository = new InMemoryMetricRepository(objectMapper, TestProperties.defaults());
+        repository.saveMetrics(Duration.ofHours(1), metrics(Duration.ofHours(1), 60), List.of());
+        repository.saveMetrics(Duration.ofMinutes(5), metrics(Duration.ofMinutes(5), 120),
+            List.of(new ChannelCount("#lobby", 600, 12)));
+
+        String text = text(repository.getOpenMetrics().orElseThrow());
+        assertTrue(text.indexOf("window=\"PT5M\"") < text.indexOf("window=\"PT1H\""), text);
+        assertTrue(text.contains("ela_channel_events{window=\"PT5M\",channel=\"#lobby\"} 600"), text);
+    }
+
+    @Test
+    void capsTheChannelLabelsToTheBusiest() {
+        InMemoryMetricRepository repository = new InMemoryMetricRepository(objectMapper,
+            TestProperties.with(Map.of("ela.open-metrics.max-channels", 2)));
+        repository.saveMetrics(Duration.ofMinutes(5), metrics(Duration.ofMinutes(5), 120), List.of(
+            new ChannelCount("#lobby", 600, 12), new ChannelCount("#dev", 300, 5), new ChannelCount("#ops", 100, 2)));
+
+        String text = text(repository.getOpenMetrics().orElseThrow());
+        assertTrue(text.contains("channel=\"#lobby\""), text);
+        assertTrue(text.contains("channel=\"#dev\""), text);
+        assertFalse(text.contains("#ops"), text);
+    }
+
+    @Test
+    void exportsNothingWhenDisabledOrCleared() {
+        InMemoryMetricRepository disabled = new InMemoryMetricRepository(objectMapper,
+            TestProperties.with(Map.of("ela.open-metrics.enabled", false)));
+        disabled.saveMetrics(Duration.ofMinutes(5), metrics(Duration.ofMinutes(5), 120), List.of());
+        assertTrue(disabled.getOpenMetrics().isEmpty());
+
+        InMemoryMetricRepository repository = new InMemoryMetricRepository(objectMapper, TestProperties.defaults());
+        repository.saveMetrics(Duration.ofMinutes(5), metrics(Duration.ofMinutes(5), 120), List.of());
+        assertFalse(repository.getOpenMetrics().isEmpty());
+        repository.clearAll();
+        assertTrue(repository.getOpenMetrics().isEmpty());
+    }
+
+    private static Metrics metrics(Duration window, long eventsPerMinute) {
+        return new Metrics(window, 10, eventsPerMinute, List.of(), false, null, List.of(), Map.of("MESSAGE", eventsPerMinute));
+    }
+
+    private static String text(byte[] exposition) {
+        return new String(exposition, StandardCharsets.UTF_8);
+    }
+}
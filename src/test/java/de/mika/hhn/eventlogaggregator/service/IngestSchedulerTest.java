@@ -0,0 +1,158 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.model.EventType;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IngestSchedulerTest {
+
+    private final List<String> aggregated = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final TenantPartition partition = partition();
+    private IngestScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    void servesLanesByWeightedRoundRobin() throws Exception {
+        scheduler = scheduler(Map.of(
+            "ela.ingest-lanes.http.weight", 4,
+            "ela.ingest-lanes.inbox.weight", 1,
+            "ela.ingest-lanes.inbox.max-events-per-second", 0,
+            "ela.ingest-lanes.replay.max-events-per-second", 0
+        ));
+
+        // Keep the only worker busy until both lanes have their backlog queued
+        CompletableFuture<?> blocker = CompletableFuture.runAsync(
+            () -> scheduler.ingest(IngestLane.REPLAY, partition, events("block", 1)));
+        awaitAggregated(1);
+        CompletableFuture<?> inbox = CompletableFuture.runAsync(
+            () -> scheduler.ingest(IngestLane.INBOX, partition, events("inbox", 8)));
+        CompletableFuture<?> http = CompletableFuture.runAsync(
+            () -> scheduler.ingest(IngestLane.HTTP, partition, events("http", 8)));
+        awaitQueued("inbox", 8);
+        awaitQueued("http", 8);
+
+        release.countDown();
+        CompletableFuture.allOf(blocker, inbox, http).get(5, TimeUnit.SECONDS);
+
+        List<String> lanes = aggregated.subList(1, aggregated.size()).stream()
+            .map(userId -> userId.substring(0, userId.indexOf('-')))
+            .toList();
+        assertEquals(List.of(
+            "http", "http", "http", "http", "inbox",
+            "http", "http", "http", "http", "inbox",
+            "inbox", "inbox", "inbox", "inbox", "inbox", "inbox"), lanes);
+    }
+
+    @Test
+    void reportsTheResultsInEventOrder() {
+        scheduler = scheduler(Map.of());
+        release.countDown();
+
+        boolean[] results = scheduler.ingest(IngestLane.HTTP, partition, events("http", 5));
+
+        assertArrayEquals(new boolean[] {true, true, true, true, true}, results);
+        assertEquals(List.of("http-0", "http-1", "http-2", "http-3", "http-4"), aggregated);
+    }
+
+    @Test
+    void capsARateLimitedLaneWithoutDelayingTheOthers() throws Exception {
+        scheduler = scheduler(Map.of(
+            "ela.ingest-lanes.chunk-size", 50,
+            "ela.ingest-lanes.inbox.max-events-per-second", 100
+        ));
+        release.countDown();
+
+        // 100 tokens of burst, then one chunk of 50 every half second
+        long start = System.nanoTime();
+        CompletableFuture<?> inbox = CompletableFuture.runAsync(
+            () -> scheduler.ingest(IngestLane.INBOX, partition, events("inbox", 300)));
+        awaitAggregated(100);
+        scheduler.ingest(IngestLane.HTTP, partition, events("http", 200));
+        long httpDone = System.nanoTime() - start;
+        inbox.get(5, TimeUnit.SECONDS);
+        long inboxDone = System.nanoTime() - start;
+
+        assertTrue(httpDone < TimeUnit.MILLISECONDS.toNanos(500), "HTTP took " + httpDone + "ns");
+        assertTrue(inboxDone >= TimeUnit.MILLISECONDS.toNanos(1_400), "inbox took " + inboxDone + "ns");
+        assertEquals(500, aggregated.size());
+    }
+
+    private IngestScheduler scheduler(Map<String, Object> overrides) {
+        Map<String, Object> properties = new HashMap<>(Map.of(
+            "ela.ingest-lanes.workers", 1,
+            "ela.ingest-lanes.chunk-size", 1
+        ));
+        properties.putAll(overrides);
+        IngestScheduler scheduler = new IngestScheduler(TestProperties.with(properties), new AllocationTracker(), Clock.systemUTC());
+        scheduler.start();
+        return scheduler;
+    }
+
+    private TenantPartition partition() {
+        MetricAggregator aggregator = mock(MetricAggregator.class);
+        when(aggregator.addEvent(any(FlatEvent.class))).thenAnswer(invocation -> {
+            FlatEvent event = invocation.getArgument(0);
+            aggregated.add(event.userId());
+            if (event.userId().startsWith("block")) {
+                release.await();
+            }
+            return true;
+        });
+        TenantPartition partition = mock(TenantPartition.class);
+        when(partition.getMetricAggregator()).thenReturn(aggregator);
+        return partition;
+    }
+
+    private void awaitAggregated(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (aggregated.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void awaitQueued(String lane, int chunks) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            Map<String, Object> status = (Map<String, Object>) scheduler.getStatus().get(lane);
+            if ((int) status.get("queuedChunks") == chunks) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static List<FlatEvent> events(String prefix, int count) {
+        return IntStream.range(0, count)
+            .mapToObj(i -> new FlatEvent(EventType.MESSAGE, 0, prefix + "-" + i, "#lobby", null, null, null))
+            .toList();
+    }
+}
@@ -0,0 +1,114 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.model.EventType;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class JfrEventsTest {
+
+    private static final List<String> NAMES = List.of(
+        "de.mika.hhn.ela.Parse", "de.mika.hhn.ela.Validate", "de.mika.hhn.ela.AggregateWindow");
+
+    @TempDir
+    Path logs;
+
+    private final Queue<RecordedEvent> recorded = new ConcurrentLinkedQueue<>();
+    private RecordingStream stream;
+
+    @BeforeEach
+    void startRecording() {
+        stream = new RecordingStream();
+        NAMES.forEach(name -> {
+            stream.enable(name).withThreshold(Duration.ZERO);
+            stream.onEvent(name, recorded::add);
+        });
+        stream.startAsync();
+    }
+
+    @AfterEach
+    void stopRecording() {
+        stream.close();
+    }
+
+    @Test
+    void recordsParseAndValidateOfABatch() throws Exception {
+        ElaProperties properties = TestProperties.with(Map.of("ela.directories.logs", logs.toString()));
+        EventParser parser = new EventParser(new ObjectMapper().findAndRegisterModules(), properties);
+        parser.initSchema();
+        byte[] batch = """
+            {"type": "LOGIN", "timestamp": "2024-01-15T10:30:00.000Z", "userId": "alice", "payload": {}}
+            {"type": "SHOUT", "timestamp": "2024-01-15T10:30:01.000Z", "userId": "bob", "payload": {}}
+            {"type": "LOGOUT", "timestamp": "2024-01-15T10:30:02.000Z", "userId": "alice", "payload": {}}
+            """.getBytes(StandardCharsets.UTF_8);
+
+        parser.validateBatch(new ByteArrayInputStream(batch), true);
+
+        RecordedEvent parse = await("de.mika.hhn.ela.Parse", event -> true);
+        assertEquals("ndjson-batch", parse.getString("source"));
+        assertEquals(batch.length, parse.getLong("bytes"));
+        assertEquals(3, parse.getInt("events"));
+        assertEquals(1, parse.getInt("invalid"));
+
+        RecordedEvent validate = await("de.mika.hhn.ela.Validate", event -> true);
+        assertEquals(3, validate.getInt("elements"));
+        assertEquals(1, validate.getInt("invalid"));
+        assertFalse(validate.getBoolean("parallel"));
+    }
+
+    @Test
+    void recordsTheAggregationOfEveryWindow() throws Exception {
+        ElaProperties properties = TestProperties.defaults();
+        Clock clock = Clock.systemUTC();
+        MetricAggregator aggregator = new MetricAggregator(properties,
+            new InMemoryMetricRepository(new ObjectMapper().findAndRegisterModules(), properties),
+            new DuplicateFilter(properties, clock), new AdmissionController(properties),
+            new AnomalyDetector(properties, event -> { }), new UserActivityIndex(properties),
+            new SessionTracker(properties, clock), new TimeSeriesStore(properties), new AllocationTracker(), clock);
+        aggregator.addEvent(new FlatEvent(EventType.MESSAGE, clock.millis(), "alice", "#lobby", null, "hi", null));
+
+        aggregator.aggregateMetrics();
+
+        RecordedEvent hourly = await("de.mika.hhn.ela.AggregateWindow", event -> "PT1H".equals(event.getString("window")));
+        assertEquals(1, hourly.getLong("events"));
+        assertFalse(hourly.getDuration().isNegative());
+        await("de.mika.hhn.ela.AggregateWindow", event -> "PT720H".equals(event.getString("window")));
+    }
+
+    /**
+     * Wait for a matching event; the stream delivers them about once a second
+     */
+    private RecordedEvent await(String name, Predicate<RecordedEvent> filter) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (System.nanoTime() < deadline) {
+            for (RecordedEvent event : recorded) {
+                if (event.getEventType().getName().equals(name) && filter.test(event)) {
+                    return event;
+                }
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("No " + name + " event recorded");
+    }
+}
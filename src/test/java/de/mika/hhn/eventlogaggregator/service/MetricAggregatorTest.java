@@ -0,0 +1,60 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.model.EventType;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricAggregatorTest {
+
+    @Test
+    void shedsEventsOnceRetainedStateApproachesTheLimit() {
+        ElaProperties properties = TestProperties.with(Map.of(
+            "ela.admission.enabled", true,
+            "ela.admission.max-retained-memory", "2MB",
+            "ela.admission.min-sample-rate", 0.1
+        ));
+        AdmissionController admission = new AdmissionController(properties);
+        MetricAggregator aggregator = aggregator(properties, admission);
+
+        aggregator.aggregateMetrics();
+        assertFalse(admission.isSampling());
+        assertTrue(aggregator.getRetainedBytes() < 2_000_000);
+
+        // Thousands of users in the rollups, user index and sessions
+        flood(aggregator, 5_000);
+        aggregator.aggregateMetrics();
+        assertTrue(aggregator.getRetainedBytes() > 2_000_000, "retained " + aggregator.getRetainedBytes());
+
+        // The next tick sees the footprint, so the flooding type gets sampled
+        flood(aggregator, 5_000);
+        aggregator.aggregateMetrics();
+        assertTrue(admission.isSampling());
+        assertEquals(0.1, admission.getSamplingRates().get("MESSAGE"), 1e-9);
+        flood(aggregator, 5_000);
+        assertTrue(admission.getShedCount() > 4_000, "shed " + admission.getShedCount());
+    }
+
+    private static void flood(MetricAggregator aggregator, int events) {
+        for (int i = 0; i < events; i++) {
+            aggregator.addEvent(new FlatEvent(EventType.MESSAGE, 0, "user-" + i, "#channel-" + (i % 50), null, "hi", null));
+        }
+    }
+
+    private static MetricAggregator aggregator(ElaProperties properties, AdmissionController admission) {
+        Clock clock = Clock.systemUTC();
+        return new MetricAggregator(properties, new InMemoryMetricRepository(new ObjectMapper().findAndRegisterModules(), properties),
+            new DuplicateFilter(properties, clock), admission, new AnomalyDetector(properties, event -> { }),
+            new UserActivityIndex(properties), new SessionTracker(properties, clock), new TimeSeriesStore(properties),
+            new AllocationTracker(), clock);
+    }
+}
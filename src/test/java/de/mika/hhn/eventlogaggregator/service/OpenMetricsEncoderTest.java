@@ -0,0 +1,86 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.model.ChannelCount;
+import de.mika.hhn.eventlogaggregator.model.Metrics;
+import de.mika.hhn.eventlogaggregator.model.SessionStats;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenMetricsEncoderTest {
+
+    @Test
+    void escapesLabelValues() {
+        String text = encode(new OpenMetricsEncoder.Window(metrics(Duration.ofMinutes(5), null),
+            List.of(new ChannelCount("#a\\b \"quoted\"\nnext", 7, 3))));
+
+        assertTrue(text.contains("ela_channel_events{window=\"PT5M\",channel=\"#a\\\\b \\\"quoted\\\"\\nnext\"} 7\n"), text);
+        assertTrue(text.contains("ela_channel_distinct_users{window=\"PT5M\",channel=\"#a\\\\b \\\"quoted\\\"\\nnext\"} 3\n"), text);
+        // The raw line feed would end the sample
+        assertFalse(text.contains("\nnext"), text);
+    }
+
+    @Test
+    void labelsOnlyTheChannelsHandedIn() {
+        Metrics metrics = new Metrics(Duration.ofHours(1), 10, 100,
+            List.of(new ChannelCount("#lobby", 600, 12), new ChannelCount("#dev", 300, 5), new ChannelCount("#ops", 100, 2)),
+            false, null, List.of(), Map.of("MESSAGE", 1_000L));
+
+        String text = encode(new OpenMetricsEncoder.Window(metrics, List.of(new ChannelCount("#lobby", 600, 12))));
+
+        assertEquals(1, count(text, "ela_channel_events{"));
+        assertEquals(1, count(text, "ela_channel_distinct_users{"));
+        assertFalse(text.contains("#dev"), text);
+    }
+
+    @Test
+    void writesEveryFamilyOnceAndEndsWithEof() {
+        String text = encode(
+            new OpenMetricsEncoder.Window(metrics(Duration.ofMinutes(5), new SessionStats(4, 9, 60, 300, 900)), List.of()),
+            new OpenMetricsEncoder.Window(metrics(Duration.ofHours(1), new SessionStats(4, 20, 90, 400, 1_200)), List.of()));
+
+        for (String family : new String[] {"ela_events_per_minute", "ela_active_users", "ela_metrics_estimated",
+                "ela_type_events", "ela_channel_events", "ela_channel_distinct_users", "ela_sessions_open",
+                "ela_sessions_closed", "ela_session_duration_seconds"}) {
+            assertEquals(1, count(text, "# TYPE " + family + " "), family);
+            assertEquals(1, count(text, "# HELP " + family + " "), family);
+        }
+        assertTrue(text.endsWith("\n# EOF\n"), text);
+        assertTrue(text.contains("ela_sessions_open 4\n"), text);
+        assertTrue(text.contains("ela_session_duration_seconds{window=\"PT1H\",quantile=\"0.99\"} 1200\n"), text);
+        assertTrue(text.contains("ela_session_duration_seconds_count{window=\"PT5M\"} 9\n"), text);
+        assertTrue(text.contains("ela_type_events{window=\"PT5M\",type=\"MESSAGE\"} 1000\n"), text);
+    }
+
+    @Test
+    void rendersNoSamplesWithoutWindows() {
+        String text = encode();
+
+        assertTrue(text.contains("ela_sessions_open 0\n"), text);
+        assertFalse(text.contains("window="), text);
+        assertTrue(text.endsWith("# EOF\n"), text);
+    }
+
+    private static String encode(OpenMetricsEncoder.Window... windows) {
+        return new String(OpenMetricsEncoder.encode(List.of(windows)), StandardCharsets.UTF_8);
+    }
+
+    private static int count(String text, String fragment) {
+        int count = 0;
+        for (int i = text.indexOf(fragment); i >= 0; i = text.indexOf(fragment, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static Metrics metrics(Duration window, SessionStats sessions) {
+        return new Metrics(window, 10, 100, List.of(), false, sessions, List.of(), Map.of("MESSAGE", 1_000L));
+    }
+}
@@ -0,0 +1,154 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.model.EventType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RollupHierarchyTest {
+
+    // 2024-01-15T00:00:00Z, aligned to all levels
+    private static final long START = 1_705_276_800_000L;
+    private static final List<Duration> LEVELS = List.of(Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ofHours(1));
+    private static final Duration FIVE_MINUTES = Duration.ofMinutes(5);
+    private static final Duration HOUR = Duration.ofHours(1);
+    private static final Duration DAY = Duration.ofHours(24);
+
+    @Test
+    void windowsCoverTheirSpanAtEveryLevel() {
+        RollupHierarchy rollups = new RollupHierarchy(LEVELS, List.of(FIVE_MINUTES, HOUR, DAY), 12, 100, 14, 11, START);
+        assertEquals(Duration.ofSeconds(1), rollups.resolution(FIVE_MINUTES));
+        assertEquals(Duration.ofMinutes(1), rollups.resolution(HOUR));
+        assertEquals(Duration.ofHours(1), rollups.resolution(DAY));
+
+        // One event every 10 seconds for 30 hours, checked every 17 minutes and 13 seconds
+        long end = START + Duration.ofHours(30).toMillis();
+        long nextCheck = START + 1_033_000;
+        for (long now = START; now < end; now += 10_000) {
+            rollups.add(EventType.MESSAGE, "user-" + (now / 10_000 % 50), "#general", 1.0, now);
+            if (now >= nextCheck) {
+                rollups.advance(now + 1);
+                for (Duration window : List.of(FIVE_MINUTES, HOUR, DAY)) {
+                    RollupHierarchy.Snapshot snapshot = rollups.window(window, now + 1);
+                    long resolution = rollups.resolution(window).toMillis();
+                    long span = Math.min(snapshot.spanMillis(), now + 1 - START);
+                    assertTrue(Math.abs(snapshot.spanMillis() - window.toMillis()) <= resolution / 2 + 1,
+                        window + " covers " + snapshot.spanMillis() + " ms");
+                    assertEquals(eventsSince(now + 1 - span, now), snapshot.contents().weightedCount(), 1.0, window.toString());
+                }
+                nextCheck += 1_033_000;
+            }
+        }
+    }
+
+    @Test
+    void countsDistinctUsersAcrossMergedBuckets() {
+        RollupHierarchy rollups = new RollupHierarchy(LEVELS, List.of(HOUR), 12, 100, 14, 11, START);
+        for (int i = 0; i < 3_000; i++) {
+            rollups.add(EventType.LOGIN, "user-" + (i % 1_500), null, 1.0, START + i * 1_000L);
+        }
+        long now = START + 3_000_000;
+        rollups.advance(now);
+
+        RollupHierarchy.Snapshot snapshot = rollups.window(HOUR, now);
+
+        assertEquals(1_500, snapshot.contents().distinctUsers());
+        assertEquals(3_000, snapshot.contents().typeCount(EventType.LOGIN), 0.0);
+    }
+
+    @Test
+    void countsDistinctUsersPerChannelAcrossMergedBuckets() {
+        RollupHierarchy rollups = new RollupHierarchy(LEVELS, List.of(HOUR), 12, 100, 14, 11, START);
+        // Over 50 minutes, #general sees 100 users each minute again, #random one new user per event
+        for (int i = 0; i < 3_000; i++) {
+            rollups.add(EventType.MESSAGE, "user-" + (i % 100), "#general", 1.0, START + i * 1_000L);
+            rollups.add(EventType.MESSAGE, "guest-" + i, "#random", 1.0, START + i * 1_000L);
+        }
+        long now = START + 3_000_000;
+        rollups.advance(now);
+
+        RollupHierarchy.Snapshot snapshot = rollups.window(HOUR, now);
+
+        assertEquals(100, snapshot.contents().channels().get("#general").distinctUsers());
+        assertEquals(3_000, snapshot.contents().channels().get("#random").distinctUsers(), 3_000 * 0.05);
+        assertEquals(3_000, snapshot.contents().channels().get("#random").count(), 0.0);
+    }
+
+    @Test
+    void closedBucketsKeepTheBusiestChannels() {
+        RollupHierarchy rollups = new RollupHierarchy(LEVELS, List.of(DAY), 12, 3, 14, 11, START);
+        for (int channel = 0; channel < 10; channel++) {
+            for (int i = 0; i <= channel; i++) {
+                rollups.add(EventType.MESSAGE, "user", "#channel-" + channel, 1.0, START + 1_000);
+            }
+        }
+        long now = START + Duration.ofHours(2).toMillis();
+        rollups.advance(now);
+
+        RollupHierarchy.Snapshot snapshot = rollups.window(DAY, now);
+
+        assertEquals(3, snapshot.contents().channels().size());
+        assertEquals(10, snapshot.contents().channels().get("#channel-9").count(), 0.0);
+        assertEquals(55, snapshot.contents().weightedCount(), 0.0);
+    }
+
+    @Test
+    void retainsOnlyTheBucketsTheWindowsNeedPerLevel() {
+        RollupHierarchy rollups = new RollupHierarchy(LEVELS, List.of(FIVE_MINUTES, DAY), 12, 100, 14, 11, START);
+        long end = START + Duration.ofHours(48).toMillis();
+        for (long now = START; now < end; now += 1_000) {
+            rollups.add(EventType.MESSAGE, "user", null, 1.0, now);
+        }
+        rollups.advance(end);
+
+        List<MetricAggregator.RollupFootprint> footprints = rollups.footprints();
+        assertEquals(300, footprints.get(0).buckets());
+        // The minutes before the leading edge of the five-minute window
+        assertEquals(6, footprints.get(1).buckets());
+        assertEquals(24, footprints.get(2).buckets());
+    }
+
+    @Test
+    void readsClosedIntervalsExactlyWhileRetained() {
+        RollupHierarchy rollups = new RollupHierarchy(LEVELS, List.of(FIVE_MINUTES), 12, 100, 14, 11, START);
+        assertEquals(Duration.ofHours(1), rollups.retainIntervals(HOUR, HOUR));
+        assertEquals(Duration.ofMinutes(1), rollups.retainIntervals(HOUR, FIVE_MINUTES));
+
+        // One event every 10 seconds for three hours
+        long end = START + Duration.ofHours(3).toMillis();
+        for (long now = START; now < end; now += 10_000) {
+            rollups.add(EventType.MESSAGE, "user-" + (now / 10_000 % 50), "#general", 1.0, now);
+        }
+        rollups.advance(end);
+
+        assertEquals(360, rollups.interval(START + 7_200_000, end).orElseThrow().weightedCount(), 0.0);
+        assertEquals(50, rollups.interval(START + 7_200_000, end).orElseThrow().distinctUsers());
+        // Hopping: minutes from 02:05 to 03:05 are not all closed yet
+        assertTrue(rollups.interval(START + 7_500_000, end + 300_000).isEmpty());
+        assertEquals(360, rollups.interval(START + 7_080_000, START + 10_680_000).orElseThrow().weightedCount(), 0.0);
+        // 62 minutes are retained, so those before 01:58 have expired; the hours have not
+        assertTrue(rollups.interval(START + 6_900_000, START + 10_500_000).isEmpty());
+        assertEquals(360, rollups.interval(START, START + 3_600_000).orElseThrow().weightedCount(), 0.0);
+        assertThrows(IllegalArgumentException.class, () -> rollups.retainIntervals(HOUR, Duration.ofMillis(1_500)));
+    }
+
+    @Test
+    void rejectsLevelsThatDoNotDivideEachOther() {
+        assertThrows(IllegalArgumentException.class, () -> new RollupHierarchy(
+            List.of(Duration.ofSeconds(7), Duration.ofMinutes(1)), List.of(HOUR), 12, 100, 14, 11, START));
+    }
+
+    /**
+     * Events of the test stream between {@code fromMillis} and {@code toMillis}, inclusive
+     */
+    private static long eventsSince(long fromMillis, long toMillis) {
+        long first = Math.max(START, fromMillis);
+        long firstEvent = START + (first - START + 9_999) / 10_000 * 10_000;
+        return firstEvent > toMillis ? 0 : (toMillis - firstEvent) / 10_000 + 1;
+    }
+}
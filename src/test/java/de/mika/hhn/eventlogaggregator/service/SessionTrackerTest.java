@@ -0,0 +1,45 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.model.ChannelOccupancy;
+import de.mika.hhn.eventlogaggregator.model.EventType;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SessionTrackerTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    private final SessionTracker tracker = new SessionTracker(TestProperties.defaults(), Clock.systemUTC());
+
+    @Test
+    void recordsWithoutWaitingForTheTrackerMonitor() throws Exception {
+        // A tick closing many sessions holds the monitor; ingest threads must not wait for it
+        synchronized (tracker) {
+            CompletableFuture.runAsync(() -> {
+                tracker.record(event(EventType.LOGIN, null), START);
+                tracker.record(event(EventType.JOIN_CHANNEL, "#general"), START + 1_000);
+            }).get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, tracker.getOpenSessionCount());
+        assertEquals(List.of(new ChannelOccupancy("#general", 1)), tracker.topOccupancy());
+
+        tracker.record(event(EventType.LOGOUT, null), START + 61_000);
+        tracker.tick(START + 61_000);
+        assertEquals(0, tracker.getOpenSessionCount());
+        assertEquals(1, tracker.stats(Duration.ofHours(1), START + 61_000).closedSessions());
+    }
+
+    private static FlatEvent event(EventType type, String channel) {
+        return new FlatEvent(type, 0, "alice", channel, null, null, null);
+    }
+}
@@ -0,0 +1,168 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SimulationRunnerTest {
+
+    private static final long START = Instant.parse("2024-01-15T00:00:00Z").toEpochMilli();
+    private static final long MINUTE = 60_000;
+
+    private final SimulationClock clock = new SimulationClock(START);
+    private final List<Long> ticks = Collections.synchronizedList(new ArrayList<>());
+    private final List<long[]> events = Collections.synchronizedList(new ArrayList<>());
+    private final TenantRegistry tenantRegistry = mock(TenantRegistry.class);
+    private final AggregatorScheduler aggregatorScheduler = mock(AggregatorScheduler.class);
+    private SimulationRunner runner;
+
+    SimulationRunnerTest() {
+        MetricAggregator aggregator = mock(MetricAggregator.class);
+        when(aggregator.addEvent(any(FlatEvent.class))).thenAnswer(invocation -> {
+            FlatEvent event = invocation.getArgument(0);
+            events.add(new long[] {event.timestampMillis(), clock.millis()});
+            return true;
+        });
+        TenantPartition partition = mock(TenantPartition.class);
+        when(partition.getMetricAggregator()).thenReturn(aggregator);
+        when(tenantRegistry.getDefault()).thenReturn(partition);
+        doAnswer(invocation -> ticks.add(clock.millis())).when(aggregatorScheduler).aggregateAll();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (runner != null) {
+            runner.stop();
+        }
+    }
+
+    @Test
+    void ticksTheAggregationOnVirtualTime() throws InterruptedException {
+        runner = runner(Map.of("ela.simulation.tick", "PT1M"), clock);
+
+        runner.start();
+        awaitTicks(60);
+
+        List<Long> expected = new ArrayList<>();
+        for (int i = 1; i <= 60; i++) {
+            expected.add(START + i * MINUTE);
+        }
+        assertEquals(expected, ticks);
+        // The clock stops at the end of the run
+        assertEquals(START + 60 * MINUTE, clock.millis());
+    }
+
+    @Test
+    void advancesTheClockToEveryEvent() throws InterruptedException {
+        runner = runner(Map.of("ela.simulation.tick", "PT1M"), clock);
+
+        runner.start();
+        awaitTicks(60);
+
+        // Around 10 events per second, fewer at night
+        assertTrue(events.size() > 10_000, events.size() + " events");
+        long previous = START;
+        for (long[] event : events) {
+            assertEquals(event[0], event[1]);
+            assertTrue(event[0] >= previous && event[0] < START + 60 * MINUTE);
+            previous = event[0];
+        }
+    }
+
+    @Test
+    void pacesVirtualTimeToTheSpeed() throws InterruptedException {
+        runner = runner(Map.of("ela.simulation.speed", 7_200), clock);
+
+        long wallStart = System.nanoTime();
+        runner.start();
+        awaitTicks(3_600);
+
+        // One virtual hour at 7200x takes half a second
+        assertTrue(System.nanoTime() - wallStart >= TimeUnit.MILLISECONDS.toNanos(450));
+        assertEquals(3_600, ticks.size());
+    }
+
+    @Test
+    void needsTheSimulationClock() throws InterruptedException {
+        runner = runner(Map.of(), Clock.systemUTC());
+        runner.start();
+        runner.stop();
+
+        SimulationRunner disabled = runner(Map.of("ela.simulation.enabled", false), clock);
+        disabled.start();
+
+        Thread.sleep(100);
+        assertTrue(ticks.isEmpty());
+        assertEquals(START, clock.millis());
+    }
+
+    @Test
+    void neverMovesTheClockBack() {
+        Clock zoned = clock.withZone(ZoneId.of("Europe/Berlin"));
+
+        clock.advanceTo(START + MINUTE);
+        clock.advanceTo(START);
+
+        assertEquals(START + MINUTE, clock.millis());
+        assertEquals(Instant.ofEpochMilli(START + MINUTE), zoned.instant());
+        assertEquals(ZoneId.of("Europe/Berlin"), zoned.getZone());
+    }
+
+    @Test
+    void refillsTenantQuotasOnVirtualTime() {
+        TenantPartition partition = new TenantPartition("sim", mock(MetricAggregator.class),
+            mock(MetricRepository.class), mock(AnomalyDetector.class), mock(AdmissionController.class),
+            new TokenBucket(100, clock), clock);
+
+        assertTrue(partition.tryAcquire(300));
+        assertFalse(partition.tryAcquire(1));
+        assertEquals(3, partition.getRetryAfterSeconds());
+
+        // No real time passes, the debt is paid off by advancing the clock
+        clock.advanceTo(START + 2_000);
+        assertFalse(partition.tryAcquire(1));
+        assertEquals(1, partition.getRetryAfterSeconds());
+        clock.advanceTo(START + 2_100);
+        assertTrue(partition.tryAcquire(1));
+    }
+
+    private SimulationRunner runner(Map<String, Object> overrides, Clock runnerClock) {
+        Map<String, Object> properties = new HashMap<>(Map.of(
+            "ela.simulation.enabled", true,
+            "ela.simulation.speed", 1_000_000_000,
+            "ela.simulation.duration", "PT1H",
+            "ela.simulation.events-per-second", 10
+        ));
+        properties.putAll(overrides);
+        return new SimulationRunner(TestProperties.with(properties), runnerClock, tenantRegistry, aggregatorScheduler);
+    }
+
+    private void awaitTicks(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (ticks.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        // Give the runner the chance to overshoot, which it must not
+        Thread.sleep(50);
+    }
+}
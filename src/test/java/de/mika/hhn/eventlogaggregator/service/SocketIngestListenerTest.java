@@ -0,0 +1,198 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SocketIngestListenerTest {
+
+    private final List<String> ingested = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> tenants = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean blocking;
+    private SocketIngestListener listener;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        release.countDown();
+        if (listener != null) {
+            listener.stop();
+        }
+    }
+
+    @Test
+    void keepsAPartialLineUntilItsLineFeedArrives() throws Exception {
+        listener = listener(Map.of());
+        String third = line("carol");
+
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            send(out, line("alice") + line("bob") + third.substring(0, 30));
+            await(() -> ingested.size() == 2);
+
+            // Flushes after the interval hand on complete lines only
+            Thread.sleep(200);
+            assertEquals(List.of("alice", "bob"), ingested);
+
+            send(out, third.substring(30) + line("dave").substring(0, 10));
+            await(() -> ingested.size() == 3);
+            send(out, line("dave").substring(10));
+            await(() -> ingested.size() == 4);
+        }
+
+        assertEquals(List.of("alice", "bob", "carol", "dave"), ingested);
+    }
+
+    @Test
+    void takesALastLineWithoutLineFeedAtTheEndOfStream() throws Exception {
+        listener = listener(Map.of());
+
+        try (Socket socket = connect()) {
+            String last = line("bob");
+            send(socket.getOutputStream(), "TENANT acme\n" + line("alice") + last.substring(0, last.length() - 1));
+            socket.shutdownOutput();
+            await(() -> ingested.size() == 2);
+        }
+
+        assertEquals(List.of("alice", "bob"), ingested);
+        assertTrue(tenants.stream().allMatch("acme"::equals), tenants.toString());
+    }
+
+    @Test
+    void skipsLinesLongerThanTheBuffer() throws Exception {
+        listener = listener(Map.of("ela.socket-ingest.buffer-size", "1KB"));
+
+        try (Socket socket = connect()) {
+            send(socket.getOutputStream(), line("x".repeat(3_000)) + line("alice"));
+            await(() -> ingested.size() == 1);
+        }
+
+        assertEquals(List.of("alice"), ingested);
+        assertEquals(1L, listener.getStatus().get("rejectedLines"));
+    }
+
+    @Test
+    void stopsReadingWhileTooManyBatchesArePending() throws Exception {
+        listener = listener(Map.of(
+            "ela.socket-ingest.buffer-size", "64KB",
+            "ela.socket-ingest.max-in-flight", 1
+        ));
+        blocking = true;
+        int lines = 16_000;
+        String padding = "p".repeat(1_000);
+
+        try (Socket socket = connect()) {
+            CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+                try {
+                    OutputStream out = socket.getOutputStream();
+                    for (int i = 0; i < lines; i++) {
+                        out.write(line("user-" + i, padding).getBytes(StandardCharsets.UTF_8));
+                    }
+                    out.flush();
+                    socket.shutdownOutput();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            // The first batch is stuck in aggregation: nothing else is read, the sender blocks
+            await(() -> listener.getStatus().get("batches").equals(1L));
+            long read = (long) listener.getStatus().get("bytesRead");
+            Thread.sleep(300);
+            assertEquals(read, listener.getStatus().get("bytesRead"));
+            assertEquals(1L, listener.getStatus().get("batches"));
+            assertFalse(writer.isDone());
+
+            release.countDown();
+            writer.get(30, TimeUnit.SECONDS);
+            await(() -> ingested.size() == lines);
+        }
+
+        for (int i = 0; i < lines; i++) {
+            assertEquals("user-" + i, ingested.get(i));
+        }
+    }
+
+    private SocketIngestListener listener(Map<String, Object> overrides) throws IOException {
+        Map<String, Object> properties = new HashMap<>(Map.of(
+            "ela.socket-ingest.enabled", true,
+            "ela.socket-ingest.port", 0,
+            "ela.socket-ingest.flush-interval", 50
+        ));
+        properties.putAll(overrides);
+        var ela = TestProperties.with(properties);
+        EventParser eventParser = new EventParser(new ObjectMapper().findAndRegisterModules(), ela);
+        eventParser.initSchema();
+
+        IngestScheduler ingestScheduler = mock(IngestScheduler.class);
+        when(ingestScheduler.ingestAll(any(), any(), anyList())).thenAnswer(invocation -> {
+            if (blocking) {
+                release.await();
+            }
+            List<FlatEvent> events = invocation.getArgument(2);
+            events.forEach(event -> ingested.add(event.userId()));
+            return events.size();
+        });
+        TenantRegistry tenantRegistry = mock(TenantRegistry.class);
+        when(tenantRegistry.resolve(any())).thenAnswer(invocation -> {
+            tenants.add(invocation.getArgument(0));
+            return mock(TenantPartition.class);
+        });
+
+        SocketIngestListener listener = new SocketIngestListener(ela, eventParser, ingestScheduler, tenantRegistry,
+            new AllocationTracker());
+        listener.start();
+        return listener;
+    }
+
+    private Socket connect() throws IOException {
+        var address = listener.getTcpAddress().orElseThrow();
+        return new Socket(address.getHostString(), address.getPort());
+    }
+
+    private static void send(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    private static String line(String userId) {
+        return line(userId, "hi");
+    }
+
+    private static String line(String userId, String message) {
+        return "{\"type\": \"MESSAGE\", \"timestamp\": \"2024-01-15T10:30:00Z\", \"userId\": \"" + userId
+            + "\", \"payload\": {\"channel\": \"#lobby\", \"message\": \"" + message + "\"}}\n";
+    }
+}
@@ -0,0 +1,53 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.config.ElaProperties;
+import de.mika.hhn.eventlogaggregator.model.EventType;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class TenantRegistryTest {
+
+    @Test
+    void shedsOnlyTheTenantOverItsOwnQuota() {
+        ElaProperties properties = TestProperties.with(Map.of(
+            "ela.tenants.quotas.small.max-retained-memory", "2MB",
+            "ela.tenants.quotas.large.max-retained-memory", "1GB",
+            "ela.admission.min-sample-rate", 0.1
+        ));
+        TenantRegistry registry = new TenantRegistry(properties, mock(MetricAggregator.class),
+            mock(MetricRepository.class), mock(AnomalyDetector.class), mock(AdmissionController.class),
+            new ObjectMapper().findAndRegisterModules(), event -> { }, new AllocationTracker(), Clock.systemUTC());
+        TenantPartition small = registry.resolve("small");
+        TenantPartition large = registry.resolve("large");
+
+        // Both tenants retain the same state, which is only above the quota of one of them
+        for (int round = 0; round < 3; round++) {
+            flood(small.getMetricAggregator(), 5_000);
+            flood(large.getMetricAggregator(), 5_000);
+            small.getMetricAggregator().aggregateMetrics();
+            large.getMetricAggregator().aggregateMetrics();
+        }
+
+        assertTrue(small.getAdmissionController().isSampling());
+        assertEquals(0.1, small.getAdmissionController().getSamplingRates().get("MESSAGE"), 1e-9);
+        assertFalse(large.getAdmissionController().isSampling());
+        assertEquals(0.0, large.getAdmissionController().getPressure());
+        assertEquals(0, large.getAdmissionController().getShedCount());
+    }
+
+    private static void flood(MetricAggregator aggregator, int events) {
+        for (int i = 0; i < events; i++) {
+            aggregator.addEvent(new FlatEvent(EventType.MESSAGE, 0, "user-" + i, "#channel-" + (i % 50), null, "hi", null));
+        }
+    }
+}
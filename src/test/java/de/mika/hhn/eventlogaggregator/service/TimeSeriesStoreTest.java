@@ -0,0 +1,35 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class TimeSeriesStoreTest {
+
+    // Default finest tier: 10 second buckets
+    private static final long START = 1_700_000_000_000L;
+
+    private final TimeSeriesStore store = new TimeSeriesStore(TestProperties.defaults());
+
+    @Test
+    void recordsWithoutWaitingForTheStoreMonitor() throws Exception {
+        // A long chart query holds the monitor; ingest threads must not wait for it
+        synchronized (store) {
+            CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 60; i++) {
+                    store.record("#general", START + i * 100);
+                }
+            }).get(5, TimeUnit.SECONDS);
+        }
+
+        TimeSeriesStore.Result result = store.query(START, START + 10_000, 100, Downsampler.LTTB,
+            List.of("#general"), 0, START + 10_000).orElseThrow();
+        assertArrayEquals(new double[] {360}, result.eventsPerMinute().values());
+        assertArrayEquals(new double[] {360}, result.channels().get("#general").values());
+    }
+}
@@ -0,0 +1,66 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final long SECOND = 1_000_000_000L;
+
+    private final SimulationClock clock = new SimulationClock(START);
+
+    @Test
+    void letsABatchOverdrawAndDelaysTheNextRequest() {
+        TokenBucket bucket = new TokenBucket(100, clock);
+
+        assertTrue(bucket.tryAcquire(250));
+
+        // 150 tokens of debt plus one token take 1.51 seconds to refill
+        assertFalse(bucket.hasTokens());
+        assertEquals(1_510_000_000L, bucket.nanosUntilAvailable(), 1_000_000);
+        clock.advanceTo(START + 1_000);
+        assertFalse(bucket.tryAcquire(1));
+        clock.advanceTo(START + 1_400);
+        assertFalse(bucket.hasTokens());
+        clock.advanceTo(START + 1_600);
+        assertTrue(bucket.tryAcquire(1));
+    }
+
+    @Test
+    void refillsAtMostOneSecondOfBurst() {
+        TokenBucket bucket = new TokenBucket(100, clock);
+        assertTrue(bucket.tryAcquire(100));
+        assertFalse(bucket.hasTokens());
+
+        // Idle for ten seconds, but only 100 tokens are saved up
+        clock.advanceTo(START + 10_000);
+        assertTrue(bucket.tryAcquire(100));
+        assertFalse(bucket.hasTokens());
+        clock.advanceTo(START + 10_020);
+        assertTrue(bucket.hasTokens());
+    }
+
+    @Test
+    void refillsProportionallyToTheElapsedTime() {
+        TokenBucket bucket = new TokenBucket(1_000, clock);
+        bucket.tryAcquire(1_000);
+
+        assertEquals(SECOND / 1_000, bucket.nanosUntilAvailable(), 1_000);
+        clock.advanceTo(START + 2);
+        assertEquals(0, bucket.nanosUntilAvailable());
+    }
+
+    @Test
+    void treatsZeroAsUnlimited() {
+        TokenBucket bucket = new TokenBucket(0, clock);
+
+        assertTrue(bucket.isUnlimited());
+        assertTrue(bucket.tryAcquire(Long.MAX_VALUE));
+        assertTrue(bucket.tryAcquire(Long.MAX_VALUE));
+        assertEquals(0, bucket.nanosUntilAvailable());
+    }
+}
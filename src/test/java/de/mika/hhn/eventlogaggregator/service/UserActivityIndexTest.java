@@ -0,0 +1,135 @@
+package de.mika.hhn.eventlogaggregator.service;
+
+import de.mika.hhn.eventlogaggregator.TestProperties;
+import de.mika.hhn.eventlogaggregator.model.EventType;
+import de.mika.hhn.eventlogaggregator.model.FlatEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserActivityIndexTest {
+
+    // Users are retained for the longest aggregation window, 30 days by default
+    private static final long DAY = Duration.ofDays(1).toMillis();
+    private static final long MINUTE = 60_000;
+
+    private final UserActivityIndex index = new UserActivityIndex(TestProperties.with(Map.of(
+        "ela.user-activity.recent-events", 4,
+        "ela.user-activity.max-buckets", 4
+    )));
+
+    @Test
+    void expiresUsersInactiveForTheLongestWindow() {
+        record("alice", 0);
+        record("bob", DAY);
+        record("carol", 2 * DAY);
+
+        index.expire(30 * DAY);
+        assertEquals(3, index.getUserCount());
+
+        index.expire(31 * DAY + 1);
+        assertEquals(1, index.getUserCount());
+        assertTrue(index.lookup("alice", Duration.ofDays(365), 31 * DAY + 1).isEmpty());
+        assertTrue(index.lookup("bob", Duration.ofDays(365), 31 * DAY + 1).isEmpty());
+        assertTrue(index.lookup("carol", Duration.ofDays(365), 31 * DAY + 1).isPresent());
+    }
+
+    @Test
+    void keepsUsersThatWereActiveAgain() {
+        record("alice", 0);
+        record("bob", DAY);
+        // Moves alice behind bob in the order of last activity
+        record("alice", 2 * DAY);
+
+        index.expire(31 * DAY + 1);
+
+        assertEquals(1, index.getUserCount());
+        assertTrue(index.lookup("alice", Duration.ofDays(365), 31 * DAY + 1).isPresent());
+    }
+
+    @Test
+    void releasesTheMemoryOfExpiredUsers() {
+        for (int i = 0; i < 10; i++) {
+            record("user-" + i, i * MINUTE * 10);
+        }
+        assertTrue(index.getMemoryBytes() > 0);
+
+        index.expire(40 * DAY);
+
+        assertEquals(0, index.getUserCount());
+        assertEquals(0, index.getMemoryBytes());
+    }
+
+    @Test
+    void countsOnlyBucketsEndingInsideTheWindow() {
+        record("alice", 0);
+        record("alice", 10 * MINUTE);
+        record("alice", 20 * MINUTE);
+
+        UserActivityIndex.Activity activity = index.lookup("alice", Duration.ofMinutes(12), 21 * MINUTE).orElseThrow();
+
+        assertEquals(2, activity.totalEvents());
+        assertEquals(10 * MINUTE, activity.since());
+        assertEquals(20 * MINUTE, activity.lastSeen());
+        assertEquals(List.of(20 * MINUTE, 10 * MINUTE),
+            activity.recentEvents().stream().map(UserActivityIndex.RecentEvent::receivedAt).toList());
+        assertTrue(index.lookup("alice", Duration.ofMinutes(1), 30 * MINUTE).isEmpty());
+    }
+
+    @Test
+    void mergesTheOldestBucketsInsteadOfDroppingThem() {
+        for (int i = 0; i < 10; i++) {
+            record("alice", i * 10 * MINUTE);
+        }
+
+        UserActivityIndex.Activity activity = index.lookup("alice", Duration.ofDays(1), 100 * MINUTE).orElseThrow();
+
+        assertEquals(10, activity.totalEvents());
+        assertEquals(Map.of(EventType.MESSAGE, 10L), activity.eventsByType());
+        assertEquals(Map.of("#lobby", 10L), activity.eventsByChannel());
+        assertEquals(0, activity.since());
+        // Only the ring of recent events is bounded
+        assertEquals(4, activity.recentEvents().size());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyActiveUserWhenFull() {
+        UserActivityIndex small = new UserActivityIndex(TestProperties.with(Map.of("ela.user-activity.max-users", 2)));
+        small.record(event("alice"), 0);
+        small.record(event("bob"), MINUTE);
+        small.record(event("alice"), 2 * MINUTE);
+        small.record(event("carol"), 3 * MINUTE);
+
+        assertEquals(2, small.getUserCount());
+        assertEquals(1, small.getEvictedCount());
+        assertFalse(small.lookup("bob", Duration.ofHours(1), 4 * MINUTE).isPresent());
+        assertTrue(small.lookup("alice", Duration.ofHours(1), 4 * MINUTE).isPresent());
+    }
+
+    @Test
+    void recordsWithoutWaitingForTheIndexMonitor() throws Exception {
+        // A long lookup or expiry holds the monitor; ingest threads must not wait for it
+        synchronized (index) {
+            CompletableFuture.runAsync(() -> record("alice", 0)).get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, index.getUserCount());
+        assertEquals(1, index.lookup("alice", Duration.ofHours(1), MINUTE).orElseThrow().totalEvents());
+    }
+
+    private void record(String userId, long nowMillis) {
+        index.record(event(userId), nowMillis);
+    }
+
+    private static FlatEvent event(String userId) {
+        return new FlatEvent(EventType.MESSAGE, 0, userId, "#lobby", null, null, null);
+    }
+}